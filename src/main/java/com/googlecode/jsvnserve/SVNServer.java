@@ -20,16 +20,19 @@
 
 package com.googlecode.jsvnserve;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
 import javax.security.auth.callback.NameCallback;
@@ -41,11 +44,25 @@ import javax.security.sasl.SaslServer;
 import javax.security.sasl.SaslServerFactory;
 
 import org.apache.mina.core.service.IoAcceptor;
-import org.apache.mina.core.session.IoSession;
-import org.apache.mina.handler.stream.StreamIoHandler;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.ssl.SslFilter;
 import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.googlecode.jsvnserve.api.IRepositoryFactory;
+import com.googlecode.jsvnserve.api.IRepositoryFactoryLifecycle;
+import com.googlecode.jsvnserve.cache.CachingRepositoryFactory;
+import com.googlecode.jsvnserve.cache.DeltaCache;
+import com.googlecode.jsvnserve.cache.PooledRepositoryFactory;
+import com.googlecode.jsvnserve.nio.IoSessionOutputStream;
+import com.googlecode.jsvnserve.nio.SVNProtocolCodecFactory;
+import com.googlecode.jsvnserve.nio.SVNSessionHandler;
+import com.googlecode.jsvnserve.nio.SVNStreamHandler;
+import com.googlecode.jsvnserve.nio.SessionConfiguration;
+import com.googlecode.jsvnserve.util.DeltaCompression;
+import com.googlecode.jsvnserve.util.MemoryBudget;
+import com.googlecode.jsvnserve.util.SpillOutputStream;
 
 /**
  *
@@ -54,12 +71,16 @@ import com.googlecode.jsvnserve.api.IRepositoryFactory;
  */
 public class SVNServer
 {
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SVNServer.class);
+
     /**
      * Factory to create new repository instances depending on the logged in
      * user and path.
      *
      * @see #setRepositoryFactory(IRepositoryFactory)
-     * @see SVNServerHandler#processStreamIo(IoSession, InputStream, OutputStream)
      */
     private IRepositoryFactory repositoryFactory;
 
@@ -92,6 +113,231 @@ public class SVNServer
      */
     private CallbackHandler callbackHandler;
 
+    /**
+     * Default count of worker threads for the event driven session engine
+     * and the {@link SessionExecutorType#BOUNDED_POOL bounded pool}.
+     *
+     * @see #workerThreads
+     */
+    public static final int DEFAULT_WORKER_THREADS = 16;
+
+    /**
+     * Maximum time in seconds how long the {@link #stop()} waits for the
+     * running sessions and delta computations of each own executor.
+     */
+    public static final long STOP_TIMEOUT = 30;
+
+    /**
+     * If <i>true</i>, the event driven session engine
+     * {@link SVNSessionHandler} is used instead of one thread for each
+     * session. Default is <i>false</i>.
+     *
+     * @see #setEventDriven(boolean)
+     */
+    private boolean eventDriven = false;
+
+    /**
+     * Count of worker threads used from the event driven session engine and
+     * the {@link SessionExecutorType#BOUNDED_POOL bounded pool}.
+     *
+     * @see #setWorkerThreads(int)
+     * @see #DEFAULT_WORKER_THREADS
+     */
+    private int workerThreads = SVNServer.DEFAULT_WORKER_THREADS;
+
+    /**
+     * Maximum of not yet sent bytes of a session before the session waits
+     * (backpressure for slow SVN clients).
+     *
+     * @see #setMaxScheduledBytes(long)
+     */
+    private long maxScheduledBytes = IoSessionOutputStream.DEFAULT_MAX_SCHEDULED_BYTES;
+
+    /**
+     * Default timeout in milliseconds how long a session waits for the
+     * admission.
+     *
+     * @see #admissionTimeout
+     */
+    public static final long DEFAULT_ADMISSION_TIMEOUT = 30000;
+
+    /**
+     * Maximum count of concurrent sessions; <code>0</code> if not limited.
+     *
+     * @see #setMaxSessions(int)
+     */
+    private int maxSessions;
+
+    /**
+     * Maximum count of concurrent sessions for one user; <code>0</code> if
+     * not limited.
+     *
+     * @see #setMaxSessionsPerUser(int)
+     */
+    private int maxSessionsPerUser;
+
+    /**
+     * Maximum count of concurrent sessions for one repository path;
+     * <code>0</code> if not limited.
+     *
+     * @see #setMaxSessionsPerPath(int)
+     */
+    private int maxSessionsPerPath;
+
+    /**
+     * Timeout in milliseconds how long a session waits for the admission
+     * before the session is rejected.
+     *
+     * @see #setAdmissionTimeout(long)
+     * @see #DEFAULT_ADMISSION_TIMEOUT
+     */
+    private long admissionTimeout = SVNServer.DEFAULT_ADMISSION_TIMEOUT;
+
+    /**
+     * Admission control of the sessions; <code>null</code> if the sessions
+     * are not limited.
+     *
+     * @see #start()
+     * @see #getSessionAdmission()
+     */
+    private SessionAdmission sessionAdmission;
+
+    /**
+     * Cache of the generated deltas shared between all sessions;
+     * <code>null</code> if the deltas are not cached.
+     *
+     * @see #setDeltaCache(DeltaCache)
+     */
+    private DeltaCache deltaCache;
+
+    /**
+     * SSL context of the TLS transport; <code>null</code> if the sessions
+     * are not encrypted with TLS.
+     *
+     * @see #setSslContext(SSLContext)
+     */
+    private SSLContext sslContext;
+
+    /**
+     * Enabled cipher suites of the TLS transport; <code>null</code> to use
+     * the defaults of the SSL context.
+     *
+     * @see #setSslCipherSuites(String...)
+     */
+    private String[] sslCipherSuites;
+
+    /**
+     * Enabled protocols of the TLS transport; <code>null</code> to use the
+     * defaults of the SSL context.
+     *
+     * @see #setSslProtocols(String...)
+     */
+    private String[] sslProtocols;
+
+    /**
+     * Maximum count of cached TLS sessions which could be resumed;
+     * <code>0</code> to use the default of the SSL context.
+     *
+     * @see #setSslSessionCacheSize(int)
+     */
+    private int sslSessionCacheSize;
+
+    /**
+     * Timeout in seconds of the cached TLS sessions; <code>0</code> to use
+     * the default of the SSL context.
+     *
+     * @see #setSslSessionTimeout(int)
+     */
+    private int sslSessionTimeout;
+
+    /**
+     * Compression level of the svndiff deltas for clients from a wide area
+     * network.
+     *
+     * @see #setDeltaCompressionLevel(int)
+     */
+    private int deltaCompressionLevel = DeltaCompression.DEFAULT_LEVEL;
+
+    /**
+     * Compression level of the svndiff deltas for clients from the local
+     * network.
+     *
+     * @see #setLocalDeltaCompressionLevel(int)
+     */
+    private int localDeltaCompressionLevel = DeltaCompression.DEFAULT_LEVEL;
+
+    /**
+     * Maximum count of files of an editor drive for which the deltas are
+     * computed in advance; <code>0</code> if the deltas are computed
+     * sequentially.
+     *
+     * @see #setDeltaLookAhead(int)
+     */
+    private int deltaLookAhead;
+
+    /**
+     * Count of threads used to compute the deltas in advance.
+     *
+     * @see #setDeltaThreads(int)
+     */
+    private int deltaThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Executor to compute the deltas in advance; created if the SVN server
+     * is started with a {@link #deltaLookAhead} and shut down if the SVN
+     * server is stopped.
+     *
+     * @see #start()
+     * @see #stop()
+     */
+    private ExecutorService deltaExecutor;
+
+    /**
+     * Maximum bytes of the content of a committed file which is hold in the
+     * memory.
+     *
+     * @see #setCommitSpillThreshold(int)
+     */
+    private int commitSpillThreshold = SpillOutputStream.DEFAULT_THRESHOLD;
+
+    /**
+     * Maximum bytes of the contents of committed files which are hold in the
+     * memory by all sessions together.
+     *
+     * @see #setCommitMemoryBudget(long)
+     */
+    private long commitMemoryBudget = MemoryBudget.DEFAULT_SIZE;
+
+    /**
+     * Defines how the sessions are executed. If not defined, each session of
+     * the blocking engine uses an own
+     * {@link SessionExecutorType#PLATFORM_THREADS platform thread} and the
+     * event driven engine uses a {@link SessionExecutorType#BOUNDED_POOL
+     * bounded pool} of {@link #workerThreads worker threads}.
+     *
+     * @see #setSessionExecutorType(SessionExecutorType)
+     */
+    private SessionExecutorType sessionExecutorType;
+
+    /**
+     * Executor defined from outside to execute the sessions (or the steps of
+     * the event driven sessions). The executor is not shut down if the SVN
+     * server stops.
+     *
+     * @see #setSessionExecutor(Executor)
+     */
+    private Executor sessionExecutor;
+
+    /**
+     * Executor created from the {@link #sessionExecutorType} if no
+     * {@link #sessionExecutor} is defined. The executor is shut down if the
+     * SVN server stops.
+     *
+     * @see #start()
+     * @see #stop()
+     */
+    private ExecutorService ownExecutor;
+
     /**
      * Acceptor to handle I/O's.
      *
@@ -142,74 +388,478 @@ public class SVNServer
         this.callbackHandler = _callbackHandler;
     }
 
+    /**
+     * Defines if the event driven session engine is used. The sessions of
+     * the event driven engine are executed from a fixed pool of
+     * {@link #setWorkerThreads(int) worker threads} instead of one thread
+     * for each session. A session between two commands does not use a
+     * thread. But a session which waits within a command for the next item
+     * of the SVN client (e.g. within the editor drive of a commit or the
+     * report of an update) holds its thread and the pool is compensated with
+     * an additional thread. So the count of threads is the count of worker
+     * threads plus the count of sessions waiting within a command; only
+     * idle sessions scale beyond the count of threads.
+     *
+     * @param _eventDriven  <i>true</i> to use the event driven engine
+     * @see #eventDriven
+     */
+    public void setEventDriven(final boolean _eventDriven)
+    {
+        this.eventDriven = _eventDriven;
+    }
+
+    /**
+     * Defines the count of worker threads for the event driven session
+     * engine and the {@link SessionExecutorType#BOUNDED_POOL bounded pool}.
+     *
+     * @param _workerThreads    count of worker threads
+     * @see #workerThreads
+     */
+    public void setWorkerThreads(final int _workerThreads)
+    {
+        this.workerThreads = _workerThreads;
+    }
+
+    /**
+     * Defines how the sessions are executed (e.g. with a
+     * {@link SessionExecutorType#VIRTUAL_THREADS virtual thread} for each
+     * session). If the type is not {@link SessionExecutorType#isSupported()
+     * supported} from the current Java runtime (e.g. virtual threads before
+     * Java 21), a warning is logged and each session uses an own
+     * {@link SessionExecutorType#PLATFORM_THREADS platform thread}.
+     *
+     * @param _sessionExecutorType  type of the session executor
+     * @see #sessionExecutorType
+     */
+    public void setSessionExecutorType(final SessionExecutorType _sessionExecutorType)
+    {
+        if ((_sessionExecutorType != null) && !_sessionExecutorType.isSupported())  {
+            SVNServer.LOGGER.warn("session executor type " + _sessionExecutorType
+                    + " is not supported from this Java runtime, "
+                    + SessionExecutorType.PLATFORM_THREADS + " is used");
+            this.sessionExecutorType = SessionExecutorType.PLATFORM_THREADS;
+        } else  {
+            this.sessionExecutorType = _sessionExecutorType;
+        }
+    }
+
+    /**
+     * Defines a specific executor for the sessions. If defined, the
+     * {@link #setSessionExecutorType(SessionExecutorType) type of the session
+     * executor} is not used.
+     *
+     * @param _sessionExecutor      executor for the sessions
+     * @see #sessionExecutor
+     */
+    public void setSessionExecutor(final Executor _sessionExecutor)
+    {
+        this.sessionExecutor = _sessionExecutor;
+    }
+
+    /**
+     * Defines the maximum count of concurrent sessions. If the maximum is
+     * reached, new sessions wait until the
+     * {@link #setAdmissionTimeout(long) timeout}.
+     *
+     * @param _maxSessions  maximum count of sessions; <code>0</code> if not
+     *                      limited
+     * @see #maxSessions
+     */
+    public void setMaxSessions(final int _maxSessions)
+    {
+        this.maxSessions = _maxSessions;
+    }
+
+    /**
+     * Defines the maximum count of concurrent sessions for one user.
+     *
+     * @param _maxSessionsPerUser   maximum count of sessions for one user;
+     *                              <code>0</code> if not limited
+     * @see #maxSessionsPerUser
+     */
+    public void setMaxSessionsPerUser(final int _maxSessionsPerUser)
+    {
+        this.maxSessionsPerUser = _maxSessionsPerUser;
+    }
+
+    /**
+     * Defines the maximum count of concurrent sessions for one repository
+     * path. The path is the path requested from the SVN client; the session
+     * is admitted before the repository is created.
+     *
+     * @param _maxSessionsPerPath   maximum count of sessions for one
+     *                              repository path; <code>0</code> if not
+     *                              limited
+     * @see #maxSessionsPerPath
+     */
+    public void setMaxSessionsPerPath(final int _maxSessionsPerPath)
+    {
+        this.maxSessionsPerPath = _maxSessionsPerPath;
+    }
+
+    /**
+     * Defines how long a session waits for the admission before the session
+     * is rejected.
+     *
+     * @param _admissionTimeout     timeout in milliseconds
+     * @see #admissionTimeout
+     */
+    public void setAdmissionTimeout(final long _admissionTimeout)
+    {
+        this.admissionTimeout = _admissionTimeout;
+    }
+
+    /**
+     * Returns the admission control of the started SVN server, e.g. to read
+     * the counters of the queued and rejected sessions.
+     *
+     * @return admission control; <code>null</code> if the sessions are not
+     *         limited or the SVN server is not started
+     * @see #sessionAdmission
+     */
+    public SessionAdmission getSessionAdmission()
+    {
+        return this.sessionAdmission;
+    }
+
+    /**
+     * Defines the cache of the generated deltas which is shared between all
+     * sessions, so that the same delta (e.g. if many clients update the same
+     * file after a commit) is computed only once.
+     *
+     * @param _deltaCache   delta cache; <code>null</code> if the deltas are
+     *                      not cached
+     * @see #deltaCache
+     */
+    public void setDeltaCache(final DeltaCache _deltaCache)
+    {
+        this.deltaCache = _deltaCache;
+    }
+
+    /**
+     * <p>Defines the SSL context used to encrypt all sessions with TLS. The
+     * TLS transport is done by the JDK {@link javax.net.ssl.SSLEngine}, so
+     * that the bulk transfers are encrypted with the fast (hardware
+     * supported) ciphers of the JDK instead of the Sasl security layer. If
+     * TLS is used, the Sasl authentication negotiates only
+     * <code>auth</code> as quality of protection.</p>
+     *
+     * <p><b>Attention!</b> No stock SVN client (neither the SVN command line
+     * client nor SVNKit) speaks TLS on <code>svn://</code>, so no stock
+     * client benefits from this transport: a stock client must connect via
+     * a TLS tunnel on the client side (e.g. <code>stunnel</code>, which adds
+     * its own process and copy overhead), and a client connecting without a
+     * tunnel gets no greeting at all. Only own clients which open a TLS
+     * connection themselves use the transport directly.</p>
+     *
+     * @param _sslContext   SSL context; <code>null</code> for plain
+     *                      connections
+     * @see #sslContext
+     */
+    public void setSslContext(final SSLContext _sslContext)
+    {
+        this.sslContext = _sslContext;
+    }
+
+    /**
+     * Defines the enabled cipher suites of the TLS transport.
+     *
+     * @param _sslCipherSuites  enabled cipher suites
+     * @see #sslCipherSuites
+     */
+    public void setSslCipherSuites(final String... _sslCipherSuites)
+    {
+        this.sslCipherSuites = _sslCipherSuites;
+    }
+
+    /**
+     * Defines the enabled protocols of the TLS transport (e.g.
+     * <code>TLSv1.3</code>).
+     *
+     * @param _sslProtocols     enabled protocols
+     * @see #sslProtocols
+     */
+    public void setSslProtocols(final String... _sslProtocols)
+    {
+        this.sslProtocols = _sslProtocols;
+    }
+
+    /**
+     * Defines the maximum count of TLS sessions in the session cache of the
+     * SSL context. A reconnecting TLS client could resume a cached session
+     * by its session identifier without a full handshake. The size does not
+     * configure stateless session tickets; if they are used depends only on
+     * the JDK and its system properties.
+     *
+     * @param _sslSessionCacheSize  maximum count of cached sessions
+     * @see #sslSessionCacheSize
+     */
+    public void setSslSessionCacheSize(final int _sslSessionCacheSize)
+    {
+        this.sslSessionCacheSize = _sslSessionCacheSize;
+    }
+
+    /**
+     * Defines how long a cached TLS session could be resumed.
+     *
+     * @param _sslSessionTimeout    timeout in seconds
+     * @see #sslSessionTimeout
+     */
+    public void setSslSessionTimeout(final int _sslSessionTimeout)
+    {
+        this.sslSessionTimeout = _sslSessionTimeout;
+    }
+
+    /**
+     * Defines the compression level of the svndiff deltas for clients from a
+     * wide area network. A high level saves bandwidth on slow links.
+     *
+     * @param _deltaCompressionLevel    compression level from <code>0</code>
+     *                                  (no compression) to <code>9</code>
+     * @see #deltaCompressionLevel
+     */
+    public void setDeltaCompressionLevel(final int _deltaCompressionLevel)
+    {
+        this.deltaCompressionLevel = _deltaCompressionLevel;
+    }
+
+    /**
+     * Defines the compression level of the svndiff deltas for clients from
+     * the local network (loopback, link local and site local addresses). On
+     * a fast network a low level (or no compression) saves CPU time.
+     *
+     * @param _localDeltaCompressionLevel   compression level from
+     *                                      <code>0</code> (no compression)
+     *                                      to <code>9</code>
+     * @see #localDeltaCompressionLevel
+     */
+    public void setLocalDeltaCompressionLevel(final int _localDeltaCompressionLevel)
+    {
+        this.localDeltaCompressionLevel = _localDeltaCompressionLevel;
+    }
+
+    /**
+     * Defines for how many files of an editor drive (e.g. of an update) the
+     * deltas are computed in advance on the {@link #setDeltaThreads(int)
+     * delta threads} while the previous files are written. The deltas are
+     * written in the order required by the editor protocol. The file
+     * contents are read from the repository within the session thread (and
+     * held in memory or spilled above the {@link #setCommitSpillThreshold(int)
+     * spill threshold}) until the delta is computed; the computed deltas are
+     * hold in the memory until they are written.
+     *
+     * @param _deltaLookAhead   maximum count of files; <code>0</code> if
+     *                          the deltas are computed sequentially
+     * @see #deltaLookAhead
+     */
+    public void setDeltaLookAhead(final int _deltaLookAhead)
+    {
+        this.deltaLookAhead = _deltaLookAhead;
+    }
+
+    /**
+     * Defines the count of threads used to compute the deltas in advance
+     * (shared between all sessions).
+     *
+     * @param _deltaThreads     count of threads
+     * @see #deltaThreads
+     */
+    public void setDeltaThreads(final int _deltaThreads)
+    {
+        this.deltaThreads = _deltaThreads;
+    }
+
+    /**
+     * Defines the maximum bytes of the content of a committed file which is
+     * hold in the memory. Larger contents are spilled to a temporary file, so
+     * that commits of many small files do not use the file system and large
+     * files do not use the memory.
+     *
+     * @param _commitSpillThreshold     threshold in bytes; <code>0</code> if
+     *                                  all contents are written to temporary
+     *                                  files
+     * @see #commitSpillThreshold
+     */
+    public void setCommitSpillThreshold(final int _commitSpillThreshold)
+    {
+        this.commitSpillThreshold = _commitSpillThreshold;
+    }
+
+    /**
+     * Defines the maximum bytes of the contents of committed files which are
+     * hold in the memory by all sessions together. The contents of all files
+     * of a commit are hold until the commit is finished, so the
+     * {@link #setCommitSpillThreshold(int) spill threshold} alone does not
+     * limit the memory of a commit with many files. If the budget is
+     * exhausted, new contents are spilled to temporary files even if they
+     * are smaller than the spill threshold.
+     *
+     * @param _commitMemoryBudget   budget in bytes
+     * @see #commitMemoryBudget
+     */
+    public void setCommitMemoryBudget(final long _commitMemoryBudget)
+    {
+        this.commitMemoryBudget = _commitMemoryBudget;
+    }
+
+    /**
+     * Defines the maximum of not yet sent bytes of a session before the
+     * session waits.
+     *
+     * @param _maxScheduledBytes    maximum of not yet sent bytes
+     * @see #maxScheduledBytes
+     */
+    public void setMaxScheduledBytes(final long _maxScheduledBytes)
+    {
+        this.maxScheduledBytes = _maxScheduledBytes;
+    }
+
     /**
      * Starts the SVN server by using as acceptor {@link NioSocketAcceptor}.
-     * The handler {@link SVNServerHandler} is used and bind to port
-     * {@link #port}.
+     * If the {@link #eventDriven event driven engine} is used, the protocol
+     * is decoded with the {@link SVNProtocolCodecFactory} and the handler
+     * {@link SVNSessionHandler} is used; otherwise the handler
+     * {@link SVNStreamHandler} executes each session with blocking streams.
+     * If the repository factory implements
+     * {@link IRepositoryFactoryLifecycle}, the factory is
+     * {@link IRepositoryFactoryLifecycle#start() started} (e.g. the
+     * repositories of a {@link PooledRepositoryFactory} are warmed up, also
+     * if the pool is wrapped by a {@link CachingRepositoryFactory}). If a
+     * limit of the sessions is defined, the sessions are admitted by a
+     * {@link SessionAdmission}. If a {@link #sslContext SSL context} is
+     * defined, a {@link SslFilter} is added as first filter. The acceptor is
+     * bind to port {@link #port}.
      *
      * @see #port
      * @see #acceptor
+     * @see #sessionExecutor
+     * @see #sessionExecutorType
      */
     public void start()
             throws IOException
     {
+        if (this.repositoryFactory instanceof IRepositoryFactoryLifecycle)  {
+            ((IRepositoryFactoryLifecycle) this.repositoryFactory).start();
+        }
+
+        final Executor executor;
+        if (this.sessionExecutor != null)  {
+            executor = this.sessionExecutor;
+        } else  {
+            final SessionExecutorType type;
+            if (this.sessionExecutorType != null)  {
+                type = this.sessionExecutorType;
+            } else  {
+                type = this.eventDriven ? SessionExecutorType.BOUNDED_POOL : SessionExecutorType.PLATFORM_THREADS;
+            }
+            this.ownExecutor = type.newExecutor(this.workerThreads);
+            executor = this.ownExecutor;
+        }
+
+        if ((this.maxSessions > 0) || (this.maxSessionsPerUser > 0) || (this.maxSessionsPerPath > 0))  {
+            this.sessionAdmission = new SessionAdmission(this.maxSessions,
+                                                         this.maxSessionsPerUser,
+                                                         this.maxSessionsPerPath,
+                                                         this.admissionTimeout);
+        } else  {
+            this.sessionAdmission = null;
+        }
+
         this.acceptor = new NioSocketAcceptor();
-        this.acceptor.setHandler(new SVNServerHandler());
+        if (this.sslContext != null)  {
+            final SSLSessionContext sessionContext = this.sslContext.getServerSessionContext();
+            if (this.sslSessionCacheSize > 0)  {
+                sessionContext.setSessionCacheSize(this.sslSessionCacheSize);
+            }
+            if (this.sslSessionTimeout > 0)  {
+                sessionContext.setSessionTimeout(this.sslSessionTimeout);
+            }
+            final SslFilter sslFilter = new SslFilter(this.sslContext);
+            if (this.sslCipherSuites != null)  {
+                sslFilter.setEnabledCipherSuites(this.sslCipherSuites);
+            }
+            if (this.sslProtocols != null)  {
+                sslFilter.setEnabledProtocols(this.sslProtocols);
+            }
+            this.acceptor.getFilterChain().addFirst("ssl", sslFilter);
+        }
+        final DeltaCompression deltaCompression = new DeltaCompression(this.deltaCompressionLevel,
+                                                                       this.localDeltaCompressionLevel);
+        if (this.deltaLookAhead > 0)  {
+            this.deltaExecutor = Executors.newFixedThreadPool(this.deltaThreads);
+        }
+        final SessionConfiguration configuration = new SessionConfiguration();
+        configuration.setMaxScheduledBytes(this.maxScheduledBytes);
+        configuration.setRepositoryFactory(this.repositoryFactory);
+        configuration.setSaslServerFactory(this.saslServerFactory);
+        configuration.setCallbackHandler(this.callbackHandler);
+        configuration.setAdmission(this.sessionAdmission);
+        configuration.setDeltaCache(this.deltaCache);
+        configuration.setDeltaCompression(deltaCompression);
+        configuration.setDeltaPipeline(this.deltaExecutor, this.deltaLookAhead);
+        configuration.setCommitSpillThreshold(this.commitSpillThreshold);
+        configuration.setCommitMemoryBudget(new MemoryBudget(this.commitMemoryBudget));
+        if (this.eventDriven)  {
+            this.acceptor.getFilterChain().addLast("codec",
+                                                   new ProtocolCodecFilter(new SVNProtocolCodecFactory()));
+            this.acceptor.setHandler(new SVNSessionHandler(executor, configuration));
+        } else  {
+            this.acceptor.setHandler(new SVNStreamHandler(executor, configuration));
+        }
         this.acceptor.bind(new InetSocketAddress(this.port));
     }
 
     /**
-     * Stops the SVN server.
+     * Stops the SVN server. The own executors are shut down and the running
+     * sessions and delta computations are awaited (at most
+     * {@link #STOP_TIMEOUT} seconds for each executor), so that no session
+     * uses a repository after the factory is stopped. Then, if the
+     * repository factory implements {@link IRepositoryFactoryLifecycle},
+     * the factory is {@link IRepositoryFactoryLifecycle#stop() stopped}
+     * (e.g. the idle repositories of a {@link PooledRepositoryFactory} and
+     * the changed paths indexes of a {@link CachingRepositoryFactory} are
+     * closed, also if one factory wraps the other).
      *
      * @see #acceptor
+     * @see #ownExecutor
+     * @see #deltaExecutor
      */
     public void stop()
     {
         this.acceptor.dispose();
+        if (this.ownExecutor != null)  {
+            this.ownExecutor.shutdown();
+        }
+        if (this.deltaExecutor != null)  {
+            this.deltaExecutor.shutdown();
+        }
+        this.awaitTermination(this.ownExecutor);
+        this.awaitTermination(this.deltaExecutor);
+        this.ownExecutor = null;
+        this.deltaExecutor = null;
+        if (this.repositoryFactory instanceof IRepositoryFactoryLifecycle)  {
+            ((IRepositoryFactoryLifecycle) this.repositoryFactory).stop();
+        }
     }
 
     /**
-     * SVN server handler with stream to start a new session instance from
-     * {@link SVNServerSession}.
+     * Waits until all tasks of the shut down executor are finished, but at
+     * most {@link #STOP_TIMEOUT} seconds.
+     *
+     * @param _executor     shut down executor; <code>null</code> if not
+     *                      used
      */
-    class SVNServerHandler
-            extends StreamIoHandler
+    private void awaitTermination(final ExecutorService _executor)
     {
-        /**
-         * Starts a new SVN server session. Because the client SVN kit could
-         * not handle unbuffered output stream, the output stream is embedded
-         * within a buffered output stream. The {@link SVNServerSession} runs
-         * in a separate thread.
-         *
-         * @param _iosession    IO session
-         * @param _in           input stream
-         * @param _out          output stream
-         */
-        @Override
-        protected void processStreamIo(final IoSession _iosession,
-                                       final InputStream _in,
-                                       final OutputStream _out)
-        {
-            SVNServerSession  svnServer = new SVNServerSession(_in,
-                                                               new BufferedOutputStream(_out),
-                                                               SVNServer.this.repositoryFactory,
-                                                               null,
-                                                               SVNServer.this.saslServerFactory,
-                                                               SVNServer.this.callbackHandler);
-            svnServer.start();
-        }
-/*
-        @Override
-        public void sessionClosed(IoSession session)
-        throws Exception
-        {
-// TODO: use the method to close the SVN server session
-            System.out.println("sessionClosed.start");
-super.sessionClosed(session);
-System.out.println("sessionClosed.end");
-
+        if (_executor != null)  {
+            try  {
+                if (!_executor.awaitTermination(SVNServer.STOP_TIMEOUT, TimeUnit.SECONDS))  {
+                    SVNServer.LOGGER.warn("executor not terminated within " + SVNServer.STOP_TIMEOUT + " seconds");
+                }
+            } catch (final InterruptedException ex)  {
+                Thread.currentThread().interrupt();
+            }
         }
-*/
     }
 
     /**
@@ -28,9 +28,11 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import javax.security.auth.callback.CallbackHandler;
 import javax.security.sasl.Sasl;
@@ -46,26 +48,45 @@ import com.googlecode.jsvnserve.api.CommitInfo;
 import com.googlecode.jsvnserve.api.Depth;
 import com.googlecode.jsvnserve.api.DirEntry;
 import com.googlecode.jsvnserve.api.DirEntryList;
+import com.googlecode.jsvnserve.api.IDatedRevision;
+import com.googlecode.jsvnserve.api.IDeletedRevision;
+import com.googlecode.jsvnserve.api.IEncodedRevisionProperties;
+import com.googlecode.jsvnserve.api.ILocationSegments;
+import com.googlecode.jsvnserve.api.IReplay;
 import com.googlecode.jsvnserve.api.IRepository;
 import com.googlecode.jsvnserve.api.IRepositoryFactory;
+import com.googlecode.jsvnserve.api.IStreamingCommit;
+import com.googlecode.jsvnserve.api.IStreamingLog;
 import com.googlecode.jsvnserve.api.LocationEntries;
+import com.googlecode.jsvnserve.api.LocationSegmentWriter;
 import com.googlecode.jsvnserve.api.LockDescriptionList;
 import com.googlecode.jsvnserve.api.LogEntryList;
+import com.googlecode.jsvnserve.api.LogEntryWriter;
 import com.googlecode.jsvnserve.api.ReportList;
 import com.googlecode.jsvnserve.api.ServerException;
 import com.googlecode.jsvnserve.api.LockDescriptionList.LockDescription;
-import com.googlecode.jsvnserve.api.LogEntryList.ChangedPath;
 import com.googlecode.jsvnserve.api.LogEntryList.LogEntry;
 import com.googlecode.jsvnserve.api.ServerException.ErrorCode;
+import com.googlecode.jsvnserve.api.editorcommands.CommitEditorReader;
 import com.googlecode.jsvnserve.api.editorcommands.EditorCommandSet;
+import com.googlecode.jsvnserve.api.editorcommands.EditorCommandWriter;
+import com.googlecode.jsvnserve.api.editorcommands.ICommitEditor;
 import com.googlecode.jsvnserve.api.filerevisions.FileRevisionsList;
+import com.googlecode.jsvnserve.api.properties.EncodedProperties;
 import com.googlecode.jsvnserve.api.properties.Properties;
 import com.googlecode.jsvnserve.api.properties.Properties.PropertyKey;
+import com.googlecode.jsvnserve.cache.DeltaCache;
 import com.googlecode.jsvnserve.element.AbstractElement;
+import com.googlecode.jsvnserve.element.ElementOutputStream;
+import com.googlecode.jsvnserve.element.ElementReader;
 import com.googlecode.jsvnserve.element.ListElement;
+import com.googlecode.jsvnserve.element.NumberElement;
 import com.googlecode.jsvnserve.element.StringElement;
 import com.googlecode.jsvnserve.element.WordElement;
 import com.googlecode.jsvnserve.element.WordElement.Word;
+import com.googlecode.jsvnserve.util.DeltaCompression;
+import com.googlecode.jsvnserve.util.MemoryBudget;
+import com.googlecode.jsvnserve.util.SpillOutputStream;
 import com.googlecode.jsvnserve.util.Timestamp;
 
 /**
@@ -130,10 +151,18 @@ import com.googlecode.jsvnserve.util.Timestamp;
  * @version $Id$
  */
 public class SVNServerSession
-        extends Thread
+        implements Runnable
 {
     private final static Logger LOGGER = LoggerFactory.getLogger(SVNServerSession.class);
 
+    /**
+     * Count of revisions for which the locations are fetched with one call
+     * if the repository does not stream the location segments.
+     *
+     * @see #writeLocationSegments(LocationSegmentWriter, String, long, long, long)
+     */
+    private static final int LOCATION_SEGMENTS_BLOCK_SIZE = 1000;
+
     /**
      * Stores the list element for
      * &quot;<code>( success ( ( ) 0: ) )</code>&quot; which must be returned
@@ -153,6 +182,7 @@ public class SVNServerSession
      * &quot;<code>( success ( ( ) ) )</code>&quot;.
      */
     public static final ListElement EMPTY_SUCCESS;
+
     static  {
         try  {
             EMPTY_SUCCESS = new ListElement(Word.STATUS_SUCCESS, new ListElement(new ListElement()));
@@ -198,6 +228,100 @@ public class SVNServerSession
      */
     private final CallbackHandler callbackHandler;
 
+    /**
+     * URL from the hello of the SVN client.
+     *
+     * @see #readHello(ListElement)
+     * @see #openRepository()
+     */
+    private URI hostUri;
+
+    /**
+     * Admission control of the SVN server; <code>null</code> if the sessions
+     * are not limited.
+     *
+     * @see #setAdmission(SessionAdmission)
+     */
+    private SessionAdmission admission;
+
+    /**
+     * Permit of the {@link #admission} for this session; released if the
+     * session is closed.
+     *
+     * @see #openRepository()
+     * @see #closeSession()
+     */
+    private SessionAdmission.Permit permit;
+
+    /**
+     * Cache of the generated deltas shared between all sessions;
+     * <code>null</code> if the deltas are not cached.
+     *
+     * @see #setDeltaCache(DeltaCache)
+     * @see #getDeltaCache()
+     */
+    private DeltaCache deltaCache;
+
+    /**
+     * Is the transport already encrypted (e.g. with TLS)? If <i>true</i>, the
+     * Sasl authentication negotiates no security layer.
+     *
+     * @see #setSecureTransport(boolean)
+     */
+    private boolean secureTransport;
+
+    /**
+     * Compression level of the svndiff deltas written to the SVN client.
+     *
+     * @see #setDeltaCompressionLevel(int)
+     * @see #getDeltaCompressionLevel()
+     */
+    private int deltaCompressionLevel = DeltaCompression.DEFAULT_LEVEL;
+
+    /**
+     * Does the SVN client understand svndiff1 (compressed deltas)?
+     *
+     * @see #readHello(ListElement)
+     * @see #getDeltaCompressionLevel()
+     */
+    private boolean clientSvndiff1;
+
+    /**
+     * Executor used to compute the deltas of the files of an editor drive in
+     * advance; <code>null</code> if the deltas are computed sequentially.
+     *
+     * @see #setDeltaPipeline(Executor, int)
+     * @see #getDeltaExecutor()
+     */
+    private Executor deltaExecutor;
+
+    /**
+     * Maximum count of files of an editor drive for which the deltas are
+     * computed in advance.
+     *
+     * @see #setDeltaPipeline(Executor, int)
+     * @see #getDeltaLookAhead()
+     */
+    private int deltaLookAhead;
+
+    /**
+     * Maximum bytes of the content of a committed file which is hold in the
+     * memory; larger contents are spilled to a temporary file.
+     *
+     * @see #setCommitSpillThreshold(int)
+     * @see #getCommitSpillThreshold()
+     */
+    private int commitSpillThreshold = SpillOutputStream.DEFAULT_THRESHOLD;
+
+    /**
+     * Memory budget for the contents of committed files shared with the
+     * other sessions; <code>null</code> if not limited.
+     *
+     * @see #setCommitMemoryBudget(MemoryBudget)
+     * @see #getCommitMemoryBudget()
+     */
+    private MemoryBudget commitMemoryBudget;
+
     /**
      *
      * @param _in                   input stream
@@ -229,83 +353,233 @@ public class SVNServerSession
         this.callbackHandler = _callbackHandler;
     }
 
-    @Override
-    public void run()
+    /**
+     * Creates a new SVN server session for which the elements from the SVN
+     * client are already tokenized (e.g. for the
+     * {@link com.googlecode.jsvnserve.nio event driven session engine}).
+     *
+     * @param _reader               reader of the elements from the SVN client
+     * @param _out                  output stream
+     * @param _repositoryFactory    repository factory to get related
+     *                              repository
+     * @param _user                 logged in user if external authentication
+     *                              was used; otherwise must be defined
+     *                              <code>null</code>
+     * @param _saslServerFactory    factory to get {@link SaslServer} instance
+     *                              for authentication
+     * @param _callbackHandler      callback handler for the authentication
+     */
+    protected SVNServerSession(final ElementReader _reader,
+                               final OutputStream _out,
+                               final IRepositoryFactory _repositoryFactory,
+                               final String _user,
+                               final SaslServerFactory _saslServerFactory,
+                               final CallbackHandler _callbackHandler)
     {
-        try {
+        this.streams = new SVNSessionStreams(this, _out, _reader);
+        this.user = _user;
+        this.repositoryFactory = _repositoryFactory;
+        this.saslServerFactory = _saslServerFactory;
+        this.callbackHandler = _callbackHandler;
+    }
 
-            this.streams.writeItemList(
-                    new ListElement(Word.STATUS_SUCCESS,
-                            new ListElement(1, 2, new ListElement(),
-                                    new ListElement(Word.EDIT_PIPELINE, Word.SVNDIFF1, Word.ABSENT_ENTRIES,
-                                                    Word.COMMIT_REVPRODS,
-                                                    Word.DEPTH,Word.LOG_REVPROPS))));
+    /**
+     * Defines the admission control which limits the opened repository
+     * sessions.
+     *
+     * @param _admission    admission control of the SVN server
+     * @see #admission
+     */
+    public void setAdmission(final SessionAdmission _admission)
+    {
+        this.admission = _admission;
+    }
 
-            final ListElement ret = this.streams.readItemList();
+    /**
+     * Defines the cache of the generated deltas.
+     *
+     * @param _deltaCache   delta cache of the SVN server
+     * @see #deltaCache
+     */
+    public void setDeltaCache(final DeltaCache _deltaCache)
+    {
+        this.deltaCache = _deltaCache;
+    }
 
-            final String hostName = ret.getList().get(2).getString();
+    /**
+     * Defines if the transport of the session is already encrypted.
+     *
+     * @param _secureTransport  <i>true</i> if the transport is encrypted
+     * @see #secureTransport
+     */
+    public void setSecureTransport(final boolean _secureTransport)
+    {
+        this.secureTransport = _secureTransport;
+    }
 
-            final URI hostUri = new URI(hostName);
+    /**
+     * Defines the compression level of the svndiff deltas written to the SVN
+     * client (e.g. a low level for clients within the local network).
+     *
+     * @param _deltaCompressionLevel    compression level from <code>0</code>
+     *                                  (no compression) to <code>9</code>
+     * @see #deltaCompressionLevel
+     */
+    public void setDeltaCompressionLevel(final int _deltaCompressionLevel)
+    {
+        this.deltaCompressionLevel = _deltaCompressionLevel;
+    }
 
-            // if no user is defined, user must authenticate
-            if (this.user == null)  {
-                this.authenticate(hostUri.getHost());
-            // otherwise no authentication needed!
-            } else  {
-                this.streams.writeItemList(NO_AUTHORIZATION_NEEDED);
-            }
+    /**
+     * Returns the compression level of the svndiff deltas written to the SVN
+     * client. If the SVN client does not understand svndiff1,
+     * {@link DeltaCompression#NO_COMPRESSION} is returned.
+     *
+     * @return compression level
+     * @see #deltaCompressionLevel
+     * @see #clientSvndiff1
+     */
+    public int getDeltaCompressionLevel()
+    {
+        return this.clientSvndiff1 ? this.deltaCompressionLevel : DeltaCompression.NO_COMPRESSION;
+    }
 
-            // get repository
-            ServerException exception = null;
-            try  {
-                this.repository = this.repositoryFactory.createRepository(this.user,
-                        "".equals(hostUri.getPath()) ? "/" : hostUri.getPath());
-            } catch (final ServerException ex)  {
-                exception = ex;
-            }
+    /**
+     * Defines that the deltas of the files of an editor drive are computed in
+     * advance with given executor while the previous files are written.
+     *
+     * @param _deltaExecutor    executor for the delta computation;
+     *                          <code>null</code> if the deltas are computed
+     *                          sequentially
+     * @param _deltaLookAhead   maximum count of files for which the deltas
+     *                          are computed in advance
+     * @see #deltaExecutor
+     * @see #deltaLookAhead
+     */
+    public void setDeltaPipeline(final Executor _deltaExecutor,
+                                 final int _deltaLookAhead)
+    {
+        this.deltaExecutor = _deltaExecutor;
+        this.deltaLookAhead = _deltaLookAhead;
+    }
 
-            // if no repository exists.... => return error message
-            if (exception != null)  {
-                this.streams.writeFailureStatus(exception);
-            } else  {
+    /**
+     * Returns the executor used to compute the deltas in advance.
+     *
+     * @return delta executor; <code>null</code> if the deltas are computed
+     *         sequentially
+     * @see #deltaExecutor
+     */
+    public Executor getDeltaExecutor()
+    {
+        return this.deltaExecutor;
+    }
 
-                URI rootURI = new URI(hostUri.getScheme(),
-                        null, hostUri.getHost(), hostUri.getPort(),
-                        this.getRepository().getRepositoryPath().toString(), null, null);
+    /**
+     * Returns the maximum count of files for which the deltas are computed in
+     * advance. If no {@link #deltaExecutor} is defined, <code>0</code> is
+     * returned.
+     *
+     * @return look-ahead of the delta computation
+     * @see #deltaLookAhead
+     */
+    public int getDeltaLookAhead()
+    {
+        return (this.deltaExecutor == null) ? 0 : this.deltaLookAhead;
+    }
 
-                this.streams.writeItemList(
-                        new ListElement(Word.STATUS_SUCCESS,
-                                new ListElement(this.getRepository().getUUID().toString(),
-                                                rootURI.toASCIIString(),
-                                                new ListElement(/*Word.MERGEINFO*/))));
+    /**
+     * Defines the maximum bytes of the content of a committed file which is
+     * hold in the memory.
+     *
+     * @param _commitSpillThreshold     threshold in bytes; <code>0</code> if
+     *                                  all contents are written to temporary
+     *                                  files
+     * @see #commitSpillThreshold
+     */
+    public void setCommitSpillThreshold(final int _commitSpillThreshold)
+    {
+        this.commitSpillThreshold = _commitSpillThreshold;
+    }
+
+    /**
+     * Returns the maximum bytes of the content of a committed file which is
+     * hold in the memory.
+     *
+     * @return threshold in bytes
+     * @see #commitSpillThreshold
+     */
+    public int getCommitSpillThreshold()
+    {
+        return this.commitSpillThreshold;
+    }
+
+    /**
+     * Defines the memory budget for the contents of committed files shared
+     * with the other sessions.
+     *
+     * @param _commitMemoryBudget   memory budget; <code>null</code> if not
+     *                              limited
+     * @see #commitMemoryBudget
+     */
+    public void setCommitMemoryBudget(final MemoryBudget _commitMemoryBudget)
+    {
+        this.commitMemoryBudget = _commitMemoryBudget;
+    }
+
+    /**
+     * Returns the memory budget for the contents of committed files.
+     *
+     * @return memory budget; <code>null</code> if not limited
+     * @see #commitMemoryBudget
+     */
+    public MemoryBudget getCommitMemoryBudget()
+    {
+        return this.commitMemoryBudget;
+    }
 
+    /**
+     * Returns the cache of the generated deltas.
+     *
+     * @return delta cache; <code>null</code> if the deltas are not cached
+     * @see #deltaCache
+     */
+    public DeltaCache getDeltaCache()
+    {
+        return this.deltaCache;
+    }
+
+    /**
+     * Returns the user of the session.
+     *
+     * @return name of the user; <code>null</code> if not authenticated
+     * @see #user
+     */
+    public String getUser()
+    {
+        return this.user;
+    }
+
+    /**
+     * Runs the complete SVN session for blocking streams: the greeting is
+     * written, the repository is opened and then all commands from the SVN
+     * client are dispatched until the input stream is closed.
+     *
+     * @see #writeGreeting()
+     * @see #open(ListElement)
+     * @see #dispatch(ListElement)
+     * @see #closeSession()
+     */
+    @Override
+    public void run()
+    {
+        try {
+            this.writeGreeting();
+            final ListElement hello = this.streams.readItemList();
+            if ((hello != null) && this.open(hello))  {
                 ListElement items = this.streams.readItemList();
                 while (items != null)  {
-                    switch (items.getList().get(0).getWord())  {
-                        case CHECK_PATH:        this.svnCheckPath(items.getList().get(1).getList());break;
-                        case COMMIT:            this.svnCommit(items.getList().get(1).getList());break;
-                        case GET_DIR:           this.svnGetDir(items.getList().get(1).getList());break;
-                        case GET_FILE:          this.svnGetFile(items.getList().get(1).getList());break;
-                        case GET_FILE_REVS:     this.svnGetFileRevs(items.getList().get(1).getList());break;
-                        case GET_LATEST_REV:    this.svnGetLatestRev();break;
-                        case GET_LOCATIONS:     this.svnGetLocations(items.getList().get(1).getList());break;
-                        case GET_LOCK:          this.svnGetLock(items.getList().get(1).getList());break;
-                        case GET_LOCKS:         this.svnGetLocks(items.getList().get(1).getList());break;
-                        case LOCK_MANY:         this.svnLockMany(items.getList().get(1).getList());break;
-                        case LOG:               this.svnLog(items.getList().get(1).getList());break;
-                        case REV_PROP:          this.svnRevProp(items.getList().get(1).getList());break;
-                        case REV_PROPLIST:      this.svnRevPropList(items.getList().get(1).getList());break;
-                        case REPARENT:          this.svnReparent(items.getList().get(1).getList());break;
-                        case STAT:              this.svnStat(items.getList().get(1).getList());break;
-                        case STATUS:            this.svnStatus(items.getList().get(1).getList());break;
-                        case SWITCH:            this.svnSwitch(items.getList().get(1).getList());break;
-                        case UNLOCK_MANY:       this.svnUnlockMany(items.getList().get(1).getList());break;
-                        case UPDATE:            this.svnUpdate(items.getList().get(1).getList());break;
-                        default:
-                            this.streams.writeFailureStatus("unknown SVN command '"
-                                    + items.getList().get(0).getString() + "'");
-                            break;
-                    }
+                    this.dispatch(items);
                     items = this.streams.readItemList();
                 }
             }
@@ -321,10 +595,227 @@ public class SVNServerSession
             // TODO Auto-generated catch block
             e.printStackTrace();
         } finally  {
-            if (this.repository != null)  {
-                this.repository.close();
+            this.closeSession();
+        }
+    }
+
+    /**
+     * Writes the greeting of the SVN server with the supported protocol
+     * versions and capabilities.
+     *
+     * @throws IOException if the greeting could not be written
+     */
+    protected void writeGreeting()
+            throws IOException
+    {
+        this.streams.writeItemList(
+                new ListElement(Word.STATUS_SUCCESS,
+                        new ListElement(1, 2, new ListElement(),
+                                new ListElement(Word.EDIT_PIPELINE, Word.SVNDIFF1, Word.ABSENT_ENTRIES,
+                                                Word.COMMIT_REVPRODS,
+                                                Word.DEPTH,Word.LOG_REVPROPS))));
+    }
+
+    /**
+     * Opens the session for the hello of the SVN client: the user is
+     * authenticated (if not already done externally) and the repository for
+     * the URL of the SVN client is created.
+     *
+     * @param _hello    hello list of the SVN client with the URL
+     * @return <i>true</i> if the repository is opened and commands could be
+     *         dispatched; otherwise <i>false</i> (the failure is already
+     *         written to the SVN client)
+     * @throws IOException          if the communication with the SVN client
+     *                              failed
+     * @throws URISyntaxException   if the URL of the SVN client is not valid
+     */
+    protected boolean open(final ListElement _hello)
+            throws IOException, URISyntaxException
+    {
+        final SaslAuthentication authentication = this.readHello(_hello);
+        if (authentication != null)  {
+            this.authenticate(authentication);
+        }
+        return this.openRepository();
+    }
+
+    /**
+     * Evaluates the URL from the hello of the SVN client. If the user is not
+     * already authenticated externally, the authentication request is written
+     * to the SVN client; otherwise the client is informed that no
+     * authentication is needed.
+     *
+     * @param _hello    hello list of the SVN client with the URL
+     * @return started authentication which must be
+     *         {@link SaslAuthentication#evaluate(AbstractElement) evaluated}
+     *         with the answers of the SVN client; <code>null</code> if no
+     *         authentication is needed
+     * @throws IOException          if the communication with the SVN client
+     *                              failed
+     * @throws URISyntaxException   if the URL of the SVN client is not valid
+     * @see #open(ListElement)
+     */
+    protected SaslAuthentication readHello(final ListElement _hello)
+            throws IOException, URISyntaxException
+    {
+        this.hostUri = new URI(_hello.getList().get(2).getString());
+        for (final AbstractElement<?> capability : _hello.getList().get(1).getList())  {
+            if (capability.getWord() == Word.SVNDIFF1)  {
+                this.clientSvndiff1 = true;
             }
         }
+
+        final SaslAuthentication ret;
+        // if no user is defined, user must authenticate
+        if (this.user == null)  {
+            ret = new SaslAuthentication(this.hostUri.getHost());
+        // otherwise no authentication needed!
+        } else  {
+            this.streams.writeItemList(NO_AUTHORIZATION_NEEDED);
+            ret = null;
+        }
+        return ret;
+    }
+
+    /**
+     * Creates the repository for the URL from the hello of the SVN client
+     * (see {@link #readHello(ListElement)}) and the authenticated user. If an
+     * {@link #admission admission control} is defined, the session waits
+     * before the repository is created until the session is admitted for the
+     * user and for the requested repository path. If the repository could not
+     * be created, the permit is released directly.
+     *
+     * @return <i>true</i> if the repository is opened and commands could be
+     *         dispatched; otherwise <i>false</i> (the failure is already
+     *         written to the SVN client)
+     * @throws IOException          if the communication with the SVN client
+     *                              failed
+     * @throws URISyntaxException   if the URL of the SVN client is not valid
+     * @see #open(ListElement)
+     */
+    protected boolean openRepository()
+            throws IOException, URISyntaxException
+    {
+        final URI hostUri = this.hostUri;
+
+        // get repository
+        final String path = "".equals(hostUri.getPath()) ? "/" : hostUri.getPath();
+        ServerException exception = null;
+        try  {
+            if (this.admission != null)  {
+                this.permit = this.admission.admit(this.user);
+                this.permit.admitPath(path);
+            }
+            this.repository = this.repositoryFactory.createRepository(this.user, path);
+        } catch (final ServerException ex)  {
+            exception = ex;
+        } finally  {
+            if ((this.repository == null) && (this.permit != null))  {
+                this.permit.release();
+                this.permit = null;
+            }
+        }
+
+        // if no repository exists.... => return error message
+        if (exception != null)  {
+            this.streams.writeFailureStatus(exception);
+        } else  {
+
+            URI rootURI = new URI(hostUri.getScheme(),
+                    null, hostUri.getHost(), hostUri.getPort(),
+                    this.getRepository().getRepositoryPath().toString(), null, null);
+
+            this.streams.writeItemList(
+                    new ListElement(Word.STATUS_SUCCESS,
+                            new ListElement(this.getRepository().getUUID().toString(),
+                                            rootURI.toASCIIString(),
+                                            new ListElement(/*Word.MERGEINFO*/))));
+        }
+        return exception == null;
+    }
+
+    /**
+     * Dispatches one command of the SVN client to the related SVN method.
+     * The response of the command is {@link SVNSessionStreams#beginResponse()
+     * batched} and flushed once if the command is done (or the SVN client
+     * must answer).
+     *
+     * @param _items    command list of the SVN client
+     * @throws IOException          if the communication with the SVN client
+     *                              failed
+     * @throws URISyntaxException   if an URL from the SVN client is not valid
+     */
+    protected void dispatch(final ListElement _items)
+            throws IOException, URISyntaxException
+    {
+        this.streams.beginResponse();
+        try  {
+            this.dispatchCommand(_items);
+        } finally  {
+            this.streams.endResponse();
+        }
+    }
+
+    /**
+     * Calls the method for the command of given items.
+     *
+     * @param _items    command list of the SVN client
+     * @throws IOException          if the communication with the SVN client
+     *                              failed
+     * @throws URISyntaxException   if an URL from the SVN client is not valid
+     */
+    private void dispatchCommand(final ListElement _items)
+            throws IOException, URISyntaxException
+    {
+        switch (_items.getList().get(0).getWord())  {
+            case CHECK_PATH:        this.svnCheckPath(_items.getList().get(1).getList());break;
+            case COMMIT:            this.svnCommit(_items.getList().get(1).getList());break;
+            case GET_DIR:           this.svnGetDir(_items.getList().get(1).getList());break;
+            case GET_FILE:          this.svnGetFile(_items.getList().get(1).getList());break;
+            case GET_DATED_REV:     this.svnGetDatedRev(_items.getList().get(1).getList());break;
+            case GET_DELETED_REV:   this.svnGetDeletedRev(_items.getList().get(1).getList());break;
+            case GET_FILE_REVS:     this.svnGetFileRevs(_items.getList().get(1).getList());break;
+            case GET_LATEST_REV:    this.svnGetLatestRev();break;
+            case GET_LOCATIONS:     this.svnGetLocations(_items.getList().get(1).getList());break;
+            case GET_LOCATION_SEGMENTS: this.svnGetLocationSegments(_items.getList().get(1).getList());break;
+            case GET_LOCK:          this.svnGetLock(_items.getList().get(1).getList());break;
+            case GET_LOCKS:         this.svnGetLocks(_items.getList().get(1).getList());break;
+            case LOCK_MANY:         this.svnLockMany(_items.getList().get(1).getList());break;
+            case LOG:               this.svnLog(_items.getList().get(1).getList());break;
+            case REV_PROP:          this.svnRevProp(_items.getList().get(1).getList());break;
+            case REV_PROPLIST:      this.svnRevPropList(_items.getList().get(1).getList());break;
+            case REPARENT:          this.svnReparent(_items.getList().get(1).getList());break;
+            case REPLAY:            this.svnReplay(_items.getList().get(1).getList());break;
+            case REPLAY_RANGE:      this.svnReplayRange(_items.getList().get(1).getList());break;
+            case STAT:              this.svnStat(_items.getList().get(1).getList());break;
+            case STATUS:            this.svnStatus(_items.getList().get(1).getList());break;
+            case SWITCH:            this.svnSwitch(_items.getList().get(1).getList());break;
+            case UNLOCK_MANY:       this.svnUnlockMany(_items.getList().get(1).getList());break;
+            case UPDATE:            this.svnUpdate(_items.getList().get(1).getList());break;
+            default:
+                this.streams.writeFailureStatus("unknown SVN command '"
+                        + _items.getList().get(0).getString() + "'");
+                break;
+        }
+    }
+
+    /**
+     * Closes the session: the repository is closed, the permit of the
+     * {@link #admission} and the output buffer are released.
+     */
+    protected void closeSession()
+    {
+        if (this.repository != null)  {
+            this.repository.close();
+        }
+        if (this.permit != null)  {
+            this.permit.release();
+        }
+        try  {
+            this.streams.release();
+        } catch (final IOException e)  {
+            SVNServerSession.LOGGER.debug("buffered output could not be written", e);
+        }
     }
 
     /**
@@ -426,115 +917,41 @@ public class SVNServerSession
      * <tr><td><code style="color:green">) )</code></td></tr>
      * </table></p>
      *
-     * @param _host     name of the host for which user must authenticate, also
-     *                  used as realm for <code>DIGEST-MD5</code>
-     * @throws UnsupportedEncodingException
-     * @throws IOException
+     * <p>The answers of the SVN client are read blocking and evaluated by
+     * given authentication until the user is authenticated.</p>
+     *
+     * @param _authentication   started authentication (the authentication
+     *                          request is already written)
+     * @throws IOException if the communication with the SVN client failed
+     * @see SaslAuthentication
      * @see SVNSessionStreams#updateStreams(SaslServer)
      * @see #user
      */
-    protected void authenticate(final String _host)
-        throws UnsupportedEncodingException, IOException
+    protected void authenticate(final SaslAuthentication _authentication)
+        throws IOException
     {
-        // evaluate list of authentication mechanism
-        final ListElement mechanisms = new ListElement();
-        for (final String mechanism : this.saslServerFactory.getMechanismNames(null))  {
-            mechanisms.add(new WordElement(mechanism));
-        }
-
-        // return to SVN client list of all authentication mechanisms
-        this.streams.writeItemList(
-                new ListElement(Word.STATUS_SUCCESS,
-                        new ListElement(mechanisms, _host)));
-
-
         boolean authenticated = false;
-        SaslServer saslServer = null;
-
         while (!authenticated)  {
-
-            // get selected authentication mechanism from SVN client
-            final ListElement selMechanismList  = this.streams.readItemList();
-            final String selMechanism = selMechanismList.getList().get(0).getString();
-
-            // create new Sasl server depending on selected mechanism from client
-            final Map<String,String> props = new HashMap<String,String>();
-            props.put(Sasl.QOP, "auth, auth-int, auth-conf");
-            props.put(Sasl.POLICY_NOANONYMOUS, "true");
-            props.put(Sasl.POLICY_NOPLAINTEXT, "true");
-            props.put(Sasl.REUSE, "false");
-            saslServer = this.saslServerFactory.createSaslServer(selMechanism,
-                                                                 "svn",
-                                                                 _host,
-                                                                 props,
-                                                                 this.callbackHandler);
-
-            final boolean isCramMD5 = "CRAM-MD5".equals(selMechanism);
-
-            // get initial response from SVN client
-            final List<AbstractElement<?>> initialResponseList = selMechanismList.getList().get(1).getList();
-            byte[] response = initialResponseList.isEmpty()
-                              ? new byte[]{}
-                              : initialResponseList.get(0).getString().getBytes();
-
-            // RFC2831 (DIGEST-MD5) says the client MAY provide an initial response
-            // on subsequent authentication. Java SASL does not (currently) support
-            // this and throws an exception if we try. This violates the RFC, so we
-            // just strip any initial token.
-            if (selMechanism.equals("DIGEST-MD5"))  {
-                response = new byte[]{};
-            }
-
-            byte[] request = saslServer.evaluateResponse(response);
-            SaslException exeption = null;
-            while (!saslServer.isComplete() && (exeption == null))  {
-                // must be done manually because the steps otherwise not traced
-                this.streams.traceWrite("( step ( {}:{} ) ) ", request.length, new String(request));
-
-                // send step to client
-                this.streams.writeWithoutFlush("( step ( ");
-                // if not CRAM-MD5 => encode base64
-                if (!isCramMD5)  {
-                    request = Base64.encodeBase64(request);
-                }
-                this.streams.writeWithoutFlush(String.valueOf(request.length));
-                this.streams.writeWithoutFlush(':');
-                this.streams.writeWithoutFlush(request);
-                this.streams.writeWithoutFlush(" ) ) ");
-                this.streams.flush();
-
-                // get response from client
-                final AbstractElement<?> responseElem = this.streams.readElement();
-                response = isCramMD5
-                           ? responseElem.getString().getBytes("UTF8")
-                           : Base64.decodeBase64(responseElem.getString().getBytes());
-
-                this.streams.traceRead("{}", new String(response));
-                try  {
-                    request = saslServer.evaluateResponse(response);
-                } catch(final SaslException ex)  {
-                    exeption = ex;
-                }
-            }
-
-            // no exception => user is authenticated
-            if (exeption == null)  {
-                if (isCramMD5)  {
-                    this.streams.writeItemList(new ListElement(Word.STATUS_SUCCESS, new ListElement()));
-                } else  {
-                    this.streams.writeItemList(new ListElement(Word.STATUS_SUCCESS, new ListElement(new String(Base64.encodeBase64(request)))));
-                }
-                this.user = saslServer.getAuthorizationID();
-                authenticated = true;
-            // exception => user is NOT authenticated
-            } else  {
-                this.streams.writeItemList(
-                        new ListElement(Word.STATUS_FAILURE,
-                                        new ListElement(exeption.getMessage())));
+            final AbstractElement<?> element = this.streams.readElement();
+            if (element == null)  {
+                throw new EOFException();
             }
+            authenticated = _authentication.evaluate(element);
         }
+    }
 
-        this.streams.updateStreams(saslServer);
+    /**
+     * Starts the security layer negotiated by the Sasl server (if required
+     * by the quality-of-protection). The streams are
+     * {@link SVNSessionStreams#updateStreams(SaslServer) updated}.
+     *
+     * @param _saslServer   Sasl server used for the authentication
+     * @throws IOException if the security layer could not be started
+     */
+    protected void startSecurityLayer(final SaslServer _saslServer)
+            throws IOException
+    {
+        this.streams.updateStreams(_saslServer);
     }
 
     /**
@@ -593,14 +1010,10 @@ public class SVNServerSession
         final long revision = _parameters.get(0).getNumber();
 
         // evaluate all revision properties
-        Properties props = null;
+        EncodedProperties props = null;
         ServerException exception = null;
         try {
-            if (revision == 0)  {
-                props = this.repository.getRevision0Properties();
-            } else  {
-                props = this.repository.getRevisionProperties(revision);
-            }
+            props = this.getEncodedRevisionProperties(revision);
         } catch (final ServerException ex) {
             exception = ex;
         }
@@ -608,15 +1021,9 @@ public class SVNServerSession
         if (exception != null)  {
             this.streams.writeFailureStatus(exception);
         } else  {
-
-            final ListElement propList = new ListElement();
-            for (final Map.Entry<String,String> prop : props.entrySet())  {
-                propList.add(new ListElement(prop.getKey(), prop.getValue()));
-            }
-
             this.streams.writeItemList(
                     SVNServerSession.NO_AUTHORIZATION_NEEDED,
-                    new ListElement(Word.STATUS_SUCCESS, new ListElement(propList)));
+                    new ListElement(Word.STATUS_SUCCESS, new ListElement(props.toListElement())));
         }
     }
 
@@ -664,14 +1071,10 @@ public class SVNServerSession
         final String propKey = _parameters.get(1).getString();
 
         // evaluate all revision properties
-        Properties props = null;
+        EncodedProperties props = null;
         ServerException exception = null;
         try {
-            if (revision == 0)  {
-                props = this.repository.getRevision0Properties();
-            } else  {
-                props = this.repository.getRevisionProperties(revision);
-            }
+            props = this.getEncodedRevisionProperties(revision);
         } catch (final ServerException ex) {
             exception = ex;
         }
@@ -679,7 +1082,7 @@ public class SVNServerSession
         if (exception != null)  {
             this.streams.writeFailureStatus(exception);
         } else  {
-            final String value = props.get(propKey);
+            final StringElement value = props.get(propKey);
 
             this.streams.writeItemList(
                     SVNServerSession.NO_AUTHORIZATION_NEEDED,
@@ -688,6 +1091,35 @@ public class SVNServerSession
         }
     }
 
+    /**
+     * Returns the encoded revision properties of given revision. If the
+     * repository does not return the encoded properties (see
+     * {@link IEncodedRevisionProperties}), the revision properties are
+     * fetched from the repository and encoded.
+     *
+     * @param _revision     revision for which the properties are searched
+     * @return encoded revision properties
+     * @throws ServerException if the revision properties could not be fetched
+     * @throws UnsupportedEncodingException if the revision properties could
+     *                                      not be encoded
+     * @see IRepository#getRevisionProperties(long)
+     * @see IRepository#getRevision0Properties()
+     */
+    private EncodedProperties getEncodedRevisionProperties(final long _revision)
+            throws ServerException, UnsupportedEncodingException
+    {
+        EncodedProperties ret = null;
+        if (this.repository instanceof IEncodedRevisionProperties)  {
+            ret = ((IEncodedRevisionProperties) this.repository).getEncodedRevisionProperties(_revision);
+        }
+        if (ret == null)  {
+            ret = new EncodedProperties((_revision == 0)
+                                        ? this.repository.getRevision0Properties()
+                                        : this.repository.getRevisionProperties(_revision));
+        }
+        return ret;
+    }
+
     /**
      * Commit changes to the repository.
      *
@@ -719,7 +1151,12 @@ public class SVNServerSession
      * {@link #EMPTY_SUCCESS} is returned.</p>
      *
      * <p><b>Describe Delta (from client)</b><br/>
-     * The client switches to editor command set and describes the delta.</p>
+     * The client switches to editor command set and describes the delta. If
+     * the repository implements {@link IStreamingCommit} and returns a commit
+     * editor, each editor command is forwarded directly to the commit editor
+     * with the {@link CommitEditorReader}; otherwise the complete delta is
+     * buffered in an {@link EditorCommandSet} and committed with
+     * {@link IRepository#commit(String, Map, boolean, Properties, EditorCommandSet)}.</p>
      *
      * <p><b>Process Delta and Response (from server)</b><br/>
      * The server processes the delta. If no error occurred, the server sends
@@ -802,24 +1239,46 @@ errorMsg = "Versioned property '" + propKey + "' can't be set explicitly as revi
 
             ServerException serverException = null;
 
-            final EditorCommandSet editor = new EditorCommandSet(-1);
-            try  {
-                editor.read(this.streams);
-            } catch (final ServerException ex)  {
-                serverException = ex;
+            ICommitEditor commitEditor = null;
+            if (this.repository instanceof IStreamingCommit)  {
+                try  {
+                    commitEditor = ((IStreamingCommit) this.repository).openCommit(logMsg, locks, keepLock, revProps);
+                } catch (final ServerException ex)  {
+                    serverException = ex;
+                }
             }
 
             CommitInfo commitInfo = null;
-            if (serverException == null)  {
+            // streaming commit: the repository receives each editor command
+            if (commitEditor != null)  {
                 try  {
-                    commitInfo = this.repository.commit(logMsg, locks, keepLock, revProps, editor);
+                    commitInfo = new CommitEditorReader(this.streams, commitEditor).read();
                 } catch (final ServerException ex)  {
                     serverException = ex;
                 }
-            }
+            // buffered commit (the editor commands must be read also if the
+            // streaming commit could not be started)
+            } else  {
+                final EditorCommandSet editor = new EditorCommandSet(-1);
+                try  {
+                    editor.read(this.streams);
+                } catch (final ServerException ex)  {
+                    if (serverException == null)  {
+                        serverException = ex;
+                    }
+                }
 
-            // close all opened handler from editor command set
-            editor.close();
+                if (serverException == null)  {
+                    try  {
+                        commitInfo = this.repository.commit(logMsg, locks, keepLock, revProps, editor);
+                    } catch (final ServerException ex)  {
+                        serverException = ex;
+                    }
+                }
+
+                // close all opened handler from editor command set
+                editor.close();
+            }
 
             // commit failed
             if (serverException != null)  {
@@ -885,17 +1344,14 @@ errorMsg = "Versioned property '" + propKey + "' can't be set explicitly as revi
 
         if (wantsContent)  {
             final InputStream in = this.getRepository().getFile(revision, path);
-            final byte[] buffer = new byte[4096];
-            int length = in.read(buffer);
-            while (length >= 0)  {
-                this.streams.writeWithoutFlush(String.valueOf(length));
-                this.streams.writeWithoutFlush(':');
-                this.streams.writeWithoutFlush(buffer, 0, length);
-                this.streams.writeWithoutFlush(' ');
+            try  {
+                this.streams.getOutputStream().writeContent(in);
+                this.streams.write("0: ( success ( ) ) ");
+                // the content must be sent before the file is closed
                 this.streams.flush();
-                length = in.read(buffer);
+            } finally  {
+                in.close();
             }
-            this.streams.write(" 0: ( success ( ) ) ");
         }
 //        ( success ( ( ) 0: ) ) ( success ( 32:24b42e558b8f74c64939aa4257b1daa1 ) 1000 ( ( 14:svn:entry:uuid 36:cf646e2a-176c-4309-8bfa-14680e0fdf19 ) ( 23:svn:entry:committed-rev 4:1000 ) ( 24:svn:entry:committed-date 27:2009-03-21T12:44:38.200000Z ) ) )
 
@@ -984,25 +1440,15 @@ errorMsg = "Versioned property '" + propKey + "' can't be set explicitly as revi
             e.printStackTrace();
         }
 
-        // evaluate properties
-        final ListElement propList = new ListElement();
-        if (wantProps)  {
-            propList.add(new ListElement(PropertyKey.ENTRY_REPOSITORY_UUID.getSVNKey(),
-                                         this.getRepository().getUUID().toString()));
-            for (final Map.Entry<String,String> prop : dirEntry.entrySet())  {
-                propList.add(new ListElement(prop.getKey(), prop.getValue()));
-            }
-        }
-
         // evaluate content of directory
-        final ListElement dirList = new ListElement();
+        DirEntryList dirEntryList = null;
+        boolean kind = false;
+        boolean size = false;
+        boolean hasProps = false;
+        boolean createdRev = false;
+        boolean modified = false;
+        boolean author = false;
         if (wantContents)  {
-            boolean kind = false;
-            boolean size = false;
-            boolean hasProps = false;
-            boolean createdRev = false;
-            boolean modified = false;
-            boolean author = false;
             for (final AbstractElement<?> elem : _parameters.get(4).getList())  {
                 if (elem.getWord() == null)  {
                     LOGGER.error("unknown dirent word '{}'", elem.getString());
@@ -1017,35 +1463,69 @@ errorMsg = "Versioned property '" + propKey + "' can't be set explicitly as revi
                     }
                 }
             }
-            final DirEntryList dirEntryList = this.getRepository().getDir(revision,
-                                                                     path,
-                                                                     size,
-                                                                     hasProps,
-                                                                     createdRev,
-                                                                     modified,
-                                                                     author);
+            dirEntryList = this.getRepository().getDir(revision,
+                                                       path,
+                                                       size,
+                                                       hasProps,
+                                                       createdRev,
+                                                       modified,
+                                                       author);
+        }
 
+        // the entries are written directly without intermediate elements
+        this.streams.traceWrite("( success ( {} ( {} properties ) ( {} entries ) ) ) ",
+                                revision,
+                                wantProps ? (dirEntry.size() + 1) : 0,
+                                (dirEntryList != null) ? dirEntryList.getEntries().size() : 0);
+        final ElementOutputStream out = this.streams.getOutputStream();
+        SVNServerSession.NO_AUTHORIZATION_NEEDED.write(out);
+        out.writeListStart();
+        out.writeWord(Word.STATUS_SUCCESS);
+        out.writeListStart();
+        out.writeNumber(revision);
+
+        // properties
+        out.writeListStart();
+        if (wantProps)  {
+            out.writeList(PropertyKey.ENTRY_REPOSITORY_UUID.getSVNKey(),
+                          this.getRepository().getUUID().toString());
+            for (final Map.Entry<String,String> prop : dirEntry.entrySet())  {
+                out.writeList(prop.getKey(), prop.getValue());
+            }
+        }
+        out.writeListEnd();
+
+        // content of directory
+        out.writeListStart();
+        if (dirEntryList != null)  {
             for (final DirEntry entry : dirEntryList.getEntries())  {
                 final Timestamp date = entry.getDate();
-                dirList.add(new ListElement(
-                        entry.getName(),
-                        kind ? entry.getKind() : Word.NODE_KIND_NONE,
-                        size ? entry.getFileSize() : 0,
-                        hasProps ? Word.BOOLEAN_FALSE : Word.BOOLEAN_FALSE,
-                        createdRev ? entry.getRevision() : 0,
-                        new ListElement((modified && (date != null)) ? date.toString() : StringElement.NULL_DATETIME),
-                        (author && (entry.getAuthor() != null))
-                                ? new ListElement(entry.getAuthor())
-                                : new ListElement()));
+                out.writeListStart();
+                out.writeString(entry.getName());
+                out.writeWord(kind ? entry.getKind() : Word.NODE_KIND_NONE);
+                out.writeNumber(size ? entry.getFileSize() : 0);
+                out.writeWord(Word.BOOLEAN_FALSE);
+                out.writeNumber((createdRev && (entry.getRevision() != null)) ? entry.getRevision() : 0);
+                out.writeListStart();
+                if (modified && (date != null))  {
+                    out.writeString(date.toString());
+                } else  {
+                    StringElement.NULL_DATETIME.write(out);
+                }
+                out.writeListEnd();
+                out.writeListStart();
+                if (author && (entry.getAuthor() != null))  {
+                    out.writeString(entry.getAuthor());
+                }
+                out.writeListEnd();
+                out.writeListEnd();
             }
         }
+        out.writeListEnd();
 
-        this.streams.writeItemList(
-                SVNServerSession.NO_AUTHORIZATION_NEEDED,
-                new ListElement(Word.STATUS_SUCCESS,
-                                new ListElement(revision,
-                                                propList,
-                                                dirList)));
+        out.writeListEnd();
+        out.writeListEnd();
+        this.streams.flushResponse();
     }
 
     /**
@@ -1197,7 +1677,8 @@ errorMsg = "Versioned property '" + propKey + "' can't be set explicitly as revi
      * <p><b>SVN Response from Server to Client</b><br/>
      * <code style="color:green">authorization:<a href="noauthorization">no-authorization</a></code><br/>
      * In the case of no error server switches to editor command set and sends
-     * the edit commands {@link EditorCommandSet#write(SVNSessionStreams)}. <br/>
+     * the edit commands while the repository walks the tree
+     * (see {@link EditorCommandWriter}). <br/>
      * In the case of an error, the server must also switch to the editor
      * command set, but only writes the abort editor command
      * <nobr>&quot;<code>( abort-edit ( ) )</code>&quot;</nobr>. Then the
@@ -1256,22 +1737,24 @@ errorMsg = "Versioned property '" + propKey + "' can't be set explicitly as revi
 
         this.streams.writeItemList(SVNServerSession.NO_AUTHORIZATION_NEEDED);
 
-        EditorCommandSet deltaEditor = null;
+        // editor mode
+        final EditorCommandWriter deltaEditor = new EditorCommandWriter(this.streams);
         ServerException exception = null;
         try  {
-            deltaEditor = this.getRepository().getStatus(revision, path, depth, report);
+            this.getRepository().getStatus(revision, path, depth, report, deltaEditor);
         } catch (final ServerException ex)  {
             exception = ex;
         }
 
         if (exception != null)  {
-            this.streams.writeItemList(new ListElement(Word.ABORT_EDIT, new ListElement()));
+            deltaEditor.abortEdit();
             this.streams.writeFailureStatus(exception);
             // get result from client
             this.streams.readItemList();
         } else  {
-            // editor mode
-            deltaEditor.write(this.streams);
+            if (!deltaEditor.isClosed())  {
+                deltaEditor.closeEdit();
+            }
 
             // get result from client
             final ListElement result = this.streams.readItemList();
@@ -1340,7 +1823,7 @@ errorMsg = "Versioned property '" + propKey + "' can't be set explicitly as revi
 
         this.streams.writeItemList(SVNServerSession.NO_AUTHORIZATION_NEEDED);
 
-        EditorCommandSet deltaEditor = null;
+        final EditorCommandWriter deltaEditor = new EditorCommandWriter(this.streams);
         ServerException exception = null;
 
         // check if a switch on files is done...
@@ -1353,32 +1836,35 @@ errorMsg = "Versioned property '" + propKey + "' can't be set explicitly as revi
 
         // is there an exception?
         if (exception != null)  {
-            this.streams.writeItemList(new ListElement(Word.ABORT_EDIT, new ListElement()));
+            deltaEditor.abortEdit();
             this.streams.writeFailureStatus(exception);
         // switch to a file is done
         } else {
             if (dirEntry.getKind() == Word.NODE_KIND_FILE)  {
                 // TODO: check if target path is also a file
-                deltaEditor = new EditorCommandSet(revision);
-                deltaEditor.updateRoot(revision);
+                deltaEditor.targetRevision(revision);
+                deltaEditor.openRoot(revision);
 // TODO: get current revision + md5
-                deltaEditor.updateFile(path, null, newLocation)
-                           .setBaseCheckSumMD5(null);
+                deltaEditor.openFile(path, null, newLocation);
+                deltaEditor.applyTextDelta(null);
+                deltaEditor.closeFile(null);
+                deltaEditor.closeEdit();
             // else a switch to a complete directory structure is done
             } else  {
                 try  {
-                    deltaEditor = this.getRepository().getSwitchEditor(newLocation, revision, path, depth, report);
+                    this.getRepository().getSwitchEditor(newLocation, revision, path, depth, report, deltaEditor);
                 } catch (final ServerException ex)  {
                     exception = ex;
                 }
             }
 
             if (exception != null)  {
-                this.streams.writeItemList(new ListElement(Word.ABORT_EDIT, new ListElement()));
+                deltaEditor.abortEdit();
                 this.streams.writeFailureStatus(exception);
             } else  {
-                // editor mode
-                deltaEditor.write(this.streams);
+                if (!deltaEditor.isClosed())  {
+                    deltaEditor.closeEdit();
+                }
                 this.streams.writeSuccessStatus();
             }
         }
@@ -1452,20 +1938,22 @@ if ((result != null) && (result.getList().get(0).getWord() != Word.STATUS_SUCCES
 
         this.streams.writeItemList(SVNServerSession.NO_AUTHORIZATION_NEEDED);
 
-        EditorCommandSet deltaEditor = null;
+        // editor mode
+        final EditorCommandWriter deltaEditor = new EditorCommandWriter(this.streams);
         ServerException exception = null;
         try  {
-            deltaEditor = this.getRepository().getStatus(revision, path, depth, report);
+            this.getRepository().getStatus(revision, path, depth, report, deltaEditor);
         } catch (final ServerException ex)  {
             exception = ex;
         }
 
         if (exception != null)  {
-            this.streams.writeItemList(new ListElement(Word.ABORT_EDIT, new ListElement()));
+            deltaEditor.abortEdit();
             this.streams.writeFailureStatus(exception);
         } else  {
-            // editor mode
-            deltaEditor.write(this.streams);
+            if (!deltaEditor.isClosed())  {
+                deltaEditor.closeEdit();
+            }
             this.streams.writeSuccessStatus();
         }
 
@@ -1500,7 +1988,8 @@ if ((result != null) && (result.getList().get(0).getWord() != Word.STATUS_SUCCES
      *     <td>currently ignored</td></tr>
      * <tr><td><code style="color:green">
      *     ?limit:<a href="#number">number</a></code></td>
-     *     <td>currently ignored</td></tr>
+     *     <td>maximum count of log entries; <code>0</code> if not
+     *         limited</td></tr>
      * <tr><td><code style="color:green">
      *     ?include-merged-revisions:<a href="#bool">bool</a></code></td>
      *     <td>currently ignored</td></tr>
@@ -1553,54 +2042,275 @@ if ((result != null) && (result.getList().get(0).getWord() != Word.STATUS_SUCCES
     protected void svnLog(final List<AbstractElement<?>> _parameters)
             throws UnsupportedEncodingException, IOException
     {
-        // get paths from parameter list
-        final List<AbstractElement<?>> pathParameters = _parameters.get(0).getList();
-        final String[] paths = new String[pathParameters.size()];
-        int idx = 0;
-        for (final AbstractElement<?> pathParameter : pathParameters)  {
-            paths[idx] = pathParameter.getString();
-            idx++;
+        // get paths from parameter list
+        final List<AbstractElement<?>> pathParameters = _parameters.get(0).getList();
+        final String[] paths = new String[pathParameters.size()];
+        int idx = 0;
+        for (final AbstractElement<?> pathParameter : pathParameters)  {
+            paths[idx] = pathParameter.getString();
+            idx++;
+        }
+
+        final long startRevision = _parameters.get(1).getList().get(0).getNumber();
+        final long endRevision = _parameters.get(2).getList().get(0).getNumber();
+        final boolean inclChangedPaths = (_parameters.get(3).getWord() == Word.BOOLEAN_TRUE);
+
+        final long limit = ((_parameters.size() > 5) && (_parameters.get(5) instanceof NumberElement))
+                           ? _parameters.get(5).getNumber()
+                           : 0;
+
+        final LogEntryWriter logWriter = new LogEntryWriter(this.streams, inclChangedPaths, limit);
+
+        // streaming log (the log entries are written while they are evaluated)
+        if (this.repository instanceof IStreamingLog)  {
+            this.streams.writeItemList(SVNServerSession.NO_AUTHORIZATION_NEEDED);
+            boolean streamed = false;
+            try  {
+                streamed = ((IStreamingLog) this.repository).getLog(startRevision,
+                                                                    endRevision,
+                                                                    inclChangedPaths,
+                                                                    limit,
+                                                                    logWriter,
+                                                                    paths);
+            } catch (final ServerException ex)  {
+                this.streams.write("done ");
+                this.streams.writeFailureStatus(ex);
+                return;
+            }
+            if (!streamed)  {
+                this.writeLogEntries(logWriter, startRevision, endRevision, inclChangedPaths, paths);
+            }
+        } else  {
+            // the complete log is fetched before the authorization is written
+            final LogEntryList logEntryList = this.getRepository().getLog(startRevision,
+                                                                          endRevision,
+                                                                          inclChangedPaths,
+                                                                          paths);
+            this.streams.writeItemList(SVNServerSession.NO_AUTHORIZATION_NEEDED);
+            this.writeLogEntries(logWriter, startRevision, endRevision, logEntryList);
+        }
+        this.streams.write("done ( success ( ) ) ");
+    }
+
+    /**
+     * Fetches the complete log from the repository and writes the log entries
+     * (used if a streaming repository does not stream the log).
+     *
+     * @param _logWriter            writer of the log entries
+     * @param _startRevision        revision number to start from
+     * @param _endRevision          revision number to end at
+     * @param _inclChangedPaths     must the changed paths included?
+     * @param _paths                paths for which the log is searched
+     * @throws IOException if the log entries could not be written
+     */
+    private void writeLogEntries(final LogEntryWriter _logWriter,
+                                 final long _startRevision,
+                                 final long _endRevision,
+                                 final boolean _inclChangedPaths,
+                                 final String... _paths)
+            throws IOException
+    {
+        this.writeLogEntries(_logWriter,
+                             _startRevision,
+                             _endRevision,
+                             this.getRepository().getLog(_startRevision, _endRevision, _inclChangedPaths, _paths));
+    }
+
+    /**
+     * Writes the log entries of given log entry list in the order from the
+     * start revision to the end revision until the limit of the log writer is
+     * reached.
+     *
+     * @param _logWriter        writer of the log entries
+     * @param _startRevision    revision number to start from
+     * @param _endRevision      revision number to end at
+     * @param _logEntryList     log entries to write
+     * @throws IOException if the log entries could not be written
+     */
+    private void writeLogEntries(final LogEntryWriter _logWriter,
+                                 final long _startRevision,
+                                 final long _endRevision,
+                                 final LogEntryList _logEntryList)
+            throws IOException
+    {
+        final List<LogEntry> logEntries = new ArrayList<LogEntry>(_logEntryList.getLogEntries());
+        if (_startRevision > _endRevision)  {
+            Collections.reverse(logEntries);
+        }
+        for (final LogEntry logEntry : logEntries)  {
+            if (!_logWriter.addLogEntry(logEntry))  {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Replays the changes of one revision as editor drive (used by
+     * <code>svnsync</code>).
+     *
+     * <p><b>SVN Call:</b></br>
+     * <table>
+     * <tr><td><code style="color:green"><nobr>( replay (</nobr></code>
+     *     </td></tr>
+     * <tr><td  rowspan="3"></td><td><code style="color:green">
+     *     revision:<a href="#number">number</a></code></td>
+     *     <td>revision to replay</td></tr>
+     * <tr><td><code style="color:green">
+     *     low-water-mark:<a href="#number">number</a></code></td>
+     *     <td>copies from lower revisions are replayed as additions</td></tr>
+     * <tr><td><code style="color:green">
+     *     send-deltas:<a href="#bool">bool</a></code></td>
+     *     <td>must the text deltas be sent?</td></tr>
+     * <tr><td><code style="color:green">) )</code></td></tr>
+     * </table></p>
+     *
+     * <p><b>SVN Response:</b></br>
+     * After the authorization the editor commands of the revision are sent,
+     * finished with <code>finish-replay</code> (or <code>abort-edit</code> if
+     * the replay failed), followed by the command response.</p>
+     *
+     * @param _parameters   SVN replay parameters
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     * @see IReplay
+     */
+    protected void svnReplay(final List<AbstractElement<?>> _parameters)
+            throws UnsupportedEncodingException, IOException
+    {
+        final long revision = _parameters.get(0).getNumber();
+        final long lowWaterMark = _parameters.get(1).getNumber();
+        final boolean sendDeltas = (_parameters.get(2).getWord() == Word.BOOLEAN_TRUE);
+
+        if (!this.supportsReplay())  {
+            this.streams.writeFailureStatus(ErrorCode.SVN_ERR_RA_NOT_IMPLEMENTED,
+                                            ErrorCode.SVN_ERR_RA_NOT_IMPLEMENTED.text);
+        } else  {
+            this.streams.writeItemList(SVNServerSession.NO_AUTHORIZATION_NEEDED);
+            final ServerException exception = this.replayRevision(revision, lowWaterMark, sendDeltas);
+            if (exception != null)  {
+                this.streams.writeFailureStatus(exception);
+            } else  {
+                this.streams.writeSuccessStatus();
+            }
+        }
+    }
+
+    /**
+     * Replays the changes of a range of revisions back-to-back (used by
+     * <code>svnsync</code> instead of one {@link #svnReplay(List) replay} per
+     * revision).
+     *
+     * <p><b>SVN Call:</b></br>
+     * <table>
+     * <tr><td><code style="color:green"><nobr>( replay-range (</nobr></code>
+     *     </td></tr>
+     * <tr><td  rowspan="4"></td><td><code style="color:green">
+     *     start-rev:<a href="#number">number</a></code></td>
+     *     <td>first revision to replay</td></tr>
+     * <tr><td><code style="color:green">
+     *     end-rev:<a href="#number">number</a></code></td>
+     *     <td>last revision to replay</td></tr>
+     * <tr><td><code style="color:green">
+     *     low-water-mark:<a href="#number">number</a></code></td>
+     *     <td>copies from lower revisions are replayed as additions</td></tr>
+     * <tr><td><code style="color:green">
+     *     send-deltas:<a href="#bool">bool</a></code></td>
+     *     <td>must the text deltas be sent?</td></tr>
+     * <tr><td><code style="color:green">) )</code></td></tr>
+     * </table></p>
+     *
+     * <p><b>SVN Response:</b></br>
+     * After the authorization, for each revision the revision properties
+     * <code>( revprops ( ( name:string value:string ) ... ) )</code> and the
+     * editor commands of the revision (finished with
+     * <code>finish-replay</code>) are sent, followed by the command response.
+     * If one revision could not be replayed, <code>abort-edit</code> and the
+     * failure are sent and the following revisions are skipped.</p>
+     *
+     * @param _parameters   SVN replay range parameters
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     * @see IReplay
+     */
+    protected void svnReplayRange(final List<AbstractElement<?>> _parameters)
+            throws UnsupportedEncodingException, IOException
+    {
+        final long startRevision = _parameters.get(0).getNumber();
+        final long endRevision = _parameters.get(1).getNumber();
+        final long lowWaterMark = _parameters.get(2).getNumber();
+        final boolean sendDeltas = (_parameters.get(3).getWord() == Word.BOOLEAN_TRUE);
+
+        if (!this.supportsReplay())  {
+            this.streams.writeFailureStatus(ErrorCode.SVN_ERR_RA_NOT_IMPLEMENTED,
+                                            ErrorCode.SVN_ERR_RA_NOT_IMPLEMENTED.text);
+        } else  {
+            this.streams.writeItemList(SVNServerSession.NO_AUTHORIZATION_NEEDED);
+            ServerException exception = null;
+            for (long revision = startRevision; (revision <= endRevision) && (exception == null); revision++)  {
+                EncodedProperties props = null;
+                try  {
+                    props = this.getEncodedRevisionProperties(revision);
+                } catch (final ServerException ex)  {
+                    exception = ex;
+                }
+                if (exception == null)  {
+                    this.streams.writeItemList(new ListElement(Word.REVPROPS, props.toListElement()));
+                    exception = this.replayRevision(revision, lowWaterMark, sendDeltas);
+                }
+            }
+            if (exception != null)  {
+                this.streams.writeFailureStatus(exception);
+            } else  {
+                this.streams.writeSuccessStatus();
+            }
         }
+    }
 
-        final long startRevision = _parameters.get(1).getList().get(0).getNumber();
-        final long endRevision = _parameters.get(2).getList().get(0).getNumber();
-        final boolean inclChangedPaths = (_parameters.get(3).getWord() == Word.BOOLEAN_TRUE);
+    /**
+     * Checks if the repository {@link IReplay#supportsReplay() supports}
+     * the replay of revisions.
+     *
+     * @return <i>true</i> if the repository supports the replay; otherwise
+     *         <i>false</i>
+     */
+    private boolean supportsReplay()
+    {
+        return (this.repository instanceof IReplay) && ((IReplay) this.repository).supportsReplay();
+    }
 
-        final LogEntryList logEntryList = this.getRepository().getLog(startRevision,
-                                                                 endRevision,
-                                                                 inclChangedPaths,
-                                                                 paths);
-        final List<ListElement> list = new ArrayList<ListElement>();
-        for (final LogEntry logEntry : logEntryList.getLogEntries())  {
-            final ListElement oneLog = new ListElement();
-            list.add(oneLog);
-
-            final ListElement changedPathsLE = new ListElement();
-            for (final ChangedPath changedPath : logEntry.getChangedPaths())  {
-                final ListElement changedPathLE = new ListElement(changedPath.getPath(),
-                                                                  changedPath.getKind());
-                if (changedPath.getCopiedFromPath() != null)  {
-                    changedPathLE.add((new ListElement(changedPath.getCopiedFromPath(),
-                                                       changedPath.getCopiedFromRevision())));
-                } else  {
-                    changedPathLE.add(new ListElement());
-                }
-                changedPathsLE.add(changedPathLE);
+    /**
+     * Writes the editor drive of one replayed revision. If the repository
+     * could not replay the revision, the edit is aborted.
+     *
+     * @param _revision         revision to replay
+     * @param _lowWaterMark     lowest revision used as copy source
+     * @param _sendDeltas       must the text deltas be written?
+     * @return <code>null</code> if the revision is replayed; otherwise the
+     *         exception of the repository
+     * @throws IOException if the editor commands could not be written
+     */
+    private ServerException replayRevision(final long _revision,
+                                           final long _lowWaterMark,
+                                           final boolean _sendDeltas)
+            throws IOException
+    {
+        final EditorCommandWriter editor = new EditorCommandWriter(this.streams, _revision, _sendDeltas);
+        ServerException exception = null;
+        try  {
+            if (!((IReplay) this.repository).replay(_revision, _lowWaterMark, _sendDeltas, editor))  {
+                exception = new ServerException(ErrorCode.SVN_ERR_RA_NOT_IMPLEMENTED);
             }
-            oneLog.add(changedPathsLE,
-                       logEntry.getRevision(),
-                       (logEntry.getAuthor() != null) ? new ListElement(logEntry.getAuthor()) : new ListElement(),
-                       new ListElement(logEntry.getModified()),
-                       (logEntry.getComment() != null) ? new ListElement(logEntry.getComment()) : new ListElement(),
-                       Word.BOOLEAN_FALSE,
-                       Word.BOOLEAN_FALSE,
-                       0,
-                       new ListElement());
+        } catch (final ServerException ex)  {
+            exception = ex;
         }
-
-        this.streams.writeItemList(SVNServerSession.NO_AUTHORIZATION_NEEDED);
-        this.streams.writeItemList(list);
-        this.streams.write("done ( success ( ) ) ");
+        if (exception != null)  {
+            if (!editor.isClosed())  {
+                editor.abortEdit();
+            }
+        } else if (!editor.isClosed())  {
+            editor.closeEdit();
+        }
+        return exception;
     }
 
     /**
@@ -1655,6 +2365,365 @@ if ((result != null) && (result.getList().get(0).getWord() != Word.STATUS_SUCCES
         this.streams.writeItemList(SVNServerSession.EMPTY_SUCCESS);
     }
 
+    /**
+     * Returns the location segments of a path history (used for merge
+     * tracking).
+     *
+     * <p><b>SVN Call:</b></br>
+     * <table>
+     * <tr><td><code style="color:green"><nobr>( get-location-segments (</nobr></code>
+     *     </td></tr>
+     * <tr><td  rowspan="4"></td><td><code style="color:green">
+     *     path:<a href="#string">string</a></code></td>
+     *     <td>path to look up</td></tr>
+     * <tr><td><code style="color:green">
+     *     ( ?peg-rev:<a href="#number">number</a> )</code></td>
+     *     <td>revision in which the path is looked up; if not defined the
+     *         latest revision</td></tr>
+     * <tr><td><code style="color:green">
+     *     ( ?start-rev:<a href="#number">number</a> )</code></td>
+     *     <td>youngest revision of the segments; if not defined the peg
+     *         revision</td></tr>
+     * <tr><td><code style="color:green">
+     *     ( ?end-rev:<a href="#number">number</a> )</code></td>
+     *     <td>oldest revision of the segments; if not defined 0</td></tr>
+     * <tr><td><code style="color:green">) )</code></td></tr>
+     * </table></p>
+     *
+     * <p><b>SVN Response:</b></br>
+     * After the authorization the segments are written while they are
+     * discovered (see {@link LocationSegmentWriter}), followed by the command
+     * response.</p>
+     *
+     * @param _parameters   SVN get location segments parameters
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     * @see ILocationSegments
+     */
+    protected void svnGetLocationSegments(final List<AbstractElement<?>> _parameters)
+            throws UnsupportedEncodingException, IOException
+    {
+        final String path = _parameters.get(0).getString();
+        final List<AbstractElement<?>> pegParam = _parameters.get(1).getList();
+        final long pegRevision = pegParam.isEmpty() ? this.repository.getLatestRevision() : pegParam.get(0).getNumber();
+        final List<AbstractElement<?>> startParam = _parameters.get(2).getList();
+        final long startRevision = startParam.isEmpty() ? pegRevision : startParam.get(0).getNumber();
+        final List<AbstractElement<?>> endParam = _parameters.get(3).getList();
+        final long endRevision = endParam.isEmpty() ? 0 : endParam.get(0).getNumber();
+
+        this.streams.writeItemList(SVNServerSession.NO_AUTHORIZATION_NEEDED);
+
+        if (endRevision > startRevision)  {
+            this.streams.writeFailureStatus(ErrorCode.SVN_ERR_INCORRECT_PARAMS,
+                    "Get-location-segments end revision must not be younger than start revision");
+        } else if (startRevision > pegRevision)  {
+            this.streams.writeFailureStatus(ErrorCode.SVN_ERR_INCORRECT_PARAMS,
+                    "Get-location-segments start revision must not be younger than peg revision");
+        } else  {
+            final LocationSegmentWriter writer = new LocationSegmentWriter(this.streams);
+            ServerException exception = null;
+            try  {
+                if (!(this.repository instanceof ILocationSegments)
+                        || !((ILocationSegments) this.repository).getLocationSegments(path,
+                                                                                     pegRevision,
+                                                                                     startRevision,
+                                                                                     endRevision,
+                                                                                     writer))  {
+                    this.writeLocationSegments(writer, path, pegRevision, startRevision, endRevision);
+                }
+            } catch (final ServerException ex)  {
+                exception = ex;
+            }
+            writer.finish();
+            if (exception != null)  {
+                this.streams.writeFailureStatus(exception);
+            } else  {
+                this.streams.writeSuccessStatus();
+            }
+        }
+    }
+
+    /**
+     * Evaluates the location segments from the locations of all revisions
+     * between the start and the end revision (used if the repository does
+     * not stream the location segments). The locations are fetched in blocks
+     * of {@link #LOCATION_SEGMENTS_BLOCK_SIZE} revisions, beginning with the
+     * youngest revision; each revision is added as own segment and merged by
+     * the writer.
+     *
+     * @param _writer           writer of the segments
+     * @param _path             path of the node in the peg revision
+     * @param _pegRevision      revision in which the path is looked up
+     * @param _startRevision    youngest revision of the segments
+     * @param _endRevision      oldest revision of the segments
+     * @throws IOException if the segments could not be written
+     */
+    private void writeLocationSegments(final LocationSegmentWriter _writer,
+                                       final String _path,
+                                       final long _pegRevision,
+                                       final long _startRevision,
+                                       final long _endRevision)
+            throws IOException
+    {
+        long youngest = _startRevision;
+        while (youngest >= _endRevision)  {
+            final int count = (int) Math.min(SVNServerSession.LOCATION_SEGMENTS_BLOCK_SIZE, youngest - _endRevision + 1);
+            final long[] revisions = new long[count];
+            for (int idx = 0; idx < count; idx++)  {
+                revisions[idx] = youngest - idx;
+            }
+            final LocationEntries entries = this.repository.getLocations(_pegRevision, _path, revisions);
+            // not the revisions array because the repository could sort them
+            for (long revision = youngest; revision > youngest - count; revision--)  {
+                _writer.addSegment(revision, revision, entries.get(revision));
+            }
+            youngest -= count;
+        }
+    }
+
+    /**
+     * Returns the youngest revision committed at or before a date.
+     *
+     * <p><b>SVN Call from Client:</b></br>
+     * <table>
+     * <tr><td><code style="color:green"><nobr>( get-dated-rev (</nobr></code>
+     *     </td></tr>
+     * <tr><td></td><td><code style="color:green">
+     *     date:<a href="#string">string</a></code></td>
+     *     <td>searched date</td></tr>
+     * <tr><td><code style="color:green">) )</code></td></tr>
+     * </table></p>
+     *
+     * <p><b>SVN Response:</b></br>
+     * After the authorization the revision is written with
+     * &quot;<code>( success ( rev:number ) )</code>&quot;.</p>
+     *
+     * <p>If the repository does not evaluate the revision itself (see
+     * {@link IDatedRevision}), the revision is searched with
+     * {@link #searchDatedRevision(Timestamp)}.</p>
+     *
+     * @param _parameters   SVN get dated revision parameters
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    protected void svnGetDatedRev(final List<AbstractElement<?>> _parameters)
+            throws UnsupportedEncodingException, IOException
+    {
+        final String dateText = _parameters.get(0).getString();
+
+        this.streams.writeItemList(SVNServerSession.NO_AUTHORIZATION_NEEDED);
+
+        Timestamp date = null;
+        ServerException exception = null;
+        try  {
+            date = Timestamp.valueOf(dateText);
+        } catch (final IllegalArgumentException ex)  {
+            exception = new ServerException("Invalid date '" + dateText + "'", ex);
+        } catch (final IndexOutOfBoundsException ex)  {
+            exception = new ServerException("Invalid date '" + dateText + "'", ex);
+        }
+
+        Long revision = null;
+        if (exception == null)  {
+            try  {
+                if (this.repository instanceof IDatedRevision)  {
+                    revision = ((IDatedRevision) this.repository).getDatedRevision(date);
+                }
+                if (revision == null)  {
+                    revision = this.searchDatedRevision(date);
+                }
+            } catch (final ServerException ex)  {
+                exception = ex;
+            }
+        }
+
+        if (exception != null)  {
+            this.streams.writeFailureStatus(exception);
+        } else  {
+            this.streams.writeItemList(new ListElement(Word.STATUS_SUCCESS,
+                                                       new ListElement(revision)));
+        }
+    }
+
+    /**
+     * Searches the youngest revision committed at or before the date with a
+     * binary search over the revision dates (used if the repository does not
+     * evaluate the revision of a date itself). As in the SVN server, the
+     * revision dates are expected to be ascending; revisions without date
+     * are handled as committed before the date.
+     *
+     * @param _date     searched date
+     * @return youngest revision at or before the date; <code>0</code> if the
+     *         date is before all revisions
+     * @throws ServerException if the revision properties could not be read
+     */
+    private long searchDatedRevision(final Timestamp _date)
+            throws ServerException
+    {
+        final long micros = _date.getTimeInMicros();
+        // revision 'ret' is at or before the date, 'after' is after the date
+        long ret = 0;
+        long after = this.repository.getLatestRevision() + 1;
+        while ((after - ret) > 1)  {
+            final long middle = ret + (after - ret) / 2;
+            final Timestamp date = this.repository.getRevisionProperties(middle).getDate();
+            if ((date == null) || (date.getTimeInMicros() <= micros))  {
+                ret = middle;
+            } else  {
+                after = middle;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the revision in which a path was deleted.
+     *
+     * <p><b>SVN Call from Client:</b></br>
+     * <table>
+     * <tr><td><code style="color:green"><nobr>( get-deleted-rev (</nobr></code>
+     *     </td></tr>
+     * <tr><td  rowspan="3"></td><td><code style="color:green">
+     *     path:<a href="#string">string</a></code></td>
+     *     <td>path to look up</td></tr>
+     * <tr><td><code style="color:green">
+     *     peg-rev:<a href="#number">number</a></code></td>
+     *     <td>revision in which the path exists</td></tr>
+     * <tr><td><code style="color:green">
+     *     end-rev:<a href="#number">number</a></code></td>
+     *     <td>revision up to which the deletion is searched</td></tr>
+     * <tr><td><code style="color:green">) )</code></td></tr>
+     * </table></p>
+     *
+     * <p><b>SVN Response:</b></br>
+     * After the authorization the deleted revision is written with
+     * &quot;<code>( success ( rev:number ) )</code>&quot;. If the path was
+     * not deleted up to the end revision, a failure with
+     * {@link ErrorCode#SVN_ERR_ENTRY_MISSING_REVISION} is written (the SVN
+     * protocol could not transport an invalid revision).</p>
+     *
+     * <p>If the repository does not evaluate the deleted revision itself (see
+     * {@link IDeletedRevision}), the revision is searched with
+     * {@link #searchDeletedRevision(String, long, long)}.</p>
+     *
+     * @param _parameters   SVN get deleted revision parameters
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    protected void svnGetDeletedRev(final List<AbstractElement<?>> _parameters)
+            throws UnsupportedEncodingException, IOException
+    {
+        final String path = _parameters.get(0).getString();
+        final long pegRevision = _parameters.get(1).getNumber();
+        final long endRevision = _parameters.get(2).getNumber();
+
+        this.streams.writeItemList(SVNServerSession.NO_AUTHORIZATION_NEEDED);
+
+        Long deletedRevision = null;
+        ServerException exception = null;
+        try  {
+            // same as svnserve: the revision range is ordered
+            final long start = Math.min(pegRevision, endRevision);
+            final long end = Math.max(pegRevision, endRevision);
+            if (this.repository instanceof IDeletedRevision)  {
+                deletedRevision = ((IDeletedRevision) this.repository).getDeletedRevision(path, start, end);
+            }
+            if (deletedRevision == null)  {
+                deletedRevision = this.searchDeletedRevision(path, start, end);
+            }
+        } catch (final ServerException ex)  {
+            exception = ex;
+        }
+
+        if (exception != null)  {
+            this.streams.writeFailureStatus(exception);
+        } else if (deletedRevision.longValue() == IDeletedRevision.NOT_DELETED)  {
+            this.streams.writeFailureStatus(ErrorCode.SVN_ERR_ENTRY_MISSING_REVISION,
+                                            "Path '" + path + "' was not deleted between revision "
+                                                    + pegRevision + " and " + endRevision);
+        } else  {
+            this.streams.writeItemList(new ListElement(Word.STATUS_SUCCESS,
+                                                       new ListElement(deletedRevision)));
+        }
+    }
+
+    /**
+     * Searches the revision in which the path was deleted with a binary
+     * search over the revisions between the peg and the end revision, so
+     * only the logarithm of the revision range is requested instead of the
+     * complete history. As in the SVN server, the node is deleted in the
+     * first revision in which the path does not exist or is another node (the
+     * path was deleted and added again or replaced). Each probe checks with
+     * {@link #isSameNode(String, long, long, String)} if the path is still
+     * the node of the peg revision. The count of probes is traced.
+     *
+     * @param _path         path of the node in the peg revision
+     * @param _pegRevision  revision in which the path exists
+     * @param _endRevision  youngest revision to search
+     * @return revision in which the path was deleted or
+     *         {@link IDeletedRevision#NOT_DELETED}
+     * @throws ServerException if the path does not exist in the peg revision
+     *                         or the path could not be checked
+     */
+    private long searchDeletedRevision(final String _path,
+                                       final long _pegRevision,
+                                       final long _endRevision)
+            throws ServerException
+    {
+        if (this.repository.stat(_pegRevision, _path, false) == null)  {
+            throw new ServerException(ErrorCode.SVN_ERR_FS_NOT_FOUND);
+        }
+        final String pegLocation = this.repository.getLocations(_pegRevision, _path, _pegRevision).get(_pegRevision);
+        int probes = 1;
+        long ret = IDeletedRevision.NOT_DELETED;
+        if (_endRevision > _pegRevision)  {
+            probes++;
+            if (!this.isSameNode(_path, _endRevision, _pegRevision, pegLocation))  {
+                // path is the node in revision 'existing', but not in 'ret'
+                long existing = _pegRevision;
+                ret = _endRevision;
+                while ((ret - existing) > 1)  {
+                    final long middle = existing + (ret - existing) / 2;
+                    probes++;
+                    if (this.isSameNode(_path, middle, _pegRevision, pegLocation))  {
+                        existing = middle;
+                    } else  {
+                        ret = middle;
+                    }
+                }
+            }
+        }
+        SVNServerSession.LOGGER.trace("get-deleted-rev for '{}' between {} and {} needed {} probes",
+                                      new Object[]{_path, _pegRevision, _endRevision, probes});
+        return ret;
+    }
+
+    /**
+     * Checks if the path in given revision is the same node as in the peg
+     * revision. The path must exist in the revision and the history of the
+     * path must lead back to the location of the node in the peg revision;
+     * a node which is deleted and added again (without copy from the
+     * original node) has no location in the peg revision.
+     *
+     * @param _path         path of the node
+     * @param _revision     revision to check
+     * @param _pegRevision  revision in which the node exists
+     * @param _pegLocation  location of the node in the peg revision
+     * @return <i>true</i> if the path is the same node; otherwise
+     *         <i>false</i>
+     * @throws ServerException if the path could not be checked
+     */
+    private boolean isSameNode(final String _path,
+                               final long _revision,
+                               final long _pegRevision,
+                               final String _pegLocation)
+            throws ServerException
+    {
+        return (this.repository.stat(_revision, _path, false) != null)
+                && (_pegLocation != null)
+                && _pegLocation.equals(this.repository.getLocations(_revision, _path, _pegRevision).get(_pegRevision));
+    }
+
     /**
      * Returns interesting file revisions for the specified file.
      *
@@ -1988,6 +3057,17 @@ if ((result != null) && (result.getList().get(0).getWord() != Word.STATUS_SUCCES
                                    new ListElement(Word.STATUS_SUCCESS, new ListElement(locks)));
     }
 
+    /**
+     * Returns the input and output streams of this session.
+     *
+     * @return session streams
+     * @see #streams
+     */
+    protected SVNSessionStreams getStreams()
+    {
+        return this.streams;
+    }
+
     /**
      * The current parent path {@link #currentPath} is changed to a new path.
      *
@@ -2034,4 +3114,181 @@ if ((result != null) && (result.getList().get(0).getWord() != Word.STATUS_SUCCES
     {
         return this.repository;
     }
+
+    /**
+     * Authentication of one SVN session with a Sasl server. The constructor
+     * writes the authentication request, then each answer of the SVN client
+     * is {@link #evaluate(AbstractElement) evaluated} separately, so that the
+     * authentication could be driven blocking (see
+     * {@link SVNServerSession#authenticate(SaslAuthentication)}) or from
+     * received events without waiting for the SVN client (which could wait
+     * for the password input of the user).
+     */
+    protected class SaslAuthentication
+    {
+        /**
+         * Name of the host for which the user must authenticate, also used as
+         * realm for <code>DIGEST-MD5</code>.
+         */
+        private final String host;
+
+        /**
+         * Sasl server of the current authentication exchange;
+         * <code>null</code> if the authentication mechanism selected from the
+         * SVN client is expected next.
+         */
+        private SaslServer saslServer;
+
+        /**
+         * Is the current authentication mechanism <code>CRAM-MD5</code> (the
+         * tokens are not Base64 coded)?
+         */
+        private boolean isCramMD5;
+
+        /**
+         * Writes the list of all authentication mechanisms to the SVN client.
+         *
+         * @param _host     name of the host for which the user must
+         *                  authenticate
+         * @throws IOException if the authentication request could not be
+         *                     written
+         */
+        protected SaslAuthentication(final String _host)
+                throws IOException
+        {
+            this.host = _host;
+
+            // evaluate list of authentication mechanism
+            final ListElement mechanisms = new ListElement();
+            for (final String mechanism : SVNServerSession.this.saslServerFactory.getMechanismNames(null))  {
+                mechanisms.add(new WordElement(mechanism));
+            }
+
+            // return to SVN client list of all authentication mechanisms
+            SVNServerSession.this.streams.writeItemList(
+                    new ListElement(Word.STATUS_SUCCESS,
+                            new ListElement(mechanisms, _host)));
+        }
+
+        /**
+         * Evaluates one answer of the SVN client: the selected authentication
+         * mechanism (with the optional initial token) or the response token
+         * of a step challenge. The next step, success or failure challenge is
+         * written to the SVN client. After a failure, the SVN client could
+         * restart the authentication with another selected mechanism.
+         *
+         * @param _answer   answer of the SVN client
+         * @return <i>true</i> if the user is authenticated (and the security
+         *         layer is started); otherwise <i>false</i>
+         * @throws IOException if the communication with the SVN client failed
+         */
+        public boolean evaluate(final AbstractElement<?> _answer)
+                throws IOException
+        {
+            final SVNSessionStreams streams = SVNServerSession.this.streams;
+
+            byte[] request = null;
+            SaslException exeption = null;
+            try  {
+                if (this.saslServer == null)  {
+                    if (_answer.getList() == null)  {
+                        throw new IOException("Malformed network data");
+                    }
+                    request = this.evaluateMechanism(_answer.getList());
+                } else  {
+                    // get response from client
+                    final byte[] response = this.isCramMD5
+                                            ? _answer.getString().getBytes("UTF8")
+                                            : Base64.decodeBase64(_answer.getString().getBytes());
+                    streams.traceRead("{}", new String(response));
+                    request = this.saslServer.evaluateResponse(response);
+                }
+            } catch (final SaslException ex)  {
+                exeption = ex;
+            }
+
+            boolean authenticated = false;
+            // exception => user is NOT authenticated
+            if (exeption != null)  {
+                this.saslServer = null;
+                streams.writeItemList(
+                        new ListElement(Word.STATUS_FAILURE,
+                                        new ListElement(exeption.getMessage())));
+            // not completed => send next step to client
+            } else if (!this.saslServer.isComplete())  {
+                // must be done manually because the steps otherwise not traced
+                streams.traceWrite("( step ( {}:{} ) ) ", request.length, new String(request));
+
+                // if not CRAM-MD5 => encode base64
+                if (!this.isCramMD5)  {
+                    request = Base64.encodeBase64(request);
+                }
+                streams.getOutputStream().writeText("( step ( ");
+                streams.getOutputStream().writeString(request);
+                streams.getOutputStream().writeText(") ) ");
+                streams.flush();
+            // no exception => user is authenticated
+            } else  {
+                if (this.isCramMD5)  {
+                    streams.writeItemList(new ListElement(Word.STATUS_SUCCESS, new ListElement()));
+                } else  {
+                    streams.writeItemList(new ListElement(Word.STATUS_SUCCESS, new ListElement(new String(Base64.encodeBase64(request)))));
+                }
+                SVNServerSession.this.user = this.saslServer.getAuthorizationID();
+                SVNServerSession.this.startSecurityLayer(this.saslServer);
+                authenticated = true;
+            }
+            return authenticated;
+        }
+
+        /**
+         * Creates the Sasl server for the authentication mechanism selected
+         * from the SVN client and evaluates the initial token.
+         *
+         * @param _selMechanismList     list with the selected authentication
+         *                              mechanism and the initial token
+         * @return challenge of the Sasl server for the initial token
+         * @throws SaslException if the Sasl server could not be created or
+         *                       the initial token is not valid
+         */
+        private byte[] evaluateMechanism(final List<AbstractElement<?>> _selMechanismList)
+                throws SaslException
+        {
+            final String selMechanism = _selMechanismList.get(0).getString();
+
+            // create new Sasl server depending on selected mechanism from client
+            final Map<String,String> props = new HashMap<String,String>();
+            // an encrypted transport needs no additional security layer
+            props.put(Sasl.QOP, SVNServerSession.this.secureTransport ? "auth" : "auth, auth-int, auth-conf");
+            props.put(Sasl.POLICY_NOANONYMOUS, "true");
+            props.put(Sasl.POLICY_NOPLAINTEXT, "true");
+            props.put(Sasl.REUSE, "false");
+            this.saslServer = SVNServerSession.this.saslServerFactory.createSaslServer(selMechanism,
+                                                                                        "svn",
+                                                                                        this.host,
+                                                                                        props,
+                                                                                        SVNServerSession.this.callbackHandler);
+            if (this.saslServer == null)  {
+                throw new SaslException("authentication mechanism '" + selMechanism + "' not supported");
+            }
+
+            this.isCramMD5 = "CRAM-MD5".equals(selMechanism);
+
+            // get initial response from SVN client
+            final List<AbstractElement<?>> initialResponseList = _selMechanismList.get(1).getList();
+            byte[] response = initialResponseList.isEmpty()
+                              ? new byte[]{}
+                              : initialResponseList.get(0).getString().getBytes();
+
+            // RFC2831 (DIGEST-MD5) says the client MAY provide an initial response
+            // on subsequent authentication. Java SASL does not (currently) support
+            // this and throws an exception if we try. This violates the RFC, so we
+            // just strip any initial token.
+            if (selMechanism.equals("DIGEST-MD5"))  {
+                response = new byte[]{};
+            }
+
+            return this.saslServer.evaluateResponse(response);
+        }
+    }
 }
@@ -23,9 +23,15 @@ package com.googlecode.jsvnserve;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.security.sasl.Sasl;
 import javax.security.sasl.SaslServer;
@@ -39,13 +45,19 @@ import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
 import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 
+import com.googlecode.jsvnserve.api.IRepository;
 import com.googlecode.jsvnserve.api.ServerException;
 import com.googlecode.jsvnserve.api.ServerException.ErrorCode;
+import com.googlecode.jsvnserve.cache.DeltaCache;
 import com.googlecode.jsvnserve.element.AbstractElement;
+import com.googlecode.jsvnserve.element.ElementOutputStream;
+import com.googlecode.jsvnserve.element.ElementReader;
 import com.googlecode.jsvnserve.element.ListElement;
 import com.googlecode.jsvnserve.element.WordElement.Word;
 import com.googlecode.jsvnserve.sasl.SaslInputStream;
 import com.googlecode.jsvnserve.sasl.SaslOutputStream;
+import com.googlecode.jsvnserve.util.SVNDiffEncoder;
+import com.googlecode.jsvnserve.util.SpillOutputStream;
 
 /**
  * @author jSVNServe Team
@@ -55,6 +67,12 @@ public class SVNSessionStreams
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(SVNSessionStreams.class);
 
+    /**
+     * Count of not flushed bytes within a {@link #beginResponse() batched
+     * response} after which the output is flushed.
+     */
+    public static final int BATCH_FLUSH_THRESHOLD = 65536;
+
     /**
      * Stores related SVN server session for which this input and output
      * streams are defined.
@@ -64,9 +82,13 @@ public class SVNSessionStreams
     private final SVNServerSession session;
 
     /**
+     * Serializer used to write the elements into a pooled buffer.
+     *
+     * @see #getOutputStream()
      * @see #updateStreams(SaslServer)
+     * @see #release()
      */
-    private OutputStream out;
+    private ElementOutputStream out;
 
     /**
      * @see #updateStreams(SaslServer)
@@ -74,11 +96,25 @@ public class SVNSessionStreams
     private InputStream in;
 
     /**
-     * Dummy list of elements to read a single element.
+     * Tokenizer used to read the elements from the {@link #in input stream}.
      *
+     * @see #readItemList()
      * @see #readElement()
+     * @see #updateStreams(SaslServer)
      */
-    private final ListElement dummyList = new ListElement();
+    private ElementReader reader;
+
+    /**
+     * Is a response of a command currently written? If <i>true</i>, the
+     * output is not flushed after each written item list, but only if the
+     * response is complete, the SVN client must answer or the
+     * {@link #BATCH_FLUSH_THRESHOLD threshold} is reached.
+     *
+     * @see #beginResponse()
+     * @see #endResponse()
+     * @see #flushResponse()
+     */
+    private boolean batching;
 
     /**
      *
@@ -91,8 +127,26 @@ public class SVNSessionStreams
                                 final InputStream _in)
     {
         this.session = _session;
-        this.out = _out;
+        this.out = new ElementOutputStream(_out);
         this.in = _in;
+        this.reader = new ElementReader(_in);
+    }
+
+    /**
+     * Creates the session streams for an input which is already tokenized
+     * (e.g. from a protocol decoder).
+     *
+     * @param _session  related SVN server session
+     * @param _out      initial output stream
+     * @param _reader   reader of the elements from the SVN client
+     */
+    protected SVNSessionStreams(final SVNServerSession _session,
+                                final OutputStream _out,
+                                final ElementReader _reader)
+    {
+        this.session = _session;
+        this.out = new ElementOutputStream(_out);
+        this.reader = _reader;
     }
 
     /**
@@ -136,12 +190,47 @@ public class SVNSessionStreams
     }
 
 
+    /**
+     * Returns the serializer used to write elements directly into the output
+     * buffer. Nothing is traced and the output is not flushed.
+     *
+     * @return element output stream
+     * @see #out
+     * @see #traceWrite(String, Object...)
+     */
+    public ElementOutputStream getOutputStream()
+    {
+        return this.out;
+    }
+
     public void write(final String _text)
             throws UnsupportedEncodingException, IOException
     {
         SVNSessionStreams.LOGGER.trace("RES<: {}", _text);
-        this.out.write(_text.getBytes("UTF8"));
-        this.out.flush();
+        this.out.writeText(_text);
+        this.flushResponse();
+    }
+
+    /**
+     * Writes one list with given items directly (without creating the
+     * elements) and flushes the output.
+     *
+     * @param _items    items of the list
+     * @throws IOException if the list could not be written
+     * @see ElementOutputStream#writeList(Object...)
+     */
+    public void writeList(final Object... _items)
+            throws IOException
+    {
+        if (SVNSessionStreams.LOGGER.isTraceEnabled())  {
+            final ByteArrayOutputStream byteArrayOut = new ByteArrayOutputStream();
+            final ElementOutputStream traceOut = new ElementOutputStream(byteArrayOut);
+            traceOut.writeList(_items);
+            traceOut.release();
+            SVNSessionStreams.LOGGER.trace("RES<: {}", byteArrayOut.toString());
+        }
+        this.out.writeList(_items);
+        this.flushResponse();
     }
 
     public void writeItemList(final ListElement... _lists)
@@ -155,7 +244,7 @@ public class SVNSessionStreams
             }
             list.write(this.out);
         }
-        this.out.flush();
+        this.flushResponse();
     }
 
     public void writeItemList(final List<ListElement> _lists)
@@ -169,7 +258,7 @@ public class SVNSessionStreams
             }
             list.write(this.out);
         }
-        this.out.flush();
+        this.flushResponse();
     }
 
     /**
@@ -181,9 +270,7 @@ public class SVNSessionStreams
     public void writeSuccessStatus()
             throws UnsupportedEncodingException, IOException
     {
-        this.writeItemList(
-                    new ListElement(Word.STATUS_SUCCESS,
-                                    new ListElement(new ListElement())));
+        this.write("( success ( ( ) ) ) ");
     }
 
     /**
@@ -232,7 +319,7 @@ public class SVNSessionStreams
     public void writeWithoutFlush(final String _text)
             throws UnsupportedEncodingException, IOException
     {
-        this.out.write(_text.getBytes("UTF8"));
+        this.out.writeText(_text);
     }
 
     public void writeWithoutFlush(final byte[] _buffer)
@@ -262,6 +349,9 @@ public class SVNSessionStreams
     }
 
     /**
+     * Computes the delta from the source to the target and writes the svndiff
+     * windows with the {@link SVNServerSession#getDeltaCompressionLevel()
+     * compression level of the session}.
      *
      * @param _source       input stream from the original file
      * @param _target       target stream from the file for which the delta to
@@ -270,14 +360,20 @@ public class SVNSessionStreams
      * @param _computeMD5   <i>true</i> means that the MD5 checksum is computed
      * @return if <code>_computeMD5</code> is <i>true</i> the MD5 checksum is
      *         returned; otherwise <code>null</code> is returned
+     * @throws IOException if the files could not be read or the delta could
+     *                     not be written (so that a truncated delta is never
+     *                     sent to the SVN client)
      * @see DelteOutputStream
+     * @see SVNDiffEncoder
      */
     public String writeFileDelta(final InputStream _source,
                                  final InputStream _target,
                                  final DeltaOutputStream _output,
                                  final boolean _computeMD5)
+            throws IOException
     {
         String md5 = null;
+        final SVNDiffEncoder encoder = new SVNDiffEncoder(this.session.getDeltaCompressionLevel());
         SVNDeltaGenerator deltaGenerator = new SVNDeltaGenerator();
         try {
             md5 = deltaGenerator.sendDelta(
@@ -286,8 +382,6 @@ public class SVNSessionStreams
                     0,
                     _target,
                     new ISVNDeltaConsumer() {
-                        boolean writeHeader = true;
-
                         public void applyTextDelta(final String s, final String s1)
                         {
                         }
@@ -297,11 +391,10 @@ public class SVNSessionStreams
                             throws SVNException
                         {
                             try {
-                                svndiffwindow.writeTo(_output, this.writeHeader, true);
+                                encoder.writeWindow(svndiffwindow, _output);
                             } catch (final IOException e) {
                                 throw new SVNException(SVNErrorMessage.UNKNOWN_ERROR_MESSAGE, e);
                             }
-                            this.writeHeader = false;
                             return null;
                         }
 
@@ -311,39 +404,401 @@ public class SVNSessionStreams
                     },
                     _computeMD5);
         } catch (final SVNException ex) {
-            // TODO Auto-generated catch block
-            ex.printStackTrace();
+            if (ex.getCause() instanceof IOException)  {
+                throw (IOException) ex.getCause();
+            }
+            final IOException ioEx = new IOException("delta could not be computed: " + ex.getMessage());
+            ioEx.initCause(ex);
+            throw ioEx;
+        } finally  {
+            encoder.end();
         }
         return md5;
     }
 
+    /**
+     * Writes the delta from the base file to the target file. If a
+     * {@link DeltaCache delta cache} is defined for the session and the delta
+     * is already cached, the cached svndiff windows are written without
+     * fetching the file contents from the repository. Otherwise the delta is
+     * computed with {@link #writeFileDelta(InputStream, InputStream, DeltaOutputStream, boolean)}
+     * and recorded into the cache.
+     *
+     * @param _baseRevision     revision of the base file; <code>null</code>
+     *                          if the delta is computed against an empty file
+     * @param _basePath         path of the base file; <code>null</code> if
+     *                          the delta is computed against an empty file
+     * @param _baseMD5          MD5 checksum of the base file or
+     *                          <code>null</code>
+     * @param _targetRevision   revision of the target file
+     * @param _targetPath       path of the target file
+     * @param _output           output stream for the svndiff windows
+     * @param _computeMD5       <i>true</i> means that the MD5 checksum is
+     *                          computed
+     * @return if <code>_computeMD5</code> is <i>true</i> the MD5 checksum is
+     *         returned; otherwise <code>null</code> is returned
+     * @throws IOException if the cached delta could not be written or the
+     *                     files could not be closed
+     */
+    public String writeFileDelta(final Long _baseRevision,
+                                 final String _basePath,
+                                 final String _baseMD5,
+                                 final long _targetRevision,
+                                 final String _targetPath,
+                                 final DeltaOutputStream _output,
+                                 final boolean _computeMD5)
+            throws IOException
+    {
+        final IRepository repository = this.session.getRepository();
+        final DeltaCache cache = this.session.getDeltaCache();
+        final boolean hasBase = (_basePath != null) && (_baseRevision != null);
+
+        String md5 = null;
+        final String key = this.getDeltaKey(_baseRevision, _basePath, _baseMD5, _targetRevision, _targetPath);
+        final DeltaCache.Delta cached = (key == null) ? null : cache.get(key);
+        if (cached != null)  {
+            cached.writeTo(_output);
+            md5 = cached.getMD5();
+        } else  {
+            final InputStream source = hasBase ? repository.getFile(_baseRevision, _basePath) : null;
+            final InputStream target = repository.getFile(_targetRevision, _targetPath);
+            try  {
+                if (key == null)  {
+                    md5 = this.writeFileDelta(source, target, _output, _computeMD5);
+                } else  {
+                    final DeltaCache.Delta delta = cache.newDelta();
+                    md5 = this.writeFileDelta(source, target, new DeltaOutputStream()  {
+                        @Override
+                        public void write(final byte[] _bytes,
+                                          final int _offset,
+                                          final int _len)
+                                throws IOException
+                        {
+                            delta.record(_bytes, _offset, _len);
+                            _output.write(_bytes, _offset, _len);
+                        }
+                    }, true);
+                    if (md5 != null)  {
+                        cache.put(key, delta, md5);
+                    }
+                }
+            } finally  {
+                if (source != null)  {
+                    source.close();
+                }
+                if (target != null)  {
+                    target.close();
+                }
+            }
+        }
+        return _computeMD5 ? md5 : null;
+    }
+
+    /**
+     * Starts the computation of the delta from the base file to the target
+     * file with the {@link SVNServerSession#getDeltaExecutor() delta executor}
+     * of the session, so that the delta could be written later with
+     * {@link #writeFileDelta(Future, DeltaOutputStream)}. The contents of the
+     * files are completely read from the repository within the calling
+     * thread (because the repository and the streams of its contents are not
+     * thread safe) and held in memory or, if larger than the
+     * {@link SVNServerSession#getCommitSpillThreshold() spill threshold} or
+     * if the {@link SVNServerSession#getCommitMemoryBudget() memory budget}
+     * is exhausted, in a temporary file; only the delta is computed in the background. If the
+     * delta is already cached, the cached delta is returned directly.
+     *
+     * @param _baseRevision     revision of the base file; <code>null</code>
+     *                          if the delta is computed against an empty file
+     * @param _basePath         path of the base file; <code>null</code> if
+     *                          the delta is computed against an empty file
+     * @param _baseMD5          MD5 checksum of the base file or
+     *                          <code>null</code>
+     * @param _targetRevision   revision of the target file
+     * @param _targetPath       path of the target file
+     * @return future of the computed delta
+     * @throws IOException if the files could not be fetched
+     * @see #writeFileDelta(Long, String, String, long, String, DeltaOutputStream, boolean)
+     */
+    public Future<DeltaCache.Delta> prepareFileDelta(final Long _baseRevision,
+                                                     final String _basePath,
+                                                     final String _baseMD5,
+                                                     final long _targetRevision,
+                                                     final String _targetPath)
+            throws IOException
+    {
+        final IRepository repository = this.session.getRepository();
+        final DeltaCache cache = this.session.getDeltaCache();
+        final boolean hasBase = (_basePath != null) && (_baseRevision != null);
+
+        final String key = this.getDeltaKey(_baseRevision, _basePath, _baseMD5, _targetRevision, _targetPath);
+        final DeltaCache.Delta cached = (key == null) ? null : cache.get(key);
+        final FutureTask<DeltaCache.Delta> ret;
+        if (cached != null)  {
+            ret = new FutureTask<DeltaCache.Delta>(new Callable<DeltaCache.Delta>()  {
+                public DeltaCache.Delta call()
+                {
+                    return cached;
+                }
+            });
+            ret.run();
+        } else  {
+            final SpillOutputStream source = hasBase ? this.readContent(repository.getFile(_baseRevision, _basePath)) : null;
+            final SpillOutputStream target;
+            try  {
+                target = this.readContent(repository.getFile(_targetRevision, _targetPath));
+            } catch (final IOException ex)  {
+                if (source != null)  {
+                    source.delete();
+                }
+                throw ex;
+            }
+            ret = new FutureTask<DeltaCache.Delta>(new Callable<DeltaCache.Delta>()  {
+                public DeltaCache.Delta call()
+                        throws IOException
+                {
+                    final InputStream sourceIn = (source == null) ? null : source.getInputStream();
+                    final InputStream targetIn = (target == null) ? null : target.getInputStream();
+                    try  {
+                        final DeltaCache.Delta delta = new DeltaCache.Delta();
+                        final String md5 = SVNSessionStreams.this.writeFileDelta(sourceIn, targetIn, new DeltaOutputStream()  {
+                            @Override
+                            public void write(final byte[] _bytes,
+                                              final int _offset,
+                                              final int _len)
+                            {
+                                delta.record(_bytes, _offset, _len);
+                            }
+                        }, true);
+                        delta.setMD5(md5);
+                        if ((key != null) && (md5 != null))  {
+                            cache.put(key, delta, md5);
+                        }
+                        return delta;
+                    } finally  {
+                        if (sourceIn != null)  {
+                            sourceIn.close();
+                        }
+                        if (targetIn != null)  {
+                            targetIn.close();
+                        }
+                        if (source != null)  {
+                            source.delete();
+                        }
+                        if (target != null)  {
+                            target.delete();
+                        }
+                    }
+                }
+            });
+            try  {
+                this.session.getDeltaExecutor().execute(ret);
+            } catch (final RejectedExecutionException ex)  {
+                SVNSessionStreams.LOGGER.debug("delta executor rejected the delta, delta is computed directly");
+                ret.run();
+            }
+        }
+        return ret;
+    }
 
+    /**
+     * Reads the complete content of a file into memory or, if larger than the
+     * {@link SVNServerSession#getCommitSpillThreshold() spill threshold} or
+     * if the {@link SVNServerSession#getCommitMemoryBudget() memory budget}
+     * is exhausted, into a temporary file. The input stream of the content is closed.
+     *
+     * @param _content  input stream of the content; <code>null</code> if the
+     *                  file has no content
+     * @return read content; <code>null</code> if <code>_content</code> is
+     *         <code>null</code>
+     * @throws IOException if the content could not be read or spilled
+     */
+    private SpillOutputStream readContent(final InputStream _content)
+            throws IOException
+    {
+        SpillOutputStream ret = null;
+        if (_content != null)  {
+            ret = new SpillOutputStream(this.session.getCommitSpillThreshold(),
+                                        "jsvnserve-delta",
+                                        this.session.getCommitMemoryBudget());
+            try  {
+                final byte[] buffer = new byte[8192];
+                int length = _content.read(buffer);
+                while (length >= 0)  {
+                    ret.write(buffer, 0, length);
+                    length = _content.read(buffer);
+                }
+                ret.close();
+            } catch (final IOException ex)  {
+                ret.delete();
+                throw ex;
+            } finally  {
+                _content.close();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Writes the delta which was prepared with
+     * {@link #prepareFileDelta(Long, String, String, long, String)}. If the
+     * delta is not computed yet, the method waits for the delta.
+     *
+     * @param _prepared     prepared delta
+     * @param _output       output stream for the svndiff windows
+     * @return MD5 checksum of the target file
+     * @throws IOException if the delta could not be computed or written
+     */
+    public String writeFileDelta(final Future<DeltaCache.Delta> _prepared,
+                                 final DeltaOutputStream _output)
+            throws IOException
+    {
+        final DeltaCache.Delta delta;
+        try  {
+            delta = _prepared.get();
+        } catch (final InterruptedException ex)  {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the delta");
+        } catch (final ExecutionException ex)  {
+            if (ex.getCause() instanceof IOException)  {
+                throw (IOException) ex.getCause();
+            }
+            final IOException ioEx = new IOException("delta could not be computed");
+            ioEx.initCause(ex.getCause());
+            throw ioEx;
+        }
+        delta.writeTo(_output);
+        return delta.getMD5();
+    }
+
+    /**
+     * Returns the key of the delta within the delta cache of the session.
+     *
+     * @param _baseRevision     revision of the base file or <code>null</code>
+     * @param _basePath         path of the base file or <code>null</code>
+     * @param _baseMD5          MD5 checksum of the base file or
+     *                          <code>null</code>
+     * @param _targetRevision   revision of the target file
+     * @param _targetPath       path of the target file
+     * @return key of the delta; <code>null</code> if no delta cache is
+     *         defined
+     * @see DeltaCache#getKey(String, IRepository, String, Long, String, String, long, int)
+     */
+    private String getDeltaKey(final Long _baseRevision,
+                               final String _basePath,
+                               final String _baseMD5,
+                               final long _targetRevision,
+                               final String _targetPath)
+    {
+        final boolean hasBase = (_basePath != null) && (_baseRevision != null);
+        return (this.session.getDeltaCache() == null)
+               ? null
+               : DeltaCache.getKey(this.session.getUser(),
+                                   this.session.getRepository(),
+                                   hasBase ? _basePath : null,
+                                   hasBase ? _baseRevision : null,
+                                   _baseMD5,
+                                   _targetPath,
+                                   _targetRevision,
+                                   this.session.getDeltaCompressionLevel());
+    }
+
+    /**
+     * Flushes the output immediately (also within a batched response).
+     *
+     * @throws IOException if the output could not be flushed
+     */
     public void flush()
             throws IOException
     {
         this.out.flush();
     }
 
+    /**
+     * Starts the response of a command. All written item lists are batched
+     * until the response {@link #endResponse() ends}, so that the complete
+     * response (e.g. of a log or an editor drive) is sent with a minimum of
+     * network packets (and with only one Sasl wrap for each packet).
+     *
+     * @see #batching
+     */
+    public void beginResponse()
+    {
+        this.batching = true;
+    }
+
+    /**
+     * Ends the response of a command and flushes the batched output.
+     *
+     * @throws IOException if the output could not be flushed
+     * @see #batching
+     */
+    public void endResponse()
+            throws IOException
+    {
+        this.batching = false;
+        this.out.flush();
+    }
+
+    /**
+     * Flushes the output after a written item list. Within a batched response
+     * the output is only flushed if the not flushed bytes reached the
+     * {@link #BATCH_FLUSH_THRESHOLD threshold}.
+     *
+     * @throws IOException if the output could not be flushed
+     * @see #batching
+     */
+    public void flushResponse()
+            throws IOException
+    {
+        if (!this.batching || (this.out.getUnflushedBytes() >= SVNSessionStreams.BATCH_FLUSH_THRESHOLD))  {
+            this.out.flush();
+        }
+    }
+
+    /**
+     * Flushes the batched output before the SVN client must answer.
+     *
+     * @throws IOException if the output could not be flushed
+     */
+    private void flushBeforeRead()
+            throws IOException
+    {
+        if (this.batching && (this.out.getUnflushedBytes() > 0))  {
+            this.out.flush();
+        }
+    }
+
+    /**
+     * Writes all buffered bytes and gives the output buffer back to the pool.
+     * Must be called if the session is closed.
+     *
+     * @throws IOException if the buffered bytes could not be written
+     * @see ElementOutputStream#release()
+     */
+    public void release()
+            throws IOException
+    {
+        this.out.release();
+    }
+
+    /**
+     * Reads the next list of elements.
+     *
+     * @return read list or <code>null</code> if the input stream is closed
+     * @throws IOException if an I/O error occurred while reading the list
+     * @see ElementReader#readItemList()
+     */
     public ListElement readItemList()
             throws IOException
     {
-        final ListElement list = new ListElement();
-        final int ch = this.in.read();
-        if (ch != -1)  {
-            if (((char) ch) != '(')  {
-                throw new Error("fehler:" + (char)ch);
-            }
-            if (!Character.isWhitespace((char) this.in.read()))  {
-                throw new Error("fehler");
-            }
-            list.read(this.in);
-            if (SVNSessionStreams.LOGGER.isTraceEnabled())  {
-                final ByteArrayOutputStream byteArrayOut = new ByteArrayOutputStream();
-                list.write(byteArrayOut);
-                SVNSessionStreams.LOGGER.trace("REQ>: {}", byteArrayOut.toString());
-            }
+        this.flushBeforeRead();
+        final ListElement list = this.reader.readItemList();
+        if ((list != null) && SVNSessionStreams.LOGGER.isTraceEnabled())  {
+            final ByteArrayOutputStream byteArrayOut = new ByteArrayOutputStream();
+            list.write(byteArrayOut);
+            SVNSessionStreams.LOGGER.trace("REQ>: {}", byteArrayOut.toString());
         }
-        return (ch == -1) ? null : list;
+        return list;
     }
 
     /**
@@ -356,7 +811,8 @@ public class SVNSessionStreams
     public AbstractElement<?> readElement()
             throws IOException
     {
-        return this.dummyList.readElement(this.in);
+        this.flushBeforeRead();
+        return this.reader.readElement();
     }
 
     /**
@@ -369,6 +825,8 @@ public class SVNSessionStreams
      * {@link SaslOutputStream}.</p>
      *
      * @param _saslServer   Sasl server
+     * @throws IOException if the already buffered output could not be
+     *                     written
      * @see #in
      * @see #out
      * @see SaslInputStream
@@ -376,34 +834,20 @@ public class SVNSessionStreams
      * @see #authenticate(String)
      */
     protected void updateStreams(final SaslServer _saslServer)
+            throws IOException
     {
         final String qop = (String) _saslServer.getNegotiatedProperty(Sasl.QOP);
         if ("auth-int".equals(qop) || "auth-conf".equals(qop))  {
 
-            // get output buffer size
-            final String outBuffSizeStr = (String) _saslServer.getNegotiatedProperty(Sasl.RAW_SEND_SIZE);
-            int outBuffSize = 1000;
-            if (outBuffSizeStr != null) {
-                try {
-                    outBuffSize = Integer.parseInt(outBuffSizeStr);
-                } catch (final NumberFormatException nfe) {
-                    outBuffSize = 1000;
-                }
-            }
-
-            // get input buffer size
-            final String inBuffSizeStr = (String) _saslServer.getNegotiatedProperty(Sasl.MAX_BUFFER);
-            int inBuffSize = 1000;
-            if (inBuffSizeStr != null)  {
-                try {
-                    inBuffSize = Integer.parseInt(inBuffSizeStr);
-                } catch (final NumberFormatException nfe) {
-                    inBuffSize = 1000;
-                }
-            }
+            // negotiated buffer sizes
+            final int outBuffSize = SaslOutputStream.getRawSendSize(_saslServer);
+            final int inBuffSize = SaslInputStream.getBufferSize(_saslServer);
 
-            this.out = new SaslOutputStream(_saslServer, outBuffSize, this.out);
-            this.in = new SaslInputStream(_saslServer, inBuffSize, this.in);
+            // bytes already buffered are written without encryption
+            this.out = new ElementOutputStream(new SaslOutputStream(_saslServer, outBuffSize, this.out.release()));
+            // bytes already read by the tokenizer must be also decoded
+            this.in = new SaslInputStream(_saslServer, inBuffSize, this.reader.getUnreadInputStream());
+            this.reader = new ElementReader(this.in);
         }
     }
 
@@ -0,0 +1,426 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.googlecode.jsvnserve.api.ServerException;
+import com.googlecode.jsvnserve.util.CompensatingThreadPool;
+
+/**
+ * <p>Admission control for the sessions of the SVN server. The count of
+ * concurrently opened repository sessions is limited overall, for each user
+ * and for each repository path. If a limit is reached, the session waits
+ * (queued in the order of the arrival) until another session is closed or
+ * the {@link #timeout} is reached; in the last case the session is
+ * rejected with a {@link ServerException} (written to the SVN client as
+ * failure).</p>
+ *
+ * <p>The limits of the users and repository paths are only hold while a
+ * session is admitted for them (or waits for the admission), so that the
+ * admission control does not grow with each user and path.</p>
+ *
+ * <p>The counters of the admission control (active, queued, admitted and
+ * rejected sessions) could be read e.g. for monitoring.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see SVNServer#setMaxSessions(int)
+ * @see SVNServer#setMaxSessionsPerUser(int)
+ * @see SVNServer#setMaxSessionsPerPath(int)
+ * @see SVNServer#setAdmissionTimeout(long)
+ */
+public class SessionAdmission
+{
+    /**
+     * Global limit of the sessions; <code>null</code> if not limited.
+     */
+    private final Limit sessions;
+
+    /**
+     * Maximum count of sessions for one user; <code>0</code> if not limited.
+     */
+    private final int maxSessionsPerUser;
+
+    /**
+     * Maximum count of sessions for one repository path; <code>0</code> if
+     * not limited.
+     */
+    private final int maxSessionsPerPath;
+
+    /**
+     * Timeout in milliseconds how long a session waits for the admission.
+     */
+    private final long timeout;
+
+    /**
+     * Map with the limits of the sessions for each user. The map is also
+     * used to synchronize the references of the limits.
+     */
+    private final Map<String,Limit> userSessions = new HashMap<String,Limit>();
+
+    /**
+     * Map with the limits of the sessions for each repository path. The map
+     * is also used to synchronize the references of the limits.
+     */
+    private final Map<String,Limit> pathSessions = new HashMap<String,Limit>();
+
+    /**
+     * Count of currently admitted sessions.
+     *
+     * @see #getActiveSessions()
+     */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * Count of sessions currently waiting for the admission.
+     *
+     * @see #getQueuedSessions()
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * Count of all admitted sessions.
+     *
+     * @see #getAdmittedSessions()
+     */
+    private final AtomicLong admitted = new AtomicLong();
+
+    /**
+     * Count of all rejected sessions.
+     *
+     * @see #getRejectedSessions()
+     */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param _maxSessions          maximum count of all sessions;
+     *                              <code>0</code> if not limited
+     * @param _maxSessionsPerUser   maximum count of sessions for one user;
+     *                              <code>0</code> if not limited
+     * @param _maxSessionsPerPath   maximum count of sessions for one
+     *                              repository path; <code>0</code> if not
+     *                              limited
+     * @param _timeout              timeout in milliseconds how long a session
+     *                              waits for the admission
+     */
+    public SessionAdmission(final int _maxSessions,
+                            final int _maxSessionsPerUser,
+                            final int _maxSessionsPerPath,
+                            final long _timeout)
+    {
+        this.sessions = (_maxSessions > 0) ? new Limit(null, null, _maxSessions) : null;
+        this.maxSessionsPerUser = _maxSessionsPerUser;
+        this.maxSessionsPerPath = _maxSessionsPerPath;
+        this.timeout = _timeout;
+    }
+
+    /**
+     * Admits a new session for given user. The session waits until the
+     * global limit and the limit of the user allow the session.
+     *
+     * @param _user     authenticated user of the session
+     * @return permit of the session which must be
+     *         {@link Permit#release() released} if the session is closed
+     * @throws ServerException if the session is rejected
+     */
+    public Permit admit(final String _user)
+            throws ServerException
+    {
+        final Permit permit = new Permit();
+        if (!permit.acquire(this.sessions)
+                || !permit.acquire(this.getLimit(this.userSessions, this.maxSessionsPerUser, _user)))  {
+            permit.release();
+            this.rejected.incrementAndGet();
+            throw new ServerException("Too many concurrent sessions, try again later");
+        }
+        this.active.incrementAndGet();
+        this.admitted.incrementAndGet();
+        permit.admitted = true;
+        return permit;
+    }
+
+    /**
+     * Returns the limit for given key from the map and references them. If
+     * no limit exists, a new one is created. The reference must be removed
+     * with {@link Limit#dereference()} if the limit is not used anymore.
+     *
+     * @param _map      map with the limits
+     * @param _max      maximum count of permits; <code>0</code> if not
+     *                  limited
+     * @param _key      key of the limit (user or repository path)
+     * @return referenced limit; <code>null</code> if not limited
+     */
+    private Limit getLimit(final Map<String,Limit> _map,
+                           final int _max,
+                           final String _key)
+    {
+        Limit ret = null;
+        if ((_max > 0) && (_key != null))  {
+            synchronized (_map)  {
+                ret = _map.get(_key);
+                if (ret == null)  {
+                    ret = new Limit(_map, _key, _max);
+                    _map.put(_key, ret);
+                }
+                ret.references++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the count of users for which a limit is currently hold.
+     *
+     * @return count of users with active or queued sessions
+     */
+    public int getLimitedUsers()
+    {
+        synchronized (this.userSessions)  {
+            return this.userSessions.size();
+        }
+    }
+
+    /**
+     * Returns the count of repository paths for which a limit is currently
+     * hold.
+     *
+     * @return count of repository paths with active or queued sessions
+     */
+    public int getLimitedPaths()
+    {
+        synchronized (this.pathSessions)  {
+            return this.pathSessions.size();
+        }
+    }
+
+    /**
+     * Returns the count of currently admitted sessions.
+     *
+     * @return count of active sessions
+     */
+    public int getActiveSessions()
+    {
+        return this.active.get();
+    }
+
+    /**
+     * Returns the count of sessions which currently waits for the admission
+     * (the depth of the admission queue).
+     *
+     * @return count of queued sessions
+     */
+    public int getQueuedSessions()
+    {
+        return this.queued.get();
+    }
+
+    /**
+     * Returns the count of all admitted sessions.
+     *
+     * @return count of admitted sessions
+     */
+    public long getAdmittedSessions()
+    {
+        return this.admitted.get();
+    }
+
+    /**
+     * Returns the count of all rejected sessions (because of a timeout).
+     *
+     * @return count of rejected sessions
+     */
+    public long getRejectedSessions()
+    {
+        return this.rejected.get();
+    }
+
+    /**
+     * Limit of the sessions (global, for one user or for one repository
+     * path). The limit of a user or repository path is removed from the map
+     * if no session references them anymore (the limit is idle and no
+     * session waits for them).
+     */
+    private static final class Limit
+    {
+        /**
+         * Map in which the limit is stored; <code>null</code> for the global
+         * limit.
+         */
+        private final Map<String,Limit> map;
+
+        /**
+         * Key of the limit within the {@link #map}.
+         */
+        private final String key;
+
+        /**
+         * Semaphore with the permits of the sessions.
+         */
+        private final Semaphore semaphore;
+
+        /**
+         * Count of the sessions which hold or wait for a permit of this
+         * limit. Synchronized with the {@link #map}.
+         */
+        private int references;
+
+        /**
+         * @param _map      map in which the limit is stored;
+         *                  <code>null</code> for the global limit
+         * @param _key      key of the limit within the map
+         * @param _max      maximum count of permits
+         */
+        private Limit(final Map<String,Limit> _map,
+                      final String _key,
+                      final int _max)
+        {
+            this.map = _map;
+            this.key = _key;
+            this.semaphore = new Semaphore(_max, true);
+        }
+
+        /**
+         * Removes one reference of the limit. If the limit is not referenced
+         * anymore, the limit is removed from the map.
+         */
+        private void dereference()
+        {
+            if (this.map != null)  {
+                synchronized (this.map)  {
+                    if (--this.references == 0)  {
+                        this.map.remove(this.key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Holds all acquired limits of one session.
+     */
+    public final class Permit
+    {
+        /**
+         * Global limit, limit of the user and limit of the repository path,
+         * if acquired.
+         */
+        private final Limit[] acquired = new Limit[3];
+
+        /**
+         * Count of acquired limits.
+         */
+        private int count;
+
+        /**
+         * Was the session admitted (and is counted as active)?
+         */
+        private boolean admitted;
+
+        /**
+         * Private constructor, so that only the admission control creates
+         * permits.
+         */
+        private Permit()
+        {
+        }
+
+        /**
+         * Admits the session for given repository path. The session waits
+         * until the limit of the repository path allows the session. If the
+         * session is rejected, the permit is released.
+         *
+         * @param _path     repository path
+         * @throws ServerException if the session is rejected
+         */
+        public void admitPath(final String _path)
+                throws ServerException
+        {
+            final SessionAdmission admission = SessionAdmission.this;
+            if (!this.acquire(admission.getLimit(admission.pathSessions, admission.maxSessionsPerPath, _path)))  {
+                this.release();
+                admission.rejected.incrementAndGet();
+                throw new ServerException("Too many concurrent sessions for repository '" + _path + "', try again later");
+            }
+        }
+
+        /**
+         * Acquires given limit within the timeout. If the limit is not
+         * acquired, the reference of the limit is removed.
+         *
+         * @param _limit    limit to acquire; <code>null</code> if not limited
+         * @return <i>true</i> if acquired; otherwise <i>false</i>
+         */
+        private boolean acquire(final Limit _limit)
+        {
+            boolean ret = true;
+            if (_limit != null)  {
+                final Semaphore semaphore = _limit.semaphore;
+                try  {
+                    // zero timeout (and not tryAcquire()) so that the order
+                    // of the waiting sessions is respected
+                    ret = semaphore.tryAcquire(0, TimeUnit.MILLISECONDS);
+                    if (!ret)  {
+                        SessionAdmission.this.queued.incrementAndGet();
+                        CompensatingThreadPool.beginBlocking();
+                        try  {
+                            ret = semaphore.tryAcquire(SessionAdmission.this.timeout, TimeUnit.MILLISECONDS);
+                        } finally  {
+                            CompensatingThreadPool.endBlocking();
+                            SessionAdmission.this.queued.decrementAndGet();
+                        }
+                    }
+                } catch (final InterruptedException ex)  {
+                    Thread.currentThread().interrupt();
+                    ret = false;
+                }
+                if (ret)  {
+                    this.acquired[this.count++] = _limit;
+                } else  {
+                    _limit.dereference();
+                }
+            }
+            return ret;
+        }
+
+        /**
+         * Releases all acquired limits of the session. The method could be
+         * called multiple times.
+         */
+        public void release()
+        {
+            while (this.count > 0)  {
+                final Limit limit = this.acquired[--this.count];
+                limit.semaphore.release();
+                limit.dereference();
+            }
+            if (this.admitted)  {
+                this.admitted = false;
+                SessionAdmission.this.active.decrementAndGet();
+            }
+        }
+    }
+}
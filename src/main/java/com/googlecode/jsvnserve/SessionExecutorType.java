@@ -0,0 +1,148 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.googlecode.jsvnserve.util.CompensatingThreadPool;
+
+/**
+ * Defines how the {@link SVNServerSession sessions} of the SVN server are
+ * executed.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see SVNServer#setSessionExecutorType(SessionExecutorType)
+ */
+public enum SessionExecutorType
+{
+    /**
+     * Each session is executed within an own platform thread (idle threads
+     * are reused for new sessions). The count of threads is not limited.
+     */
+    PLATFORM_THREADS  {
+        @Override
+        public ExecutorService newExecutor(final int _maxThreads)
+        {
+            return Executors.newCachedThreadPool(new SessionThreadFactory());
+        }
+    },
+
+    /**
+     * The sessions are executed within a pool with the maximum count of
+     * running threads. If all threads are used, new sessions wait until
+     * another session ends. Threads which wait for the SVN client (or for the
+     * admission of the session) are not counted, so that waiting sessions do
+     * not block the pool (see {@link CompensatingThreadPool}).
+     */
+    BOUNDED_POOL  {
+        @Override
+        public ExecutorService newExecutor(final int _maxThreads)
+        {
+            return new CompensatingThreadPool(_maxThreads, new SessionThreadFactory());
+        }
+    },
+
+    /**
+     * Each session is executed within an own virtual thread, so that the
+     * blocking reads of the sessions and the blocking calls of the
+     * repositories do not need a platform thread while waiting. Virtual
+     * threads are available with Java 21; because the SVN server is compiled
+     * for older Java versions, the executor is created with reflection. On
+     * older Java runtimes the type is {@link #isSupported() not supported}.
+     */
+    VIRTUAL_THREADS  {
+        @Override
+        public boolean isSupported()
+        {
+            boolean ret;
+            try  {
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                ret = true;
+            } catch (final NoSuchMethodException ex)  {
+                ret = false;
+            }
+            return ret;
+        }
+
+        @Override
+        public ExecutorService newExecutor(final int _maxThreads)
+        {
+            try  {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (final NoSuchMethodException ex)  {
+                throw new UnsupportedOperationException("virtual threads requires Java 21 or newer", ex);
+            } catch (final IllegalAccessException ex)  {
+                throw new UnsupportedOperationException("virtual thread executor could not be created", ex);
+            } catch (final InvocationTargetException ex)  {
+                throw new UnsupportedOperationException("virtual thread executor could not be created",
+                                                        ex.getTargetException());
+            }
+        }
+    };
+
+    /**
+     * Creates a new executor for the sessions.
+     *
+     * @param _maxThreads   maximum count of threads (only used for
+     *                      {@link #BOUNDED_POOL})
+     * @return new executor
+     * @throws UnsupportedOperationException if the executor is not supported
+     *                                       from the Java runtime
+     */
+    public abstract ExecutorService newExecutor(final int _maxThreads);
+
+    /**
+     * Checks if the executor is supported from the current Java runtime.
+     *
+     * @return <i>true</i> if the executor could be created; otherwise
+     *         <i>false</i>
+     */
+    public boolean isSupported()
+    {
+        return true;
+    }
+
+    /**
+     * Thread factory for named session threads.
+     */
+    private static class SessionThreadFactory
+            implements ThreadFactory
+    {
+        /**
+         * Index of the last created thread.
+         */
+        private final AtomicInteger index = new AtomicInteger();
+
+        /**
+         * @param _runnable     session to execute
+         * @return new thread with name <code>svn-session-</code> and index
+         */
+        public Thread newThread(final Runnable _runnable)
+        {
+            return new Thread(_runnable, "svn-session-" + this.index.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api;
+
+import com.googlecode.jsvnserve.util.Timestamp;
+
+/**
+ * Optional interface of an {@link IRepository repository} which could
+ * evaluate directly (e.g. from an index of the revision dates) the revision
+ * of a date. If a repository does not implement this interface (or returns
+ * <code>null</code>), the revision is searched with a binary search over the
+ * revisions by using {@link IRepository#getRevisionProperties(long)}.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public interface IDatedRevision
+{
+    /**
+     * Returns the youngest revision which is not younger than given date.
+     *
+     * @param _date     searched date
+     * @return youngest revision committed at or before the date (revision
+     *         <code>0</code> if the date is before the first revision);
+     *         <code>null</code> if the revision must be searched with the
+     *         binary search
+     * @throws ServerException if the revision could not be evaluated
+     */
+    Long getDatedRevision(final Timestamp _date)
+            throws ServerException;
+}
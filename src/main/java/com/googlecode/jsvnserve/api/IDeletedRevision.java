@@ -0,0 +1,64 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api;
+
+/**
+ * Optional interface of an {@link IRepository repository} which could
+ * evaluate directly (e.g. from an index of the changed paths) in which
+ * revision a path was deleted. If a repository does not implement this
+ * interface (or returns <code>null</code>), the revision is searched with a
+ * binary search over the revisions by using
+ * {@link IRepository#stat(Long, CharSequence, boolean)} and
+ * {@link IRepository#getLocations(long, String, long...)}.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public interface IDeletedRevision
+{
+    /**
+     * Revision returned from {@link #getDeletedRevision(String, long, long)}
+     * if the path was not deleted within the revision range.
+     */
+    long NOT_DELETED = -1;
+
+    /**
+     * Returns the revision in which the path (existing in the peg revision)
+     * was deleted, searched after the peg revision up to the end revision.
+     * As in the SVN server, the node is deleted in the first revision in
+     * which the path does not exist or is another node (e.g. the path was
+     * deleted and added again, or replaced).
+     *
+     * @param _path             path of the node in the peg revision
+     * @param _pegRevision      revision in which the path exists
+     * @param _endRevision      youngest revision to search (younger than the
+     *                          peg revision)
+     * @return revision in which the path was deleted, {@link #NOT_DELETED} if
+     *         the path was not deleted up to the end revision or
+     *         <code>null</code> if the revision must be searched with the
+     *         binary search
+     * @throws ServerException if the deleted revision could not be evaluated
+     */
+    Long getDeletedRevision(final String _path,
+                            final long _pegRevision,
+                            final long _endRevision)
+            throws ServerException;
+}
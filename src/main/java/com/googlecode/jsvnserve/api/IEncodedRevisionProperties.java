@@ -0,0 +1,50 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api;
+
+import com.googlecode.jsvnserve.api.properties.EncodedProperties;
+
+/**
+ * Optional interface of an {@link IRepository repository} which returns the
+ * revision properties already encoded (e.g. from a cache shared between all
+ * sessions). If a repository does not implement this interface (or returns
+ * <code>null</code>), the revision properties are fetched with
+ * {@link IRepository#getRevisionProperties(long)} (or
+ * {@link IRepository#getRevision0Properties()}) and encoded for each
+ * request.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public interface IEncodedRevisionProperties
+{
+    /**
+     * Returns the encoded revision properties of given revision.
+     *
+     * @param _revision     revision for which the properties are searched
+     * @return encoded revision properties; <code>null</code> if the
+     *         properties must be fetched and encoded by the caller
+     * @throws ServerException if e.g. <code>_revision</code> does not exists
+     *                         in repository
+     */
+    EncodedProperties getEncodedRevisionProperties(final long _revision)
+            throws ServerException;
+}
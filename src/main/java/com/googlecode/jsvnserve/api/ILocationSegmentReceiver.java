@@ -0,0 +1,52 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api;
+
+import java.io.IOException;
+
+/**
+ * Receives the location segments of a path history (see
+ * {@link ILocationSegments}). The segments must be added from the youngest
+ * to the oldest revision. Adjacent segments with the same path are merged
+ * into one segment, so a repository could also add one segment per
+ * revision.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see LocationSegmentWriter
+ */
+public interface ILocationSegmentReceiver
+{
+    /**
+     * Adds the location of the path for a range of revisions.
+     *
+     * @param _rangeStart   oldest revision of the segment
+     * @param _rangeEnd     youngest revision of the segment
+     * @param _path         absolute path of the node within the segment;
+     *                      <code>null</code> if the node does not exist
+     *                      within the segment (a gap in the history)
+     * @throws IOException if the segment could not be written
+     */
+    void addSegment(final long _rangeStart,
+                    final long _rangeEnd,
+                    final String _path)
+            throws IOException;
+}
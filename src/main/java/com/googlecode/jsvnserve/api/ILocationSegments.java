@@ -0,0 +1,61 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api;
+
+import java.io.IOException;
+
+/**
+ * Optional interface of an {@link IRepository repository} which walks the
+ * history of a path and streams the location segments while they are
+ * discovered. If a repository does not implement this interface (or returns
+ * <code>false</code>), the segments are evaluated from the locations of all
+ * revisions (see {@link IRepository#getLocations(long, String, long...)}).
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see ILocationSegmentReceiver
+ */
+public interface ILocationSegments
+{
+    /**
+     * Pushes the location segments of the path from the start revision back
+     * to the end revision to the <code>_receiver</code>, beginning with the
+     * youngest segment.
+     *
+     * @param _path             path of the node in the peg revision
+     * @param _pegRevision      revision in which the path is looked up
+     * @param _startRevision    youngest revision of the segments (not
+     *                          younger than the peg revision)
+     * @param _endRevision      oldest revision of the segments
+     * @param _receiver         receiver of the segments
+     * @return <i>true</i> if the segments are streamed; <i>false</i> if the
+     *         segments must be evaluated from the locations (nothing must be
+     *         pushed to the receiver in this case)
+     * @throws ServerException if the history could not be evaluated
+     * @throws IOException if the segments could not be written
+     */
+    boolean getLocationSegments(final String _path,
+                                final long _pegRevision,
+                                final long _startRevision,
+                                final long _endRevision,
+                                final ILocationSegmentReceiver _receiver)
+            throws ServerException, IOException;
+}
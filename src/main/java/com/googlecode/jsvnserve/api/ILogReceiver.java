@@ -0,0 +1,112 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * <p>Receives the log entries of a {@link IStreamingLog streaming log}. For
+ * each log entry, first all changed paths are added (with the same
+ * &quot;add&quot; methods as for a {@link LogEntryList.LogEntry}) and then the
+ * log entry itself is finished with
+ * {@link #addLogEntry(long, String, Date, String)}. The entries are written
+ * directly to the SVN client, so the order of the calls defines the order of
+ * the log. A renamed path is added as copied path and deleted path.</p>
+ *
+ * <p>If the changed paths are not requested by the SVN client, the calls of
+ * the &quot;add&quot; methods are ignored (a repository should not evaluate
+ * the changed paths in this case).</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see IStreamingLog
+ * @see LogEntryWriter
+ */
+public interface ILogReceiver
+{
+    /**
+     * Adds a path which is copied within current log entry.
+     *
+     * @param _name                 path of the copied entry
+     * @param _copiedFromPath       path from which the entry is copied
+     * @param _copiedFromRevision   revision from which the entry is copied
+     * @throws IOException if the changed path could not be written
+     */
+    void addCopied(final String _name,
+                   final String _copiedFromPath,
+                   final long _copiedFromRevision)
+            throws IOException;
+
+    /**
+     * Adds a path which is deleted within current log entry.
+     *
+     * @param _name     path of the deleted entry
+     * @throws IOException if the changed path could not be written
+     */
+    void addDeleted(final String _name)
+            throws IOException;
+
+    /**
+     * Adds a path which is created within current log entry.
+     *
+     * @param _name     path of the created entry
+     * @throws IOException if the changed path could not be written
+     */
+    void addLogCreated(final String _name)
+            throws IOException;
+
+    /**
+     * Adds a path which is modified within current log entry.
+     *
+     * @param _name     path of the modified entry
+     * @throws IOException if the changed path could not be written
+     */
+    void addModified(final String _name)
+            throws IOException;
+
+    /**
+     * Adds a path which is replaced within current log entry.
+     *
+     * @param _name     path of the replaced entry
+     * @throws IOException if the changed path could not be written
+     */
+    void addRead(final String _name)
+            throws IOException;
+
+    /**
+     * Finishes current log entry with all changed paths added before.
+     *
+     * @param _revision     revision of the log entry
+     * @param _author       author of the revision or <code>null</code>
+     * @param _modified     date of the revision
+     * @param _comment      log message of the revision or <code>null</code>
+     * @return <i>true</i> if more log entries are wanted; <i>false</i> if the
+     *         limit of the SVN client is reached (all further log entries are
+     *         ignored)
+     * @throws IOException if the log entry could not be written
+     */
+    boolean addLogEntry(final long _revision,
+                        final String _author,
+                        final Date _modified,
+                        final String _comment)
+            throws IOException;
+}
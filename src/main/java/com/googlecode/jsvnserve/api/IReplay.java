@@ -0,0 +1,85 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api;
+
+import java.io.IOException;
+
+import com.googlecode.jsvnserve.api.editorcommands.IDeltaEditor;
+
+/**
+ * <p>Optional interface of an {@link IRepository repository} which replays
+ * the changes of revisions (used e.g. by <code>svnsync</code> to mirror a
+ * repository). If a repository does not implement this interface (or
+ * {@link #supportsReplay()} returns <code>false</code>), the replay commands
+ * are answered with
+ * {@link ServerException.ErrorCode#SVN_ERR_RA_NOT_IMPLEMENTED} before
+ * anything else is written to the SVN client.</p>
+ *
+ * <p>The changes of a revision are pushed to the editor in the same order as
+ * for an update, but without target revision and without close of the edit:
+ * <ul>
+ * <li>{@link IDeltaEditor#openRoot(Long)} with the previous revision</li>
+ * <li>the changed directories and files (the content of an opened or added
+ *     file is taken from the replayed revision; the base of an opened file
+ *     is defined with {@link IDeltaEditor#applyTextDelta(String)})</li>
+ * <li>{@link IDeltaEditor#closeDir()} of the root directory</li>
+ * </ul></p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public interface IReplay
+{
+    /**
+     * Checks if the repository supports the replay of revisions. The method
+     * is called before the SVN client is answered, so that a not supported
+     * replay is rejected cleanly (e.g. if a delegating repository implements
+     * this interface, but the delegated repository not).
+     *
+     * @return <i>true</i> if the revisions could be replayed; otherwise
+     *         <i>false</i>
+     */
+    boolean supportsReplay();
+
+    /**
+     * Replays the changes of given revision below the current repository
+     * location (see {@link IRepository#getLocationPath()}).
+     *
+     * @param _revision         revision to replay
+     * @param _lowWaterMark     copies from revisions lower than this
+     *                          revision must be replayed as additions without
+     *                          copy source
+     * @param _sendDeltas       <i>false</i> if the client does not need the
+     *                          text deltas (the writer of the editor then
+     *                          writes empty text deltas)
+     * @param _editor           editor to which the changes are pushed
+     * @return <i>true</i> if the revision is replayed; <i>false</i> if the
+     *         repository does not support the replay (nothing must be
+     *         pushed to the editor in this case)
+     * @throws ServerException if the revision could not be replayed
+     * @throws IOException if the changes could not be written
+     */
+    boolean replay(final long _revision,
+                   final long _lowWaterMark,
+                   final boolean _sendDeltas,
+                   final IDeltaEditor _editor)
+            throws ServerException, IOException;
+}
@@ -20,6 +20,7 @@
 
 package com.googlecode.jsvnserve.api;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Date;
 import java.util.Map;
@@ -30,6 +31,7 @@ import com.googlecode.jsvnserve.api.LogEntryList.LogEntry;
 import com.googlecode.jsvnserve.api.editorcommands.DirectoryNotExistsException;
 import com.googlecode.jsvnserve.api.editorcommands.EditorCommandSet;
 import com.googlecode.jsvnserve.api.editorcommands.FileNotExistsException;
+import com.googlecode.jsvnserve.api.editorcommands.IDeltaEditor;
 import com.googlecode.jsvnserve.api.filerevisions.FileRevisionsList;
 import com.googlecode.jsvnserve.api.properties.Properties;
 import com.googlecode.jsvnserve.api.properties.Revision0PropertyValues;
@@ -166,6 +168,9 @@ public interface IRepository
                         final boolean _retAuthor);
 
     /**
+     * Returns the content of a file. The method is also called while the
+     * delta editor of a status or switch is driven (see
+     * {@link #getStatus(Long, String, Depth, ReportList, IDeltaEditor)}).
      *
      * @param _revision     revision of the file
      * @param _path         path of the file
@@ -279,6 +284,7 @@ public interface IRepository
      * @param _includeChangedPaths  must also the changed paths included?
      * @param _paths                paths for which the log is searched
      * @return list of log entries
+     * @see IStreamingLog
      */
     LogEntryList getLog(final long _startRevision,
                         final long _endRevision,
@@ -286,6 +292,21 @@ public interface IRepository
                         final CharSequence... _paths);
 
     /**
+     * <p>Describes the status for <code>_path</code> depending on the
+     * <code>_report</code> of the client. The delta must be pushed to the
+     * <code>_editor</code> while the tree is walked, so that the editor
+     * commands are sent to the client as they are produced. A repository which
+     * prepares the complete delta as {@link EditorCommandSet} could replay
+     * the command set with {@link EditorCommandSet#write(IDeltaEditor)}.</p>
+     * <p><b>Attention!</b> While the editor is driven, the contents of the
+     * closed files are fetched with {@link #getFile(Long, CharSequence)}
+     * within the same thread (to write the file deltas). The repository must
+     * therefore allow to call {@link #getFile(Long, CharSequence)} from
+     * within this method. A repository whose backend could not be reentered
+     * either builds the complete {@link EditorCommandSet} and replays it
+     * after the backend drive (so the contents are fetched after the drive),
+     * or uses a second backend connection for the contents while the
+     * backend drive is forwarded to the editor.</p>
      *
      * @param _revision             update revision, if not specified the value
      *                              is <code>null</code> and means the HEAD
@@ -294,14 +315,17 @@ public interface IRepository
      * @param _depth                depth for update, determines the scope
      * @param _report               report of current directory structure of
      *                              the client
-     * @return editor command set which describes the status for
-     *         <code>_path</code>
+     * @param _editor               delta editor to which the status for
+     *                              <code>_path</code> is written
+     * @throws ServerException  if the status could not be evaluated
+     * @throws IOException      if the delta editor failed
      */
-    EditorCommandSet getStatus(final Long _revision,
-                               final String _path,
-                               final Depth _depth,
-                               final ReportList _report)
-        throws ServerException;
+    void getStatus(final Long _revision,
+                   final String _path,
+                   final Depth _depth,
+                   final ReportList _report,
+                   final IDeltaEditor _editor)
+        throws ServerException, IOException;
 
     /**
      * <p>The client wants to switch from <code>_path</code> to
@@ -309,22 +333,29 @@ public interface IRepository
      * client side is described by <code>_report</code>.</p>
      * <p>The switch is only called if a switch between directory paths
      * wanted.</p>
+     * <p>As for {@link #getStatus(Long, String, Depth, ReportList, IDeltaEditor)}
+     * the repository must allow to call
+     * {@link #getFile(Long, CharSequence)} while the editor is driven.</p>
      *
      * @param _newPath      new path to which a switch is done
      * @param _revision     revision to which a switch is done
      * @param _path         path from which a switch is done
      * @param _depth        depth of the switch
      * @param _report       report list of the delta to <code>_path</code>
-     * @return editor command set describing the required updates to switch
-     *         from <code>_path</code> to <code>_newPath</code>
-     * @throws ServerException
+     * @param _editor       delta editor to which the required updates to
+     *                      switch from <code>_path</code> to
+     *                      <code>_newPath</code> are written
+     * @throws ServerException  if the switch could not be evaluated
+     * @throws IOException      if the delta editor failed
+     * @see #getStatus(Long, String, Depth, ReportList, IDeltaEditor)
      */
-    EditorCommandSet getSwitchEditor(final String _newPath,
-                                     final Long _revision,
-                                     final String _path,
-                                     final Depth _depth,
-                                     final ReportList _report)
-        throws ServerException;
+    void getSwitchEditor(final String _newPath,
+                         final Long _revision,
+                         final String _path,
+                         final Depth _depth,
+                         final ReportList _report,
+                         final IDeltaEditor _editor)
+        throws ServerException, IOException;
 
     /**
      * <p>Returns the path locations in revision history. The location of a
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api;
+
+/**
+ * <p>Optional interface of a {@link IRepositoryFactory repository factory}
+ * which must be started and stopped with the SVN server (e.g. to create
+ * pooled repositories in advance or to close opened indexes). The SVN server
+ * calls {@link #start()} before the first session is accepted and
+ * {@link #stop()} after all sessions are finished.</p>
+ *
+ * <p>A factory which wraps another factory must forward both calls to the
+ * wrapped factory if the wrapped factory implements this interface: the
+ * wrapped factory is started first and stopped last.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public interface IRepositoryFactoryLifecycle
+{
+    /**
+     * Starts the factory. Failures should be only logged, because the
+     * repositories are created again for the sessions.
+     */
+    void start();
+
+    /**
+     * Stops the factory and releases all resources. Repositories closed
+     * after the stop must be closed directly.
+     */
+    void stop();
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api;
+
+import java.util.Map;
+
+import com.googlecode.jsvnserve.api.editorcommands.ICommitEditor;
+import com.googlecode.jsvnserve.api.properties.Properties;
+
+/**
+ * Optional interface of an {@link IRepository repository} which receives a
+ * commit while the editor commands are read from the SVN client. If a
+ * repository does not implement this interface (or returns
+ * <code>null</code>), the commit is buffered and handed over with
+ * {@link IRepository#commit(String, Map, boolean, Properties, com.googlecode.jsvnserve.api.editorcommands.EditorCommandSet)}.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see ICommitEditor
+ */
+public interface IStreamingCommit
+{
+    /**
+     * Starts a new commit. The path root of the commit is the current
+     * repository location (see {@link IRepository#getLocationPath()}).
+     *
+     * @param _logMessage       commit message (log of the revision)
+     * @param _locks            map of locks with path as key and lock token as
+     *                          value
+     * @param _keepLocks        <i>true</i> means to keep existing locks;
+     *                          <i>false</i> to release all locks after commit
+     * @param _revisionProps    custom specific revision properties
+     * @return commit editor which receives the editor commands;
+     *         <code>null</code> if the commit must be buffered
+     * @throws ServerException if the commit could not be started
+     */
+    ICommitEditor openCommit(final String _logMessage,
+                             final Map<String,String> _locks,
+                             final boolean _keepLocks,
+                             final Properties _revisionProps)
+            throws ServerException;
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api;
+
+import java.io.IOException;
+
+/**
+ * Optional interface of an {@link IRepository repository} which streams the
+ * log entries to the SVN client while they are evaluated. If a repository
+ * does not implement this interface (or returns <code>false</code>), the
+ * complete log is fetched with
+ * {@link IRepository#getLog(long, long, boolean, CharSequence...)}.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see ILogReceiver
+ */
+public interface IStreamingLog
+{
+    /**
+     * Evaluates the log for given paths from the start revision to the end
+     * revision (descending if the start revision is greater than the end
+     * revision) and pushes each log entry to the <code>_receiver</code>. The
+     * repository should stop if the receiver returns <i>false</i> (the limit
+     * of the SVN client is reached).
+     *
+     * @param _startRevision        revision number to start from
+     * @param _endRevision          revision number to end at
+     * @param _includeChangedPaths  must also the changed paths included?
+     * @param _limit                maximum count of log entries or
+     *                              <code>0</code> if not limited
+     * @param _receiver             receiver of the log entries
+     * @param _paths                paths for which the log is searched
+     * @return <i>true</i> if the log is streamed; <i>false</i> if the log
+     *         must be fetched with
+     *         {@link IRepository#getLog(long, long, boolean, CharSequence...)}
+     *         (nothing must be pushed to the receiver in this case)
+     * @throws ServerException if the log could not be evaluated
+     * @throws IOException if the log entries could not be written
+     */
+    boolean getLog(final long _startRevision,
+                   final long _endRevision,
+                   final boolean _includeChangedPaths,
+                   final long _limit,
+                   final ILogReceiver _receiver,
+                   final CharSequence... _paths)
+            throws ServerException, IOException;
+}
@@ -54,6 +54,18 @@ public class LocationEntries
         this.entries.put(_revision, _path);
     }
 
+    /**
+     * Returns the path name of given revision.
+     *
+     * @param _revision     revision
+     * @return path name for given revision; <code>null</code> if no location
+     *         exists for the revision
+     */
+    public String get(final long _revision)
+    {
+        return this.entries.get(_revision);
+    }
+
     /**
      * <p>For each entry in {@link #entries} a location entry is written to the
      * output stream of the SVN server to the SVN client. After the last
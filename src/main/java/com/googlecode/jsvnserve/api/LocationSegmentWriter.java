@@ -0,0 +1,152 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import com.googlecode.jsvnserve.SVNSessionStreams;
+import com.googlecode.jsvnserve.element.ElementOutputStream;
+import com.googlecode.jsvnserve.util.Server2Client;
+
+/**
+ * <p>Writes the location segments pushed by a repository directly to the SVN
+ * client. Only the last segment is hold back, so that it could be merged with
+ * the next (older) segment if both have the same path and the revisions are
+ * adjacent. Gaps (segments without path) before the first and after the last
+ * segment with a path are not written.</p>
+ *
+ * <p><b>SVN Response for each Location Segment</b><br/>
+ * <code style="color:green">( range-start:number range-end:number
+ * ( ?path:string ) )</code></p>
+ *
+ * <p><b>SVN Response after last Location Segment</b><br/>
+ * <code style="color:green">done</code></p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see ILocationSegments
+ */
+@Server2Client
+public class LocationSegmentWriter
+        implements ILocationSegmentReceiver
+{
+    /**
+     * SVN session streams to which the segments are written.
+     */
+    private final SVNSessionStreams streams;
+
+    /**
+     * Oldest revision of the pending segment.
+     */
+    private long pendingStart;
+
+    /**
+     * Youngest revision of the pending segment.
+     */
+    private long pendingEnd;
+
+    /**
+     * Path of the pending segment (without leading slash); <code>null</code>
+     * for a gap.
+     */
+    private String pendingPath;
+
+    /**
+     * Is a segment pending?
+     */
+    private boolean pending = false;
+
+    /**
+     * Was a segment with path already written?
+     */
+    private boolean written = false;
+
+    /**
+     * @param _streams  SVN session streams
+     */
+    public LocationSegmentWriter(final SVNSessionStreams _streams)
+    {
+        this.streams = _streams;
+    }
+
+    public void addSegment(final long _rangeStart,
+                           final long _rangeEnd,
+                           final String _path)
+            throws IOException
+    {
+        final String path = ((_path != null) && _path.startsWith("/")) ? _path.substring(1) : _path;
+        if (this.pending && (_rangeEnd + 1 == this.pendingStart)
+                && ((path == null) ? (this.pendingPath == null) : path.equals(this.pendingPath)))  {
+            this.pendingStart = _rangeStart;
+        } else  {
+            this.flush();
+            this.pending = true;
+            this.pendingStart = _rangeStart;
+            this.pendingEnd = _rangeEnd;
+            this.pendingPath = path;
+        }
+    }
+
+    /**
+     * Writes the pending segment (if it is not a trailing gap) and the
+     * &quot;<code>done</code>&quot; after the last segment.
+     *
+     * @throws UnsupportedEncodingException if a string could not be UTF8
+     *                                      encoded
+     * @throws IOException                  if an I/O error occurred
+     */
+    public void finish()
+            throws UnsupportedEncodingException, IOException
+    {
+        if (this.pending && (this.pendingPath != null))  {
+            this.flush();
+        }
+        this.pending = false;
+        this.streams.write("done ");
+    }
+
+    /**
+     * Writes the pending segment. A gap is only written if a segment with
+     * path was already written.
+     *
+     * @throws IOException if the segment could not be written
+     */
+    private void flush()
+            throws IOException
+    {
+        if (this.pending && (this.written || (this.pendingPath != null)))  {
+            this.streams.traceWrite("( {} {} ( {} ) ) ", this.pendingStart, this.pendingEnd, this.pendingPath);
+            final ElementOutputStream out = this.streams.getOutputStream();
+            out.writeListStart();
+            out.writeNumber(this.pendingStart);
+            out.writeNumber(this.pendingEnd);
+            out.writeListStart();
+            if (this.pendingPath != null)  {
+                out.writeString(this.pendingPath);
+            }
+            out.writeListEnd();
+            out.writeListEnd();
+            this.written = true;
+        }
+        this.pending = false;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api;
+
+import java.io.IOException;
+import java.util.Date;
+
+import com.googlecode.jsvnserve.SVNSessionStreams;
+import com.googlecode.jsvnserve.api.LogEntryList.ChangedPath;
+import com.googlecode.jsvnserve.api.LogEntryList.LogEntry;
+import com.googlecode.jsvnserve.element.ElementOutputStream;
+import com.googlecode.jsvnserve.element.WordElement.Word;
+import com.googlecode.jsvnserve.util.Server2Client;
+
+/**
+ * Writes the log entries pushed by a repository directly to the SVN client.
+ * Only the counter of the written log entries is hold in the memory; the
+ * changed paths are written as soon as they are added. If the changed paths
+ * are not requested by the SVN client, they are ignored.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see IStreamingLog
+ */
+@Server2Client
+public class LogEntryWriter
+        implements ILogReceiver
+{
+    /**
+     * SVN session streams to which the log entries are written.
+     */
+    private final SVNSessionStreams streams;
+
+    /**
+     * Must the changed paths be written?
+     */
+    private final boolean includeChangedPaths;
+
+    /**
+     * Maximum count of log entries; <code>0</code> if not limited.
+     */
+    private final long limit;
+
+    /**
+     * Count of already written log entries.
+     */
+    private long count = 0;
+
+    /**
+     * Count of the changed paths of current log entry (only for the trace).
+     */
+    private int changedPaths = 0;
+
+    /**
+     * Is the list of the changed paths of current log entry started?
+     */
+    private boolean entryStarted = false;
+
+    /**
+     *
+     * @param _streams              SVN session streams
+     * @param _includeChangedPaths  must the changed paths be written?
+     * @param _limit                maximum count of log entries or
+     *                              <code>0</code> if not limited
+     */
+    public LogEntryWriter(final SVNSessionStreams _streams,
+                          final boolean _includeChangedPaths,
+                          final long _limit)
+    {
+        this.streams = _streams;
+        this.includeChangedPaths = _includeChangedPaths;
+        this.limit = _limit;
+    }
+
+    public void addCopied(final String _name,
+                          final String _copiedFromPath,
+                          final long _copiedFromRevision)
+            throws IOException
+    {
+        this.writeChangedPath(_name, Word.LOG_KIND_ADDED, _copiedFromPath, _copiedFromRevision);
+    }
+
+    public void addDeleted(final String _name)
+            throws IOException
+    {
+        this.writeChangedPath(_name, Word.LOG_KIND_DELETED, null, 0);
+    }
+
+    public void addLogCreated(final String _name)
+            throws IOException
+    {
+        this.writeChangedPath(_name, Word.LOG_KIND_ADDED, null, 0);
+    }
+
+    public void addModified(final String _name)
+            throws IOException
+    {
+        this.writeChangedPath(_name, Word.LOG_KIND_MODIFIED, null, 0);
+    }
+
+    public void addRead(final String _name)
+            throws IOException
+    {
+        this.writeChangedPath(_name, Word.LOG_KIND_READ, null, 0);
+    }
+
+    /**
+     * Writes given log entry of a {@link LogEntryList} with all changed
+     * paths.
+     *
+     * @param _logEntry     log entry to write
+     * @return <i>true</i> if more log entries are wanted; <i>false</i> if the
+     *         limit is reached
+     * @throws IOException if the log entry could not be written
+     */
+    public boolean addLogEntry(final LogEntry _logEntry)
+            throws IOException
+    {
+        if (!this.isLimitReached())  {
+            for (final ChangedPath changedPath : _logEntry.getChangedPaths())  {
+                this.writeChangedPath(changedPath.getPath(),
+                                      changedPath.getKind(),
+                                      changedPath.getCopiedFromPath(),
+                                      changedPath.getCopiedFromRevision());
+            }
+        }
+        return this.addLogEntry(_logEntry.getRevision(),
+                                _logEntry.getAuthor(),
+                                _logEntry.getModified(),
+                                _logEntry.getComment());
+    }
+
+    public boolean addLogEntry(final long _revision,
+                               final String _author,
+                               final Date _modified,
+                               final String _comment)
+            throws IOException
+    {
+        if (!this.isLimitReached())  {
+            this.streams.traceWrite("( ( {} changed paths ) {} ... ) ",
+                                    this.changedPaths,
+                                    _revision);
+            final ElementOutputStream out = this.streams.getOutputStream();
+            this.startEntry();
+            out.writeListEnd();
+
+            out.writeNumber(_revision);
+            out.writeListStart();
+            if (_author != null)  {
+                out.writeString(_author);
+            }
+            out.writeListEnd();
+            out.writeListStart();
+            out.writeString(_modified);
+            out.writeListEnd();
+            out.writeListStart();
+            if (_comment != null)  {
+                out.writeString(_comment);
+            }
+            out.writeListEnd();
+            out.writeWord(Word.BOOLEAN_FALSE);
+            out.writeWord(Word.BOOLEAN_FALSE);
+            out.writeNumber(0);
+            out.writeListStart();
+            out.writeListEnd();
+
+            out.writeListEnd();
+
+            this.entryStarted = false;
+            this.changedPaths = 0;
+            this.count++;
+        }
+        return !this.isLimitReached();
+    }
+
+    /**
+     * Checks if the maximum count of log entries is written.
+     *
+     * @return <i>true</i> if the limit is reached; otherwise <i>false</i>
+     */
+    public boolean isLimitReached()
+    {
+        return (this.limit > 0) && (this.count >= this.limit);
+    }
+
+    /**
+     * Writes one changed path of current log entry. The changed path is
+     * ignored if the changed paths are not requested or the limit is already
+     * reached.
+     *
+     * @param _path                 changed path
+     * @param _kind                 kind of the change
+     * @param _copiedFromPath       path from which the path is copied or
+     *                              <code>null</code>
+     * @param _copiedFromRevision   revision from which the path is copied
+     * @throws IOException if the changed path could not be written
+     */
+    private void writeChangedPath(final String _path,
+                                  final Word _kind,
+                                  final String _copiedFromPath,
+                                  final long _copiedFromRevision)
+            throws IOException
+    {
+        if (this.includeChangedPaths && !this.isLimitReached())  {
+            final ElementOutputStream out = this.streams.getOutputStream();
+            this.startEntry();
+            out.writeListStart();
+            out.writeString(_path);
+            out.writeWord(_kind);
+            out.writeListStart();
+            if (_copiedFromPath != null)  {
+                out.writeString(_copiedFromPath);
+                out.writeNumber(_copiedFromRevision);
+            }
+            out.writeListEnd();
+            out.writeListEnd();
+            this.changedPaths++;
+        }
+    }
+
+    /**
+     * Starts the log entry and the list of the changed paths if not already
+     * done.
+     *
+     * @throws IOException if the start could not be written
+     */
+    private void startEntry()
+            throws IOException
+    {
+        if (!this.entryStarted)  {
+            final ElementOutputStream out = this.streams.getOutputStream();
+            out.writeListStart();
+            out.writeListStart();
+            this.entryStarted = true;
+        }
+    }
+}
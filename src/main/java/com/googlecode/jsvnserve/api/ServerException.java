@@ -37,8 +37,10 @@ public class ServerException
 
     private final static long SVN_ERR_CATEGORY_SIZE = 5000;
 
+    private final static long SVN_ERR_ENTRY_CATEGORY_START = APR_OS_START_USERERR + ( 6 * SVN_ERR_CATEGORY_SIZE);
     private final static long SVN_ERR_FS_CATEGORY_START = APR_OS_START_USERERR + ( 8 * SVN_ERR_CATEGORY_SIZE);
     private final static long SVN_ERR_RA_CATEGORY_START = APR_OS_START_USERERR + (10 * SVN_ERR_CATEGORY_SIZE);
+    private final static long SVN_ERR_SVNDIFF_CATEGORY_START = APR_OS_START_USERERR + (13 * SVN_ERR_CATEGORY_SIZE);
     private final static long SVN_ERR_CLIENT_CATEGORY_START = APR_OS_START_USERERR + (15 * SVN_ERR_CATEGORY_SIZE);
     private final static long SVN_ERR_MISC_CATEGORY_START = APR_OS_START_USERERR + (16 * SVN_ERR_CATEGORY_SIZE);
     public static enum ErrorCode
@@ -55,6 +57,12 @@ public class ServerException
          */
         SVN_ERR_CLIENT_PROPERTY_NAME(SVN_ERR_CLIENT_CATEGORY_START + 11, "Bad property name"),
 
+        /**
+         * If a revision is not known, e.g. if a path was not deleted within
+         * the revision range of a get deleted revision.
+         */
+        SVN_ERR_ENTRY_MISSING_REVISION(SVN_ERR_ENTRY_CATEGORY_START + 3, "Entry has no revision"),
+
         SVN_ERR_FS_NOT_FOUND(SVN_ERR_FS_CATEGORY_START + 13, "Filesystem has no item"),
 
         SVN_ERR_FS_NOT_DIRECTORY(SVN_ERR_FS_CATEGORY_START + 16, "Name does not refer to a filesystem directory"),
@@ -69,7 +77,7 @@ public class ServerException
 
 //        SVN_ERR_RA_UNKNOWN_AUTH(SVN_ERR_RA_CATEGORY_START + 2, "Unknown authorization method"),
 
-//        SVN_ERR_RA_NOT_IMPLEMENTED(SVN_ERR_RA_CATEGORY_START + 3, "Repository access method not implemented"),
+        SVN_ERR_RA_NOT_IMPLEMENTED(SVN_ERR_RA_CATEGORY_START + 3, "Repository access method not implemented"),
 
 //        SVN_ERR_RA_OUT_OF_DATE(SVN_ERR_RA_CATEGORY_START + 4, "Item is out of date"),
 
@@ -89,11 +97,29 @@ public class ServerException
         /** @since New in 1.6. */
         SVN_ERR_RA_REPOS_ROOT_URL_MISMATCH(SVN_ERR_RA_CATEGORY_START + 10, "Repository root URL does not match expected root URL"),
 
+        /**
+         * If a text delta from the SVN client could not be parsed.
+         */
+        SVN_ERR_SVNDIFF_CORRUPT_WINDOW(SVN_ERR_SVNDIFF_CATEGORY_START + 1, "Svndiff data contains corrupt window"),
+
         /**
          * If the server gets incomplete date, e.g.if an abort is done while
          * update was sent from client to server.
          */
-        SVN_ERR_INCOMPLETE_DATA(SVN_ERR_MISC_CATEGORY_START + 3, "Incomplete data");
+        SVN_ERR_INCOMPLETE_DATA(SVN_ERR_MISC_CATEGORY_START + 3, "Incomplete data"),
+
+        /**
+         * If the parameters of a SVN call are not consistent (e.g. a start
+         * revision younger than the peg revision).
+         */
+        SVN_ERR_INCORRECT_PARAMS(SVN_ERR_MISC_CATEGORY_START + 4, "Incorrect parameters given"),
+
+        /**
+         * If the MD5 checksum of a file content (e.g. computed from the text
+         * deltas of a commit) does not match the checksum from the SVN
+         * client.
+         */
+        SVN_ERR_CHECKSUM_MISMATCH(SVN_ERR_MISC_CATEGORY_START + 14, "Checksum mismatch");
 
 
         public final long code;
@@ -20,14 +20,12 @@
 
 package com.googlecode.jsvnserve.api.editorcommands;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.concurrent.Future;
 
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
@@ -39,10 +37,15 @@ import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import com.googlecode.jsvnserve.SVNSessionStreams;
 import com.googlecode.jsvnserve.SVNSessionStreams.DeltaOutputStream;
 import com.googlecode.jsvnserve.api.OtherServerException;
+import com.googlecode.jsvnserve.api.ServerException;
+import com.googlecode.jsvnserve.api.ServerException.ErrorCode;
+import com.googlecode.jsvnserve.cache.DeltaCache;
+import com.googlecode.jsvnserve.element.ElementOutputStream;
 import com.googlecode.jsvnserve.element.ListElement;
 import com.googlecode.jsvnserve.element.WordElement.Word;
 import com.googlecode.jsvnserve.util.Client2Server;
 import com.googlecode.jsvnserve.util.Server2Client;
+import com.googlecode.jsvnserve.util.SpillOutputStream;
 
 /**
  * Handles all file commands from the editor command set
@@ -71,20 +74,25 @@ public abstract class AbstractDeltaFile
     private ISVNDeltaConsumer deltaConsumer;
 
     /**
-     * Temporary file of the file to checkin.
+     * Content of the file to checkin. The content is hold in the memory up to
+     * the {@link com.googlecode.jsvnserve.SVNServerSession#getCommitSpillThreshold()
+     * spill threshold} of the session and while the
+     * {@link com.googlecode.jsvnserve.SVNServerSession#getCommitMemoryBudget()
+     * memory budget} shared by all sessions is not exhausted; otherwise the
+     * content is written to a temporary file.
      */
     @Client2Server
-    private File file;
+    private SpillOutputStream content;
 
     /**
      * Output stream used for processing text delta's from the SVN client for
-     * {@link #file}.
+     * {@link #content}.
      */
     @Client2Server
     private OutputStream output;
 
     /**
-     * The input stream is opened from the SVN server for {@link #file}.
+     * The input stream is opened from the SVN server for {@link #content}.
      *
      * @see #getInputStream()
      */
@@ -92,7 +100,7 @@ public abstract class AbstractDeltaFile
     private InputStream in;
 
     /**
-     * MD5 checksum of the {@link #file}.
+     * MD5 checksum of the {@link #content}.
      */
     @Client2Server
     private String checkSumMD5;
@@ -145,6 +153,24 @@ public abstract class AbstractDeltaFile
     @Server2Client
     private InputStream baseIn;
 
+    /**
+     * Delta which is computed in advance; <code>null</code> if the delta is
+     * computed while the file is written.
+     *
+     * @see #prepareDelta(SVNSessionStreams, long)
+     */
+    @Server2Client
+    private Future<DeltaCache.Delta> preparedDelta;
+
+    /**
+     * Must the text delta of the content be written? If not, only an empty
+     * text delta is written (used for a replay without deltas).
+     *
+     * @see #setSendTextDelta(boolean)
+     */
+    @Server2Client
+    private boolean sendTextDelta = true;
+
     /**
      * Default constructor.
      *
@@ -176,8 +202,10 @@ public abstract class AbstractDeltaFile
                                   final String _baseCheckSumMD5)
             throws IOException
     {
-        this.file = File.createTempFile("DeltaFileCreate", ".tmp");
-        this.output = new FileOutputStream(this.file);
+        this.content = new SpillOutputStream(_streams.getSession().getCommitSpillThreshold(),
+                                             "DeltaFileCreate",
+                                             _streams.getSession().getCommitMemoryBudget());
+        this.output = this.content;
         this.deltaProcessor = new SVNDeltaProcessor();
         this.deltaReader = new SVNDeltaReader();
         this.baseCheckSumMD5 = _baseCheckSumMD5;
@@ -209,14 +237,22 @@ public abstract class AbstractDeltaFile
 
     }
 
+    /**
+     * Applies the next chunk of the text delta. The MD5 checksum of the
+     * content is updated by the delta processor while the windows are
+     * applied.
+     *
+     * @param _buffer   next chunk of the svndiff stream
+     * @throws ServerException if the chunk could not be parsed or applied
+     */
     @Client2Server
     protected void textDeltaChunk(final byte[] _buffer)
+            throws ServerException
     {
         try {
             this.deltaReader.nextWindow(_buffer, 0, _buffer.length, null, this.deltaConsumer);
         } catch (final SVNException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            throw new ServerException(ErrorCode.SVN_ERR_SVNDIFF_CORRUPT_WINDOW);
         }
     }
 
@@ -243,13 +279,20 @@ public abstract class AbstractDeltaFile
         }
      }
 
+    /**
+     * Compares the MD5 checksum computed while the text delta was applied
+     * with the checksum from the SVN client.
+     *
+     * @param _md5  MD5 checksum from the SVN client or <code>null</code>
+     * @throws ChecksumMismatchException if the checksums are not equal
+     */
     @Client2Server
     protected void closeFile(final String _md5)
+            throws ChecksumMismatchException
     {
-        System.out.println("have md5: " + this.checkSumMD5 + "    from SVN client: " + _md5);
-if ((this.checkSumMD5 != null) && (_md5 != null) && !this.checkSumMD5.equals(_md5))  {
-    throw new Error("md5 checksum not equal");
-}
+        if ((this.checkSumMD5 != null) && (_md5 != null) && !this.checkSumMD5.equalsIgnoreCase(_md5))  {
+            throw new ChecksumMismatchException(this.getPath(), _md5, this.checkSumMD5);
+        }
     }
 
     /**
@@ -272,7 +315,7 @@ if ((this.checkSumMD5 != null) && (_md5 != null) && !this.checkSumMD5.equals(_md
     @Client2Server
     public boolean isContentChanged()
     {
-        return this.file != null;
+        return this.content != null;
     }
 
     /**
@@ -283,7 +326,7 @@ if ((this.checkSumMD5 != null) && (_md5 != null) && !this.checkSumMD5.equals(_md
     @Client2Server
     public long getFileSize()
     {
-      return this.file.length();
+        return this.content.getSize();
     }
 
     /**
@@ -299,10 +342,10 @@ if ((this.checkSumMD5 != null) && (_md5 != null) && !this.checkSumMD5.equals(_md
 throw new OtherServerException("File was already opened!");
         }
         try {
-            this.in = new FileInputStream(this.file);
+            this.in = this.content.getInputStream();
         } catch (final FileNotFoundException ex) {
 // TODO: i18n
-throw new OtherServerException("temporary file '" + this.file + "' not found");
+throw new OtherServerException("content '" + this.content + "' not found");
         }
         return this.in;
     }
@@ -317,8 +360,8 @@ throw new OtherServerException("temporary file '" + this.file + "' not found");
             } catch (final IOException e) {
             }
         }
-        if (this.file != null)  {
-            this.file.delete();
+        if (this.content != null)  {
+            this.content.delete();
         }
     }
 
@@ -336,6 +379,18 @@ throw new OtherServerException("temporary file '" + this.file + "' not found");
         this.baseCheckSumMD5 = _baseCheckSumMD5;
     }
 
+    /**
+     * Returns the MD5 checksum of the file on which this file delta is based
+     * on.
+     *
+     * @return base MD5 checksum or <code>null</code> if not defined
+     * @see #baseCheckSumMD5
+     */
+    public String getBaseCheckSumMD5()
+    {
+        return this.baseCheckSumMD5;
+    }
+
     /**
      * Returns the revision of the file on which this file delta is based on.
      * If the file delta is not based on an existing file, <code>null</code> is
@@ -362,13 +417,86 @@ throw new OtherServerException("temporary file '" + this.file + "' not found");
         return this.basePath;
     }
 
+    /**
+     * Returns the path of the file on the server used to get the content of
+     * the file.
+     *
+     * @return server path of the file
+     */
+    public abstract String getServerPath();
+
+    /**
+     * Defines if the text delta of the content must be written.
+     *
+     * @param _sendTextDelta    <i>true</i> if the text delta must be written;
+     *                          <i>false</i> if only an empty text delta is
+     *                          written
+     * @see #sendTextDelta
+     */
+    @Server2Client
+    void setSendTextDelta(final boolean _sendTextDelta)
+    {
+        this.sendTextDelta = _sendTextDelta;
+    }
+
+    /**
+     * Starts the computation of the delta of this file in advance, so that
+     * the delta is already computed (or at least started) if the file is
+     * written.
+     *
+     * @param _streams          SVN in- and output stream
+     * @param _targetRevision   revision of the target file
+     * @throws IOException if the files could not be fetched
+     * @see SVNSessionStreams#prepareFileDelta(Long, String, String, long, String)
+     */
+    @Server2Client
+    protected void prepareDelta(final SVNSessionStreams _streams,
+                                final long _targetRevision)
+            throws IOException
+    {
+        final boolean hasBase = (this.basePath != null) && (this.baseRevision != null) && (this.baseCheckSumMD5 != null);
+        this.preparedDelta = _streams.prepareFileDelta(hasBase ? this.baseRevision : null,
+                                                       hasBase ? this.basePath : null,
+                                                       hasBase ? this.baseCheckSumMD5 : null,
+                                                       _targetRevision,
+                                                       this.getServerPath());
+    }
+
+    /**
+     * Checks if the delta of this file is computed in advance.
+     *
+     * @return <i>true</i> if the delta is prepared; otherwise <i>false</i>
+     * @see #preparedDelta
+     */
+    @Server2Client
+    protected boolean hasPreparedDelta()
+    {
+        return this.preparedDelta != null;
+    }
+
+    /**
+     * Checks if the delta of this file is prepared and already computed.
+     *
+     * @return <i>true</i> if the delta is computed; otherwise <i>false</i>
+     * @see #preparedDelta
+     */
+    @Server2Client
+    protected boolean isDeltaPrepared()
+    {
+        return (this.preparedDelta != null) && this.preparedDelta.isDone();
+    }
+
     /**
      * Writes the given file for given event <code>_type</code> to the
      * <code>_streams</code> including all required properties. The content
      * of the file is calculated depending on the delta between
-     * base path and the <code>_targetIn</code>. The base path is only used if
+     * base path and the target file. The base path is only used if
      * {@link #basePath}, {@link #baseRevision} and {@link #baseCheckSumMD5}
-     * are defined.
+     * are defined. The delta is written via
+     * {@link SVNSessionStreams#writeFileDelta(Long, String, String, long, String, DeltaOutputStream, boolean)}
+     * so that an already computed delta is taken from the delta cache. If
+     * the delta was {@link #prepareDelta(SVNSessionStreams, long) prepared},
+     * the prepared delta is written.
      *
      * @param _streams          SVN in- and output stream
      * @param _parentToken      token of the parent directory (where the file
@@ -376,7 +504,8 @@ throw new OtherServerException("temporary file '" + this.file + "' not found");
      * @param _type             type of the file to write
      *                          ({@link Word#ADD_FILE} or
      *                          {@link Word#OPEN_FILE})
-     * @param _targetIn         input stream of the target file
+     * @param _targetRevision   revision of the target file
+     * @param _targetPath       path of the target file on the server
      * @throws UnsupportedEncodingException
      * @throws IOException
      */
@@ -384,60 +513,73 @@ throw new OtherServerException("temporary file '" + this.file + "' not found");
     protected void writeOpen(final SVNSessionStreams _streams,
                              final String _parentToken,
                              final Word _type,
-                             final InputStream _targetIn)
+                             final long _targetRevision,
+                             final String _targetPath)
             throws UnsupportedEncodingException, IOException
     {
-        if ((this.basePath != null) && (this.baseRevision != null) && (this.baseCheckSumMD5 != null))  {
-            this.baseIn = _streams.getSession().getRepository().getFile(this.getBaseRevision(), this.getBasePath());
+        final boolean hasBase = (this.basePath != null) && (this.baseRevision != null) && (this.baseCheckSumMD5 != null);
+
+        // an added file has the copy source, an opened file the base revision
+        final ListElement source;
+        if (_type == Word.ADD_FILE)  {
+            source = ((this.getCopiedPath() != null) && (this.getCopiedRevision() != null))
+                     ? new ListElement(this.getCopiedPath(), this.getCopiedRevision())
+                     : new ListElement();
+        } else  {
+            source = hasBase ? new ListElement(this.baseRevision) : new ListElement();
         }
-
         _streams.writeItemList(
                 new ListElement(_type,
                                 new ListElement(this.getPath(),
                                                 _parentToken,
                                                 this.getToken(),
-                                                (this.baseIn != null)
-                                                        ? new ListElement(this.baseRevision)
-                                                        : new ListElement())));
+                                                source)));
         this.writeAllProperties(_streams, Word.CHANGE_FILE_PROP);
 
         _streams.writeItemList(new ListElement(Word.APPLY_TEXTDELTA,
                                                new ListElement(this.getToken(),
-                                                               (this.baseIn != null)
+                                                               hasBase
                                                                        ? new ListElement(this.baseCheckSumMD5)
                                                                        : new ListElement())));
 
-        final String md5 = _streams.writeFileDelta(
-                this.baseIn,
-                _targetIn,
-                new DeltaOutputStream() {
-                    @Override
-                    public void write(final byte _bytes[],
-                                      final int _offset,
-                                      final int _len)
-                    throws IOException
-                    {
-                        _streams.traceWrite("( textdelta-chunk ( 2:{} ( {}:... ) ) ) ", AbstractDeltaFile.this.getToken(), _len);
-                        _streams.writeWithoutFlush("( textdelta-chunk ( ");
-                        _streams.writeWithoutFlush(String.valueOf(AbstractDeltaFile.this.getToken().length()));
-                        _streams.writeWithoutFlush(':');
-                        _streams.writeWithoutFlush(AbstractDeltaFile.this.getToken());
-                        _streams.writeWithoutFlush(' ');
-                        _streams.writeWithoutFlush(String.valueOf(_len));
-                        _streams.writeWithoutFlush(':');
-                        _streams.writeWithoutFlush(_bytes, _offset, _len);
-                        _streams.writeWithoutFlush(" ) ) ");
-                    }
-                },
-                true);
+        final DeltaOutputStream output = new DeltaOutputStream() {
+            @Override
+            public void write(final byte _bytes[],
+                              final int _offset,
+                              final int _len)
+            throws IOException
+            {
+                _streams.traceWrite("( textdelta-chunk ( 2:{} ( {}:... ) ) ) ", AbstractDeltaFile.this.getToken(), _len);
+                final ElementOutputStream out = _streams.getOutputStream();
+                out.writeListStart();
+                out.writeWord(Word.TEXTDELTA_CHUNK);
+                out.writeListStart();
+                out.writeString(AbstractDeltaFile.this.getToken());
+                out.writeString(_bytes, _offset, _len);
+                out.writeListEnd();
+                out.writeListEnd();
+            }
+        };
+        final String md5;
+        if (!this.sendTextDelta)  {
+            md5 = null;
+        } else if (this.preparedDelta != null)  {
+            md5 = _streams.writeFileDelta(this.preparedDelta, output);
+            this.preparedDelta = null;
+        } else  {
+            md5 = _streams.writeFileDelta(
+                    hasBase ? this.baseRevision : null,
+                    hasBase ? this.basePath : null,
+                    hasBase ? this.baseCheckSumMD5 : null,
+                    _targetRevision,
+                    _targetPath,
+                    output,
+                    true);
+        }
 
         _streams.writeItemList(
                 new ListElement(Word.TEXTDELTA_END, new ListElement(this.getToken())),
-                new ListElement(Word.CLOSE_FILE, new ListElement(this.getToken(), new ListElement(md5))));
-
-        if (this.baseIn != null)  {
-            this.baseIn.close();
-            this.baseIn = null;
-        }
+                new ListElement(Word.CLOSE_FILE, new ListElement(this.getToken(),
+                                                                 (md5 != null) ? new ListElement(md5) : new ListElement())));
     }
 }
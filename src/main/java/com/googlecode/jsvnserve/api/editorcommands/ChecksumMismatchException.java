@@ -0,0 +1,74 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api.editorcommands;
+
+import com.googlecode.jsvnserve.api.ServerException;
+
+/**
+ * The exception is thrown if the MD5 checksum of a file content which is
+ * computed from the text deltas of the SVN client does not match the checksum
+ * sent from the SVN client.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class ChecksumMismatchException
+        extends ServerException
+{
+    /**
+     * Serial version UID of this class.
+     */
+    private static final long serialVersionUID = 3279440625162874901L;
+
+    /**
+     * Path of the file with the wrong checksum.
+     *
+     * @see #getFilePath()
+     */
+    private final String filePath;
+
+    /**
+     * @param _filePath     path of the file
+     * @param _expected     MD5 checksum from the SVN client
+     * @param _actual       computed MD5 checksum
+     */
+    public ChecksumMismatchException(final String _filePath,
+                                     final String _expected,
+                                     final String _actual)
+    {
+        super(ErrorCode.SVN_ERR_CHECKSUM_MISMATCH,
+              "Checksum mismatch for '" + _filePath + "':\n"
+                      + "   expected:  " + _expected + "\n"
+                      + "     actual:  " + _actual + "\n");
+        this.filePath = _filePath;
+    }
+
+    /**
+     * Returns the path of the file with the wrong checksum.
+     *
+     * @return file path
+     * @see #filePath
+     */
+    public String getFilePath()
+    {
+        return this.filePath;
+    }
+}
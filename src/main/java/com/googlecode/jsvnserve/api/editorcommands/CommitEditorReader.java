@@ -0,0 +1,300 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api.editorcommands;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.googlecode.jsvnserve.SVNSessionStreams;
+import com.googlecode.jsvnserve.api.CommitInfo;
+import com.googlecode.jsvnserve.api.ServerException;
+import com.googlecode.jsvnserve.api.ServerException.ErrorCode;
+import com.googlecode.jsvnserve.element.AbstractElement;
+import com.googlecode.jsvnserve.element.ListElement;
+import com.googlecode.jsvnserve.element.WordElement.Word;
+import com.googlecode.jsvnserve.util.Client2Server;
+
+/**
+ * Reads the editor commands of a commit from the SVN client and forwards
+ * each command directly to a {@link ICommitEditor commit editor}. Only the
+ * paths of the opened directories and files are hold in the memory (to map
+ * the tokens of the SVN client to paths), so the memory used for a commit is
+ * independent of the size of the commit.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see EditorCommandSet#read(SVNSessionStreams)
+ */
+@Client2Server
+public class CommitEditorReader
+{
+    /**
+     * SVN session streams from which the editor commands are read.
+     */
+    private final SVNSessionStreams streams;
+
+    /**
+     * Commit editor to which the editor commands are forwarded.
+     */
+    private final ICommitEditor editor;
+
+    /**
+     * Maps the tokens of the opened directories and files to their paths.
+     */
+    private final Map<String,String> mapToken2Path = new HashMap<String,String>();
+
+    /**
+     * @param _streams  SVN session streams from which the editor commands
+     *                  are read
+     * @param _editor   commit editor to which the commands are forwarded
+     */
+    public CommitEditorReader(final SVNSessionStreams _streams,
+                              final ICommitEditor _editor)
+    {
+        this.streams = _streams;
+        this.editor = _editor;
+    }
+
+    /**
+     * Reads all editor commands until the SVN client closes or aborts the
+     * edit and forwards them to the commit editor. If the commit editor
+     * throws an exception, the edit is aborted and all following commands are
+     * skipped (so that the communication with the SVN client is not
+     * broken).
+     *
+     * @return information about the committed revision
+     * @throws IOException          if the editor commands could not be read
+     * @throws URISyntaxException   if the copied path of a directory or file
+     *                              could not be parsed
+     * @throws ServerException      if the commit editor failed, if the SVN
+     *                              client aborted the edit or if an unknown
+     *                              command was sent
+     */
+    public CommitInfo read()
+            throws IOException, URISyntaxException, ServerException
+    {
+        ServerException exception = null;
+        boolean aborted = false;
+        final Set<String> unknownCommands = new TreeSet<String>();
+        while (true)  {
+            final ListElement list = this.streams.readItemList();
+            final Word key = list.getList().get(0).getWord();
+            if (key == Word.CLOSE_EDIT)  {
+                break;
+            } else if (key == Word.ABORT_EDIT)  {
+                aborted = true;
+                break;
+            } else if (exception == null)  {
+                try  {
+                    if (!this.dispatch(key, list.getList().get(1).getList()))  {
+                        unknownCommands.add(list.getList().get(0).getString());
+                    }
+                } catch (final ServerException ex)  {
+                    exception = ex;
+                    this.editor.abortEdit();
+                }
+            }
+        }
+
+        if ((exception == null) && (aborted || !unknownCommands.isEmpty()))  {
+            this.editor.abortEdit();
+        }
+
+        if (exception != null)  {
+            throw exception;
+        }
+
+        if (!unknownCommands.isEmpty())  {
+// TODO: i18n
+throw new ServerException("Unknown command(s) " + unknownCommands);
+        }
+
+        if (aborted)  {
+            // original message "Delta source ended unexpectedly"
+            throw new ServerException(ErrorCode.SVN_ERR_INCOMPLETE_DATA);
+        }
+
+        return this.editor.closeEdit();
+    }
+
+    /**
+     * Forwards one editor command to the commit editor.
+     *
+     * @param _key      key of the editor command
+     * @param _params   parameters of the editor command
+     * @return <i>true</i> if the command is known; otherwise <i>false</i>
+     * @throws ServerException      if the commit editor failed
+     * @throws URISyntaxException   if a copied path could not be parsed
+     */
+    protected boolean dispatch(final Word _key,
+                               final List<AbstractElement<?>> _params)
+            throws ServerException, URISyntaxException
+    {
+        boolean ret = true;
+        if (_key == null)  {
+            ret = false;
+        } else  {
+            switch (_key)  {
+                case OPEN_ROOT:
+                    this.mapToken2Path.put(_params.get(1).getString(), "");
+                    this.editor.openRoot(CommitEditorReader.getOptionalNumber(_params, 0));
+                    break;
+                case DELETE_ENTRY:
+                    this.editor.deleteEntry(_params.get(0).getString(),
+                                            CommitEditorReader.getOptionalNumber(_params, 1));
+                    break;
+                case ADD_DIR:
+                    this.mapToken2Path.put(_params.get(2).getString(), _params.get(0).getString());
+                    this.editor.addDir(_params.get(0).getString(),
+                                       this.getCopiedPath(_params),
+                                       this.getCopiedRevision(_params));
+                    break;
+                case OPEN_DIR:
+                    this.mapToken2Path.put(_params.get(2).getString(), _params.get(0).getString());
+                    this.editor.openDir(_params.get(0).getString(),
+                                        CommitEditorReader.getOptionalNumber(_params, 3));
+                    break;
+                case CHANGE_DIR_PROP:
+                    this.editor.changeDirProperty(this.getPath(_params),
+                                                  _params.get(1).getString(),
+                                                  CommitEditorReader.getOptionalString(_params, 2));
+                    break;
+                case CLOSE_DIR:
+                    this.editor.closeDir(this.mapToken2Path.remove(_params.get(0).getString()));
+                    break;
+                case ADD_FILE:
+                    this.mapToken2Path.put(_params.get(2).getString(), _params.get(0).getString());
+                    this.editor.addFile(_params.get(0).getString(),
+                                        this.getCopiedPath(_params),
+                                        this.getCopiedRevision(_params));
+                    break;
+                case OPEN_FILE:
+                    this.mapToken2Path.put(_params.get(2).getString(), _params.get(0).getString());
+                    this.editor.openFile(_params.get(0).getString(),
+                                         CommitEditorReader.getOptionalNumber(_params, 3));
+                    break;
+                case APPLY_TEXTDELTA:
+                    this.editor.applyTextDelta(this.getPath(_params),
+                                               CommitEditorReader.getOptionalString(_params, 1));
+                    break;
+                case TEXTDELTA_CHUNK:
+                    this.editor.textDeltaChunk(this.getPath(_params), _params.get(1).getByteArray());
+                    break;
+                case TEXTDELTA_END:
+                    this.editor.textDeltaEnd(this.getPath(_params));
+                    break;
+                case CHANGE_FILE_PROP:
+                    this.editor.changeFileProperty(this.getPath(_params),
+                                                   _params.get(1).getString(),
+                                                   CommitEditorReader.getOptionalString(_params, 2));
+                    break;
+                case CLOSE_FILE:
+                    this.editor.closeFile(this.mapToken2Path.remove(_params.get(0).getString()),
+                                          CommitEditorReader.getOptionalString(_params, 1));
+                    break;
+                default:
+                    ret = false;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the path of the directory or file for the token in the first
+     * parameter.
+     *
+     * @param _params   parameters of the editor command
+     * @return path of the directory or file
+     * @throws ServerException if the token is not known
+     */
+    protected String getPath(final List<AbstractElement<?>> _params)
+            throws ServerException
+    {
+        final String ret = this.mapToken2Path.get(_params.get(0).getString());
+        if (ret == null)  {
+// TODO: i18n
+throw new ServerException("Unknown token '" + _params.get(0).getString() + "'");
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the copied path (fourth parameter) of an added directory or
+     * file.
+     *
+     * @param _params   parameters of the editor command
+     * @return copied path relative to the repository location or
+     *         <code>null</code> if not copied
+     * @throws URISyntaxException if the copied URL could not be parsed
+     */
+    protected String getCopiedPath(final List<AbstractElement<?>> _params)
+            throws URISyntaxException
+    {
+        final String url = CommitEditorReader.getOptionalString(_params, 3);
+        return (url == null) ? null : this.streams.getSession().extractPathFromURL(url);
+    }
+
+    /**
+     * Returns the copied revision (fourth parameter) of an added directory
+     * or file.
+     *
+     * @param _params   parameters of the editor command
+     * @return copied revision or <code>null</code> if not copied
+     */
+    protected Long getCopiedRevision(final List<AbstractElement<?>> _params)
+    {
+        final List<AbstractElement<?>> copy = (_params.size() > 3) ? _params.get(3).getList() : null;
+        return ((copy == null) || (copy.size() < 2)) ? null : copy.get(1).getNumber();
+    }
+
+    /**
+     * Returns the first number of the optional list with given index.
+     *
+     * @param _params   parameters of the editor command
+     * @param _index    index of the optional list
+     * @return number or <code>null</code> if not defined
+     */
+    private static Long getOptionalNumber(final List<AbstractElement<?>> _params,
+                                          final int _index)
+    {
+        final List<AbstractElement<?>> list = (_params.size() > _index) ? _params.get(_index).getList() : null;
+        return ((list == null) || list.isEmpty()) ? null : list.get(0).getNumber();
+    }
+
+    /**
+     * Returns the first string of the optional list with given index.
+     *
+     * @param _params   parameters of the editor command
+     * @param _index    index of the optional list
+     * @return string or <code>null</code> if not defined
+     */
+    private static String getOptionalString(final List<AbstractElement<?>> _params,
+                                            final int _index)
+    {
+        final List<AbstractElement<?>> list = (_params.size() > _index) ? _params.get(_index).getList() : null;
+        return ((list == null) || list.isEmpty()) ? null : list.get(0).getString();
+    }
+}
@@ -24,6 +24,8 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 import com.googlecode.jsvnserve.SVNSessionStreams;
+import com.googlecode.jsvnserve.element.ListElement;
+import com.googlecode.jsvnserve.element.WordElement.Word;
 
 /**
  * Represents the directory copy from the command editor.
@@ -63,13 +65,12 @@ public class DeltaDirectoryCopy
                              final String _parentToken)
             throws UnsupportedEncodingException, IOException
     {
-// TODO: implement
-        /*_streams.writeItemList(
+        _streams.writeItemList(
                 new ListElement(Word.ADD_DIR,
                                 new ListElement(this.getPath(),
                                                 _parentToken, this.getToken(),
-                                                new ListElement())));
-        this.writeAllProperties(_streams, Word.CHANGE_DIR_PROP);*/
-throw new Error("not implemented!!");
+                                                new ListElement(this.getCopiedPath(),
+                                                                this.getCopiedRevision()))));
+        this.writeAllProperties(_streams, Word.CHANGE_DIR_PROP);
     }
 }
@@ -130,4 +130,15 @@ public class DeltaDirectoryOpen
                                                         : new ListElement(this.revision))));
         this.writeAllProperties(_streams, Word.CHANGE_DIR_PROP);
     }
+
+    /**
+     * Returns the revision of the directory to open.
+     *
+     * @return revision (or <code>null</code> if not defined)
+     * @see #revision
+     */
+    public Long getRevision()
+    {
+        return this.revision;
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api.editorcommands;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import com.googlecode.jsvnserve.SVNSessionStreams;
+import com.googlecode.jsvnserve.element.WordElement.Word;
+import com.googlecode.jsvnserve.util.Server2Client;
+
+/**
+ * Represents a file which is added as copy of another file (e.g. within a
+ * replayed revision). The copy source is written with the add of the file,
+ * so that the SVN client (e.g. <code>svnsync</code>) keeps the copy history.
+ * The content is written as delta against the copy source if the MD5
+ * checksum of the copy source is {@link #setBaseCheckSumMD5(String) defined},
+ * otherwise as complete content.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see IDeltaEditor#addFile(String, String, String, Long)
+ */
+public class DeltaFileCopy
+        extends AbstractDeltaFile
+{
+    /**
+     * Serial version UID of this delta class.
+     */
+    private static final long serialVersionUID = -2761846405527318092L;
+
+    /**
+     * Path of the file on the server. Used to get the input stream which is
+     * sent to the client.
+     */
+    private final String serverPath;
+
+    /**
+     * @param _token            used token of the file
+     * @param _path             path of the file used on the client side
+     * @param _serverPath       path of the file on the server (to get the
+     *                          input stream of the file)
+     * @param _copiedPath       path from which the file is copied (absolute
+     *                          to the repository path)
+     * @param _copiedRevision   revision from which the file is copied
+     */
+    DeltaFileCopy(final String _token,
+                  final String _path,
+                  final String _serverPath,
+                  final String _copiedPath,
+                  final long _copiedRevision)
+    {
+        super(_token, _path, _copiedPath, _copiedRevision);
+        this.serverPath = _serverPath;
+    }
+
+    /**
+     * Writes the add of the file with the copy source, the properties and
+     * the content of the file.
+     *
+     * @param _targetRevision   target revision for which the the SVN editor
+     *                          commands must be written; used for the revision
+     *                          of the file (to get the input stream from the
+     *                          repository)
+     * @param _streams          SVN in- and output stream
+     * @param _parentToken      token of the parent directory
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     * @see AbstractDeltaFile#writeOpen(SVNSessionStreams, String, Word, long, String)
+     */
+    @Override
+    @Server2Client
+    protected void writeOpen(final long _targetRevision,
+                             final SVNSessionStreams _streams,
+                             final String _parentToken)
+            throws UnsupportedEncodingException, IOException
+    {
+        this.writeOpen(_streams,
+                       _parentToken,
+                       Word.ADD_FILE,
+                       _targetRevision,
+                       this.serverPath);
+    }
+
+    /**
+     * The close tag is already written in
+     * {@link #writeOpen(long, SVNSessionStreams, String)} (because the close
+     * tag includes the MD5 checksum of the written content).
+     *
+     * @param _streams          SVN in- and output stream
+     */
+    @Override
+    @Server2Client
+    protected void writeClose(final SVNSessionStreams _streams)
+    {
+    }
+
+    /**
+     * Returns the path of the file on the server.
+     *
+     * @return server path of the file
+     * @see #serverPath
+     */
+    public String getServerPath()
+    {
+        return this.serverPath;
+    }
+}
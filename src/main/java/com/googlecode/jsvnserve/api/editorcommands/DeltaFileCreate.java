@@ -89,7 +89,7 @@ public class DeltaFileCreate
      * @param _parentToken      token of the parent directory
      * @throws UnsupportedEncodingException
      * @throws IOException
-     * @see AbstractDeltaFile#writeOpen(long, SVNSessionStreams, String, Word, java.io.InputStream, java.io.InputStream)
+     * @see AbstractDeltaFile#writeOpen(SVNSessionStreams, String, Word, long, String)
      */
     @Override
     @Server2Client
@@ -101,7 +101,8 @@ public class DeltaFileCreate
         this.writeOpen(_streams,
                        _parentToken,
                        Word.ADD_FILE,
-                       _streams.getSession().getRepository().getFile(_targetRevision, this.serverPath));
+                       _targetRevision,
+                       this.serverPath);
     }
 
     /**
@@ -118,4 +119,15 @@ public class DeltaFileCreate
     protected void writeClose(final SVNSessionStreams _streams)
     {
     }
+
+    /**
+     * Returns the path of the file on the server.
+     *
+     * @return server path of the file
+     * @see #serverPath
+     */
+    public String getServerPath()
+    {
+        return this.serverPath;
+    }
 }
\ No newline at end of file
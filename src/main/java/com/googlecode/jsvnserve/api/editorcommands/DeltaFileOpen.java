@@ -86,7 +86,8 @@ public class DeltaFileOpen
                 _streams,
                 _parentToken,
                 Word.OPEN_FILE,
-                _streams.getSession().getRepository().getFile(_targetRevision, this.serverPath));
+                _targetRevision,
+                this.serverPath);
     }
 
     /**
@@ -103,4 +104,15 @@ public class DeltaFileOpen
     protected void writeClose(final SVNSessionStreams _streams)
     {
     }
+
+    /**
+     * Returns the path of the file on the server.
+     *
+     * @return server path of the file
+     * @see #serverPath
+     */
+    public String getServerPath()
+    {
+        return this.serverPath;
+    }
 }
@@ -118,4 +118,15 @@ public class DeltaRootOpen
                                                 this.getToken())));
         this.writeAllProperties(_streams, Word.CHANGE_DIR_PROP);
     }
+
+    /**
+     * Returns the revision of the root directory to open.
+     *
+     * @return revision (or <code>null</code> if not defined)
+     * @see #revision
+     */
+    public Long getRevision()
+    {
+        return this.revision;
+    }
 }
@@ -240,8 +240,11 @@ public class EditorCommandSet
      * @throws IOException
      * @throws URISyntaxException   if for copied directories or files the
      *                              copied path could not parsed
-     * @throws ServerException      if the client has aborted or if an unknown
-     *                              key from client was sent
+     * @throws ServerException      if the client has aborted, if an unknown
+     *                              key from client was sent or if a text delta
+     *                              could not be applied (e.g. wrong checksum);
+     *                              the exception is thrown after all editor
+     *                              commands are read
      */
     @Client2Server
     public void read(final SVNSessionStreams _streams)
@@ -250,99 +253,111 @@ public class EditorCommandSet
         boolean closed = false;
         boolean aborted = false;
         final Set<String> unknownCommands = new TreeSet<String>();
+        ServerException exception = null;
         while (!closed)  {
             final ListElement list = _streams.readItemList();
             final Word key = list.getList().get(0).getWord();
             final List<AbstractElement<?>> params = list.getList().get(1).getList();
-            switch (key)  {
-                case OPEN_ROOT:
-                    this.addDelta(new DeltaRootOpen(params));
-                    break;
-                case DELETE_ENTRY:
-                    this.addDelta(new DeltaDelete(params));
-                    break;
-                case ADD_DIR:
-                    final String dirPath = params.get(0).getString();
-                    final String dirToken = params.get(2).getString();
-                    final List<AbstractElement<?>> copyList = params.get(3).getList();
-                    // new directory
-                    if (copyList.isEmpty())  {
-                        this.addDelta(new DeltaDirectoryCreate(dirToken, dirPath));
-                    // directory is copied
-                    } else  {
-                        final String copyPath = _streams.getSession().extractPathFromURL(copyList.get(0).getString());
-                        final long copyRevision = copyList.get(1).getNumber();
-                        this.addDelta(new DeltaDirectoryCopy(dirToken, dirPath, copyPath, copyRevision));
-                    }
-                    break;
-                case OPEN_DIR:
-                    this.addDelta(new DeltaDirectoryOpen(params));
-                    break;
-                case CHANGE_DIR_PROP:
-                    final String cdpToken = params.get(0).getString();
-                    final AbstractDelta cdpDelta = this.mapToken2Delta.get(cdpToken);
-                    cdpDelta.put(params.get(1).getString(),
-                                 params.get(2).getList().get(0).getString());
-                    break;
-                case CLOSE_DIR:
-                    break;
-                case ADD_FILE:
-                    this.addDelta(new DeltaFileCreate(params.get(2).getString(),
-                                                      params.get(0).getString()));
-                    break;
-                case OPEN_FILE:
-                    this.addDelta(new DeltaFileOpen(params.get(2).getString(),
-                                                    params.get(0).getString(),
-                                                    params.get(0).getString(),
-                                                    params.get(3).getList().get(0).getNumber()));
-                    break;
-                case APPLY_TEXTDELTA:
-                    final String apToken = params.get(0).getString();
-                    final List<AbstractElement<?>> baseMD5List = params.get(1).getList();
-                    final String baseMD5 = baseMD5List.isEmpty() ? null : baseMD5List.get(0).getString();
-                    final AbstractDeltaFile apDelta = (AbstractDeltaFile) this.mapToken2Delta.get(apToken);
-                    apDelta.applyTextDelta(_streams, baseMD5);
-                    break;
-                case TEXTDELTA_CHUNK:
-                    final String tcToken = params.get(0).getString();
-                    final byte[] tcBuffer = params.get(1).getByteArray();
-                    final AbstractDeltaFile tcDelta = (AbstractDeltaFile) this.mapToken2Delta.get(tcToken);
-                    tcDelta.textDeltaChunk(tcBuffer);
-                    break;
-                case TEXTDELTA_END:
-                    final String teToken = params.get(0).getString();
-                    final AbstractDeltaFile teDelta = (AbstractDeltaFile) this.mapToken2Delta.get(teToken);
-                    teDelta.textDeltaEnd();
-                    break;
-                case CHANGE_FILE_PROP:
-                    final String cfpToken = params.get(0).getString();
-                    final AbstractDelta cfpDelta = this.mapToken2Delta.get(cfpToken);
-                    cfpDelta.put(params.get(1).getString(),
-                                 params.get(2).getList().get(0).getString());
-                    break;
-                case CLOSE_FILE:
-                    final String cfToken = params.get(0).getString();
-                    final String cfMD5;
-                    if ((params.size() > 1) && (params.get(1).getList().size() > 0))  {
-                        cfMD5 = params.get(1).getList().get(0).getString();
-                    } else  {
-                        cfMD5 = null;
-                    }
-                    final AbstractDeltaFile cfDelta = (AbstractDeltaFile) this.mapToken2Delta.get(cfToken);
-                    cfDelta.closeFile(cfMD5);
-                    break;
-                case ABORT_EDIT:
-                    closed = true;
-                    aborted = true;
-                    break;
-                case CLOSE_EDIT:
-                    closed = true;
-                    break;
-                default:
-                    unknownCommands.add(key.value);
+            try  {
+                switch (key)  {
+                    case OPEN_ROOT:
+                        this.addDelta(new DeltaRootOpen(params));
+                        break;
+                    case DELETE_ENTRY:
+                        this.addDelta(new DeltaDelete(params));
+                        break;
+                    case ADD_DIR:
+                        final String dirPath = params.get(0).getString();
+                        final String dirToken = params.get(2).getString();
+                        final List<AbstractElement<?>> copyList = params.get(3).getList();
+                        // new directory
+                        if (copyList.isEmpty())  {
+                            this.addDelta(new DeltaDirectoryCreate(dirToken, dirPath));
+                        // directory is copied
+                        } else  {
+                            final String copyPath = _streams.getSession().extractPathFromURL(copyList.get(0).getString());
+                            final long copyRevision = copyList.get(1).getNumber();
+                            this.addDelta(new DeltaDirectoryCopy(dirToken, dirPath, copyPath, copyRevision));
+                        }
+                        break;
+                    case OPEN_DIR:
+                        this.addDelta(new DeltaDirectoryOpen(params));
+                        break;
+                    case CHANGE_DIR_PROP:
+                        final String cdpToken = params.get(0).getString();
+                        final AbstractDelta cdpDelta = this.mapToken2Delta.get(cdpToken);
+                        cdpDelta.put(params.get(1).getString(),
+                                     params.get(2).getList().get(0).getString());
+                        break;
+                    case CLOSE_DIR:
+                        break;
+                    case ADD_FILE:
+                        this.addDelta(new DeltaFileCreate(params.get(2).getString(),
+                                                          params.get(0).getString()));
+                        break;
+                    case OPEN_FILE:
+                        this.addDelta(new DeltaFileOpen(params.get(2).getString(),
+                                                        params.get(0).getString(),
+                                                        params.get(0).getString(),
+                                                        params.get(3).getList().get(0).getNumber()));
+                        break;
+                    case APPLY_TEXTDELTA:
+                        final String apToken = params.get(0).getString();
+                        final List<AbstractElement<?>> baseMD5List = params.get(1).getList();
+                        final String baseMD5 = baseMD5List.isEmpty() ? null : baseMD5List.get(0).getString();
+                        final AbstractDeltaFile apDelta = (AbstractDeltaFile) this.mapToken2Delta.get(apToken);
+                        apDelta.applyTextDelta(_streams, baseMD5);
+                        break;
+                    case TEXTDELTA_CHUNK:
+                        final String tcToken = params.get(0).getString();
+                        final byte[] tcBuffer = params.get(1).getByteArray();
+                        final AbstractDeltaFile tcDelta = (AbstractDeltaFile) this.mapToken2Delta.get(tcToken);
+                        tcDelta.textDeltaChunk(tcBuffer);
+                        break;
+                    case TEXTDELTA_END:
+                        final String teToken = params.get(0).getString();
+                        final AbstractDeltaFile teDelta = (AbstractDeltaFile) this.mapToken2Delta.get(teToken);
+                        teDelta.textDeltaEnd();
+                        break;
+                    case CHANGE_FILE_PROP:
+                        final String cfpToken = params.get(0).getString();
+                        final AbstractDelta cfpDelta = this.mapToken2Delta.get(cfpToken);
+                        cfpDelta.put(params.get(1).getString(),
+                                     params.get(2).getList().get(0).getString());
+                        break;
+                    case CLOSE_FILE:
+                        final String cfToken = params.get(0).getString();
+                        final String cfMD5;
+                        if ((params.size() > 1) && (params.get(1).getList().size() > 0))  {
+                            cfMD5 = params.get(1).getList().get(0).getString();
+                        } else  {
+                            cfMD5 = null;
+                        }
+                        final AbstractDeltaFile cfDelta = (AbstractDeltaFile) this.mapToken2Delta.get(cfToken);
+                        cfDelta.closeFile(cfMD5);
+                        break;
+                    case ABORT_EDIT:
+                        closed = true;
+                        aborted = true;
+                        break;
+                    case CLOSE_EDIT:
+                        closed = true;
+                        break;
+                    default:
+                        unknownCommands.add(key.value);
+                }
+            } catch (final ServerException ex)  {
+                // the rest of the editor commands must be read anyway
+                if (exception == null)  {
+                    exception = ex;
+                }
             }
         }
 
+        if (exception != null)  {
+            throw exception;
+        }
+
         if (!unknownCommands.isEmpty())  {
 // TODO: i18n
 throw new ServerException("Unknown command(s) " + unknownCommands);
@@ -363,41 +378,103 @@ throw new ServerException("Unknown command(s) " + unknownCommands);
     }
 
     /**
+     * Writes this editor command set to the SVN client.
      *
      * @param _streams      SVN server session streams
      * @throws UnsupportedEncodingException
      * @throws IOException
+     * @see #write(IDeltaEditor)
+     * @see EditorCommandWriter
      */
     @Server2Client
     public void write(final SVNSessionStreams _streams)
             throws UnsupportedEncodingException, IOException
     {
-        _streams.writeItemList(new ListElement(Word.TARGET_REV, new ListElement(getTargetRevision())));
+        this.write(new EditorCommandWriter(_streams));
+    }
+
+    /**
+     * Replays this editor command set on given delta editor. The deltas are
+     * sorted by their path, so that the parent directory of each delta is
+     * opened before the delta itself.
+     *
+     * @param _editor   delta editor on which the commands are replayed
+     * @throws IOException if the delta editor failed
+     */
+    @Server2Client
+    public void write(final IDeltaEditor _editor)
+            throws IOException
+    {
+        _editor.targetRevision(this.targetRevision);
 
         final Stack<AbstractDelta> stack = new Stack<AbstractDelta>();
         for (final AbstractDelta delta : getDeltas())  {
-            final String parentToken;
-            if (stack.isEmpty())  {
-                parentToken = null;
-            } else  {
+            if (!stack.isEmpty())  {
                 final File file = new File(delta.getPath());
                 final String parentDir = (file.getParent() == null) ? "" : file.getParent();
 
-                while (!stack.peek().getPath().equals(parentDir)/* && (stack.size() > 1)*/)  {
-                    stack.pop().writeClose(_streams);
+                while (!stack.peek().getPath().equals(parentDir))  {
+                    this.replayClose(_editor, stack.pop());
                 }
-
-                parentToken = stack.peek().getToken();
             }
 
             stack.add(delta);
-            delta.writeOpen(this.targetRevision, _streams, parentToken);
+            if (delta instanceof DeltaRootOpen)  {
+                _editor.openRoot(((DeltaRootOpen) delta).getRevision());
+            } else if (delta instanceof DeltaDirectoryOpen)  {
+                _editor.openDir(delta.getPath(), ((DeltaDirectoryOpen) delta).getRevision());
+            } else if (delta instanceof AbstractDeltaDirectory)  {
+                _editor.addDir(delta.getPath(), delta.getCopiedPath(), delta.getCopiedRevision());
+            } else if (delta instanceof DeltaFileOpen)  {
+                _editor.openFile(delta.getPath(),
+                                 ((DeltaFileOpen) delta).getBaseRevision(),
+                                 ((DeltaFileOpen) delta).getServerPath());
+            } else if (delta instanceof DeltaFileCreate)  {
+                _editor.addFile(delta.getPath(), ((DeltaFileCreate) delta).getServerPath(), null, null);
+            } else if (delta instanceof DeltaFileCopy)  {
+                _editor.addFile(delta.getPath(),
+                                ((DeltaFileCopy) delta).getServerPath(),
+                                delta.getCopiedPath(),
+                                delta.getCopiedRevision());
+            } else if (delta instanceof DeltaDelete)  {
+                _editor.deleteEntry(delta.getPath(), ((DeltaDelete) delta).getRevision());
+            }
+
+            if (delta instanceof AbstractDeltaFile)  {
+                _editor.applyTextDelta(((AbstractDeltaFile) delta).getBaseCheckSumMD5());
+                for (final Map.Entry<String,String> property : delta.entrySet())  {
+                    _editor.changeFileProperty(property.getKey(), property.getValue());
+                }
+            } else if (!(delta instanceof DeltaDelete))  {
+                for (final Map.Entry<String,String> property : delta.entrySet())  {
+                    _editor.changeDirProperty(property.getKey(), property.getValue());
+                }
+            }
         }
 
         while (!stack.empty())  {
-            stack.pop().writeClose(_streams);
+            this.replayClose(_editor, stack.pop());
         }
 
-        _streams.writeItemList(new ListElement(Word.CLOSE_EDIT, new ListElement()));
+        _editor.closeEdit();
+    }
+
+    /**
+     * Closes given delta on the delta editor.
+     *
+     * @param _editor   delta editor
+     * @param _delta    delta to close
+     * @throws IOException if the delta editor failed
+     * @see #write(IDeltaEditor)
+     */
+    private void replayClose(final IDeltaEditor _editor,
+                             final AbstractDelta _delta)
+            throws IOException
+    {
+        if (_delta instanceof AbstractDeltaFile)  {
+            _editor.closeFile(null);
+        } else if (!(_delta instanceof DeltaDelete))  {
+            _editor.closeDir();
+        }
     }
 }
@@ -0,0 +1,598 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api.editorcommands;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.Stack;
+
+import com.googlecode.jsvnserve.SVNSessionStreams;
+import com.googlecode.jsvnserve.element.ListElement;
+import com.googlecode.jsvnserve.element.WordElement.Word;
+import com.googlecode.jsvnserve.util.Server2Client;
+
+/**
+ * Writes the calls of the {@link IDeltaEditor} directly as editor commands to
+ * the SVN client. Only the currently opened directories and the currently
+ * opened file are hold in the memory, so the memory used for an update is
+ * independent of the size of the tree.
+ *
+ * <p>If the session defines a {@link com.googlecode.jsvnserve.SVNServerSession#getDeltaLookAhead()
+ * delta look-ahead}, the deltas of the closed files are computed in advance
+ * by the delta executor of the session. All commands after such a file are
+ * {@link #queue queued} until the delta of the file is written, so that the
+ * order of the editor commands is not changed. If more files than the
+ * look-ahead are queued, the writer waits for the delta of the first queued
+ * file.</p>
+ *
+ * <p>For a replay of a revision the writer is created with the replayed
+ * revision: no target revision is written and the edit is finished with
+ * <code>finish-replay</code> instead of <code>close-edit</code>.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+@Server2Client
+public class EditorCommandWriter
+        implements IDeltaEditor
+{
+    /**
+     * SVN session streams to which the editor commands are written.
+     */
+    private final SVNSessionStreams streams;
+
+    /**
+     * Stack of all opened directories.
+     *
+     * @see #openDirectory(AbstractDelta)
+     * @see #closeDir()
+     */
+    private final Stack<AbstractDelta> openedDirs = new Stack<AbstractDelta>();
+
+    /**
+     * Last opened directory which is not written yet. The open of a directory
+     * is written if the next command for another entry is written, so that
+     * all properties changed directly after the open are written together
+     * with the open.
+     *
+     * @see #flushPendingDirectory()
+     */
+    private AbstractDelta pendingDir;
+
+    /**
+     * Token of the parent directory of {@link #pendingDir}.
+     */
+    private String pendingDirParentToken;
+
+    /**
+     * Currently opened file. The file is written if the file is closed,
+     * because the properties must be known before the content is written.
+     *
+     * @see #closeFile(String)
+     */
+    private AbstractDeltaFile openedFile;
+
+    /**
+     * Token of the parent directory of {@link #openedFile}.
+     */
+    private String openedFileParentToken;
+
+    /**
+     * Target revision of the editor.
+     *
+     * @see #targetRevision(long)
+     */
+    private long targetRevision = -1;
+
+    /**
+     * Current token index used to give each directory and file a specific
+     * token.
+     *
+     * @see #getNewToken(char)
+     */
+    private int tokenIndex;
+
+    /**
+     * Was the target revision already written?
+     *
+     * @see #isStarted()
+     */
+    private boolean started;
+
+    /**
+     * Was the edit closed or aborted?
+     *
+     * @see #isClosed()
+     */
+    private boolean closed;
+
+    /**
+     * Maximum count of queued files for which the deltas are computed in
+     * advance; <code>0</code> if the deltas are computed while the files are
+     * written.
+     */
+    private final int lookAhead;
+
+    /**
+     * Is the editor used for a replay?
+     *
+     * @see #EditorCommandWriter(SVNSessionStreams, long, boolean)
+     */
+    private final boolean replay;
+
+    /**
+     * Must the text deltas of the files be written? Only <i>false</i> for a
+     * replay without deltas.
+     */
+    private final boolean sendDeltas;
+
+    /**
+     * Queued writes which must be written after a file with a not yet written
+     * delta.
+     *
+     * @see #write(PendingWrite)
+     * @see #drain(boolean)
+     */
+    private final LinkedList<PendingWrite> queue = new LinkedList<PendingWrite>();
+
+    /**
+     * Count of queued files with deltas computed in advance.
+     */
+    private int preparedFiles;
+
+    /**
+     * @param _streams  SVN session streams to which the editor commands are
+     *                  written
+     */
+    public EditorCommandWriter(final SVNSessionStreams _streams)
+    {
+        this.streams = _streams;
+        this.lookAhead = _streams.getSession().getDeltaLookAhead();
+        this.replay = false;
+        this.sendDeltas = true;
+    }
+
+    /**
+     * Creates an editor for the replay of given revision.
+     *
+     * @param _streams      SVN session streams to which the editor commands
+     *                      are written
+     * @param _revision     replayed revision (used as target revision of the
+     *                      file contents)
+     * @param _sendDeltas   must the text deltas of the files be written?
+     */
+    public EditorCommandWriter(final SVNSessionStreams _streams,
+                               final long _revision,
+                               final boolean _sendDeltas)
+    {
+        this.streams = _streams;
+        this.lookAhead = _sendDeltas ? _streams.getSession().getDeltaLookAhead() : 0;
+        this.replay = true;
+        this.sendDeltas = _sendDeltas;
+        this.targetRevision = _revision;
+        this.started = true;
+    }
+
+    /**
+     * Returns a new unique token for given prefix.
+     *
+     * @param _prefix   prefix of the token ('d' for directories, 'f' for
+     *                  files)
+     * @return new token
+     */
+    private String getNewToken(final char _prefix)
+    {
+        return new StringBuilder().append(_prefix).append(++this.tokenIndex).toString();
+    }
+
+    /**
+     * Writes the target revision. For a replay the target revision is
+     * ignored (the replayed revision is used).
+     *
+     * @param _targetRevision   target revision
+     */
+    public void targetRevision(final long _targetRevision)
+            throws IOException
+    {
+        if (!this.replay)  {
+            this.targetRevision = _targetRevision;
+            this.started = true;
+            this.streams.writeItemList(new ListElement(Word.TARGET_REV, new ListElement(_targetRevision)));
+        }
+    }
+
+    public void openRoot(final Long _revision)
+            throws IOException
+    {
+        this.openDirectory(new DeltaRootOpen(this.getNewToken('d'), _revision));
+    }
+
+    public void addDir(final String _path,
+                       final String _copiedPath,
+                       final Long _copiedRevision)
+            throws IOException
+    {
+        if ((_copiedPath != null) && (_copiedRevision != null))  {
+            this.openDirectory(new DeltaDirectoryCopy(this.getNewToken('d'), _path, _copiedPath, _copiedRevision));
+        } else  {
+            this.openDirectory(new DeltaDirectoryCreate(this.getNewToken('d'), _path));
+        }
+    }
+
+    public void openDir(final String _path,
+                        final Long _revision)
+            throws IOException
+    {
+        this.openDirectory(new DeltaDirectoryOpen(this.getNewToken('d'), _path, _revision));
+    }
+
+    /**
+     * If the directory is not written, the property is stored and written
+     * together with the open of the directory. Otherwise the property is
+     * written directly.
+     *
+     * @param _key      key of the property
+     * @param _value    new value of the property
+     */
+    public void changeDirProperty(final String _key,
+                                  final String _value)
+            throws IOException
+    {
+        final AbstractDelta dir = this.openedDirs.peek();
+        if (dir == this.pendingDir)  {
+            dir.put(_key, _value);
+        } else  {
+            this.write(new PendingWrite(PendingWrite.Kind.PROPERTY, dir, null, _key, _value));
+        }
+    }
+
+    public void closeDir()
+            throws IOException
+    {
+        this.flushPendingDirectory();
+        this.write(new PendingWrite(PendingWrite.Kind.CLOSE, this.openedDirs.pop(), null, null, null));
+    }
+
+    public void addFile(final String _path,
+                        final String _serverPath,
+                        final String _copiedPath,
+                        final Long _copiedRevision)
+            throws IOException
+    {
+        if ((_copiedPath != null) && (_copiedRevision != null))  {
+            this.openFile(new DeltaFileCopy(this.getNewToken('f'), _path, _serverPath, _copiedPath, _copiedRevision));
+        } else  {
+            this.openFile(new DeltaFileCreate(this.getNewToken('f'), _path, _serverPath));
+        }
+    }
+
+    public void openFile(final String _path,
+                         final Long _revision,
+                         final String _serverPath)
+            throws IOException
+    {
+        this.openFile(new DeltaFileOpen(this.getNewToken('f'), _path, _serverPath, _revision));
+    }
+
+    public void applyTextDelta(final String _baseCheckSumMD5)
+    {
+        this.openedFile.setBaseCheckSumMD5(_baseCheckSumMD5);
+    }
+
+    public void changeFileProperty(final String _key,
+                                   final String _value)
+    {
+        this.openedFile.put(_key, _value);
+    }
+
+    /**
+     * Writes current opened file including properties and the content. If a
+     * delta look-ahead is defined, the delta of the file is computed in
+     * advance and the file is queued.
+     *
+     * @param _textCheckSumMD5  not used, because the checksum is calculated
+     *                          while the content is written
+     */
+    public void closeFile(final String _textCheckSumMD5)
+            throws IOException
+    {
+        final AbstractDeltaFile file = this.openedFile;
+        this.openedFile = null;
+        if (this.lookAhead > 0)  {
+            file.prepareDelta(this.streams, this.targetRevision);
+        }
+        this.write(new PendingWrite(PendingWrite.Kind.OPEN, file, this.openedFileParentToken, null, null));
+        this.write(new PendingWrite(PendingWrite.Kind.CLOSE, file, null, null, null));
+    }
+
+    public void deleteEntry(final String _path,
+                            final Long _revision)
+            throws IOException
+    {
+        this.flushPendingDirectory();
+        this.write(new PendingWrite(PendingWrite.Kind.OPEN,
+                                    new DeltaDelete(_path, _revision),
+                                    this.openedDirs.peek().getToken(),
+                                    null,
+                                    null));
+    }
+
+    /**
+     * Closes all still opened directories, writes all queued commands and
+     * the close of the edit (or the finish of the replay).
+     */
+    public void closeEdit()
+            throws IOException
+    {
+        this.flushPendingDirectory();
+        while (!this.openedDirs.isEmpty())  {
+            this.write(new PendingWrite(PendingWrite.Kind.CLOSE, this.openedDirs.pop(), null, null, null));
+        }
+        this.drain(true);
+        this.closed = true;
+        this.streams.writeItemList(new ListElement(this.replay ? Word.FINISH_REPLAY : Word.CLOSE_EDIT,
+                                                   new ListElement()));
+    }
+
+    /**
+     * Writes all queued commands (so that the deltas computed in advance are
+     * finished) and the abort of the edit.
+     */
+    public void abortEdit()
+            throws IOException
+    {
+        this.drain(true);
+        this.pendingDir = null;
+        this.openedFile = null;
+        this.openedDirs.clear();
+        this.closed = true;
+        this.streams.writeItemList(new ListElement(Word.ABORT_EDIT, new ListElement()));
+    }
+
+    /**
+     * Returns <i>true</i> if the target revision was already written.
+     *
+     * @return <i>true</i> if the edit is started; otherwise <i>false</i>
+     * @see #started
+     */
+    public boolean isStarted()
+    {
+        return this.started;
+    }
+
+    /**
+     * Returns <i>true</i> if the edit was closed or aborted.
+     *
+     * @return <i>true</i> if the edit is closed; otherwise <i>false</i>
+     * @see #closed
+     */
+    public boolean isClosed()
+    {
+        return this.closed;
+    }
+
+    /**
+     * Opens given directory delta. The open is not written directly, see
+     * {@link #pendingDir}.
+     *
+     * @param _dir  directory delta to open
+     * @throws IOException if the pending directory could not be written
+     */
+    protected void openDirectory(final AbstractDelta _dir)
+            throws IOException
+    {
+        this.flushPendingDirectory();
+        this.pendingDirParentToken = this.openedDirs.isEmpty() ? null : this.openedDirs.peek().getToken();
+        this.pendingDir = _dir;
+        this.openedDirs.push(_dir);
+    }
+
+    /**
+     * Opens given file delta. The file is written if the file is closed.
+     *
+     * @param _file     file delta to open
+     * @throws IOException if the pending directory could not be written
+     */
+    protected void openFile(final AbstractDeltaFile _file)
+            throws IOException
+    {
+        this.flushPendingDirectory();
+        this.openedFileParentToken = this.openedDirs.peek().getToken();
+        this.openedFile = _file;
+        this.openedFile.setSendTextDelta(this.sendDeltas);
+    }
+
+    /**
+     * Writes the {@link #pendingDir pending directory} (if exists).
+     *
+     * @throws IOException if the directory could not be written
+     */
+    protected void flushPendingDirectory()
+            throws IOException
+    {
+        if (this.pendingDir != null)  {
+            final AbstractDelta dir = this.pendingDir;
+            this.pendingDir = null;
+            this.write(new PendingWrite(PendingWrite.Kind.OPEN, dir, this.pendingDirParentToken, null, null));
+        }
+    }
+
+    /**
+     * Writes given command directly if no command is queued and the command
+     * is not a file with a delta computed in advance; otherwise the command
+     * is queued. Afterwards all queued commands which could be written
+     * without waiting are written.
+     *
+     * @param _write    command to write
+     * @throws IOException if the command could not be written
+     * @see #queue
+     */
+    private void write(final PendingWrite _write)
+            throws IOException
+    {
+        if (this.queue.isEmpty() && !_write.isPrepared())  {
+            _write.writeTo(this.streams, this.targetRevision);
+        } else  {
+            this.queue.add(_write);
+            if (_write.isPrepared())  {
+                this.preparedFiles++;
+            }
+            this.drain(false);
+        }
+    }
+
+    /**
+     * Writes the queued commands in the queued order. A file with a delta
+     * computed in advance is only written if the delta is already computed,
+     * if more files than the {@link #lookAhead} are queued or if all
+     * commands must be written.
+     *
+     * @param _all  <i>true</i> if all queued commands must be written
+     * @throws IOException if a command could not be written
+     * @see #queue
+     */
+    private void drain(final boolean _all)
+            throws IOException
+    {
+        while (!this.queue.isEmpty())  {
+            final PendingWrite head = this.queue.getFirst();
+            if (head.isPrepared())  {
+                if (!_all && (this.preparedFiles <= this.lookAhead) && !head.isDeltaPrepared())  {
+                    break;
+                }
+                this.preparedFiles--;
+            }
+            this.queue.removeFirst();
+            head.writeTo(this.streams, this.targetRevision);
+        }
+    }
+
+    /**
+     * Command of the editor which is written directly or queued.
+     */
+    private static final class PendingWrite
+    {
+        /**
+         * Kind of the command.
+         */
+        enum Kind
+        {
+            /** Open (or add, delete) of a delta. */
+            OPEN,
+            /** Close of a delta. */
+            CLOSE,
+            /** Changed property of a directory. */
+            PROPERTY
+        }
+
+        /**
+         * Kind of the command.
+         */
+        private final Kind kind;
+
+        /**
+         * Delta of the command.
+         */
+        private final AbstractDelta delta;
+
+        /**
+         * Token of the parent directory (for opens).
+         */
+        private final String parentToken;
+
+        /**
+         * Key of the changed property.
+         */
+        private final String key;
+
+        /**
+         * Value of the changed property.
+         */
+        private final String value;
+
+        /**
+         * @param _kind         kind of the command
+         * @param _delta        delta of the command
+         * @param _parentToken  token of the parent directory (for opens)
+         * @param _key          key of the changed property (for properties)
+         * @param _value        value of the changed property (for properties)
+         */
+        PendingWrite(final Kind _kind,
+                     final AbstractDelta _delta,
+                     final String _parentToken,
+                     final String _key,
+                     final String _value)
+        {
+            this.kind = _kind;
+            this.delta = _delta;
+            this.parentToken = _parentToken;
+            this.key = _key;
+            this.value = _value;
+        }
+
+        /**
+         * Checks if the command writes a file with a delta computed in
+         * advance.
+         *
+         * @return <i>true</i> if the command writes a prepared file
+         */
+        boolean isPrepared()
+        {
+            return (this.kind == Kind.OPEN)
+                    && (this.delta instanceof AbstractDeltaFile)
+                    && ((AbstractDeltaFile) this.delta).hasPreparedDelta();
+        }
+
+        /**
+         * Checks if the delta of the written file is already computed.
+         *
+         * @return <i>true</i> if the delta is computed
+         */
+        boolean isDeltaPrepared()
+        {
+            return ((AbstractDeltaFile) this.delta).isDeltaPrepared();
+        }
+
+        /**
+         * Writes the command.
+         *
+         * @param _streams          SVN session streams
+         * @param _targetRevision   target revision of the editor
+         * @throws IOException if the command could not be written
+         */
+        void writeTo(final SVNSessionStreams _streams,
+                     final long _targetRevision)
+                throws IOException
+        {
+            switch (this.kind)  {
+                case OPEN:
+                    this.delta.writeOpen(_targetRevision, _streams, this.parentToken);
+                    break;
+                case CLOSE:
+                    this.delta.writeClose(_streams);
+                    break;
+                case PROPERTY:
+                    this.delta.writeProperty(_streams, Word.CHANGE_DIR_PROP, this.key, this.value);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api.editorcommands;
+
+import java.io.IOException;
+
+import com.googlecode.jsvnserve.api.CommitInfo;
+import com.googlecode.jsvnserve.api.ServerException;
+import com.googlecode.jsvnserve.util.Client2Server;
+
+/**
+ * <p>Push-style editor used by a repository to receive a commit while the
+ * editor commands are read from the SVN client (instead of buffering the
+ * complete commit within an {@link EditorCommandSet}). Each call is done
+ * directly after the related editor command is read, so the repository could
+ * build the transaction while the commit is received. The calls are done in
+ * the order of the SVN client (depth first):</p>
+ *
+ * <ul>
+ * <li>{@link #openRoot(Long)} (once, first call)</li>
+ * <li>for each entry of a directory: {@link #openDir(String, Long)},
+ *     {@link #addDir(String, String, Long)},
+ *     {@link #openFile(String, Long)},
+ *     {@link #addFile(String, String, Long)} or
+ *     {@link #deleteEntry(String, Long)}; opened directories are closed with
+ *     {@link #closeDir(String)}, opened files with
+ *     {@link #closeFile(String, String)}</li>
+ * <li>the content of a file is changed with
+ *     {@link #applyTextDelta(String, String)}, followed by
+ *     {@link #textDeltaChunk(String, byte[])} for each chunk of the svndiff
+ *     stream and {@link #textDeltaEnd(String)}</li>
+ * <li>{@link #closeEdit()} (once, last call) or {@link #abortEdit()}</li>
+ * </ul>
+ *
+ * <p>All paths are relative to the repository location of the session. If a
+ * method throws an exception, the commit is aborted: {@link #abortEdit()} is
+ * called and the rest of the editor commands from the SVN client are
+ * skipped.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see com.googlecode.jsvnserve.api.IStreamingCommit
+ * @see CommitEditorReader
+ */
+@Client2Server
+public interface ICommitEditor
+{
+    /**
+     * Opens the root directory of the commit.
+     *
+     * @param _revision     base revision of the root directory or
+     *                      <code>null</code> if not defined
+     * @throws ServerException if the root directory could not be opened
+     */
+    void openRoot(final Long _revision)
+            throws ServerException;
+
+    /**
+     * Deletes an entry.
+     *
+     * @param _path         path of the entry to delete
+     * @param _revision     base revision of the entry or <code>null</code>
+     * @throws ServerException if the entry could not be deleted (e.g. if the
+     *                         entry is out of date)
+     */
+    void deleteEntry(final String _path,
+                     final Long _revision)
+            throws ServerException;
+
+    /**
+     * Adds a new directory.
+     *
+     * @param _path             path of the new directory
+     * @param _copiedPath       path from which the directory is copied or
+     *                          <code>null</code> if not copied
+     * @param _copiedRevision   revision from which the directory is copied or
+     *                          <code>null</code> if not copied
+     * @throws ServerException if the directory could not be added
+     */
+    void addDir(final String _path,
+                final String _copiedPath,
+                final Long _copiedRevision)
+            throws ServerException;
+
+    /**
+     * Opens an existing directory.
+     *
+     * @param _path         path of the directory
+     * @param _revision     base revision of the directory
+     * @throws ServerException if the directory could not be opened
+     */
+    void openDir(final String _path,
+                 final Long _revision)
+            throws ServerException;
+
+    /**
+     * Changes a property of an opened directory.
+     *
+     * @param _path     path of the directory
+     * @param _key      key of the property
+     * @param _value    new value of the property or <code>null</code> if the
+     *                  property is deleted
+     * @throws ServerException if the property could not be changed
+     */
+    void changeDirProperty(final String _path,
+                           final String _key,
+                           final String _value)
+            throws ServerException;
+
+    /**
+     * Closes an opened directory.
+     *
+     * @param _path     path of the directory
+     * @throws ServerException if the directory could not be closed
+     */
+    void closeDir(final String _path)
+            throws ServerException;
+
+    /**
+     * Adds a new file.
+     *
+     * @param _path             path of the new file
+     * @param _copiedPath       path from which the file is copied or
+     *                          <code>null</code> if not copied
+     * @param _copiedRevision   revision from which the file is copied or
+     *                          <code>null</code> if not copied
+     * @throws ServerException if the file could not be added
+     */
+    void addFile(final String _path,
+                 final String _copiedPath,
+                 final Long _copiedRevision)
+            throws ServerException;
+
+    /**
+     * Opens an existing file.
+     *
+     * @param _path         path of the file
+     * @param _revision     base revision of the file
+     * @throws ServerException if the file could not be opened
+     */
+    void openFile(final String _path,
+                  final Long _revision)
+            throws ServerException;
+
+    /**
+     * Starts the change of the content of an opened file.
+     *
+     * @param _path             path of the file
+     * @param _baseCheckSumMD5  MD5 checksum of the base content as known by
+     *                          the SVN client or <code>null</code>
+     * @throws ServerException if the content could not be changed (e.g. if
+     *                         the base checksum does not match)
+     */
+    void applyTextDelta(final String _path,
+                        final String _baseCheckSumMD5)
+            throws ServerException;
+
+    /**
+     * Receives the next chunk of the svndiff stream (which could be parsed
+     * e.g. with {@link org.tmatesoft.svn.core.internal.delta.SVNDeltaReader}).
+     * The first chunk starts with the svndiff header.
+     *
+     * @param _path     path of the file
+     * @param _chunk    next chunk of the svndiff stream
+     * @throws ServerException if the chunk could not be applied
+     */
+    void textDeltaChunk(final String _path,
+                        final byte[] _chunk)
+            throws ServerException;
+
+    /**
+     * Ends the change of the content of an opened file.
+     *
+     * @param _path     path of the file
+     * @throws ServerException if the content could not be stored
+     */
+    void textDeltaEnd(final String _path)
+            throws ServerException;
+
+    /**
+     * Changes a property of an opened file.
+     *
+     * @param _path     path of the file
+     * @param _key      key of the property
+     * @param _value    new value of the property or <code>null</code> if the
+     *                  property is deleted
+     * @throws ServerException if the property could not be changed
+     */
+    void changeFileProperty(final String _path,
+                            final String _key,
+                            final String _value)
+            throws ServerException;
+
+    /**
+     * Closes an opened file.
+     *
+     * @param _path             path of the file
+     * @param _textCheckSumMD5  MD5 checksum of the new content as computed by
+     *                          the SVN client or <code>null</code>
+     * @throws ServerException if the file could not be closed (e.g. if the
+     *                         checksum does not match)
+     */
+    void closeFile(final String _path,
+                   final String _textCheckSumMD5)
+            throws ServerException;
+
+    /**
+     * Closes the edit and commits the transaction.
+     *
+     * @return information about the new revision
+     * @throws ServerException if the commit failed
+     */
+    CommitInfo closeEdit()
+            throws ServerException;
+
+    /**
+     * Aborts the edit; the transaction must be discarded.
+     *
+     * @throws IOException if the transaction could not be discarded
+     */
+    void abortEdit()
+            throws IOException;
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api.editorcommands;
+
+import java.io.IOException;
+
+import com.googlecode.jsvnserve.util.Server2Client;
+
+/**
+ * <p>Push-style editor used by a repository to describe the delta of an
+ * update, status or switch. Each call is forwarded to the SVN client as soon
+ * as possible; the repository must therefore call the methods in the depth
+ * first order of the tree (like the SVN editor drive itself):</p>
+ *
+ * <ul>
+ * <li>{@link #targetRevision(long)} (once, first call)</li>
+ * <li>{@link #openRoot(Long)}</li>
+ * <li>for each entry of the directory: {@link #openDir(String, Long)},
+ *     {@link #addDir(String, String, Long)},
+ *     {@link #openFile(String, Long, String)},
+ *     {@link #addFile(String, String, String, Long)} or
+ *     {@link #deleteEntry(String, Long)}; opened directories are closed with
+ *     {@link #closeDir()}, opened files with {@link #closeFile(String)}</li>
+ * <li>{@link #closeDir()} for the root directory</li>
+ * <li>{@link #closeEdit()} (once, last call)</li>
+ * </ul>
+ *
+ * <p>Properties must be changed between the open and the close of the related
+ * directory or file. The repository UUID entry property is written
+ * automatically and must not be changed.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see EditorCommandWriter
+ * @see EditorCommandSet#write(IDeltaEditor)
+ */
+@Server2Client
+public interface IDeltaEditor
+{
+    /**
+     * Defines the target revision of the delta.
+     *
+     * @param _targetRevision   target revision
+     * @throws IOException if the target revision could not be written
+     */
+    void targetRevision(final long _targetRevision)
+            throws IOException;
+
+    /**
+     * Opens the root directory on which the operation was invoked.
+     *
+     * @param _revision     revision of the root directory; <code>null</code>
+     *                      if not defined
+     * @throws IOException if the root directory could not be written
+     */
+    void openRoot(final Long _revision)
+            throws IOException;
+
+    /**
+     * Adds a new directory within current opened directory.
+     *
+     * @param _path             path of the new directory
+     * @param _copiedPath       path from which the directory is copied
+     *                          (absolute to the repository path) or
+     *                          <code>null</code> if not copied
+     * @param _copiedRevision   revision from which the directory is copied or
+     *                          <code>null</code> if not copied
+     * @throws IOException if the new directory could not be written
+     */
+    void addDir(final String _path,
+                final String _copiedPath,
+                final Long _copiedRevision)
+            throws IOException;
+
+    /**
+     * Opens an existing directory within current opened directory.
+     *
+     * @param _path         path of the directory
+     * @param _revision     current revision of the directory or
+     *                      <code>null</code> if not known
+     * @throws IOException if the directory could not be written
+     */
+    void openDir(final String _path,
+                 final Long _revision)
+            throws IOException;
+
+    /**
+     * Changes a property of current opened directory.
+     *
+     * @param _key      key of the property
+     * @param _value    new value of the property or <code>null</code> if the
+     *                  property is deleted
+     * @throws IOException if the property could not be written
+     */
+    void changeDirProperty(final String _key,
+                           final String _value)
+            throws IOException;
+
+    /**
+     * Closes current opened directory.
+     *
+     * @throws IOException if the close could not be written
+     */
+    void closeDir()
+            throws IOException;
+
+    /**
+     * Adds a new file within current opened directory. If the file is copied
+     * (e.g. within a replayed revision), the copy source must be given, so
+     * that the SVN client keeps the copy history; the content is then written
+     * as delta against the copy source if the MD5 checksum of the copy source
+     * is defined with {@link #applyTextDelta(String)}.
+     *
+     * @param _path             path of the file (used on the client side)
+     * @param _serverPath       path of the file on the server, used to get
+     *                          the content of the file
+     * @param _copiedPath       path from which the file is copied (absolute
+     *                          to the repository path) or <code>null</code>
+     *                          if not copied
+     * @param _copiedRevision   revision from which the file is copied or
+     *                          <code>null</code> if not copied
+     * @throws IOException if the new file could not be written
+     */
+    void addFile(final String _path,
+                 final String _serverPath,
+                 final String _copiedPath,
+                 final Long _copiedRevision)
+            throws IOException;
+
+    /**
+     * Opens an existing file within current opened directory.
+     *
+     * @param _path         path of the file (used on the client side)
+     * @param _revision     current revision of the file on the client (base
+     *                      file which is updated)
+     * @param _serverPath   path of the file on the server, used to get the
+     *                      content of the file
+     * @throws IOException if the file could not be written
+     */
+    void openFile(final String _path,
+                  final Long _revision,
+                  final String _serverPath)
+            throws IOException;
+
+    /**
+     * Defines that the content of current opened file is changed.
+     *
+     * @param _baseCheckSumMD5  MD5 checksum of the base file on the client or
+     *                          <code>null</code> if not known
+     * @throws IOException if the text delta could not be prepared
+     */
+    void applyTextDelta(final String _baseCheckSumMD5)
+            throws IOException;
+
+    /**
+     * Changes a property of current opened file.
+     *
+     * @param _key      key of the property
+     * @param _value    new value of the property or <code>null</code> if the
+     *                  property is deleted
+     * @throws IOException if the property could not be written
+     */
+    void changeFileProperty(final String _key,
+                            final String _value)
+            throws IOException;
+
+    /**
+     * Closes current opened file.
+     *
+     * @param _textCheckSumMD5  MD5 checksum of the target file content as
+     *                          known by the repository or <code>null</code>
+     *                          if not known
+     * @throws IOException if the file could not be written
+     */
+    void closeFile(final String _textCheckSumMD5)
+            throws IOException;
+
+    /**
+     * Deletes an entry within current opened directory.
+     *
+     * @param _path         path of the entry to delete
+     * @param _revision     revision of the entry or <code>null</code>
+     * @throws IOException if the delete could not be written
+     */
+    void deleteEntry(final String _path,
+                     final Long _revision)
+            throws IOException;
+
+    /**
+     * Closes the edit. All directories which are not closed are closed
+     * automatically.
+     *
+     * @throws IOException if the close of the edit could not be written
+     */
+    void closeEdit()
+            throws IOException;
+
+    /**
+     * Aborts the edit.
+     *
+     * @throws IOException if the abort of the edit could not be written
+     */
+    void abortEdit()
+            throws IOException;
+}
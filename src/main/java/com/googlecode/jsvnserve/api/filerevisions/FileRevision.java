@@ -139,18 +139,23 @@ public class FileRevision
     }
 
     /**
+     * Writes the delta from the previous file revision to this file revision.
+     * The delta is taken from the delta cache if already computed.
      *
-     * @param _streams
-     * @param _previousRev
+     * @param _streams      SVN in- and output stream
+     * @param _previousRev  previous file revision or <code>null</code>
+     * @throws IOException if the delta could not be written
      */
     protected void writeFile(final SVNSessionStreams _streams,
                              final FileRevision _previousRev)
+            throws IOException
     {
         _streams.writeFileDelta(
-                (_previousRev == null)
-                        ? null
-                        : _streams.getSession().getRepository().getFile(_previousRev.revision, _previousRev.path),
-                _streams.getSession().getRepository().getFile(this.revision, this.path),
+                (_previousRev == null) ? null : Long.valueOf(_previousRev.revision),
+                (_previousRev == null) ? null : _previousRev.path,
+                null,
+                this.revision,
+                this.path,
                 new DeltaOutputStream() {
                     @Override
                     public void write(final byte _bytes[],
@@ -159,10 +164,7 @@ public class FileRevision
                     throws IOException
                     {
                         _streams.traceWrite("{}:... ", _len);
-                        _streams.writeWithoutFlush(String.valueOf(_len));
-                        _streams.writeWithoutFlush(':');
-                        _streams.writeWithoutFlush(_bytes, _offset, _len);
-                        _streams.writeWithoutFlush(' ');
+                        _streams.getOutputStream().writeString(_bytes, _offset, _len);
                     }
                 },
                 false);
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.api.properties;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+
+import com.googlecode.jsvnserve.element.ListElement;
+import com.googlecode.jsvnserve.element.StringElement;
+
+/**
+ * Immutable properties where the keys and values are already encoded as
+ * {@link StringElement string elements}. The properties are encoded only
+ * once and could be written any times (e.g. from a cache shared between all
+ * sessions) without building a new map or encoding the strings again.
+ * Properties without value are not included.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class EncodedProperties
+{
+    /**
+     * Keys of the properties (used to search a property).
+     */
+    private final String[] keys;
+
+    /**
+     * Encoded keys of the properties; same order as {@link #keys}.
+     */
+    private final StringElement[] encodedKeys;
+
+    /**
+     * Encoded values of the properties; same order as {@link #keys}.
+     */
+    private final StringElement[] encodedValues;
+
+    /**
+     * Encodes given properties.
+     *
+     * @param _properties   properties to encode
+     * @throws UnsupportedEncodingException if a property could not be encoded
+     */
+    public EncodedProperties(final Map<String,String> _properties)
+            throws UnsupportedEncodingException
+    {
+        int count = 0;
+        for (final String value : _properties.values())  {
+            if (value != null)  {
+                count++;
+            }
+        }
+        this.keys = new String[count];
+        this.encodedKeys = new StringElement[count];
+        this.encodedValues = new StringElement[count];
+        int idx = 0;
+        for (final Map.Entry<String,String> property : _properties.entrySet())  {
+            if (property.getValue() != null)  {
+                this.keys[idx] = property.getKey();
+                this.encodedKeys[idx] = new StringElement(property.getKey());
+                this.encodedValues[idx] = new StringElement(property.getValue());
+                idx++;
+            }
+        }
+    }
+
+    /**
+     * Returns the encoded value of the property with given key.
+     *
+     * @param _key  key of the property
+     * @return encoded value; <code>null</code> if the property does not
+     *         exists
+     */
+    public StringElement get(final String _key)
+    {
+        StringElement ret = null;
+        for (int idx = 0; (idx < this.keys.length) && (ret == null); idx++)  {
+            if (this.keys[idx].equals(_key))  {
+                ret = this.encodedValues[idx];
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns a new list with one list of the key and the value for each
+     * property. The encoded strings are shared with this instance.
+     *
+     * @return list of the properties
+     * @throws UnsupportedEncodingException never (all strings are encoded)
+     */
+    public ListElement toListElement()
+            throws UnsupportedEncodingException
+    {
+        final ListElement ret = new ListElement();
+        for (int idx = 0; idx < this.keys.length; idx++)  {
+            ret.add(new ListElement(this.encodedKeys[idx], this.encodedValues[idx]));
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.jsvnserve.api.IRepository;
+import com.googlecode.jsvnserve.api.IRepositoryFactory;
+import com.googlecode.jsvnserve.api.IRepositoryFactoryLifecycle;
+import com.googlecode.jsvnserve.api.ServerException;
+
+/**
+ * Repository factory which decorates the repositories of another factory
+ * with the caches shared between all sessions of the SVN server. If a
+ * changed paths index is opened, the not indexed revisions are appended in
+ * the background, so that no session waits for the initial build of the
+ * index. The changed paths indexes are shared by all users, so they are
+ * only used if a {@link #setServiceUser(String) service user} is defined;
+ * the indexes are always read with repositories of this user. The factory
+ * must be {@link #close() closed} if the SVN server is
+ * stopped. The start and stop of the SVN server are forwarded to the wrapped
+ * factory (if the wrapped factory implements
+ * {@link IRepositoryFactoryLifecycle}).
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see ContentCachingRepository
+ * @see IndexedLogRepository
+ * @see RevisionPropertiesCachingRepository
+ * @see DatedRevisionRepository
+ */
+public class CachingRepositoryFactory
+        implements IRepositoryFactory, IRepositoryFactoryLifecycle
+{
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingRepositoryFactory.class);
+
+    /**
+     * Factory which creates the repositories.
+     */
+    private final IRepositoryFactory factory;
+
+    /**
+     * Shared cache of the file contents; <code>null</code> if not cached.
+     */
+    private final ContentCache contentCache;
+
+    /**
+     * Shared cache of the revision properties; <code>null</code> if not
+     * cached.
+     */
+    private final RevisionPropertiesCache revisionPropertiesCache;
+
+    /**
+     * Directory of the changed paths indexes; <code>null</code> if the logs
+     * are not indexed.
+     */
+    private final File logIndexDirectory;
+
+    /**
+     * Name of the service user with which the shared changed paths indexes
+     * are built; <code>null</code> if not defined (the logs are then not
+     * indexed).
+     *
+     * @see #setServiceUser(String)
+     */
+    private String serviceUser;
+
+    /**
+     * Opened changed paths indexes depending on the UUID of the repository.
+     */
+    private final Map<UUID,ChangedPathsIndex> logIndexes = new HashMap<UUID,ChangedPathsIndex>();
+
+    /**
+     * Executor for the background builds of the changed paths indexes;
+     * created with the first build.
+     *
+     * @see #buildLogIndex(ChangedPathsIndex, String)
+     */
+    private ExecutorService logIndexExecutor;
+
+    /**
+     * In-memory revision date indexes depending on the UUID of the
+     * repository.
+     */
+    private final Map<UUID,DatedRevisionIndex> datedRevisionIndexes = new HashMap<UUID,DatedRevisionIndex>();
+
+    /**
+     * @param _factory          factory which creates the repositories
+     * @param _contentCache     shared cache of the file contents;
+     *                          <code>null</code> if not cached
+     */
+    public CachingRepositoryFactory(final IRepositoryFactory _factory,
+                                    final ContentCache _contentCache)
+    {
+        this(_factory, _contentCache, null);
+    }
+
+    /**
+     * @param _factory              factory which creates the repositories
+     * @param _contentCache         shared cache of the file contents;
+     *                              <code>null</code> if not cached
+     * @param _logIndexDirectory    directory of the changed paths indexes
+     *                              (journal and posting file per
+     *                              repository UUID);
+     *                              <code>null</code> if the logs are not
+     *                              indexed
+     */
+    public CachingRepositoryFactory(final IRepositoryFactory _factory,
+                                    final ContentCache _contentCache,
+                                    final File _logIndexDirectory)
+    {
+        this(_factory, _contentCache, _logIndexDirectory, null);
+    }
+
+    /**
+     * @param _factory                  factory which creates the
+     *                                  repositories
+     * @param _contentCache             shared cache of the file contents;
+     *                                  <code>null</code> if not cached
+     * @param _logIndexDirectory        directory of the changed paths
+     *                                  indexes (journal and posting file
+     *                                  per repository UUID);
+     *                                  <code>null</code> if the logs are
+     *                                  not indexed
+     * @param _revisionPropertiesCache  shared cache of the revision
+     *                                  properties; <code>null</code> if not
+     *                                  cached
+     */
+    public CachingRepositoryFactory(final IRepositoryFactory _factory,
+                                    final ContentCache _contentCache,
+                                    final File _logIndexDirectory,
+                                    final RevisionPropertiesCache _revisionPropertiesCache)
+    {
+        this.factory = _factory;
+        this.contentCache = _contentCache;
+        this.logIndexDirectory = _logIndexDirectory;
+        this.revisionPropertiesCache = _revisionPropertiesCache;
+    }
+
+    /**
+     * Defines the service user with which the shared changed paths indexes
+     * are built and updated. The user must be allowed to read the complete
+     * repository, because the index is used for the logs of all users.
+     *
+     * @param _serviceUser  name of the service user
+     * @see #serviceUser
+     */
+    public void setServiceUser(final String _serviceUser)
+    {
+        this.serviceUser = _serviceUser;
+    }
+
+    /**
+     * Returns the repository of the factory decorated with the caches.
+     *
+     * @param _user     name of the user
+     * @param _path     path of the repository
+     * @return decorated repository
+     * @throws ServerException if the repository could not be created
+     */
+    public IRepository createRepository(final String _user,
+                                        final String _path)
+            throws ServerException
+    {
+        IRepository ret = this.factory.createRepository(_user, _path);
+        if (this.contentCache != null)  {
+            ret = new ContentCachingRepository(ret, this.contentCache, _user);
+        }
+        if (this.revisionPropertiesCache != null)  {
+            ret = new RevisionPropertiesCachingRepository(ret, this.revisionPropertiesCache, _user);
+        }
+        if ((this.logIndexDirectory != null) && (this.serviceUser != null))  {
+            final ChangedPathsIndex index;
+            final boolean opened;
+            synchronized (this.logIndexes)  {
+                opened = !this.logIndexes.containsKey(ret.getUUID());
+                index = this.getLogIndex(ret.getUUID());
+            }
+            if (index != null)  {
+                if (opened)  {
+                    this.buildLogIndex(index, ret.getRepositoryPath().toString());
+                }
+                ret = new IndexedLogRepository(ret, index, this.factory, this.serviceUser);
+            }
+        }
+        ret = new DatedRevisionRepository(ret, this.getDatedRevisionIndex(ret.getUUID()));
+        return ret;
+    }
+
+    /**
+     * Returns the changed paths index of the repository with given UUID. If
+     * the index is not opened, the index is opened (and created if not
+     * existing).
+     *
+     * @param _uuid     UUID of the repository
+     * @return changed paths index; <code>null</code> if the logs are not
+     *         indexed or the index could not be opened
+     */
+    public ChangedPathsIndex getLogIndex(final UUID _uuid)
+    {
+        ChangedPathsIndex ret = null;
+        if (this.logIndexDirectory != null)  {
+            synchronized (this.logIndexes)  {
+                ret = this.logIndexes.get(_uuid);
+                if (ret == null)  {
+                    try  {
+                        this.logIndexDirectory.mkdirs();
+                        ret = new ChangedPathsIndex(new File(this.logIndexDirectory, _uuid + ".idx"));
+                        this.logIndexes.put(_uuid, ret);
+                    } catch (final IOException ex)  {
+                        CachingRepositoryFactory.LOGGER.warn("changed paths index of '" + _uuid + "' could not be opened", ex);
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Appends the not indexed revisions of the changed paths index in the
+     * background. The index is updated with an own repository of the
+     * {@link #serviceUser service user}, because the repository of a session
+     * must not be used from another thread and the index is shared by all
+     * users.
+     *
+     * @param _index    changed paths index to build
+     * @param _path     path of the repository
+     */
+    private void buildLogIndex(final ChangedPathsIndex _index,
+                               final String _path)
+    {
+        synchronized (this.logIndexes)  {
+            if (this.logIndexExecutor == null)  {
+                this.logIndexExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()  {
+                    public Thread newThread(final Runnable _runnable)
+                    {
+                        final Thread thread = new Thread(_runnable, "svn-log-index");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            this.logIndexExecutor.execute(new LogIndexBuilder(_index, _path));
+        }
+    }
+
+    /**
+     * Returns the revision date index of the repository with given UUID. The
+     * index is created empty and filled with the first search.
+     *
+     * @param _uuid     UUID of the repository
+     * @return revision date index
+     */
+    public DatedRevisionIndex getDatedRevisionIndex(final UUID _uuid)
+    {
+        synchronized (this.datedRevisionIndexes)  {
+            DatedRevisionIndex ret = this.datedRevisionIndexes.get(_uuid);
+            if (ret == null)  {
+                ret = new DatedRevisionIndex();
+                this.datedRevisionIndexes.put(_uuid, ret);
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Rebuilds the changed paths index of the repository with given path
+     * (e.g. if the index file is lost or the repository history is changed).
+     * The repository is read with the {@link #serviceUser service user}.
+     *
+     * @param _path     path of the repository
+     * @throws ServerException if the repository could not be created
+     * @throws IOException if the index could not be written
+     */
+    public void rebuildLogIndex(final String _path)
+            throws ServerException, IOException
+    {
+        final IRepository repository = this.factory.createRepository(this.serviceUser, _path);
+        try  {
+            final ChangedPathsIndex index = this.getLogIndex(repository.getUUID());
+            if (index != null)  {
+                index.rebuild(repository);
+            }
+        } finally  {
+            repository.close();
+        }
+    }
+
+    /**
+     * Returns the shared cache of the file contents.
+     *
+     * @return content cache; <code>null</code> if not cached
+     */
+    public ContentCache getContentCache()
+    {
+        return this.contentCache;
+    }
+
+    /**
+     * Returns the shared cache of the revision properties.
+     *
+     * @return revision properties cache; <code>null</code> if not cached
+     */
+    public RevisionPropertiesCache getRevisionPropertiesCache()
+    {
+        return this.revisionPropertiesCache;
+    }
+
+    /**
+     * Starts the wrapped factory (if needed). If a directory for the changed
+     * paths indexes is defined, but no {@link #serviceUser service user}, a
+     * warning is logged (because the logs are then not indexed).
+     */
+    public void start()
+    {
+        if ((this.logIndexDirectory != null) && (this.serviceUser == null))  {
+            CachingRepositoryFactory.LOGGER.warn("no service user defined, logs are not indexed");
+        }
+        if (this.factory instanceof IRepositoryFactoryLifecycle)  {
+            ((IRepositoryFactoryLifecycle) this.factory).start();
+        }
+    }
+
+    /**
+     * {@link #close() Closes} this factory and stops the wrapped factory (if
+     * needed).
+     */
+    public void stop()
+    {
+        this.close();
+        if (this.factory instanceof IRepositoryFactoryLifecycle)  {
+            ((IRepositoryFactoryLifecycle) this.factory).stop();
+        }
+    }
+
+    /**
+     * Stops the running background builds and closes all opened changed
+     * paths indexes. Called if the SVN server is stopped.
+     */
+    public void close()
+    {
+        synchronized (this.logIndexes)  {
+            if (this.logIndexExecutor != null)  {
+                this.logIndexExecutor.shutdownNow();
+                this.logIndexExecutor = null;
+            }
+            for (final Map.Entry<UUID,ChangedPathsIndex> entry : this.logIndexes.entrySet())  {
+                try  {
+                    entry.getValue().close();
+                } catch (final IOException ex)  {
+                    CachingRepositoryFactory.LOGGER.warn("changed paths index of '" + entry.getKey() + "' could not be closed", ex);
+                }
+            }
+            this.logIndexes.clear();
+        }
+    }
+
+    /**
+     * Background build of one changed paths index.
+     */
+    private class LogIndexBuilder
+            implements Runnable
+    {
+        /**
+         * Changed paths index to build.
+         */
+        private final ChangedPathsIndex index;
+
+        /**
+         * Path of the repository.
+         */
+        private final String path;
+
+        /**
+         * @param _index    changed paths index to build
+         * @param _path     path of the repository
+         */
+        LogIndexBuilder(final ChangedPathsIndex _index,
+                        final String _path)
+        {
+            this.index = _index;
+            this.path = _path;
+        }
+
+        /**
+         * Creates an own repository of the service user and appends all not
+         * indexed revisions.
+         * Failures are only logged, because the logs are then answered from
+         * the repository itself.
+         */
+        public void run()
+        {
+            try  {
+                final IRepository repository = CachingRepositoryFactory.this.factory.createRepository(CachingRepositoryFactory.this.serviceUser,
+                                                                                                     this.path);
+                try  {
+                    this.index.update(repository);
+                } finally  {
+                    repository.close();
+                }
+            } catch (final ServerException ex)  {
+                CachingRepositoryFactory.LOGGER.warn("changed paths index of '" + this.path + "' could not be built", ex);
+            } catch (final IOException ex)  {
+                CachingRepositoryFactory.LOGGER.warn("changed paths index of '" + this.path + "' could not be built", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,1257 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.jsvnserve.api.IRepository;
+import com.googlecode.jsvnserve.api.LogEntryList;
+import com.googlecode.jsvnserve.api.LogEntryList.ChangedPath;
+import com.googlecode.jsvnserve.api.LogEntryList.LogEntry;
+import com.googlecode.jsvnserve.element.WordElement.Word;
+
+/**
+ * <p>Index of the changed paths of all revisions of one repository, used to
+ * answer a path filtered log without scanning all revisions. For each
+ * changed path the ascending list of the revisions in which the path was
+ * changed is stored (a posting list per path) together with the additions
+ * of the path (with the copy source), so that the history of a path could be
+ * followed over copies. The revisions of a path and all paths below are
+ * found with a range scan over the sorted paths.</p>
+ *
+ * <p>The index is stored in two files:
+ * <ul>
+ * <li>The posting file holds the posting lists of all paths sorted by path
+ *     (the revisions are delta encoded) followed by a sparse directory with
+ *     every {@link #DIRECTORY_INTERVAL}th path. Only the sparse directory is
+ *     hold in the memory; the posting lists are read from the file for each
+ *     search.</li>
+ * <li>The index file itself is an append-only journal with one record per
+ *     revision (the changed paths of the revision) for the revisions after
+ *     the posting file. The journal is hold in the memory and
+ *     {@link #merge() merged} into a new posting file if it contains
+ *     {@link #MERGE_REVISIONS} revisions or if the index is closed. So after
+ *     a restart only the journal must be read. A not completely written
+ *     record at the end of the journal (e.g. after a crash) is removed.</li>
+ * </ul>
+ * New revisions are {@link #update(IRepository) appended} incrementally.</p>
+ *
+ * <p>Only one update runs at the same time. The log entries are fetched from
+ * the repository without holding the lock of the index, so that searches
+ * are not blocked by an update; sessions which do not want to wait for a
+ * running update use {@link #tryUpdate(IRepository, long)}.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see IndexedLogRepository
+ */
+public class ChangedPathsIndex
+{
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangedPathsIndex.class);
+
+    /**
+     * Maximum count of revisions fetched with one log call from the
+     * repository while the index is updated.
+     */
+    static final int UPDATE_BATCH_SIZE = 1000;
+
+    /**
+     * Count of revisions in the journal after which the journal is merged
+     * into the posting file.
+     */
+    static final int MERGE_REVISIONS = 10000;
+
+    /**
+     * Every n-th path of the posting file is stored in the sparse directory.
+     */
+    static final int DIRECTORY_INTERVAL = 64;
+
+    /**
+     * Magic number at the end of a completely written posting file.
+     */
+    private static final int MAGIC = 0x6a737069;
+
+    /**
+     * Length of the trailer at the end of the posting file (offset of the
+     * directory, latest revision and magic number).
+     */
+    private static final int TRAILER_LENGTH = 20;
+
+    /**
+     * File of the journal.
+     */
+    private final File file;
+
+    /**
+     * File of the posting lists.
+     */
+    private final File postingFile;
+
+    /**
+     * Latest revision within the {@link #postingFile}; <code>-1</code> if
+     * no posting file exists.
+     */
+    private long postingRevision = -1;
+
+    /**
+     * Paths of the sparse directory of the {@link #postingFile}.
+     */
+    private String[] directoryPaths = new String[0];
+
+    /**
+     * Offsets of the {@link #directoryPaths} within the posting file.
+     */
+    private long[] directoryOffsets = new long[0];
+
+    /**
+     * Offset of the end of the posting lists within the posting file (where
+     * the sparse directory starts).
+     */
+    private long postingEnd;
+
+    /**
+     * Posting lists of the revisions from the journal depending on the
+     * absolute path.
+     */
+    private final SortedMap<String,Postings> journal = new TreeMap<String,Postings>();
+
+    /**
+     * Count of the revisions within the journal.
+     */
+    private int journalRevisions;
+
+    /**
+     * Latest indexed revision; <code>-1</code> if nothing is indexed.
+     */
+    private long latestRevision = -1;
+
+    /**
+     * Stream to append new records to the journal {@link #file}.
+     */
+    private OutputStream out;
+
+    /**
+     * Lock so that only one update runs at the same time.
+     */
+    private final Lock updateLock = new ReentrantLock();
+
+    /**
+     * Opens the index with given file. If a posting file exists, the sparse
+     * directory is read; if the journal exists, all records after the
+     * posting file are read. If the journal does not continue the posting
+     * file (e.g. because the posting file is lost), the index is removed and
+     * must be built again.
+     *
+     * @param _file     file of the index
+     * @throws IOException if the index file could not be read
+     */
+    public ChangedPathsIndex(final File _file)
+            throws IOException
+    {
+        this.file = _file;
+        this.postingFile = new File(_file.getParentFile(), _file.getName() + ".postings");
+        if (this.postingFile.exists())  {
+            this.readDirectory();
+        }
+        this.latestRevision = this.postingRevision;
+        boolean valid = true;
+        if (this.file.exists())  {
+            valid = this.readJournal();
+        }
+        if (valid)  {
+            this.out = new BufferedOutputStream(new FileOutputStream(this.file, true));
+        } else  {
+            ChangedPathsIndex.LOGGER.warn("index '" + this.file + "' does not continue the posting file and is removed");
+            this.clear();
+        }
+    }
+
+    /**
+     * Returns the latest indexed revision.
+     *
+     * @return latest indexed revision; <code>-1</code> if nothing is indexed
+     * @see #latestRevision
+     */
+    public synchronized long getLatestRevision()
+    {
+        return this.latestRevision;
+    }
+
+    /**
+     * Appends all revisions of the repository which are not indexed. If
+     * another update is running, the method waits until the other update is
+     * finished. Revisions committed while the update runs are also appended.
+     *
+     * @param _repository   repository of the index
+     * @throws IOException if the index file could not be written
+     */
+    public void update(final IRepository _repository)
+            throws IOException
+    {
+        this.updateLock.lock();
+        try  {
+            long latest = _repository.getLatestRevision();
+            while (this.getLatestRevision() < latest)  {
+                this.appendRevisions(_repository, latest);
+                latest = _repository.getLatestRevision();
+            }
+        } finally  {
+            this.updateLock.unlock();
+        }
+    }
+
+    /**
+     * Appends the not indexed revisions of the repository only if no other
+     * update is running and at maximum given count of revisions is missing
+     * (e.g. the incremental update after a commit). So a session never waits
+     * for the initial build of the index.
+     *
+     * @param _repository   repository of the index
+     * @param _maxRevisions maximum count of not indexed revisions
+     * @return <i>true</i> if the index is up to date; otherwise <i>false</i>
+     * @throws IOException if the index file could not be written
+     */
+    public boolean tryUpdate(final IRepository _repository,
+                             final long _maxRevisions)
+            throws IOException
+    {
+        boolean ret = false;
+        if (this.updateLock.tryLock())  {
+            try  {
+                final long latest = _repository.getLatestRevision();
+                if ((latest - this.getLatestRevision()) <= _maxRevisions)  {
+                    this.appendRevisions(_repository, latest);
+                    ret = true;
+                }
+            } finally  {
+                this.updateLock.unlock();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Removes the complete index and indexes all revisions of the repository
+     * again.
+     *
+     * @param _repository   repository of the index
+     * @throws IOException if the index file could not be written
+     */
+    public void rebuild(final IRepository _repository)
+            throws IOException
+    {
+        this.updateLock.lock();
+        try  {
+            synchronized (this)  {
+                this.out.close();
+                this.clear();
+            }
+        } finally  {
+            this.updateLock.unlock();
+        }
+        this.update(_repository);
+    }
+
+    /**
+     * Returns all revisions in which given path (or a path below) was changed
+     * between the start and the end revision. The history of the path is
+     * followed backwards from the greater revision; if the path (or a parent
+     * path) was copied, the revisions of the copy source are included.
+     *
+     * @param _path             absolute path
+     * @param _startRevision    revision number to start from
+     * @param _endRevision      revision number to end at
+     * @return map of the revisions with the absolute path of given path
+     *         within the revision
+     * @throws IOException if the posting file could not be read
+     */
+    public synchronized SortedMap<Long,String> getRevisions(final String _path,
+                                                           final long _startRevision,
+                                                           final long _endRevision)
+            throws IOException
+    {
+        final SortedMap<Long,String> ret = new TreeMap<Long,String>();
+        final long lower = Math.min(_startRevision, _endRevision);
+        long upper = Math.min(Math.max(_startRevision, _endRevision), this.latestRevision);
+        String path = ChangedPathsIndex.normalize(_path);
+        while ((path != null) && (upper >= lower))  {
+            // search the latest addition of the path or a parent path
+            Addition addition = null;
+            String addedPath = null;
+            for (String parent = path; parent != null; parent = ChangedPathsIndex.getParent(parent))  {
+                final Addition parentAddition = this.getLatestAddition(parent, upper);
+                if ((parentAddition != null) && ((addition == null) || (parentAddition.revision > addition.revision)))  {
+                    addition = parentAddition;
+                    addedPath = parent;
+                }
+            }
+            final long segmentLower = (addition == null) ? lower : Math.max(lower, addition.revision);
+            this.collectRevisions(path, segmentLower, upper, ret);
+            if ((addition == null) || (addition.revision < lower))  {
+                path = null;
+            } else  {
+                ret.put(addition.revision, path);
+                if (addition.copiedFromPath == null)  {
+                    path = null;
+                } else  {
+                    path = ChangedPathsIndex.normalize(addition.copiedFromPath + path.substring(addedPath.length()));
+                    upper = addition.copiedFromRevision;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Merges the journal into the posting file and closes the journal.
+     *
+     * @throws IOException if the index file could not be written or closed
+     */
+    public synchronized void close()
+            throws IOException
+    {
+        try  {
+            this.out.flush();
+            if (this.journalRevisions > 0)  {
+                this.merge();
+            }
+        } finally  {
+            this.out.close();
+        }
+    }
+
+    /**
+     * Appends all revisions after the latest indexed revision up to given
+     * revision. The log entries are fetched in batches of
+     * {@link #UPDATE_BATCH_SIZE} revisions; only the append of a fetched
+     * batch holds the lock of the index. If the journal contains
+     * {@link #MERGE_REVISIONS} revisions, the journal is merged into the
+     * posting file. Must be called with the {@link #updateLock}.
+     *
+     * @param _repository   repository of the index
+     * @param _latest       latest revision to append
+     * @throws IOException if the index file could not be written
+     */
+    private void appendRevisions(final IRepository _repository,
+                                 final long _latest)
+            throws IOException
+    {
+        long indexed = this.getLatestRevision();
+        while (indexed < _latest)  {
+            final long start = indexed + 1;
+            final long end = Math.min(_latest, start + ChangedPathsIndex.UPDATE_BATCH_SIZE - 1);
+            final LogEntryList log = _repository.getLog(start, end, true, "/");
+            synchronized (this)  {
+                try  {
+                    long next = start;
+                    for (final LogEntry logEntry : log.getLogEntries())  {
+                        // revisions without log entry have no changed paths
+                        while (next < logEntry.getRevision())  {
+                            this.append(next++, Collections.<ChangedPath>emptyList());
+                        }
+                        this.append(logEntry.getRevision(), logEntry.getChangedPaths());
+                        next = logEntry.getRevision() + 1;
+                    }
+                    while (next <= end)  {
+                        this.append(next++, Collections.<ChangedPath>emptyList());
+                    }
+                } finally  {
+                    this.out.flush();
+                }
+                if (this.journalRevisions >= ChangedPathsIndex.MERGE_REVISIONS)  {
+                    this.merge();
+                }
+            }
+            indexed = end;
+        }
+    }
+
+    /**
+     * Appends the changed paths of given revision to the journal.
+     *
+     * @param _revision     revision
+     * @param _changedPaths changed paths of the revision
+     * @throws IOException if the record could not be written
+     */
+    private void append(final long _revision,
+                        final List<ChangedPath> _changedPaths)
+            throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream record = new DataOutputStream(bytes);
+        record.writeLong(_revision);
+        record.writeInt(_changedPaths.size());
+        for (final ChangedPath changedPath : _changedPaths)  {
+            record.writeUTF(changedPath.getKind().value);
+            record.writeUTF(changedPath.getPath());
+            record.writeBoolean(changedPath.getCopiedFromPath() != null);
+            if (changedPath.getCopiedFromPath() != null)  {
+                record.writeUTF(changedPath.getCopiedFromPath());
+                record.writeLong(changedPath.getCopiedFromRevision());
+            }
+        }
+        record.flush();
+        final DataOutputStream data = new DataOutputStream(this.out);
+        data.writeInt(bytes.size());
+        bytes.writeTo(data);
+        this.addRecord(bytes.toByteArray());
+    }
+
+    /**
+     * Reads all records of the journal after the latest revision of the
+     * posting file. A not complete record at the end of the file is removed.
+     *
+     * @return <i>true</i> if the journal continues the posting file;
+     *         <i>false</i> if revisions are missing
+     * @throws IOException if the index file could not be read
+     */
+    private boolean readJournal()
+            throws IOException
+    {
+        boolean ret = true;
+        long valid = 0;
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+        try  {
+            while (ret)  {
+                final int length;
+                try  {
+                    length = in.readInt();
+                } catch (final EOFException ex)  {
+                    break;
+                }
+                final byte[] record = new byte[length];
+                in.readFully(record);
+                final long revision = new DataInputStream(new ByteArrayInputStream(record)).readLong();
+                if (revision > this.latestRevision + 1)  {
+                    ret = false;
+                } else if (revision > this.latestRevision)  {
+                    this.addRecord(record);
+                }
+                valid += 4 + length;
+            }
+        } catch (final EOFException ex)  {
+            ChangedPathsIndex.LOGGER.warn("index '" + this.file + "' contains not complete record at " + valid);
+        } finally  {
+            in.close();
+        }
+        if (ret && (valid < this.file.length()))  {
+            final RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+            try  {
+                raf.setLength(valid);
+            } finally  {
+                raf.close();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Adds the changed paths of one record to the posting lists of the
+     * journal.
+     *
+     * @param _record   bytes of the record
+     * @throws IOException if the record could not be parsed
+     */
+    private void addRecord(final byte[] _record)
+            throws IOException
+    {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(_record));
+        final long revision = in.readLong();
+        final int count = in.readInt();
+        for (int idx = 0; idx < count; idx++)  {
+            final String kind = in.readUTF();
+            final String path = ChangedPathsIndex.normalize(in.readUTF());
+            final Addition addition;
+            if (in.readBoolean())  {
+                addition = new Addition(revision, in.readUTF(), in.readLong());
+            } else  {
+                addition = new Addition(revision, null, -1);
+            }
+            Postings postings = this.journal.get(path);
+            if (postings == null)  {
+                postings = new Postings();
+                this.journal.put(path, postings);
+            }
+            postings.revisions.add(revision);
+            if (Word.LOG_KIND_ADDED.value.equals(kind) || Word.LOG_KIND_READ.value.equals(kind))  {
+                postings.additions.add(addition);
+            }
+        }
+        this.latestRevision = revision;
+        this.journalRevisions++;
+    }
+
+    /**
+     * Removes the posting file and the journal.
+     *
+     * @throws IOException if the journal could not be created again
+     */
+    private void clear()
+            throws IOException
+    {
+        this.postingFile.delete();
+        this.postingRevision = -1;
+        this.directoryPaths = new String[0];
+        this.directoryOffsets = new long[0];
+        this.postingEnd = 0;
+        this.journal.clear();
+        this.journalRevisions = 0;
+        this.latestRevision = -1;
+        this.out = new BufferedOutputStream(new FileOutputStream(this.file, false));
+    }
+
+    /**
+     * Reads the sparse directory of the posting file. If the posting file is
+     * not complete, the posting file is removed.
+     *
+     * @throws IOException if the posting file could not be read
+     */
+    private void readDirectory()
+            throws IOException
+    {
+        final long length = this.postingFile.length();
+        boolean valid = false;
+        final RandomAccessFile raf = new RandomAccessFile(this.postingFile, "r");
+        try  {
+            if (length >= ChangedPathsIndex.TRAILER_LENGTH)  {
+                raf.seek(length - ChangedPathsIndex.TRAILER_LENGTH);
+                final long directoryOffset = raf.readLong();
+                final long revision = raf.readLong();
+                if ((raf.readInt() == ChangedPathsIndex.MAGIC) && (directoryOffset >= 0) && (directoryOffset < length))  {
+                    raf.seek(directoryOffset);
+                    final DataInputStream in = new DataInputStream(new BufferedInputStream(new RandomAccessInputStream(raf)));
+                    final int count = in.readInt();
+                    this.directoryPaths = new String[count];
+                    this.directoryOffsets = new long[count];
+                    for (int idx = 0; idx < count; idx++)  {
+                        this.directoryPaths[idx] = in.readUTF();
+                        this.directoryOffsets[idx] = in.readLong();
+                    }
+                    this.postingEnd = directoryOffset;
+                    this.postingRevision = revision;
+                    valid = true;
+                }
+            }
+        } finally  {
+            raf.close();
+        }
+        if (!valid)  {
+            ChangedPathsIndex.LOGGER.warn("posting file '" + this.postingFile + "' is not complete and is removed");
+            this.postingFile.delete();
+        }
+    }
+
+    /**
+     * Writes a new posting file with the posting lists of the current
+     * posting file and the journal and starts a new empty journal. The new
+     * posting file is written into a temporary file and then renamed.
+     *
+     * @throws IOException if the posting file could not be written
+     */
+    private void merge()
+            throws IOException
+    {
+        final File tmpFile = new File(this.postingFile.getParentFile(), this.postingFile.getName() + ".tmp");
+        final List<String> newPaths = new ArrayList<String>();
+        final List<Long> newOffsets = new ArrayList<Long>();
+        long offset = 0;
+        final PostingReader reader = new PostingReader(0);
+        try  {
+            final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try  {
+                final Iterator<Map.Entry<String,Postings>> journalIter = this.journal.entrySet().iterator();
+                Map.Entry<String,Postings> journalEntry = journalIter.hasNext() ? journalIter.next() : null;
+                String path = reader.nextPath();
+                int count = 0;
+                while ((path != null) || (journalEntry != null))  {
+                    final int compare = (path == null)
+                                        ? 1
+                                        : ((journalEntry == null) ? -1 : path.compareTo(journalEntry.getKey()));
+                    final String entryPath;
+                    final Postings postings;
+                    if (compare <= 0)  {
+                        entryPath = path;
+                        postings = reader.readPostings();
+                        path = reader.nextPath();
+                    } else  {
+                        entryPath = journalEntry.getKey();
+                        postings = new Postings();
+                    }
+                    if (compare >= 0)  {
+                        postings.append(journalEntry.getValue());
+                        journalEntry = journalIter.hasNext() ? journalIter.next() : null;
+                    }
+                    if ((count++ % ChangedPathsIndex.DIRECTORY_INTERVAL) == 0)  {
+                        newPaths.add(entryPath);
+                        newOffsets.add(offset);
+                    }
+                    offset += ChangedPathsIndex.writeEntry(data, entryPath, postings);
+                }
+                data.writeInt(newPaths.size());
+                for (int idx = 0; idx < newPaths.size(); idx++)  {
+                    data.writeUTF(newPaths.get(idx));
+                    data.writeLong(newOffsets.get(idx));
+                }
+                data.writeLong(offset);
+                data.writeLong(this.latestRevision);
+                data.writeInt(ChangedPathsIndex.MAGIC);
+            } finally  {
+                data.close();
+            }
+        } finally  {
+            reader.close();
+        }
+        // replace the posting file (the journal is only removed afterwards,
+        // so the revisions are never lost)
+        this.postingFile.delete();
+        if (!tmpFile.renameTo(this.postingFile))  {
+            throw new IOException("posting file '" + tmpFile + "' could not be renamed to '" + this.postingFile + "'");
+        }
+        this.directoryPaths = newPaths.toArray(new String[newPaths.size()]);
+        this.directoryOffsets = new long[newOffsets.size()];
+        for (int idx = 0; idx < this.directoryOffsets.length; idx++)  {
+            this.directoryOffsets[idx] = newOffsets.get(idx);
+        }
+        this.postingEnd = offset;
+        this.postingRevision = this.latestRevision;
+        this.out.close();
+        this.out = new BufferedOutputStream(new FileOutputStream(this.file, false));
+        this.journal.clear();
+        this.journalRevisions = 0;
+    }
+
+    /**
+     * Returns the latest addition of given path up to given revision.
+     *
+     * @param _path     normalized path
+     * @param _upper    maximum revision of the addition
+     * @return latest addition; <code>null</code> if the path was not added
+     *         up to given revision
+     * @throws IOException if the posting file could not be read
+     */
+    private Addition getLatestAddition(final String _path,
+                                       final long _upper)
+            throws IOException
+    {
+        Addition ret = null;
+        final Postings journalPostings = this.journal.get(_path);
+        if (journalPostings != null)  {
+            ret = journalPostings.getLatestAddition(_upper);
+        }
+        if (ret == null)  {
+            final PostingReader reader = this.openReader(_path);
+            if (reader != null)  {
+                try  {
+                    String path = reader.nextPath();
+                    while ((path != null) && (path.compareTo(_path) < 0))  {
+                        reader.skipPostings();
+                        path = reader.nextPath();
+                    }
+                    if (_path.equals(path))  {
+                        ret = reader.readPostings().getLatestAddition(_upper);
+                    }
+                } finally  {
+                    reader.close();
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Collects the revisions between the lower and upper revision in which
+     * given path or a path below was changed.
+     *
+     * @param _path     normalized path
+     * @param _lower    minimum revision
+     * @param _upper    maximum revision
+     * @param _ret      map in which the revisions are collected (with given
+     *                  path as value)
+     * @throws IOException if the posting file could not be read
+     */
+    private void collectRevisions(final String _path,
+                                  final long _lower,
+                                  final long _upper,
+                                  final SortedMap<Long,String> _ret)
+            throws IOException
+    {
+        final String prefix = "/".equals(_path) ? "/" : _path + "/";
+        if (_lower <= this.postingRevision)  {
+            final PostingReader reader = this.openReader(_path);
+            if (reader != null)  {
+                try  {
+                    String path = reader.nextPath();
+                    while ((path != null) && ChangedPathsIndex.isBeforeEnd(path, _path, prefix))  {
+                        if (path.equals(_path) || path.startsWith(prefix))  {
+                            reader.readPostings().collect(_path, _lower, _upper, _ret);
+                        } else  {
+                            reader.skipPostings();
+                        }
+                        path = reader.nextPath();
+                    }
+                } finally  {
+                    reader.close();
+                }
+            }
+        }
+        for (final Map.Entry<String,Postings> entry : this.journal.tailMap(_path).entrySet())  {
+            if (!ChangedPathsIndex.isBeforeEnd(entry.getKey(), _path, prefix))  {
+                break;
+            }
+            if (entry.getKey().equals(_path) || entry.getKey().startsWith(prefix))  {
+                entry.getValue().collect(_path, _lower, _upper, _ret);
+            }
+        }
+    }
+
+    /**
+     * Opens a reader of the posting file positioned at the greatest path of
+     * the sparse directory not greater than given path.
+     *
+     * @param _path     path to search
+     * @return reader; <code>null</code> if no posting file exists
+     * @throws IOException if the posting file could not be opened
+     */
+    private PostingReader openReader(final String _path)
+            throws IOException
+    {
+        int low = 0;
+        int high = this.directoryPaths.length;
+        while (low < high)  {
+            final int mid = (low + high) >>> 1;
+            if (this.directoryPaths[mid].compareTo(_path) <= 0)  {
+                low = mid + 1;
+            } else  {
+                high = mid;
+            }
+        }
+        final PostingReader ret;
+        if (this.directoryPaths.length == 0)  {
+            ret = null;
+        } else  {
+            // paths below the searched path are sorted behind the path, so
+            // the first entry is used if all directory paths are greater
+            ret = new PostingReader(this.directoryOffsets[Math.max(low - 1, 0)]);
+        }
+        return ret;
+    }
+
+    /**
+     * Checks if given path of the sorted paths is not behind all paths
+     * below the searched path.
+     *
+     * @param _current  current path of the sorted paths
+     * @param _path     searched path
+     * @param _prefix   searched path with trailing slash
+     * @return <i>true</i> if later paths could be still below the searched
+     *         path; otherwise <i>false</i>
+     */
+    private static boolean isBeforeEnd(final String _current,
+                                       final String _path,
+                                       final String _prefix)
+    {
+        return (_current.compareTo(_prefix) <= 0) || _current.startsWith(_prefix);
+    }
+
+    /**
+     * Writes the entry of one path into the posting file.
+     *
+     * @param _out      output of the posting file
+     * @param _path     path
+     * @param _postings posting list of the path
+     * @return count of written bytes
+     * @throws IOException if the entry could not be written
+     */
+    private static int writeEntry(final DataOutputStream _out,
+                                  final String _path,
+                                  final Postings _postings)
+            throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream body = new DataOutputStream(bytes);
+        ChangedPathsIndex.writeVarLong(body, _postings.revisions.size);
+        long previous = 0;
+        for (int idx = 0; idx < _postings.revisions.size; idx++)  {
+            ChangedPathsIndex.writeVarLong(body, _postings.revisions.revisions[idx] - previous);
+            previous = _postings.revisions.revisions[idx];
+        }
+        ChangedPathsIndex.writeVarLong(body, _postings.additions.size());
+        for (final Addition addition : _postings.additions)  {
+            ChangedPathsIndex.writeVarLong(body, addition.revision);
+            body.writeBoolean(addition.copiedFromPath != null);
+            if (addition.copiedFromPath != null)  {
+                body.writeUTF(addition.copiedFromPath);
+                ChangedPathsIndex.writeVarLong(body, addition.copiedFromRevision);
+            }
+        }
+        body.flush();
+        final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        final DataOutputStream entryOut = new DataOutputStream(entry);
+        entryOut.writeUTF(_path);
+        entryOut.writeInt(bytes.size());
+        bytes.writeTo(entryOut);
+        entryOut.flush();
+        entry.writeTo(_out);
+        return entry.size();
+    }
+
+    /**
+     * Writes a not negative number with 7 bits per byte.
+     *
+     * @param _out      output
+     * @param _value    not negative number
+     * @throws IOException if the number could not be written
+     */
+    private static void writeVarLong(final DataOutput _out,
+                                     final long _value)
+            throws IOException
+    {
+        long value = _value;
+        while ((value & ~0x7FL) != 0)  {
+            _out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        _out.writeByte((int) value);
+    }
+
+    /**
+     * Reads a number written with {@link #writeVarLong(DataOutput, long)}.
+     *
+     * @param _in   input
+     * @return read number
+     * @throws IOException if the number could not be read
+     */
+    private static long readVarLong(final DataInput _in)
+            throws IOException
+    {
+        long ret = 0;
+        int shift = 0;
+        byte value = _in.readByte();
+        while ((value & 0x80) != 0)  {
+            ret |= ((long) (value & 0x7F)) << shift;
+            shift += 7;
+            value = _in.readByte();
+        }
+        return ret | (((long) value) << shift);
+    }
+
+    /**
+     * Normalizes given path to an absolute path without trailing slash
+     * (the root path is &quot;/&quot;).
+     *
+     * @param _path     path to normalize
+     * @return normalized path
+     */
+    static String normalize(final String _path)
+    {
+        String ret = _path.startsWith("/") ? _path : "/" + _path;
+        while ((ret.length() > 1) && ret.endsWith("/"))  {
+            ret = ret.substring(0, ret.length() - 1);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the parent path of given normalized path.
+     *
+     * @param _path     normalized path
+     * @return parent path; <code>null</code> for the root path
+     */
+    private static String getParent(final String _path)
+    {
+        final String ret;
+        if (_path.length() <= 1)  {
+            ret = null;
+        } else  {
+            final int idx = _path.lastIndexOf('/');
+            ret = (idx == 0) ? "/" : _path.substring(0, idx);
+        }
+        return ret;
+    }
+
+    /**
+     * Sequential reader of the posting lists of the posting file from a
+     * given offset up to the end of the posting lists.
+     */
+    private final class PostingReader
+    {
+        /**
+         * Input of the posting file; <code>null</code> if no posting file
+         * exists.
+         */
+        private final DataInputStream in;
+
+        /**
+         * Current offset within the posting file.
+         */
+        private long offset;
+
+        /**
+         * @param _offset   offset of the first entry to read
+         * @throws IOException if the posting file could not be opened
+         */
+        private PostingReader(final long _offset)
+                throws IOException
+        {
+            if (ChangedPathsIndex.this.postingEnd > _offset)  {
+                final FileInputStream fileIn = new FileInputStream(ChangedPathsIndex.this.postingFile);
+                long skipped = 0;
+                while (skipped < _offset)  {
+                    skipped += fileIn.skip(_offset - skipped);
+                }
+                this.in = new DataInputStream(new BufferedInputStream(fileIn));
+            } else  {
+                this.in = null;
+            }
+            this.offset = _offset;
+        }
+
+        /**
+         * Reads the path of the next entry.
+         *
+         * @return path; <code>null</code> if all entries are read
+         * @throws IOException if the path could not be read
+         */
+        private String nextPath()
+                throws IOException
+        {
+            String ret = null;
+            if ((this.in != null) && (this.offset < ChangedPathsIndex.this.postingEnd))  {
+                ret = this.in.readUTF();
+                // length of the UTF string is not known, so it is evaluated
+                // from the written bytes of the path
+                this.offset += 2 + ChangedPathsIndex.getUTFLength(ret);
+            }
+            return ret;
+        }
+
+        /**
+         * Skips the posting list of the current entry.
+         *
+         * @throws IOException if the posting list could not be skipped
+         */
+        private void skipPostings()
+                throws IOException
+        {
+            final int length = this.in.readInt();
+            int skipped = 0;
+            while (skipped < length)  {
+                skipped += this.in.skipBytes(length - skipped);
+            }
+            this.offset += 4 + length;
+        }
+
+        /**
+         * Reads the posting list of the current entry.
+         *
+         * @return posting list
+         * @throws IOException if the posting list could not be read
+         */
+        private Postings readPostings()
+                throws IOException
+        {
+            final int length = this.in.readInt();
+            final Postings ret = new Postings();
+            final long count = ChangedPathsIndex.readVarLong(this.in);
+            long revision = 0;
+            for (long idx = 0; idx < count; idx++)  {
+                revision += ChangedPathsIndex.readVarLong(this.in);
+                ret.revisions.add(revision);
+            }
+            final long additions = ChangedPathsIndex.readVarLong(this.in);
+            for (long idx = 0; idx < additions; idx++)  {
+                final long additionRevision = ChangedPathsIndex.readVarLong(this.in);
+                if (this.in.readBoolean())  {
+                    ret.additions.add(new Addition(additionRevision,
+                                                   this.in.readUTF(),
+                                                   ChangedPathsIndex.readVarLong(this.in)));
+                } else  {
+                    ret.additions.add(new Addition(additionRevision, null, -1));
+                }
+            }
+            this.offset += 4 + length;
+            return ret;
+        }
+
+        /**
+         * Closes the posting file.
+         *
+         * @throws IOException if the posting file could not be closed
+         */
+        private void close()
+                throws IOException
+        {
+            if (this.in != null)  {
+                this.in.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the modified UTF-8 encoding of given string
+     * (like written by {@link DataOutput#writeUTF(String)}).
+     *
+     * @param _text     text
+     * @return length in bytes without the length prefix
+     */
+    private static int getUTFLength(final String _text)
+    {
+        int ret = 0;
+        for (int idx = 0; idx < _text.length(); idx++)  {
+            final char ch = _text.charAt(idx);
+            if ((ch >= 0x0001) && (ch <= 0x007F))  {
+                ret++;
+            } else if (ch > 0x07FF)  {
+                ret += 3;
+            } else  {
+                ret += 2;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Input stream reading from the current position of a random access
+     * file.
+     */
+    private static final class RandomAccessInputStream
+            extends InputStream
+    {
+        /**
+         * Random access file to read.
+         */
+        private final RandomAccessFile raf;
+
+        /**
+         * @param _raf  random access file to read
+         */
+        private RandomAccessInputStream(final RandomAccessFile _raf)
+        {
+            this.raf = _raf;
+        }
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            return this.raf.read();
+        }
+
+        @Override
+        public int read(final byte[] _bytes,
+                        final int _offset,
+                        final int _length)
+                throws IOException
+        {
+            return this.raf.read(_bytes, _offset, _length);
+        }
+    }
+
+    /**
+     * Posting list of one path: the revisions in which the path was changed
+     * and the additions of the path.
+     */
+    private static final class Postings
+    {
+        /**
+         * Ascending revisions in which the path was changed.
+         */
+        private final RevisionList revisions = new RevisionList();
+
+        /**
+         * Additions of the path ascending by the revision.
+         */
+        private final List<Addition> additions = new ArrayList<Addition>(1);
+
+        /**
+         * Appends the revisions and additions of given later posting list.
+         *
+         * @param _later    posting list with later revisions
+         */
+        private void append(final Postings _later)
+        {
+            for (int idx = 0; idx < _later.revisions.size; idx++)  {
+                this.revisions.add(_later.revisions.revisions[idx]);
+            }
+            this.additions.addAll(_later.additions);
+        }
+
+        /**
+         * Returns the latest addition up to given revision.
+         *
+         * @param _upper    maximum revision
+         * @return latest addition; <code>null</code> if not found
+         */
+        private Addition getLatestAddition(final long _upper)
+        {
+            Addition ret = null;
+            for (final Addition addition : this.additions)  {
+                if (addition.revision <= _upper)  {
+                    ret = addition;
+                }
+            }
+            return ret;
+        }
+
+        /**
+         * Collects the revisions between the lower and upper revision.
+         *
+         * @param _path     path used as value of the collected revisions
+         * @param _lower    minimum revision
+         * @param _upper    maximum revision
+         * @param _ret      map in which the revisions are collected
+         */
+        private void collect(final String _path,
+                             final long _lower,
+                             final long _upper,
+                             final SortedMap<Long,String> _ret)
+        {
+            for (int idx = this.revisions.indexOf(_lower);
+                    (idx < this.revisions.size) && (this.revisions.revisions[idx] <= _upper);
+                    idx++)  {
+                _ret.put(this.revisions.revisions[idx], _path);
+            }
+        }
+    }
+
+    /**
+     * Addition of a path within a revision.
+     */
+    private static final class Addition
+    {
+        /**
+         * Revision in which the path was added.
+         */
+        private final long revision;
+
+        /**
+         * Path from which the path was copied; <code>null</code> if not
+         * copied.
+         */
+        private final String copiedFromPath;
+
+        /**
+         * Revision from which the path was copied.
+         */
+        private final long copiedFromRevision;
+
+        /**
+         * @param _revision             revision of the addition
+         * @param _copiedFromPath       copy source path or <code>null</code>
+         * @param _copiedFromRevision   copy source revision
+         */
+        private Addition(final long _revision,
+                         final String _copiedFromPath,
+                         final long _copiedFromRevision)
+        {
+            this.revision = _revision;
+            this.copiedFromPath = _copiedFromPath;
+            this.copiedFromRevision = _copiedFromRevision;
+        }
+    }
+
+    /**
+     * Ascending list of revisions stored in a growing primitive array.
+     */
+    private static final class RevisionList
+    {
+        /**
+         * Revisions; only the first {@link #size} entries are used.
+         */
+        private long[] revisions = new long[4];
+
+        /**
+         * Count of the revisions.
+         */
+        private int size = 0;
+
+        /**
+         * Adds given revision if it is not already the last revision.
+         *
+         * @param _revision     revision to add (not lower than the last
+         *                      revision)
+         */
+        private void add(final long _revision)
+        {
+            if ((this.size == 0) || (this.revisions[this.size - 1] != _revision))  {
+                if (this.size == this.revisions.length)  {
+                    final long[] newRevisions = new long[this.size * 2];
+                    System.arraycopy(this.revisions, 0, newRevisions, 0, this.size);
+                    this.revisions = newRevisions;
+                }
+                this.revisions[this.size++] = _revision;
+            }
+        }
+
+        /**
+         * Returns the index of the first revision which is greater or equal
+         * than given revision.
+         *
+         * @param _revision     revision to search
+         * @return index of the first revision not lower than given revision;
+         *         {@link #size} if all revisions are lower
+         */
+        private int indexOf(final long _revision)
+        {
+            int low = 0;
+            int high = this.size;
+            while (low < high)  {
+                final int mid = (low + high) >>> 1;
+                if (this.revisions[mid] < _revision)  {
+                    low = mid + 1;
+                } else  {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
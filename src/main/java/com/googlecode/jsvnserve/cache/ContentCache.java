@@ -0,0 +1,591 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Cache for the content of files which is shared between all sessions of
+ * the SVN server. Because the content of a file in a revision could never be
+ * changed, the content is cached with a key of the user, the repository UUID,
+ * the repository path, the path and the revision (see
+ * {@link ContentCachingRepository}). The user is part of the key, because a
+ * hit skips the access checks of the repository.</p>
+ *
+ * <p>The cache has two tiers:
+ * <ul>
+ * <li>the memory tier holds the contents up to the
+ *     {@link #maxMemoryEntrySize maximum entry size} as byte arrays,</li>
+ * <li>the optional disk tier (if a {@link #directory} is defined) holds
+ *     larger contents and the contents evicted from the memory tier as
+ *     files.</li>
+ * </ul>
+ * Both tiers are bounded by the sum of the bytes of their contents and evict
+ * the least recently used contents.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class ContentCache
+{
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContentCache.class);
+
+    /**
+     * Maximum bytes of all contents in the memory tier.
+     */
+    private final long maxMemorySize;
+
+    /**
+     * Maximum bytes of one content in the memory tier. Larger contents are
+     * only cached in the disk tier.
+     */
+    private final long maxMemoryEntrySize;
+
+    /**
+     * Directory of the disk tier; <code>null</code> if no disk tier is used.
+     */
+    private final File directory;
+
+    /**
+     * Maximum bytes of all contents in the disk tier.
+     */
+    private final long maxDiskSize;
+
+    /**
+     * Contents of the memory tier in the order of the last access.
+     */
+    private final LinkedHashMap<String,byte[]> memory = new LinkedHashMap<String,byte[]>(16, 0.75f, true);
+
+    /**
+     * Files of the disk tier in the order of the last access.
+     */
+    private final LinkedHashMap<String,File> disk = new LinkedHashMap<String,File>(16, 0.75f, true);
+
+    /**
+     * Current bytes of all contents in the memory tier.
+     */
+    private long memorySize;
+
+    /**
+     * Current bytes of all contents in the disk tier.
+     */
+    private long diskSize;
+
+    /**
+     * Index of the last file of the disk tier, used for unique file names.
+     */
+    private long fileIndex;
+
+    /**
+     * Count of the hits in the memory tier.
+     */
+    private final AtomicLong memoryHits = new AtomicLong();
+
+    /**
+     * Count of the hits in the disk tier.
+     */
+    private final AtomicLong diskHits = new AtomicLong();
+
+    /**
+     * Count of the misses.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache with only a memory tier.
+     *
+     * @param _maxMemorySize        maximum bytes of all contents in memory
+     * @param _maxMemoryEntrySize   maximum bytes of one content in memory
+     */
+    public ContentCache(final long _maxMemorySize,
+                        final long _maxMemoryEntrySize)
+    {
+        this(_maxMemorySize, _maxMemoryEntrySize, null, 0);
+    }
+
+    /**
+     * Creates a cache with a memory and a disk tier.
+     *
+     * @param _maxMemorySize        maximum bytes of all contents in memory
+     * @param _maxMemoryEntrySize   maximum bytes of one content in memory
+     * @param _directory            directory of the disk tier;
+     *                              <code>null</code> if no disk tier is used
+     * @param _maxDiskSize          maximum bytes of all contents on disk
+     */
+    public ContentCache(final long _maxMemorySize,
+                        final long _maxMemoryEntrySize,
+                        final File _directory,
+                        final long _maxDiskSize)
+    {
+        this.maxMemorySize = _maxMemorySize;
+        this.maxMemoryEntrySize = Math.min(_maxMemoryEntrySize, _maxMemorySize);
+        this.directory = _directory;
+        this.maxDiskSize = _maxDiskSize;
+        if (this.directory != null)  {
+            this.directory.mkdirs();
+        }
+    }
+
+    /**
+     * Returns the cached content for given key.
+     *
+     * @param _key  key of the content
+     * @return input stream of the cached content; <code>null</code> if not
+     *         cached
+     */
+    public InputStream get(final String _key)
+    {
+        InputStream ret = null;
+        final File file;
+        synchronized (this)  {
+            final byte[] bytes = this.memory.get(_key);
+            if (bytes != null)  {
+                ret = new ByteArrayInputStream(bytes);
+                file = null;
+            } else  {
+                file = this.disk.get(_key);
+            }
+        }
+        if (ret != null)  {
+            this.memoryHits.incrementAndGet();
+        } else if (file != null)  {
+            try  {
+                ret = new FileInputStream(file);
+                this.diskHits.incrementAndGet();
+            } catch (final FileNotFoundException ex)  {
+                ContentCache.LOGGER.debug("cached file '" + file + "' is already evicted", ex);
+            }
+        }
+        if (ret == null)  {
+            this.misses.incrementAndGet();
+        }
+        return ret;
+    }
+
+    /**
+     * Returns an input stream which reads given content and caches the read
+     * bytes while they are streamed to the caller (and not before the first
+     * byte is returned). The content is put into the cache when the input
+     * stream reached the end of the content; if the input stream is closed
+     * before, or if the content is too large for the memory tier and no disk
+     * tier is used, the content is not cached.
+     *
+     * @param _key      key of the content
+     * @param _content  input stream of the content
+     * @return input stream of the content which caches the read bytes
+     */
+    public InputStream put(final String _key,
+                           final InputStream _content)
+    {
+        return new CachingInputStream(_key, _content);
+    }
+
+    /**
+     * Puts given content into the memory tier. The least recently used
+     * contents are moved to the disk tier until the memory tier is not
+     * larger than the maximum.
+     *
+     * @param _key      key of the content
+     * @param _content  bytes of the content
+     */
+    private void putMemory(final String _key,
+                           final byte[] _content)
+    {
+        final Map<String,byte[]> evicted = new LinkedHashMap<String,byte[]>();
+        synchronized (this)  {
+            final byte[] old = this.memory.put(_key, _content);
+            if (old != null)  {
+                this.memorySize -= old.length;
+            }
+            this.memorySize += _content.length;
+            final Iterator<Map.Entry<String,byte[]>> iter = this.memory.entrySet().iterator();
+            while ((this.memorySize > this.maxMemorySize) && iter.hasNext())  {
+                final Map.Entry<String,byte[]> entry = iter.next();
+                iter.remove();
+                this.memorySize -= entry.getValue().length;
+                if (!this.disk.containsKey(entry.getKey()))  {
+                    evicted.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        // evicted contents are written outside of the lock
+        for (final Map.Entry<String,byte[]> entry : evicted.entrySet())  {
+            final File file = this.newFile();
+            if (file != null)  {
+                try  {
+                    final OutputStream out = new FileOutputStream(file);
+                    try  {
+                        out.write(entry.getValue());
+                    } finally  {
+                        out.close();
+                    }
+                    this.putDisk(entry.getKey(), file);
+                } catch (final IOException ex)  {
+                    ContentCache.LOGGER.warn("content could not be written to '" + file + "'", ex);
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts given file into the disk tier. The least recently used files are
+     * deleted until the disk tier is not larger than the maximum.
+     *
+     * @param _key      key of the content
+     * @param _file     file with the content
+     */
+    private void putDisk(final String _key,
+                         final File _file)
+    {
+        synchronized (this)  {
+            final File old = this.disk.put(_key, _file);
+            if (old != null)  {
+                this.diskSize -= old.length();
+                old.delete();
+            }
+            this.diskSize += _file.length();
+            final Iterator<File> iter = this.disk.values().iterator();
+            while ((this.diskSize > this.maxDiskSize) && iter.hasNext())  {
+                final File file = iter.next();
+                iter.remove();
+                this.diskSize -= file.length();
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns a new unique file of the disk tier.
+     *
+     * @return new file; <code>null</code> if no disk tier is used
+     */
+    private File newFile()
+    {
+        File ret = null;
+        if (this.directory != null)  {
+            synchronized (this)  {
+                ret = new File(this.directory, "content-" + (++this.fileIndex) + ".bin");
+            }
+            ret.deleteOnExit();
+        }
+        return ret;
+    }
+
+    /**
+     * Removes all cached contents (the files of the disk tier are deleted).
+     */
+    public synchronized void clear()
+    {
+        for (final File file : this.disk.values())  {
+            file.delete();
+        }
+        this.disk.clear();
+        this.diskSize = 0;
+        this.memory.clear();
+        this.memorySize = 0;
+    }
+
+    /**
+     * Returns the count of the hits in the memory tier.
+     *
+     * @return count of memory hits
+     */
+    public long getMemoryHits()
+    {
+        return this.memoryHits.get();
+    }
+
+    /**
+     * Returns the count of the hits in the disk tier.
+     *
+     * @return count of disk hits
+     */
+    public long getDiskHits()
+    {
+        return this.diskHits.get();
+    }
+
+    /**
+     * Returns the count of the misses.
+     *
+     * @return count of misses
+     */
+    public long getMisses()
+    {
+        return this.misses.get();
+    }
+
+    /**
+     * Returns the rate of the hits (memory and disk) of all requests.
+     *
+     * @return hit rate between 0 and 1
+     */
+    public double getHitRate()
+    {
+        final long hits = this.memoryHits.get() + this.diskHits.get();
+        final long requests = hits + this.misses.get();
+        return (requests == 0) ? 0 : (double) hits / (double) requests;
+    }
+
+    /**
+     * Returns the current bytes of all contents in the memory tier.
+     *
+     * @return bytes in memory
+     */
+    public synchronized long getMemorySize()
+    {
+        return this.memorySize;
+    }
+
+    /**
+     * Returns the current bytes of all contents in the disk tier.
+     *
+     * @return bytes on disk
+     */
+    public synchronized long getDiskSize()
+    {
+        return this.diskSize;
+    }
+
+    /**
+     * Input stream which caches the bytes of the original content while they
+     * are read. The bytes are collected in memory until the content is larger
+     * than the {@link ContentCache#maxMemoryEntrySize maximum entry size}
+     * of the memory tier; then the collected and all following bytes are
+     * written into a new file of the disk tier.
+     */
+    private class CachingInputStream
+            extends InputStream
+    {
+        /**
+         * Key of the content.
+         */
+        private final String key;
+
+        /**
+         * Original content.
+         */
+        private final InputStream content;
+
+        /**
+         * Buffer for a single read byte.
+         */
+        private final byte[] single = new byte[1];
+
+        /**
+         * Bytes read so far if the content is cached in the memory tier;
+         * <code>null</code> if the content is written into a file of the
+         * disk tier or is not cached.
+         */
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /**
+         * File of the disk tier for the content; <code>null</code> if the
+         * content is not written into the disk tier.
+         */
+        private File file;
+
+        /**
+         * Output stream of the {@link #file}.
+         */
+        private OutputStream fileOut;
+
+        /**
+         * Count of the bytes read so far.
+         */
+        private long size;
+
+        /**
+         * Is the content still cached (the end of the content is not reached
+         * and the content was not abandoned)?
+         */
+        private boolean caching = true;
+
+        /**
+         * @param _key      key of the content
+         * @param _content  original content
+         */
+        CachingInputStream(final String _key,
+                           final InputStream _content)
+        {
+            this.key = _key;
+            this.content = _content;
+        }
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            final int ret = this.read(this.single, 0, 1);
+            return (ret < 0) ? -1 : (this.single[0] & 0xff);
+        }
+
+        @Override
+        public int read(final byte[] _bytes,
+                        final int _offset,
+                        final int _length)
+                throws IOException
+        {
+            final int ret;
+            try  {
+                ret = this.content.read(_bytes, _offset, _length);
+            } catch (final IOException ex)  {
+                this.abandon();
+                throw ex;
+            }
+            if (ret < 0)  {
+                this.finish();
+            } else if (ret > 0)  {
+                this.cache(_bytes, _offset, ret);
+            }
+            return ret;
+        }
+
+        @Override
+        public int available()
+                throws IOException
+        {
+            return this.content.available();
+        }
+
+        /**
+         * Closes the original content. If the end of the content was not
+         * reached, the content is not cached.
+         *
+         * @throws IOException if the original content could not be closed
+         */
+        @Override
+        public void close()
+                throws IOException
+        {
+            this.abandon();
+            this.content.close();
+        }
+
+        /**
+         * Writes given read bytes into the memory buffer or into the file of
+         * the disk tier. If the content could not be written, the content is
+         * not cached, but the caller still gets the content.
+         *
+         * @param _bytes    read bytes
+         * @param _offset   offset of the read bytes
+         * @param _length   count of the read bytes
+         */
+        private void cache(final byte[] _bytes,
+                           final int _offset,
+                           final int _length)
+        {
+            if (this.caching)  {
+                this.size += _length;
+                try  {
+                    // content too large for the memory => switch to disk
+                    if ((this.fileOut == null) && (this.size > ContentCache.this.maxMemoryEntrySize))  {
+                        this.file = ContentCache.this.newFile();
+                        if (this.file == null)  {
+                            // no disk tier => not cached
+                            this.abandon();
+                        } else  {
+                            this.fileOut = new FileOutputStream(this.file);
+                            this.bytes.writeTo(this.fileOut);
+                            this.bytes = null;
+                        }
+                    }
+                    if (this.fileOut != null)  {
+                        this.fileOut.write(_bytes, _offset, _length);
+                    } else if (this.bytes != null)  {
+                        this.bytes.write(_bytes, _offset, _length);
+                    }
+                } catch (final IOException ex)  {
+                    ContentCache.LOGGER.warn("content could not be written to '" + this.file + "'", ex);
+                    this.abandon();
+                }
+            }
+        }
+
+        /**
+         * The end of the content is reached and the read content is put into
+         * the memory or disk tier.
+         */
+        private void finish()
+        {
+            if (this.caching)  {
+                this.caching = false;
+                if (this.fileOut != null)  {
+                    try  {
+                        this.fileOut.close();
+                        ContentCache.this.putDisk(this.key, this.file);
+                    } catch (final IOException ex)  {
+                        ContentCache.LOGGER.warn("content could not be written to '" + this.file + "'", ex);
+                        this.file.delete();
+                    }
+                    this.fileOut = null;
+                    this.file = null;
+                } else  {
+                    ContentCache.this.putMemory(this.key, this.bytes.toByteArray());
+                    this.bytes = null;
+                }
+            }
+        }
+
+        /**
+         * The content is not cached: the collected bytes are released and an
+         * already written file of the disk tier is deleted.
+         */
+        private void abandon()
+        {
+            if (this.caching)  {
+                this.caching = false;
+                this.bytes = null;
+                if (this.fileOut != null)  {
+                    try  {
+                        this.fileOut.close();
+                    } catch (final IOException ex)  {
+                        ContentCache.LOGGER.debug("file '" + this.file + "' could not be closed", ex);
+                    }
+                    this.fileOut = null;
+                }
+                if (this.file != null)  {
+                    this.file.delete();
+                    this.file = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.cache;
+
+import java.io.InputStream;
+
+import com.googlecode.jsvnserve.api.IRepository;
+
+/**
+ * <p>Repository which caches the contents of the files in a shared
+ * {@link ContentCache}. The key of a content is the user, the UUID of the
+ * repository, the repository path, the absolute path of the file within the
+ * repository and the revision. If no revision is given, the latest revision
+ * is used (so that the content could be cached).</p>
+ *
+ * <p>A hit does not call the delegated repository, so the access checks of
+ * the delegated repository are skipped. Therefore the contents are cached
+ * per user: a content read by one user is never returned to another user.
+ * The repository path is also part of the key, because the paths of a
+ * repository could depend on the user (see
+ * {@link com.googlecode.jsvnserve.api.IRepositoryFactory#createRepository(String, String)}).</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see CachingRepositoryFactory
+ */
+public class ContentCachingRepository
+        extends DelegatingRepository
+{
+    /**
+     * Shared cache of the contents.
+     */
+    private final ContentCache contentCache;
+
+    /**
+     * Name of the user of the delegated repository.
+     */
+    private final String user;
+
+    /**
+     * @param _delegate         repository to which all methods are forwarded
+     * @param _contentCache     shared cache of the contents
+     * @param _user             name of the user of the delegated repository
+     */
+    public ContentCachingRepository(final IRepository _delegate,
+                                    final ContentCache _contentCache,
+                                    final String _user)
+    {
+        super(_delegate);
+        this.contentCache = _contentCache;
+        this.user = _user;
+    }
+
+    /**
+     * Returns the content of the file from the {@link #contentCache}. If the
+     * content is not cached, the content is fetched from the delegated
+     * repository and put into the cache while it is read by the caller.
+     *
+     * @param _revision     revision of the file; <code>null</code> for the
+     *                      latest revision
+     * @param _path         path of the file
+     * @return input stream of the content
+     */
+    @Override
+    public InputStream getFile(final Long _revision,
+                               final CharSequence _path)
+    {
+        final long revision = (_revision == null) ? this.getLatestRevision() : _revision.longValue();
+        final String key = this.getKey(revision, _path);
+        InputStream ret = this.contentCache.get(key);
+        if (ret == null)  {
+            final InputStream content = super.getFile(revision, _path);
+            if (content != null)  {
+                ret = this.contentCache.put(key, content);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the key of the content in the cache. Relative paths are
+     * evaluated from the current location path.
+     *
+     * @param _revision     revision of the file
+     * @param _path         path of the file
+     * @return key of the content
+     */
+    protected String getKey(final long _revision,
+                            final CharSequence _path)
+    {
+        final StringBuilder key = new StringBuilder()
+                .append(this.user).append(' ')
+                .append(this.getUUID()).append(' ')
+                .append(this.getRepositoryPath()).append(' ')
+                .append(_revision).append(' ');
+        if ((_path.length() == 0) || (_path.charAt(0) != '/'))  {
+            final CharSequence location = this.getLocationPath();
+            key.append('/');
+            if ((location != null) && (location.length() > 0))  {
+                key.append(location).append('/');
+            }
+        }
+        return key.append(_path).toString();
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.cache;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.googlecode.jsvnserve.api.IRepository;
+import com.googlecode.jsvnserve.api.ServerException;
+import com.googlecode.jsvnserve.api.properties.RevisionPropertyValues;
+import com.googlecode.jsvnserve.util.Timestamp;
+
+/**
+ * <p>In-memory index of the revision dates of one repository, shared by all
+ * sessions on the repository. The date of each revision is stored in
+ * microseconds within a primitive array indexed by the revision number, so
+ * that the revision of a date is found with a binary search without any
+ * request to the repository.</p>
+ *
+ * <p>The index is filled lazily from the revision properties of the
+ * repository and extended with each new revision. Revisions without date
+ * get the date of the previous revision, so that the dates stay ascending
+ * (the same assumption is made by the SVN server itself).</p>
+ *
+ * <p>Only one update runs at the same time. The revision properties are read
+ * in batches of {@link #UPDATE_BATCH_SIZE} revisions without holding the
+ * lock of the index; only the append of a read batch holds the lock, so
+ * that searches are not blocked while the index is built. Sessions which do
+ * not want to wait for a running update use
+ * {@link #tryUpdate(IRepository)}.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see DatedRevisionRepository
+ */
+public class DatedRevisionIndex
+{
+    /**
+     * Maximum count of revisions for which the revision properties are read
+     * before the dates are appended to the index.
+     */
+    static final int UPDATE_BATCH_SIZE = 1000;
+
+    /**
+     * Dates in microseconds; the index of the array is the revision number.
+     * Only the first {@link #size} entries are used.
+     */
+    private long[] dates = new long[16];
+
+    /**
+     * Count of the indexed revisions.
+     */
+    private int size = 0;
+
+    /**
+     * Lock so that only one update runs at the same time.
+     */
+    private final Lock updateLock = new ReentrantLock();
+
+    /**
+     * Returns the latest indexed revision.
+     *
+     * @return latest indexed revision; <code>-1</code> if nothing is indexed
+     */
+    public synchronized long getLatestRevision()
+    {
+        return this.size - 1;
+    }
+
+    /**
+     * Appends the dates of all revisions of the repository which are not
+     * indexed. If another update is running, the method waits until the
+     * other update is finished.
+     *
+     * @param _repository   repository of the index
+     * @throws ServerException if the revision properties could not be read
+     */
+    public void update(final IRepository _repository)
+            throws ServerException
+    {
+        this.updateLock.lock();
+        try  {
+            this.appendRevisions(_repository);
+        } finally  {
+            this.updateLock.unlock();
+        }
+    }
+
+    /**
+     * Appends the dates of all not indexed revisions only if no other update
+     * is running.
+     *
+     * @param _repository   repository of the index
+     * @return <i>true</i> if the index is up to date; <i>false</i> if
+     *         another update is running
+     * @throws ServerException if the revision properties could not be read
+     */
+    public boolean tryUpdate(final IRepository _repository)
+            throws ServerException
+    {
+        boolean ret = false;
+        if (this.updateLock.tryLock())  {
+            try  {
+                this.appendRevisions(_repository);
+                ret = true;
+            } finally  {
+                this.updateLock.unlock();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Reads the dates of all not indexed revisions in batches of
+     * {@link #UPDATE_BATCH_SIZE} revisions and appends each batch to the
+     * index. Must be called with the {@link #updateLock}.
+     *
+     * @param _repository   repository of the index
+     * @throws ServerException if the revision properties could not be read
+     */
+    private void appendRevisions(final IRepository _repository)
+            throws ServerException
+    {
+        final long latest = _repository.getLatestRevision();
+        if (latest >= Integer.MAX_VALUE)  {
+            throw new ServerException("revision " + latest + " could not be indexed");
+        }
+        // only this thread appends, so the size could be read without lock
+        int start = (int) (this.getLatestRevision() + 1);
+        while (start <= latest)  {
+            final int count = (int) Math.min(DatedRevisionIndex.UPDATE_BATCH_SIZE, latest - start + 1);
+            final long[] batch = new long[count];
+            for (int idx = 0; idx < count; idx++)  {
+                final RevisionPropertyValues props = ((start + idx) == 0)
+                                                     ? _repository.getRevision0Properties()
+                                                     : _repository.getRevisionProperties(start + idx);
+                final Timestamp date = (props != null) ? props.getDate() : null;
+                batch[idx] = (date != null) ? date.getTimeInMicros() : Long.MIN_VALUE;
+            }
+            this.append(batch);
+            start += count;
+        }
+    }
+
+    /**
+     * Appends the dates of a batch of revisions after the latest indexed
+     * revision.
+     *
+     * @param _batch    dates of the revisions in microseconds
+     */
+    private synchronized void append(final long[] _batch)
+    {
+        if ((this.size + _batch.length) > this.dates.length)  {
+            final long[] newDates = new long[Math.max(this.dates.length * 2, this.size + _batch.length)];
+            System.arraycopy(this.dates, 0, newDates, 0, this.size);
+            this.dates = newDates;
+        }
+        for (final long date : _batch)  {
+            long micros = date;
+            if ((this.size > 0) && (micros < this.dates[this.size - 1]))  {
+                micros = this.dates[this.size - 1];
+            }
+            this.dates[this.size++] = micros;
+        }
+    }
+
+    /**
+     * Returns the youngest indexed revision which is not younger than given
+     * date.
+     *
+     * @param _date     searched date
+     * @return youngest revision at or before the date; <code>0</code> if the
+     *         date is before all revisions or nothing is indexed
+     */
+    public synchronized long getRevision(final Timestamp _date)
+    {
+        final long micros = _date.getTimeInMicros();
+        // first revision with a date after the searched date
+        int low = 0;
+        int high = this.size;
+        while (low < high)  {
+            final int mid = (low + high) >>> 1;
+            if (this.dates[mid] <= micros)  {
+                low = mid + 1;
+            } else  {
+                high = mid;
+            }
+        }
+        return Math.max(0, low - 1);
+    }
+}
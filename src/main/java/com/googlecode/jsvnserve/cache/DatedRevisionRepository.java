@@ -0,0 +1,130 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.cache;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.jsvnserve.api.CommitInfo;
+import com.googlecode.jsvnserve.api.IRepository;
+import com.googlecode.jsvnserve.api.OtherServerException;
+import com.googlecode.jsvnserve.api.ServerException;
+import com.googlecode.jsvnserve.api.editorcommands.DirectoryNotExistsException;
+import com.googlecode.jsvnserve.api.editorcommands.EditorCommandSet;
+import com.googlecode.jsvnserve.api.editorcommands.FileNotExistsException;
+import com.googlecode.jsvnserve.api.properties.Properties;
+import com.googlecode.jsvnserve.util.Timestamp;
+
+/**
+ * Repository which answers the revision of a date with a shared
+ * {@link DatedRevisionIndex}. The index is extended after each commit and
+ * before each search (for revisions committed from other sessions), so that
+ * only the revision properties of new revisions are read from the delegated
+ * repository. While another session updates the index (e.g. the first
+ * build), the search is forwarded to the delegated repository instead of
+ * waiting for the update.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see CachingRepositoryFactory
+ */
+public class DatedRevisionRepository
+        extends DelegatingRepository
+{
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatedRevisionRepository.class);
+
+    /**
+     * Shared index of the revision dates of the repository.
+     */
+    private final DatedRevisionIndex index;
+
+    /**
+     * @param _delegate     repository to which all methods are forwarded
+     * @param _index        shared index of the revision dates
+     */
+    public DatedRevisionRepository(final IRepository _delegate,
+                                   final DatedRevisionIndex _index)
+    {
+        super(_delegate);
+        this.index = _index;
+    }
+
+    /**
+     * Commits and appends the date of the new revision to the index.
+     *
+     * @param _logMessage       commit message
+     * @param _locks            map of locks with path as key and lock token
+     *                          as value
+     * @param _keepLocks        <i>true</i> means to keep existing locks
+     * @param _revisionProps    custom specific revision properties
+     * @param _editor           editor commands of the commit
+     * @return commit information of the delegated repository
+     */
+    @Override
+    public CommitInfo commit(final String _logMessage,
+                             final Map<String, String> _locks,
+                             final boolean _keepLocks,
+                             final Properties _revisionProps,
+                             final EditorCommandSet _editor)
+            throws DirectoryNotExistsException, FileNotExistsException, OtherServerException
+    {
+        final CommitInfo ret = super.commit(_logMessage, _locks, _keepLocks, _revisionProps, _editor);
+        // only extended if already built (the index is built lazily)
+        if (this.index.getLatestRevision() >= 0)  {
+            try  {
+                this.index.tryUpdate(this.getDelegate());
+            } catch (final ServerException ex)  {
+                DatedRevisionRepository.LOGGER.warn("dated revision index of '" + this.getRepositoryPath() + "' could not be updated", ex);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Searches the revision of the date within the index. The index is
+     * updated before, if the repository has new revisions. If another
+     * session updates the index, the search is forwarded to the delegated
+     * repository.
+     *
+     * @param _date     searched date
+     * @return youngest revision committed at or before the date;
+     *         <code>null</code> if the index is updated from another session
+     *         and the delegated repository does not support dated revisions
+     */
+    @Override
+    public Long getDatedRevision(final Timestamp _date)
+            throws ServerException
+    {
+        final Long ret;
+        if ((this.index.getLatestRevision() < this.getLatestRevision())
+                && !this.index.tryUpdate(this.getDelegate()))  {
+            ret = super.getDatedRevision(_date);
+        } else  {
+            ret = this.index.getRevision(_date);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.UUID;
+
+import com.googlecode.jsvnserve.api.CommitInfo;
+import com.googlecode.jsvnserve.api.Depth;
+import com.googlecode.jsvnserve.api.DirEntry;
+import com.googlecode.jsvnserve.api.DirEntryList;
+import com.googlecode.jsvnserve.api.IDatedRevision;
+import com.googlecode.jsvnserve.api.IDeletedRevision;
+import com.googlecode.jsvnserve.api.IEncodedRevisionProperties;
+import com.googlecode.jsvnserve.api.ILocationSegmentReceiver;
+import com.googlecode.jsvnserve.api.ILocationSegments;
+import com.googlecode.jsvnserve.api.ILogReceiver;
+import com.googlecode.jsvnserve.api.IReplay;
+import com.googlecode.jsvnserve.api.IRepository;
+import com.googlecode.jsvnserve.api.IStreamingCommit;
+import com.googlecode.jsvnserve.api.IStreamingLog;
+import com.googlecode.jsvnserve.api.LocationEntries;
+import com.googlecode.jsvnserve.api.LockDescriptionList;
+import com.googlecode.jsvnserve.api.LogEntryList;
+import com.googlecode.jsvnserve.api.OtherServerException;
+import com.googlecode.jsvnserve.api.ReportList;
+import com.googlecode.jsvnserve.api.ServerException;
+import com.googlecode.jsvnserve.api.LockDescriptionList.LockDescription;
+import com.googlecode.jsvnserve.api.editorcommands.DirectoryNotExistsException;
+import com.googlecode.jsvnserve.api.editorcommands.EditorCommandSet;
+import com.googlecode.jsvnserve.api.editorcommands.FileNotExistsException;
+import com.googlecode.jsvnserve.api.editorcommands.ICommitEditor;
+import com.googlecode.jsvnserve.api.editorcommands.IDeltaEditor;
+import com.googlecode.jsvnserve.api.filerevisions.FileRevisionsList;
+import com.googlecode.jsvnserve.api.properties.EncodedProperties;
+import com.googlecode.jsvnserve.api.properties.Properties;
+import com.googlecode.jsvnserve.api.properties.Revision0PropertyValues;
+import com.googlecode.jsvnserve.api.properties.RevisionPropertyValues;
+import com.googlecode.jsvnserve.util.Timestamp;
+
+/**
+ * Repository which forwards all methods to another repository. Used as base
+ * class for repositories which change the behavior of some methods (e.g.
+ * to pool or to cache). A streaming commit is forwarded if the delegated
+ * repository supports it.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class DelegatingRepository
+        implements IRepository, IStreamingCommit, IStreamingLog, IReplay, ILocationSegments,
+                   IDeletedRevision, IDatedRevision, IEncodedRevisionProperties
+{
+    /**
+     * Repository to which all methods are forwarded.
+     */
+    private final IRepository delegate;
+
+    /**
+     * @param _delegate     repository to which all methods are forwarded
+     */
+    public DelegatingRepository(final IRepository _delegate)
+    {
+        this.delegate = _delegate;
+    }
+
+    /**
+     * Returns the repository to which all methods are forwarded.
+     *
+     * @return delegated repository
+     * @see #delegate
+     */
+    public IRepository getDelegate()
+    {
+        return this.delegate;
+    }
+
+    public UUID getUUID()
+    {
+        return this.delegate.getUUID();
+    }
+
+    public CharSequence getRepositoryPath()
+    {
+        return this.delegate.getRepositoryPath();
+    }
+
+    public CharSequence getLocationPath()
+    {
+        return this.delegate.getLocationPath();
+    }
+
+    public void setLocationPath(final CharSequence _newPath)
+    {
+        this.delegate.setLocationPath(_newPath);
+    }
+
+    public long getLatestRevision()
+    {
+        return this.delegate.getLatestRevision();
+    }
+
+    public RevisionPropertyValues getRevisionProperties(final long _revision)
+            throws ServerException
+    {
+        return this.delegate.getRevisionProperties(_revision);
+    }
+
+    public Revision0PropertyValues getRevision0Properties()
+            throws ServerException
+    {
+        return this.delegate.getRevision0Properties();
+    }
+
+    public void close()
+    {
+        this.delegate.close();
+    }
+
+    public CommitInfo commit(final String _logMessage,
+                             final Map<String, String> _locks,
+                             final boolean _keepLocks,
+                             final Properties _revisionProps,
+                             final EditorCommandSet _editor)
+            throws DirectoryNotExistsException, FileNotExistsException, OtherServerException
+    {
+        return this.delegate.commit(_logMessage, _locks, _keepLocks, _revisionProps, _editor);
+    }
+
+    /**
+     * Forwards the start of a streaming commit if the delegated repository
+     * implements {@link IStreamingCommit}.
+     *
+     * @param _logMessage       commit message
+     * @param _locks            map of locks with path as key and lock token
+     *                          as value
+     * @param _keepLocks        <i>true</i> means to keep existing locks
+     * @param _revisionProps    custom specific revision properties
+     * @return commit editor of the delegated repository; <code>null</code>
+     *         if the delegated repository does not support streaming commits
+     */
+    public ICommitEditor openCommit(final String _logMessage,
+                                    final Map<String,String> _locks,
+                                    final boolean _keepLocks,
+                                    final Properties _revisionProps)
+            throws ServerException
+    {
+        return (this.delegate instanceof IStreamingCommit)
+               ? ((IStreamingCommit) this.delegate).openCommit(_logMessage, _locks, _keepLocks, _revisionProps)
+               : null;
+    }
+
+    public DirEntryList getDir(final Long _revision,
+                               final CharSequence _path,
+                               final boolean _retFileSize,
+                               final boolean _retHasProps,
+                               final boolean _retCreatedRev,
+                               final boolean _retModified,
+                               final boolean _retAuthor)
+    {
+        return this.delegate.getDir(_revision, _path,
+                                    _retFileSize, _retHasProps, _retCreatedRev, _retModified, _retAuthor);
+    }
+
+    public InputStream getFile(final Long _revision,
+                               final CharSequence _path)
+    {
+        return this.delegate.getFile(_revision, _path);
+    }
+
+    public FileRevisionsList getFileRevs(final String _path,
+                                         final long _startRev,
+                                         final long _endRev,
+                                         final boolean _mergeInfo)
+            throws ServerException
+    {
+        return this.delegate.getFileRevs(_path, _startRev, _endRev, _mergeInfo);
+    }
+
+    public LockDescriptionList lock(final String _comment,
+                                    final boolean _stealLock,
+                                    final Map<String, Long> _pathsWithRevision)
+            throws ServerException
+    {
+        return this.delegate.lock(_comment, _stealLock, _pathsWithRevision);
+    }
+
+    public LockDescriptionList unlock(final boolean _breakLock,
+                                      final Map<String, String> _pathsWithTokens)
+    {
+        return this.delegate.unlock(_breakLock, _pathsWithTokens);
+    }
+
+    public LockDescription getFileLock(final CharSequence _filePath)
+    {
+        return this.delegate.getFileLock(_filePath);
+    }
+
+    public LockDescriptionList getLocks(final CharSequence _path)
+    {
+        return this.delegate.getLocks(_path);
+    }
+
+    public DirEntry stat(final Long _revision,
+                         final CharSequence _path,
+                         final boolean _includeProperties)
+            throws ServerException
+    {
+        return this.delegate.stat(_revision, _path, _includeProperties);
+    }
+
+    public LogEntryList getLog(final long _startRevision,
+                               final long _endRevision,
+                               final boolean _includeChangedPaths,
+                               final CharSequence... _paths)
+    {
+        return this.delegate.getLog(_startRevision, _endRevision, _includeChangedPaths, _paths);
+    }
+
+    /**
+     * Forwards the streaming log if the delegated repository implements
+     * {@link IStreamingLog}.
+     *
+     * @param _startRevision        revision number to start from
+     * @param _endRevision          revision number to end at
+     * @param _includeChangedPaths  must also the changed paths included?
+     * @param _limit                maximum count of log entries
+     * @param _receiver             receiver of the log entries
+     * @param _paths                paths for which the log is searched
+     * @return <i>true</i> if the delegated repository streamed the log;
+     *         <i>false</i> if the delegated repository does not support
+     *         streaming logs
+     */
+    public boolean getLog(final long _startRevision,
+                          final long _endRevision,
+                          final boolean _includeChangedPaths,
+                          final long _limit,
+                          final ILogReceiver _receiver,
+                          final CharSequence... _paths)
+            throws ServerException, IOException
+    {
+        return (this.delegate instanceof IStreamingLog)
+               && ((IStreamingLog) this.delegate).getLog(_startRevision, _endRevision, _includeChangedPaths,
+                                                         _limit, _receiver, _paths);
+    }
+
+    /**
+     * Checks if the delegated repository implements {@link IReplay} and
+     * supports the replay.
+     *
+     * @return <i>true</i> if the delegated repository supports the replay;
+     *         otherwise <i>false</i>
+     */
+    public boolean supportsReplay()
+    {
+        return (this.delegate instanceof IReplay) && ((IReplay) this.delegate).supportsReplay();
+    }
+
+    /**
+     * Forwards the replay if the delegated repository implements
+     * {@link IReplay}.
+     *
+     * @param _revision         revision to replay
+     * @param _lowWaterMark     lowest revision used as copy source
+     * @param _sendDeltas       must the text deltas be written?
+     * @param _editor           editor to which the changes are pushed
+     * @return <i>true</i> if the delegated repository replayed the revision;
+     *         <i>false</i> if the delegated repository does not support
+     *         replays
+     */
+    public boolean replay(final long _revision,
+                          final long _lowWaterMark,
+                          final boolean _sendDeltas,
+                          final IDeltaEditor _editor)
+            throws ServerException, IOException
+    {
+        return (this.delegate instanceof IReplay)
+               && ((IReplay) this.delegate).replay(_revision, _lowWaterMark, _sendDeltas, _editor);
+    }
+
+    public void getStatus(final Long _revision,
+                          final String _path,
+                          final Depth _depth,
+                          final ReportList _report,
+                          final IDeltaEditor _editor)
+            throws ServerException, IOException
+    {
+        this.delegate.getStatus(_revision, _path, _depth, _report, _editor);
+    }
+
+    public void getSwitchEditor(final String _newPath,
+                                final Long _revision,
+                                final String _path,
+                                final Depth _depth,
+                                final ReportList _report,
+                                final IDeltaEditor _editor)
+            throws ServerException, IOException
+    {
+        this.delegate.getSwitchEditor(_newPath, _revision, _path, _depth, _report, _editor);
+    }
+
+    public LocationEntries getLocations(final long _pegRevision,
+                                        final String _path,
+                                        final long... _revisions)
+    {
+        return this.delegate.getLocations(_pegRevision, _path, _revisions);
+    }
+
+    /**
+     * Forwards the walk of the location segments if the delegated repository
+     * implements {@link ILocationSegments}.
+     *
+     * @param _path             path of the node in the peg revision
+     * @param _pegRevision      revision in which the path is looked up
+     * @param _startRevision    youngest revision of the segments
+     * @param _endRevision      oldest revision of the segments
+     * @param _receiver         receiver of the segments
+     * @return <i>true</i> if the delegated repository streamed the segments;
+     *         <i>false</i> if the delegated repository does not support
+     *         location segments
+     */
+    public boolean getLocationSegments(final String _path,
+                                       final long _pegRevision,
+                                       final long _startRevision,
+                                       final long _endRevision,
+                                       final ILocationSegmentReceiver _receiver)
+            throws ServerException, IOException
+    {
+        return (this.delegate instanceof ILocationSegments)
+               && ((ILocationSegments) this.delegate).getLocationSegments(_path, _pegRevision,
+                                                                          _startRevision, _endRevision,
+                                                                          _receiver);
+    }
+
+    /**
+     * Forwards the evaluation of the deleted revision if the delegated
+     * repository implements {@link IDeletedRevision}.
+     *
+     * @param _path             path of the node in the peg revision
+     * @param _pegRevision      revision in which the path exists
+     * @param _endRevision      youngest revision to search
+     * @return deleted revision from the delegated repository;
+     *         <code>null</code> if the delegated repository does not support
+     *         the deleted revision
+     */
+    public Long getDeletedRevision(final String _path,
+                                   final long _pegRevision,
+                                   final long _endRevision)
+            throws ServerException
+    {
+        return (this.delegate instanceof IDeletedRevision)
+               ? ((IDeletedRevision) this.delegate).getDeletedRevision(_path, _pegRevision, _endRevision)
+               : null;
+    }
+
+    /**
+     * Forwards the evaluation of the revision of a date if the delegated
+     * repository implements {@link IDatedRevision}.
+     *
+     * @param _date     searched date
+     * @return revision from the delegated repository; <code>null</code> if
+     *         the delegated repository does not support dated revisions
+     */
+    public Long getDatedRevision(final Timestamp _date)
+            throws ServerException
+    {
+        return (this.delegate instanceof IDatedRevision)
+               ? ((IDatedRevision) this.delegate).getDatedRevision(_date)
+               : null;
+    }
+
+    /**
+     * Forwards the encoded revision properties if the delegated repository
+     * implements {@link IEncodedRevisionProperties}.
+     *
+     * @param _revision     revision for which the properties are searched
+     * @return encoded revision properties from the delegated repository;
+     *         <code>null</code> if the delegated repository does not support
+     *         encoded revision properties
+     */
+    public EncodedProperties getEncodedRevisionProperties(final long _revision)
+            throws ServerException
+    {
+        return (this.delegate instanceof IEncodedRevisionProperties)
+               ? ((IEncodedRevisionProperties) this.delegate).getEncodedRevisionProperties(_revision)
+               : null;
+    }
+}
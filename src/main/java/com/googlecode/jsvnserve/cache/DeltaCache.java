@@ -0,0 +1,344 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.googlecode.jsvnserve.api.IRepository;
+
+/**
+ * <p>Cache of the generated svndiff deltas between two file contents which is
+ * shared between all sessions of the SVN server. If many SVN clients update
+ * the same file from the same base revision to the same target revision
+ * (e.g. after a commit), the delta is computed only once. The cached
+ * {@link Delta} holds the serialized svndiff windows in the order in which
+ * they were written, so that a hit could be written without fetching the
+ * file contents from the repository. Because a hit does not call the
+ * repository (and so skips its access checks), the deltas are cached per
+ * user.</p>
+ *
+ * <p>The cache is bounded by the sum of the bytes of all deltas and evicts
+ * the least recently used deltas. Deltas larger than the
+ * {@link #maxEntrySize maximum entry size} are not cached.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see com.googlecode.jsvnserve.SVNSessionStreams#writeFileDelta(Long, String, String, long, String, com.googlecode.jsvnserve.SVNSessionStreams.DeltaOutputStream, boolean)
+ */
+public class DeltaCache
+{
+    /**
+     * Maximum bytes of all cached deltas.
+     */
+    private final long maxSize;
+
+    /**
+     * Maximum bytes of one cached delta.
+     */
+    private final long maxEntrySize;
+
+    /**
+     * Cached deltas in the order of the last access.
+     */
+    private final LinkedHashMap<String,Delta> deltas = new LinkedHashMap<String,Delta>(16, 0.75f, true);
+
+    /**
+     * Current bytes of all cached deltas.
+     */
+    private long size;
+
+    /**
+     * Count of the hits.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Count of the misses.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param _maxSize          maximum bytes of all cached deltas
+     * @param _maxEntrySize     maximum bytes of one cached delta
+     */
+    public DeltaCache(final long _maxSize,
+                      final long _maxEntrySize)
+    {
+        this.maxSize = _maxSize;
+        this.maxEntrySize = Math.min(_maxEntrySize, _maxSize);
+    }
+
+    /**
+     * Returns the key of the delta from the base file to the target file.
+     * Because the file contents of a revision could never be changed, the
+     * paths and revisions (and the MD5 checksum of the base as known by the
+     * SVN client) identify the delta. The compression level is part of the
+     * key, because the recorded svndiff windows are compressed with it. The
+     * user is part of the key, because a delta computed from the repository
+     * of one user must not be returned to another user.
+     *
+     * @param _user             name of the user of the repository
+     * @param _repository       repository of the files
+     * @param _basePath         path of the base file; <code>null</code> if
+     *                          the delta is computed against an empty file
+     * @param _baseRevision     revision of the base file
+     * @param _baseCheckSumMD5  MD5 checksum of the base file or
+     *                          <code>null</code>
+     * @param _targetPath       path of the target file
+     * @param _targetRevision   revision of the target file
+     * @param _compressionLevel compression level of the svndiff windows
+     * @return key of the delta
+     */
+    public static String getKey(final String _user,
+                                final IRepository _repository,
+                                final String _basePath,
+                                final Long _baseRevision,
+                                final String _baseCheckSumMD5,
+                                final String _targetPath,
+                                final long _targetRevision,
+                                final int _compressionLevel)
+    {
+        return new StringBuilder()
+                .append(_user).append(' ')
+                .append(_repository.getUUID()).append(' ')
+                .append(_repository.getRepositoryPath()).append(' ')
+                .append(_repository.getLocationPath()).append(' ')
+                .append(_basePath).append('@').append(_baseRevision).append(' ')
+                .append(_baseCheckSumMD5).append(' ')
+                .append(_targetPath).append('@').append(_targetRevision).append(' ')
+                .append(_compressionLevel)
+                .toString();
+    }
+
+    /**
+     * Returns the cached delta for given key.
+     *
+     * @param _key  key of the delta
+     * @return cached delta; <code>null</code> if not cached
+     * @see #getKey(String, IRepository, String, Long, String, String, long, int)
+     */
+    public Delta get(final String _key)
+    {
+        final Delta ret;
+        synchronized (this)  {
+            ret = this.deltas.get(_key);
+        }
+        if (ret != null)  {
+            this.hits.incrementAndGet();
+        } else  {
+            this.misses.incrementAndGet();
+        }
+        return ret;
+    }
+
+    /**
+     * Creates a new delta which records the windows written by the delta
+     * generator. If the recorded delta is larger than the maximum entry size,
+     * the recording is stopped.
+     *
+     * @return new delta to record
+     * @see Delta#record(byte[], int, int)
+     */
+    public Delta newDelta()
+    {
+        return new Delta(this.maxEntrySize);
+    }
+
+    /**
+     * Puts the recorded delta into the cache. If the delta could not be
+     * recorded completely or is larger than the maximum entry size, the delta
+     * is not cached. The least recently used
+     * deltas are evicted until the cache is not larger than the maximum.
+     *
+     * @param _key      key of the delta
+     * @param _delta    recorded delta
+     * @param _md5      MD5 checksum of the target file
+     */
+    public void put(final String _key,
+                    final Delta _delta,
+                    final String _md5)
+    {
+        if ((_delta.chunks != null) && (_delta.size <= this.maxEntrySize))  {
+            _delta.md5 = _md5;
+            synchronized (this)  {
+                final Delta old = this.deltas.put(_key, _delta);
+                if (old != null)  {
+                    this.size -= old.size;
+                }
+                this.size += _delta.size;
+                final Iterator<Delta> iter = this.deltas.values().iterator();
+                while ((this.size > this.maxSize) && iter.hasNext())  {
+                    this.size -= iter.next().size;
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all cached deltas.
+     */
+    public synchronized void clear()
+    {
+        this.deltas.clear();
+        this.size = 0;
+    }
+
+    /**
+     * Returns the count of the hits.
+     *
+     * @return count of hits
+     */
+    public long getHits()
+    {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the count of the misses.
+     *
+     * @return count of misses
+     */
+    public long getMisses()
+    {
+        return this.misses.get();
+    }
+
+    /**
+     * Returns the current bytes of all cached deltas.
+     *
+     * @return bytes of all cached deltas
+     */
+    public synchronized long getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * Serialized svndiff windows of one delta and the MD5 checksum of the
+     * target file.
+     */
+    public static final class Delta
+    {
+        /**
+         * Maximum bytes of the delta.
+         */
+        private final long maxSize;
+
+        /**
+         * Serialized chunks in the written order; <code>null</code> if the
+         * delta is too large to cache.
+         */
+        private List<byte[]> chunks = new ArrayList<byte[]>();
+
+        /**
+         * Bytes of all chunks.
+         */
+        private long size;
+
+        /**
+         * MD5 checksum of the target file.
+         */
+        private String md5;
+
+        /**
+         * Creates a delta without size limit (e.g. for a delta which is
+         * computed in advance and written later).
+         */
+        public Delta()
+        {
+            this(Long.MAX_VALUE);
+        }
+
+        /**
+         * @param _maxSize  maximum bytes of the delta
+         */
+        private Delta(final long _maxSize)
+        {
+            this.maxSize = _maxSize;
+        }
+
+        /**
+         * Records a chunk written by the delta generator.
+         *
+         * @param _bytes    bytes of the chunk
+         * @param _offset   offset of the chunk
+         * @param _length   length of the chunk
+         */
+        public void record(final byte[] _bytes,
+                           final int _offset,
+                           final int _length)
+        {
+            if (this.chunks != null)  {
+                this.size += _length;
+                if (this.size > this.maxSize)  {
+                    this.chunks = null;
+                } else  {
+                    final byte[] chunk = new byte[_length];
+                    System.arraycopy(_bytes, _offset, chunk, 0, _length);
+                    this.chunks.add(chunk);
+                }
+            }
+        }
+
+        /**
+         * Writes all chunks of the delta in the recorded order. Each chunk
+         * is written with one call, so that the framing of the chunks is the
+         * same as for a computed delta.
+         *
+         * @param _out  output stream to which the chunks are written
+         * @throws IOException if the chunks could not be written
+         */
+        public void writeTo(final OutputStream _out)
+                throws IOException
+        {
+            for (final byte[] chunk : this.chunks)  {
+                _out.write(chunk, 0, chunk.length);
+            }
+        }
+
+        /**
+         * Returns the MD5 checksum of the target file.
+         *
+         * @return MD5 checksum
+         */
+        public String getMD5()
+        {
+            return this.md5;
+        }
+
+        /**
+         * Defines the MD5 checksum of the target file.
+         *
+         * @param _md5  MD5 checksum
+         */
+        public void setMD5(final String _md5)
+        {
+            this.md5 = _md5;
+        }
+    }
+}
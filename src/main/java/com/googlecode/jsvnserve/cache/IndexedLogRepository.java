@@ -0,0 +1,283 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.jsvnserve.api.CommitInfo;
+import com.googlecode.jsvnserve.api.ILogReceiver;
+import com.googlecode.jsvnserve.api.IRepository;
+import com.googlecode.jsvnserve.api.IRepositoryFactory;
+import com.googlecode.jsvnserve.api.OtherServerException;
+import com.googlecode.jsvnserve.api.ServerException;
+import com.googlecode.jsvnserve.api.LogEntryList.ChangedPath;
+import com.googlecode.jsvnserve.api.LogEntryList.LogEntry;
+import com.googlecode.jsvnserve.api.editorcommands.DirectoryNotExistsException;
+import com.googlecode.jsvnserve.api.editorcommands.EditorCommandSet;
+import com.googlecode.jsvnserve.api.editorcommands.FileNotExistsException;
+import com.googlecode.jsvnserve.api.properties.Properties;
+import com.googlecode.jsvnserve.element.WordElement.Word;
+
+/**
+ * Repository which answers path filtered logs with a shared
+ * {@link ChangedPathsIndex}. The revisions which touch the requested paths
+ * are evaluated from the index and only the log entries of these revisions
+ * are fetched from the delegated repository (with the absolute path of the
+ * requested path within the revision, so that copied paths are found). The
+ * index is updated incrementally after each commit and before each log; if
+ * the index is not up to date (e.g. because the initial build runs in the
+ * background), the log is forwarded to the delegated repository.
+ * The index is shared by all users, so it is always updated with an own
+ * repository of the configured service user (which must be allowed to read
+ * the complete repository); the log entries of the found revisions are
+ * fetched with the repository of the session, so the access checks of the
+ * user are not skipped.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see CachingRepositoryFactory
+ */
+public class IndexedLogRepository
+        extends DelegatingRepository
+{
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexedLogRepository.class);
+
+    /**
+     * Shared index of the changed paths of the repository.
+     */
+    private final ChangedPathsIndex index;
+
+    /**
+     * Factory which creates the repositories of the {@link #serviceUser} to
+     * update the {@link #index}.
+     */
+    private final IRepositoryFactory factory;
+
+    /**
+     * Name of the service user used to update the {@link #index}.
+     */
+    private final String serviceUser;
+
+    /**
+     * @param _delegate     repository to which all methods are forwarded
+     * @param _index        shared index of the changed paths
+     * @param _factory      factory which creates the repositories to update
+     *                      the index
+     * @param _serviceUser  name of the service user used to update the index
+     */
+    public IndexedLogRepository(final IRepository _delegate,
+                                final ChangedPathsIndex _index,
+                                final IRepositoryFactory _factory,
+                                final String _serviceUser)
+    {
+        super(_delegate);
+        this.index = _index;
+        this.factory = _factory;
+        this.serviceUser = _serviceUser;
+    }
+
+    /**
+     * Commits and appends the new revision to the index.
+     *
+     * @param _logMessage       commit message
+     * @param _locks            map of locks with path as key and lock token
+     *                          as value
+     * @param _keepLocks        <i>true</i> means to keep existing locks
+     * @param _revisionProps    custom specific revision properties
+     * @param _editor           editor commands of the commit
+     * @return commit information of the delegated repository
+     */
+    @Override
+    public CommitInfo commit(final String _logMessage,
+                             final Map<String, String> _locks,
+                             final boolean _keepLocks,
+                             final Properties _revisionProps,
+                             final EditorCommandSet _editor)
+            throws DirectoryNotExistsException, FileNotExistsException, OtherServerException
+    {
+        final CommitInfo ret = super.commit(_logMessage, _locks, _keepLocks, _revisionProps, _editor);
+        this.updateIndex();
+        return ret;
+    }
+
+    /**
+     * Pushes the log entries of the revisions found in the index. If the
+     * root path is requested (so that all revisions are part of the log) or
+     * the index could not be updated, the log is forwarded to the delegated
+     * repository.
+     *
+     * @param _startRevision        revision number to start from
+     * @param _endRevision          revision number to end at
+     * @param _includeChangedPaths  must also the changed paths included?
+     * @param _limit                maximum count of log entries
+     * @param _receiver             receiver of the log entries
+     * @param _paths                paths for which the log is searched
+     * @return <i>true</i> if the log is streamed
+     */
+    @Override
+    public boolean getLog(final long _startRevision,
+                          final long _endRevision,
+                          final boolean _includeChangedPaths,
+                          final long _limit,
+                          final ILogReceiver _receiver,
+                          final CharSequence... _paths)
+            throws ServerException, IOException
+    {
+        final List<String> paths = new ArrayList<String>(_paths.length);
+        for (final CharSequence path : _paths)  {
+            paths.add(this.getAbsolutePath(path));
+        }
+        if (paths.isEmpty() || paths.contains("/") || !this.updateIndex()
+                || (Math.max(_startRevision, _endRevision) > this.index.getLatestRevision()))  {
+            return super.getLog(_startRevision, _endRevision, _includeChangedPaths, _limit, _receiver, _paths);
+        }
+
+        final SortedMap<Long,String> revisions = new TreeMap<Long,String>();
+        for (final String path : paths)  {
+            for (final Map.Entry<Long,String> entry
+                    : this.index.getRevisions(path, _startRevision, _endRevision).entrySet())  {
+                if (!revisions.containsKey(entry.getKey()))  {
+                    revisions.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        final List<Map.Entry<Long,String>> ordered = new ArrayList<Map.Entry<Long,String>>(revisions.entrySet());
+        if (_startRevision > _endRevision)  {
+            Collections.reverse(ordered);
+        }
+        long count = 0;
+        for (final Map.Entry<Long,String> entry : ordered)  {
+            final long revision = entry.getKey();
+            for (final LogEntry logEntry
+                    : super.getLog(revision, revision, _includeChangedPaths, entry.getValue()).getLogEntries())  {
+                if (_includeChangedPaths)  {
+                    for (final ChangedPath changedPath : logEntry.getChangedPaths())  {
+                        IndexedLogRepository.addChangedPath(_receiver, changedPath);
+                    }
+                }
+                count++;
+                if (!_receiver.addLogEntry(logEntry.getRevision(),
+                                           logEntry.getAuthor(),
+                                           logEntry.getModified(),
+                                           logEntry.getComment())
+                        || ((_limit > 0) && (count >= _limit)))  {
+                    return true;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Updates the index to the latest revision of the repository if only a
+     * few revisions are missing and no other update runs (see
+     * {@link ChangedPathsIndex#tryUpdate(IRepository, long)}). The index is
+     * updated with a repository of the {@link #serviceUser service user}
+     * which is only created if revisions are missing.
+     *
+     * @return <i>true</i> if the index is up to date; <i>false</i> if the
+     *         index is not up to date or could not be written
+     */
+    protected boolean updateIndex()
+    {
+        boolean ret;
+        try  {
+            if (this.getLatestRevision() <= this.index.getLatestRevision())  {
+                ret = true;
+            } else  {
+                final IRepository repository = this.factory.createRepository(this.serviceUser,
+                                                                             this.getRepositoryPath().toString());
+                try  {
+                    ret = this.index.tryUpdate(repository, ChangedPathsIndex.UPDATE_BATCH_SIZE);
+                } finally  {
+                    repository.close();
+                }
+            }
+        } catch (final ServerException ex)  {
+            IndexedLogRepository.LOGGER.warn("changed paths index of '" + this.getRepositoryPath() + "' could not be updated", ex);
+            ret = false;
+        } catch (final IOException ex)  {
+            IndexedLogRepository.LOGGER.warn("changed paths index of '" + this.getRepositoryPath() + "' could not be updated", ex);
+            ret = false;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the absolute path within the repository. Relative paths are
+     * evaluated from the current location path.
+     *
+     * @param _path     path
+     * @return absolute path
+     */
+    protected String getAbsolutePath(final CharSequence _path)
+    {
+        final StringBuilder path = new StringBuilder();
+        if ((_path.length() == 0) || (_path.charAt(0) != '/'))  {
+            final CharSequence location = this.getLocationPath();
+            path.append('/');
+            if ((location != null) && (location.length() > 0))  {
+                path.append(location).append('/');
+            }
+        }
+        return ChangedPathsIndex.normalize(path.append(_path).toString());
+    }
+
+    /**
+     * Pushes one changed path of a log entry to the receiver.
+     *
+     * @param _receiver     receiver of the log entries
+     * @param _changedPath  changed path
+     * @throws IOException if the changed path could not be written
+     */
+    private static void addChangedPath(final ILogReceiver _receiver,
+                                       final ChangedPath _changedPath)
+            throws IOException
+    {
+        final Word kind = _changedPath.getKind();
+        if (kind == Word.LOG_KIND_DELETED)  {
+            _receiver.addDeleted(_changedPath.getPath());
+        } else if (kind == Word.LOG_KIND_MODIFIED)  {
+            _receiver.addModified(_changedPath.getPath());
+        } else if (kind == Word.LOG_KIND_READ)  {
+            _receiver.addRead(_changedPath.getPath());
+        } else if (_changedPath.getCopiedFromPath() != null)  {
+            _receiver.addCopied(_changedPath.getPath(),
+                                _changedPath.getCopiedFromPath(),
+                                _changedPath.getCopiedFromRevision());
+        } else  {
+            _receiver.addLogCreated(_changedPath.getPath());
+        }
+    }
+}
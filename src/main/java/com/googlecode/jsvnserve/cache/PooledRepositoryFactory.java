@@ -0,0 +1,476 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.jsvnserve.api.IRepository;
+import com.googlecode.jsvnserve.api.IRepositoryFactory;
+import com.googlecode.jsvnserve.api.IRepositoryFactoryLifecycle;
+import com.googlecode.jsvnserve.api.ServerException;
+
+/**
+ * <p>Repository factory which pools the repositories of another factory.
+ * Closed repositories are not closed directly, but hold as idle instances
+ * for the same user and path (SVN clients open often more than one
+ * connection for one operation). An idle repository is
+ * <ul>
+ * <li>reused for a new session of the same user and path after a
+ *     {@link #validate(IRepository) validation},</li>
+ * <li>closed if the repository is longer than the
+ *     {@link #setMaxIdleTime(long) maximum idle time} not used or if more
+ *     than the {@link #setMaxIdle(int) maximum idle repositories} for the
+ *     user and path exists.</li>
+ * </ul>
+ * If a repository is given back, the location path is reset to the location
+ * path at creation time (because the location path could be changed by a
+ * reparent).</p>
+ *
+ * <p>With {@link #addWarmUp(String, String)} repositories could be defined
+ * which are already created if the SVN server is started (see
+ * {@link #warmUp()}). If the SVN server is stopped, the pool is
+ * {@link #close() closed}; repositories given back later are closed
+ * directly. The start and stop are forwarded to the wrapped factory (if the
+ * wrapped factory implements {@link IRepositoryFactoryLifecycle}).</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class PooledRepositoryFactory
+        implements IRepositoryFactory, IRepositoryFactoryLifecycle
+{
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledRepositoryFactory.class);
+
+    /**
+     * Default maximum count of idle repositories for one user and path.
+     *
+     * @see #maxIdle
+     */
+    public static final int DEFAULT_MAX_IDLE = 8;
+
+    /**
+     * Default maximum time in milliseconds of an idle repository.
+     *
+     * @see #maxIdleTime
+     */
+    public static final long DEFAULT_MAX_IDLE_TIME = 5 * 60 * 1000;
+
+    /**
+     * Factory which creates the repositories.
+     */
+    private final IRepositoryFactory factory;
+
+    /**
+     * Maximum count of idle repositories for one user and path.
+     *
+     * @see #setMaxIdle(int)
+     */
+    private int maxIdle = PooledRepositoryFactory.DEFAULT_MAX_IDLE;
+
+    /**
+     * Maximum time in milliseconds of an idle repository before the
+     * repository is closed.
+     *
+     * @see #setMaxIdleTime(long)
+     */
+    private long maxIdleTime = PooledRepositoryFactory.DEFAULT_MAX_IDLE_TIME;
+
+    /**
+     * Idle repositories depending on the key of user and path. The last
+     * given back repository is the first in the list (so that the most
+     * recent used repositories are reused). All accesses are synchronized on
+     * the map.
+     *
+     * @see #getKey(String, String)
+     */
+    private final Map<String,LinkedList<PooledRepository>> idle = new HashMap<String,LinkedList<PooledRepository>>();
+
+    /**
+     * Time in milliseconds of the last eviction of all expired idle
+     * repositories.
+     *
+     * @see #evictExpired()
+     */
+    private long lastEviction = System.currentTimeMillis();
+
+    /**
+     * User and path of the repositories created at warm-up.
+     *
+     * @see #addWarmUp(String, String)
+     * @see #warmUp()
+     */
+    private final List<String[]> warmUps = new ArrayList<String[]>();
+
+    /**
+     * Is the pool closed? Repositories given back to a closed pool are
+     * closed directly. Accesses are synchronized on {@link #idle}.
+     *
+     * @see #close()
+     * @see #release(PooledRepository)
+     */
+    private boolean closed;
+
+    /**
+     * @param _factory  factory which creates the repositories
+     */
+    public PooledRepositoryFactory(final IRepositoryFactory _factory)
+    {
+        this.factory = _factory;
+    }
+
+    /**
+     * Defines the maximum count of idle repositories for one user and path.
+     *
+     * @param _maxIdle  maximum count of idle repositories
+     * @see #maxIdle
+     */
+    public void setMaxIdle(final int _maxIdle)
+    {
+        this.maxIdle = _maxIdle;
+    }
+
+    /**
+     * Defines the maximum time of an idle repository.
+     *
+     * @param _maxIdleTime  maximum idle time in milliseconds
+     * @see #maxIdleTime
+     */
+    public void setMaxIdleTime(final long _maxIdleTime)
+    {
+        this.maxIdleTime = _maxIdleTime;
+    }
+
+    /**
+     * Defines that for given user and path an idle repository is created at
+     * the {@link #warmUp() warm-up}.
+     *
+     * @param _user     name of the user
+     * @param _path     path of the repository (like from the SVN client)
+     * @see #warmUps
+     */
+    public void addWarmUp(final String _user,
+                          final String _path)
+    {
+        this.warmUps.add(new String[]{_user, _path});
+    }
+
+    /**
+     * Creates for all {@link #addWarmUp(String, String) defined users and
+     * paths} an idle repository. Failures are only logged, because the
+     * repository is created again for the first session.
+     */
+    public void warmUp()
+    {
+        for (final String[] warmUp : this.warmUps)  {
+            try  {
+                this.createRepository(warmUp[0], warmUp[1]).close();
+            } catch (final ServerException ex)  {
+                PooledRepositoryFactory.LOGGER.warn("repository for user '" + warmUp[0]
+                                                    + "' and path '" + warmUp[1] + "' could not be created", ex);
+            }
+        }
+    }
+
+    /**
+     * Returns an idle repository for given user and path if a valid one
+     * exists; otherwise a new repository is created.
+     *
+     * @param _user     name of the user
+     * @param _path     path of the repository
+     * @return pooled repository; if the repository is closed, the
+     *         repository is given back as idle repository
+     * @throws ServerException if the repository could not be created
+     */
+    public IRepository createRepository(final String _user,
+                                        final String _path)
+            throws ServerException
+    {
+        this.evictExpired();
+
+        final String key = this.getKey(_user, _path);
+        PooledRepository ret = null;
+        while (ret == null)  {
+            final PooledRepository pooled;
+            synchronized (this.idle)  {
+                final LinkedList<PooledRepository> list = this.idle.get(key);
+                pooled = ((list == null) || list.isEmpty()) ? null : list.removeFirst();
+            }
+            if (pooled == null)  {
+                break;
+            }
+            if (pooled.isExpired() || !this.validate(pooled.getDelegate()))  {
+                pooled.getDelegate().close();
+            } else  {
+                pooled.borrowed();
+                ret = pooled;
+            }
+        }
+        if (ret == null)  {
+            ret = new PooledRepository(key, this.factory.createRepository(_user, _path));
+        }
+        return ret;
+    }
+
+    /**
+     * Validates an idle repository before the repository is reused. The
+     * default implementation checks that the latest revision could be
+     * fetched.
+     *
+     * @param _repository   repository to validate
+     * @return <i>true</i> if the repository could be reused; otherwise
+     *         <i>false</i> (and the repository is closed)
+     */
+    protected boolean validate(final IRepository _repository)
+    {
+        boolean ret;
+        try  {
+            _repository.getLatestRevision();
+            ret = true;
+        } catch (final RuntimeException ex)  {
+            PooledRepositoryFactory.LOGGER.debug("idle repository is not valid", ex);
+            ret = false;
+        }
+        return ret;
+    }
+
+    /**
+     * Starts the wrapped factory (if needed) and {@link #warmUp() warms up}
+     * the pool.
+     */
+    public void start()
+    {
+        if (this.factory instanceof IRepositoryFactoryLifecycle)  {
+            ((IRepositoryFactoryLifecycle) this.factory).start();
+        }
+        synchronized (this.idle)  {
+            this.closed = false;
+        }
+        this.warmUp();
+    }
+
+    /**
+     * {@link #close() Closes} the pool and stops the wrapped factory (if
+     * needed).
+     */
+    public void stop()
+    {
+        this.close();
+        if (this.factory instanceof IRepositoryFactoryLifecycle)  {
+            ((IRepositoryFactoryLifecycle) this.factory).stop();
+        }
+    }
+
+    /**
+     * Closes all idle repositories. Repositories given back afterwards are
+     * closed directly.
+     */
+    public void close()
+    {
+        final List<PooledRepository> closing = new ArrayList<PooledRepository>();
+        synchronized (this.idle)  {
+            this.closed = true;
+            for (final LinkedList<PooledRepository> list : this.idle.values())  {
+                closing.addAll(list);
+            }
+            this.idle.clear();
+        }
+        for (final PooledRepository pooled : closing)  {
+            pooled.getDelegate().close();
+        }
+    }
+
+    /**
+     * Returns the key of the idle repositories for given user and path.
+     *
+     * @param _user     name of the user
+     * @param _path     path of the repository
+     * @return key of the idle repositories
+     */
+    protected String getKey(final String _user,
+                            final String _path)
+    {
+        return new StringBuilder().append(_user).append('\n').append(_path).toString();
+    }
+
+    /**
+     * Gives back a closed repository as idle repository. If already the
+     * maximum count of idle repositories exists, the oldest idle repository
+     * is closed. If the pool is {@link #closed}, the repository is closed
+     * directly.
+     *
+     * @param _pooled   closed repository
+     */
+    private void release(final PooledRepository _pooled)
+    {
+        PooledRepository closing = null;
+        synchronized (this.idle)  {
+            if (this.closed)  {
+                closing = _pooled;
+            } else  {
+                LinkedList<PooledRepository> list = this.idle.get(_pooled.key);
+                if (list == null)  {
+                    list = new LinkedList<PooledRepository>();
+                    this.idle.put(_pooled.key, list);
+                }
+                list.addFirst(_pooled);
+                if (list.size() > this.maxIdle)  {
+                    closing = list.removeLast();
+                }
+            }
+        }
+        if (closing != null)  {
+            closing.getDelegate().close();
+        }
+    }
+
+    /**
+     * Closes all expired idle repositories. The check is done only if the
+     * last check is longer ago than the half of the maximum idle time.
+     */
+    private void evictExpired()
+    {
+        final long now = System.currentTimeMillis();
+        final List<PooledRepository> closing = new ArrayList<PooledRepository>();
+        synchronized (this.idle)  {
+            if ((now - this.lastEviction) > (this.maxIdleTime / 2))  {
+                this.lastEviction = now;
+                final Iterator<LinkedList<PooledRepository>> listIter = this.idle.values().iterator();
+                while (listIter.hasNext())  {
+                    final LinkedList<PooledRepository> list = listIter.next();
+                    final Iterator<PooledRepository> iter = list.iterator();
+                    while (iter.hasNext())  {
+                        final PooledRepository pooled = iter.next();
+                        if (pooled.isExpired())  {
+                            iter.remove();
+                            closing.add(pooled);
+                        }
+                    }
+                    if (list.isEmpty())  {
+                        listIter.remove();
+                    }
+                }
+            }
+        }
+        for (final PooledRepository pooled : closing)  {
+            pooled.getDelegate().close();
+        }
+    }
+
+    /**
+     * Repository of the pool. If the repository is closed, the repository is
+     * given back to the pool.
+     */
+    private class PooledRepository
+            extends DelegatingRepository
+    {
+        /**
+         * Key of the user and path.
+         */
+        private final String key;
+
+        /**
+         * Location path of the repository at creation time.
+         */
+        private final String locationPath;
+
+        /**
+         * Time in milliseconds when the repository was given back; only used
+         * for idle repositories.
+         */
+        private long idleSince;
+
+        /**
+         * Is the repository closed (and therefore idle)?
+         */
+        private boolean closed;
+
+        /**
+         * @param _key          key of the user and path
+         * @param _delegate     created repository
+         */
+        PooledRepository(final String _key,
+                         final IRepository _delegate)
+        {
+            super(_delegate);
+            this.key = _key;
+            final CharSequence location = _delegate.getLocationPath();
+            this.locationPath = (location == null) ? null : location.toString();
+        }
+
+        /**
+         * Marks the idle repository as borrowed.
+         */
+        void borrowed()
+        {
+            this.closed = false;
+        }
+
+        /**
+         * Checks if the idle repository is longer than the maximum idle time
+         * not used.
+         *
+         * @return <i>true</i> if expired; otherwise <i>false</i>
+         */
+        boolean isExpired()
+        {
+            return (System.currentTimeMillis() - this.idleSince) > PooledRepositoryFactory.this.maxIdleTime;
+        }
+
+        /**
+         * The location path is reset and the repository is given back to
+         * the pool (a second close is ignored). If the location path could
+         * not be reset, the repository is closed.
+         */
+        @Override
+        public void close()
+        {
+            if (!this.closed)  {
+                this.closed = true;
+                this.idleSince = System.currentTimeMillis();
+                boolean reset = true;
+                if (this.locationPath != null)  {
+                    try  {
+                        this.getDelegate().setLocationPath(this.locationPath);
+                    } catch (final RuntimeException ex)  {
+                        PooledRepositoryFactory.LOGGER.debug("location path could not be reset", ex);
+                        reset = false;
+                    }
+                }
+                if (reset)  {
+                    PooledRepositoryFactory.this.release(this);
+                } else  {
+                    this.getDelegate().close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.cache;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.googlecode.jsvnserve.api.properties.EncodedProperties;
+
+/**
+ * <p>Cache for the encoded revision properties which is shared between all
+ * sessions of the SVN server. The properties are cached with a key of the
+ * repository UUID, the user and the revision (see
+ * {@link RevisionPropertiesCachingRepository}); the user is part of the key,
+ * because the readable revision properties could depend on the access
+ * rights of the user (e.g. the author and log message of a revision with
+ * not readable paths).</p>
+ *
+ * <p>The cache is read without any lock. It is bounded by the count of
+ * entries; if the maximum is reached, the oldest cached entries are evicted.
+ * Because revision properties could be changed, a changed revision must be
+ * {@link #invalidate(UUID, long) invalidated} (e.g. from the change of a
+ * revision property) for all users. An invalidation increments the
+ * {@link #getVersion(UUID, long) version} of the revision; properties
+ * fetched before the invalidation are not cached by
+ * {@link #put(UUID, String, long, long, EncodedProperties)}, so that an
+ * invalidation racing a cache miss does not leave the old properties in the
+ * cache.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class RevisionPropertiesCache
+{
+    /**
+     * Count of the version stamps; the version of a revision is the stamp
+     * with the index of the hash code of the revision (so that the versions
+     * need not be stored per revision).
+     */
+    private static final int VERSION_STRIPES = 256;
+
+    /**
+     * Maximum count of cached revisions.
+     */
+    private final int maxEntries;
+
+    /**
+     * Version stamps incremented by each invalidation.
+     *
+     * @see #getVersion(UUID, long)
+     */
+    private final AtomicLongArray versions = new AtomicLongArray(RevisionPropertiesCache.VERSION_STRIPES);
+
+    /**
+     * Cached encoded revision properties.
+     */
+    private final ConcurrentHashMap<Key,EncodedProperties> entries = new ConcurrentHashMap<Key,EncodedProperties>();
+
+    /**
+     * Keys in the order in which they are cached (used for the eviction).
+     */
+    private final Queue<Key> order = new ConcurrentLinkedQueue<Key>();
+
+    /**
+     * Count of the found revisions.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Count of the not found revisions.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param _maxEntries   maximum count of cached revisions
+     */
+    public RevisionPropertiesCache(final int _maxEntries)
+    {
+        this.maxEntries = _maxEntries;
+    }
+
+    /**
+     * Returns the current version of the cached revision properties. The
+     * version must be fetched before the revision properties are fetched
+     * from the repository and is given to
+     * {@link #put(UUID, String, long, long, EncodedProperties)}.
+     *
+     * @param _uuid         UUID of the repository
+     * @param _revision     revision
+     * @return current version
+     */
+    public long getVersion(final UUID _uuid,
+                           final long _revision)
+    {
+        return this.versions.get(RevisionPropertiesCache.getStripe(_uuid, _revision));
+    }
+
+    /**
+     * Returns the cached revision properties.
+     *
+     * @param _uuid         UUID of the repository
+     * @param _user         name of the user
+     * @param _revision     revision
+     * @return cached revision properties; <code>null</code> if not cached
+     */
+    public EncodedProperties get(final UUID _uuid,
+                                 final String _user,
+                                 final long _revision)
+    {
+        final EncodedProperties ret = this.entries.get(new Key(_uuid, _user, _revision));
+        if (ret != null)  {
+            this.hits.incrementAndGet();
+        } else  {
+            this.misses.incrementAndGet();
+        }
+        return ret;
+    }
+
+    /**
+     * Caches the revision properties if the revision is not invalidated
+     * since given version was fetched. If the maximum count of entries is
+     * reached, the oldest entries are evicted.
+     *
+     * @param _uuid         UUID of the repository
+     * @param _user         name of the user
+     * @param _revision     revision
+     * @param _version      version fetched with
+     *                      {@link #getVersion(UUID, long)} before the
+     *                      properties were fetched from the repository
+     * @param _properties   encoded revision properties
+     */
+    public void put(final UUID _uuid,
+                    final String _user,
+                    final long _revision,
+                    final long _version,
+                    final EncodedProperties _properties)
+    {
+        final Key key = new Key(_uuid, _user, _revision);
+        final int stripe = RevisionPropertiesCache.getStripe(_uuid, _revision);
+        if ((this.versions.get(stripe) == _version) && (this.entries.put(key, _properties) == null))  {
+            // an invalidation between the check and the put must remove the
+            // properties (the invalidation increments before it removes)
+            if (this.versions.get(stripe) != _version)  {
+                this.entries.remove(key, _properties);
+            }
+            this.order.add(key);
+            while (this.entries.size() > this.maxEntries)  {
+                final Key oldest = this.order.poll();
+                if (oldest == null)  {
+                    break;
+                }
+                this.entries.remove(oldest);
+            }
+        }
+    }
+
+    /**
+     * Removes the cached revision properties of all users (must be called if
+     * a revision property is changed) and increments the version of the
+     * revision.
+     *
+     * @param _uuid         UUID of the repository
+     * @param _revision     changed revision
+     */
+    public void invalidate(final UUID _uuid,
+                           final long _revision)
+    {
+        this.versions.incrementAndGet(RevisionPropertiesCache.getStripe(_uuid, _revision));
+        for (final Iterator<Key> iter = this.entries.keySet().iterator(); iter.hasNext(); )  {
+            final Key key = iter.next();
+            if ((key.revision == _revision) && key.uuid.equals(_uuid))  {
+                iter.remove();
+                this.order.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes all cached revision properties.
+     */
+    public void clear()
+    {
+        this.entries.clear();
+        this.order.clear();
+    }
+
+    /**
+     * @return count of the found revisions
+     * @see #hits
+     */
+    public long getHits()
+    {
+        return this.hits.get();
+    }
+
+    /**
+     * @return count of the not found revisions
+     * @see #misses
+     */
+    public long getMisses()
+    {
+        return this.misses.get();
+    }
+
+    /**
+     * Returns the index of the version stamp of given revision.
+     *
+     * @param _uuid         UUID of the repository
+     * @param _revision     revision
+     * @return index within {@link #versions}
+     */
+    private static int getStripe(final UUID _uuid,
+                                 final long _revision)
+    {
+        final int hash = _uuid.hashCode() * 31 + (int) (_revision ^ (_revision >>> 32));
+        return (hash & 0x7FFFFFFF) % RevisionPropertiesCache.VERSION_STRIPES;
+    }
+
+    /**
+     * Key of a cached revision.
+     */
+    private static final class Key
+    {
+        /**
+         * UUID of the repository.
+         */
+        private final UUID uuid;
+
+        /**
+         * Name of the user.
+         */
+        private final String user;
+
+        /**
+         * Revision.
+         */
+        private final long revision;
+
+        /**
+         * @param _uuid         UUID of the repository
+         * @param _user         name of the user
+         * @param _revision     revision
+         */
+        private Key(final UUID _uuid,
+                    final String _user,
+                    final long _revision)
+        {
+            this.uuid = _uuid;
+            this.user = _user;
+            this.revision = _revision;
+        }
+
+        @Override
+        public boolean equals(final Object _other)
+        {
+            return (_other instanceof Key)
+                   && (((Key) _other).revision == this.revision)
+                   && ((Key) _other).uuid.equals(this.uuid)
+                   && ((((Key) _other).user == null)
+                           ? (this.user == null)
+                           : ((Key) _other).user.equals(this.user));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (this.uuid.hashCode() * 31 + (int) (this.revision ^ (this.revision >>> 32))) * 31
+                    + ((this.user == null) ? 0 : this.user.hashCode());
+        }
+    }
+}
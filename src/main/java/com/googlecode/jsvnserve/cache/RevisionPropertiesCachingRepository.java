@@ -0,0 +1,119 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.cache;
+
+import java.io.UnsupportedEncodingException;
+
+import com.googlecode.jsvnserve.api.IRepository;
+import com.googlecode.jsvnserve.api.ServerException;
+import com.googlecode.jsvnserve.api.properties.EncodedProperties;
+import com.googlecode.jsvnserve.api.properties.RevisionPropertyValues;
+
+/**
+ * Repository which caches the encoded revision properties in a shared
+ * {@link RevisionPropertiesCache}. The properties are cached per user,
+ * because a hit does not call the delegated repository and the readable
+ * revision properties could depend on the access rights of the user. The
+ * properties of revision 0 are not cached, because they are changed
+ * regularly by a synchronization of the repository.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see CachingRepositoryFactory
+ */
+public class RevisionPropertiesCachingRepository
+        extends DelegatingRepository
+{
+    /**
+     * Shared cache of the revision properties.
+     */
+    private final RevisionPropertiesCache revisionPropertiesCache;
+
+    /**
+     * Name of the user of the delegated repository.
+     */
+    private final String user;
+
+    /**
+     * @param _delegate                 repository to which all methods are
+     *                                  forwarded
+     * @param _revisionPropertiesCache  shared cache of the revision
+     *                                  properties
+     * @param _user                     name of the user of the delegated
+     *                                  repository
+     */
+    public RevisionPropertiesCachingRepository(final IRepository _delegate,
+                                               final RevisionPropertiesCache _revisionPropertiesCache,
+                                               final String _user)
+    {
+        super(_delegate);
+        this.revisionPropertiesCache = _revisionPropertiesCache;
+        this.user = _user;
+    }
+
+    /**
+     * Returns the encoded revision properties from the
+     * {@link #revisionPropertiesCache}. If the properties are not cached,
+     * the properties are fetched from the delegated repository, encoded and
+     * put into the cache (only if the revision is not invalidated while the
+     * properties are fetched).
+     *
+     * @param _revision     revision for which the properties are searched
+     * @return encoded revision properties
+     */
+    @Override
+    public EncodedProperties getEncodedRevisionProperties(final long _revision)
+            throws ServerException
+    {
+        EncodedProperties ret = (_revision == 0)
+                                ? null
+                                : this.revisionPropertiesCache.get(this.getUUID(), this.user, _revision);
+        if (ret == null)  {
+            final long version = this.revisionPropertiesCache.getVersion(this.getUUID(), _revision);
+            ret = super.getEncodedRevisionProperties(_revision);
+            if (ret == null)  {
+                final RevisionPropertyValues props = (_revision == 0)
+                                                     ? this.getRevision0Properties()
+                                                     : this.getRevisionProperties(_revision);
+                try  {
+                    ret = new EncodedProperties(props);
+                } catch (final UnsupportedEncodingException ex)  {
+                    throw new ServerException("revision properties of " + _revision + " could not be encoded", ex);
+                }
+            }
+            if (_revision != 0)  {
+                this.revisionPropertiesCache.put(this.getUUID(), this.user, _revision, version, ret);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Removes the revision properties of all users from the shared cache.
+     * Must be called if a revision property of the revision is changed.
+     *
+     * @param _revision     changed revision
+     */
+    public void invalidateRevisionProperties(final long _revision)
+    {
+        this.revisionPropertiesCache.invalidate(this.getUUID(), _revision);
+    }
+}
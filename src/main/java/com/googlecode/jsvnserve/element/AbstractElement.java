@@ -38,7 +38,38 @@ public abstract class AbstractElement<X>
         this.value = _value;
     }
 
-    public abstract void write(final OutputStream _out)
+    /**
+     * Writes this element to given output stream. If the output stream is
+     * not an {@link ElementOutputStream}, a temporary element output stream
+     * is used.
+     *
+     * @param _out  output stream
+     * @throws IOException if the element could not be written
+     * @see #write(ElementOutputStream)
+     */
+    public void write(final OutputStream _out)
+            throws IOException
+    {
+        if (_out instanceof ElementOutputStream)  {
+            this.write((ElementOutputStream) _out);
+        } else  {
+            final ElementOutputStream out = new ElementOutputStream(_out);
+            try  {
+                this.write(out);
+            } finally  {
+                out.release();
+            }
+        }
+    }
+
+    /**
+     * Writes this element directly into the buffer of given element output
+     * stream.
+     *
+     * @param _out  element output stream
+     * @throws IOException if the element could not be written
+     */
+    public abstract void write(final ElementOutputStream _out)
             throws IOException;
 
     /**
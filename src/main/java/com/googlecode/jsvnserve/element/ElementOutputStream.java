@@ -0,0 +1,648 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.element;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Serializer for the SVN protocol. All items are written directly into a
+ * byte buffer which is taken from a pool shared by all sessions:
+ * <ul>
+ * <li>words are written with the precomputed bytes of the
+ *     {@link WordElement.Word words},</li>
+ * <li>numbers (and the length of strings) are encoded digit by digit without
+ *     any intermediate string,</li>
+ * <li>character sequences are UTF-8 encoded directly into the buffer.</li>
+ * </ul>
+ * The buffer is only written to the underlying output stream if the buffer is
+ * full or the stream is flushed.</p>
+ *
+ * <p>The content of files is written with {@link #writeContent(InputStream)}
+ * as large strings; if the content is a file and the underlying output stream
+ * is a {@link ITransferTarget}, the bytes are transferred without copying
+ * them into the heap.</p>
+ *
+ * <p>If the stream is not used anymore, the buffer must be given back to the
+ * pool with {@link #release()}.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class ElementOutputStream
+        extends OutputStream
+{
+    /**
+     * Size of the pooled buffers.
+     */
+    public static final int BUFFER_SIZE = 16384;
+
+    /**
+     * Maximum count of buffers hold in the {@link #POOL}.
+     */
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    /**
+     * Pool of the currently not used buffers.
+     *
+     * @see #acquireBuffer()
+     * @see #release()
+     */
+    private static final Queue<byte[]> POOL = new ConcurrentLinkedQueue<byte[]>();
+
+    /**
+     * Count of buffers in the {@link #POOL} (the size of a concurrent queue is
+     * not evaluated in constant time).
+     */
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    /**
+     * Maximum count of characters of a long number (including the sign).
+     */
+    private static final int MAX_NUMBER_LENGTH = 20;
+
+    /**
+     * Maximum length of one string written for the content of a file which
+     * is transferred from a file channel.
+     *
+     * @see #writeContent(InputStream)
+     */
+    public static final int CONTENT_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Length of one string written for the content of a file which must be
+     * copied through the heap.
+     *
+     * @see #writeContent(InputStream)
+     */
+    public static final int CONTENT_COPY_SIZE = 65536;
+
+    /**
+     * Underlying output stream.
+     */
+    private final OutputStream out;
+
+    /**
+     * Buffer taken from the pool or <code>null</code> if the stream is
+     * released.
+     *
+     * @see #release()
+     */
+    private byte[] buffer;
+
+    /**
+     * Count of bytes in the {@link #buffer}.
+     */
+    private int count;
+
+    /**
+     * Count of bytes written to the underlying output stream since the last
+     * {@link #flush()}.
+     *
+     * @see #getUnflushedBytes()
+     */
+    private long unflushed;
+
+    /**
+     * @param _out  underlying output stream
+     */
+    public ElementOutputStream(final OutputStream _out)
+    {
+        this.out = _out;
+        this.buffer = ElementOutputStream.acquireBuffer();
+    }
+
+    /**
+     * Returns a buffer from the {@link #POOL}. If the pool is empty, a new
+     * buffer is created.
+     *
+     * @return buffer with size {@link #BUFFER_SIZE}
+     */
+    private static byte[] acquireBuffer()
+    {
+        byte[] ret = ElementOutputStream.POOL.poll();
+        if (ret == null)  {
+            ret = new byte[ElementOutputStream.BUFFER_SIZE];
+        } else  {
+            ElementOutputStream.POOLED.decrementAndGet();
+        }
+        return ret;
+    }
+
+    /**
+     * Writes the start of a list.
+     *
+     * @throws IOException if the buffer could not be written
+     */
+    public void writeListStart()
+            throws IOException
+    {
+        this.ensure(2);
+        this.buffer[this.count++] = '(';
+        this.buffer[this.count++] = ' ';
+    }
+
+    /**
+     * Writes the end of a list.
+     *
+     * @throws IOException if the buffer could not be written
+     */
+    public void writeListEnd()
+            throws IOException
+    {
+        this.ensure(2);
+        this.buffer[this.count++] = ')';
+        this.buffer[this.count++] = ' ';
+    }
+
+    /**
+     * Writes given word with the precomputed bytes.
+     *
+     * @param _word     word to write
+     * @throws IOException if the buffer could not be written
+     */
+    public void writeWord(final WordElement.Word _word)
+            throws IOException
+    {
+        this.writeWord(_word.bytes);
+    }
+
+    /**
+     * Writes given bytes of a word followed by a whitespace.
+     *
+     * @param _bytes    bytes of the word
+     * @throws IOException if the buffer could not be written
+     */
+    void writeWord(final byte[] _bytes)
+            throws IOException
+    {
+        this.write(_bytes, 0, _bytes.length);
+        this.write(' ');
+    }
+
+    /**
+     * Writes given number.
+     *
+     * @param _number   number to write
+     * @throws IOException if the buffer could not be written
+     */
+    public void writeNumber(final long _number)
+            throws IOException
+    {
+        this.writeDigits(_number);
+        this.buffer[this.count++] = ' ';
+    }
+
+    /**
+     * Writes given byte array as string.
+     *
+     * @param _bytes    bytes of the string
+     * @throws IOException if the buffer could not be written
+     */
+    public void writeString(final byte[] _bytes)
+            throws IOException
+    {
+        this.writeString(_bytes, 0, _bytes.length);
+    }
+
+    /**
+     * Writes given part of a byte array as string.
+     *
+     * @param _bytes    byte array
+     * @param _offset   offset of the string within the byte array
+     * @param _length   length of the string
+     * @throws IOException if the buffer could not be written
+     */
+    public void writeString(final byte[] _bytes,
+                            final int _offset,
+                            final int _length)
+            throws IOException
+    {
+        this.writeDigits(_length);
+        this.buffer[this.count++] = ':';
+        this.write(_bytes, _offset, _length);
+        this.write(' ');
+    }
+
+    /**
+     * <p>Writes the complete content of given input stream as a series of
+     * strings (without the terminating empty string). The output is not
+     * flushed between the strings, so that the network gets large segments.
+     * </p>
+     *
+     * <p>If the input stream is a {@link FileInputStream} and the underlying
+     * output stream {@link ITransferTarget#isTransferSupported() supports the
+     * transfer}, the content is transferred in strings of
+     * {@link #CONTENT_CHUNK_SIZE} directly from the file channel. Otherwise
+     * the content is copied in strings of {@link #CONTENT_COPY_SIZE}.</p>
+     *
+     * <p>The output stream must be flushed before the input stream is
+     * closed.</p>
+     *
+     * @param _in   input stream with the content
+     * @throws IOException if the content could not be read or written
+     */
+    public void writeContent(final InputStream _in)
+            throws IOException
+    {
+        if ((_in instanceof FileInputStream)
+                && (this.out instanceof ITransferTarget)
+                && ((ITransferTarget) this.out).isTransferSupported())  {
+            final ITransferTarget target = (ITransferTarget) this.out;
+            final FileChannel channel = ((FileInputStream) _in).getChannel();
+            final long end = channel.size();
+            long position = channel.position();
+            while (position < end)  {
+                final long length = Math.min(end - position, ElementOutputStream.CONTENT_CHUNK_SIZE);
+                this.writeDigits(length);
+                this.buffer[this.count++] = ':';
+                this.flushBuffer();
+                target.transferFrom(channel, position, length);
+                this.unflushed += length;
+                this.write(' ');
+                position += length;
+            }
+            channel.position(end);
+        } else  {
+            final byte[] bytes = new byte[ElementOutputStream.CONTENT_COPY_SIZE];
+            int length = 0;
+            int read = _in.read(bytes);
+            while (read >= 0)  {
+                length += read;
+                if (length == bytes.length)  {
+                    this.writeString(bytes, 0, length);
+                    length = 0;
+                }
+                read = _in.read(bytes, length, bytes.length - length);
+            }
+            if (length > 0)  {
+                this.writeString(bytes, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Writes given character sequence UTF-8 encoded as string. The length of
+     * the encoded string is evaluated first, then the characters are encoded
+     * directly into the buffer. Not paired surrogates are encoded as
+     * question mark (like {@link String#getBytes(String)}).
+     *
+     * @param _text     text to write
+     * @throws IOException if the buffer could not be written
+     */
+    public void writeString(final CharSequence _text)
+            throws IOException
+    {
+        this.writeDigits(ElementOutputStream.utf8Length(_text));
+        this.buffer[this.count++] = ':';
+        this.writeUTF8(_text);
+        this.write(' ');
+    }
+
+    /**
+     * Writes given date formatted in the SVN date time format as string.
+     *
+     * @param _date     date to write
+     * @throws IOException if the buffer could not be written
+     * @see StringElement#formatDate(Date)
+     */
+    public void writeString(final Date _date)
+            throws IOException
+    {
+        this.writeString(StringElement.formatDate(_date));
+    }
+
+    /**
+     * Writes given character sequence UTF-8 encoded without a length (used
+     * for already formatted protocol text).
+     *
+     * @param _text     text to write
+     * @throws IOException if the buffer could not be written
+     */
+    public void writeText(final CharSequence _text)
+            throws IOException
+    {
+        this.writeUTF8(_text);
+    }
+
+    /**
+     * Writes one item. The item is converted like in
+     * {@link ListElement#add(Object...)}, but without creating an element
+     * instance.
+     *
+     * @param _item     item to write
+     * @throws IOException if the buffer could not be written or the item
+     *                     has an unknown type
+     */
+    public void writeItem(final Object _item)
+            throws IOException
+    {
+        if (_item instanceof CharSequence)  {
+            this.writeString((CharSequence) _item);
+        } else if ((_item instanceof Long) || (_item instanceof Integer))  {
+            this.writeNumber(((Number) _item).longValue());
+        } else if (_item instanceof WordElement.Word)  {
+            this.writeWord((WordElement.Word) _item);
+        } else if (_item instanceof AbstractElement)  {
+            ((AbstractElement<?>) _item).write(this);
+        } else if (_item instanceof Date)  {
+            this.writeString((Date) _item);
+        } else if (_item instanceof byte[])  {
+            this.writeString((byte[]) _item);
+        } else  {
+            throw new IOException((_item == null)
+                                  ? "value not defined"
+                                  : "unknown class " + _item.getClass());
+        }
+    }
+
+    /**
+     * Writes a list with given items.
+     *
+     * @param _items    items of the list
+     * @throws IOException if the buffer could not be written
+     * @see #writeItem(Object)
+     */
+    public void writeList(final Object... _items)
+            throws IOException
+    {
+        this.writeListStart();
+        for (final Object item : _items)  {
+            this.writeItem(item);
+        }
+        this.writeListEnd();
+    }
+
+    @Override
+    public void write(final int _byte)
+            throws IOException
+    {
+        this.ensure(1);
+        this.buffer[this.count++] = (byte) _byte;
+    }
+
+    /**
+     * Writes given bytes. If the bytes are larger than the buffer, the bytes
+     * are written directly to the underlying output stream.
+     *
+     * @param _bytes    byte array
+     * @param _offset   offset within the byte array
+     * @param _length   count of bytes to write
+     * @throws IOException if the bytes could not be written
+     */
+    @Override
+    public void write(final byte[] _bytes,
+                      final int _offset,
+                      final int _length)
+            throws IOException
+    {
+        if (this.buffer == null)  {
+            throw new IOException("Stream is already released");
+        }
+        if (_length >= this.buffer.length)  {
+            this.flushBuffer();
+            this.out.write(_bytes, _offset, _length);
+            this.unflushed += _length;
+        } else  {
+            this.ensure(_length);
+            System.arraycopy(_bytes, _offset, this.buffer, this.count, _length);
+            this.count += _length;
+        }
+    }
+
+    /**
+     * Writes the buffered bytes and flushes the underlying output stream.
+     *
+     * @throws IOException if the bytes could not be written
+     */
+    @Override
+    public void flush()
+            throws IOException
+    {
+        this.flushBuffer();
+        this.out.flush();
+        this.unflushed = 0;
+    }
+
+    /**
+     * Returns the count of bytes written since the last {@link #flush()}
+     * (including the buffered bytes).
+     *
+     * @return count of not flushed bytes
+     * @see #unflushed
+     */
+    public long getUnflushedBytes()
+    {
+        return this.unflushed + this.count;
+    }
+
+    /**
+     * Releases the buffer and closes the underlying output stream.
+     *
+     * @throws IOException if the bytes could not be written or the underlying
+     *                     stream could not be closed
+     */
+    @Override
+    public void close()
+            throws IOException
+    {
+        try  {
+            this.release();
+        } finally  {
+            this.out.close();
+        }
+    }
+
+    /**
+     * Writes all buffered bytes (without flush of the underlying output
+     * stream) and gives the buffer back to the pool. The stream could not be
+     * used anymore.
+     *
+     * @return underlying output stream
+     * @throws IOException if the buffered bytes could not be written
+     */
+    public OutputStream release()
+            throws IOException
+    {
+        if (this.buffer != null)  {
+            try  {
+                this.flushBuffer();
+            } finally  {
+                final byte[] released = this.buffer;
+                this.buffer = null;
+                this.count = 0;
+                if (ElementOutputStream.POOLED.incrementAndGet() <= ElementOutputStream.MAX_POOLED_BUFFERS)  {
+                    ElementOutputStream.POOL.offer(released);
+                } else  {
+                    ElementOutputStream.POOLED.decrementAndGet();
+                }
+            }
+        }
+        return this.out;
+    }
+
+    /**
+     * Writes the decimal digits of given number (without whitespace). At
+     * least one more byte is free in the buffer after the digits.
+     *
+     * @param _number   number to write
+     * @throws IOException if the buffer could not be written
+     */
+    private void writeDigits(final long _number)
+            throws IOException
+    {
+        this.ensure(ElementOutputStream.MAX_NUMBER_LENGTH + 1);
+        if (_number == Long.MIN_VALUE)  {
+            final String text = String.valueOf(_number);
+            for (int idx = 0; idx < text.length(); idx++)  {
+                this.buffer[this.count++] = (byte) text.charAt(idx);
+            }
+        } else  {
+            long value = _number;
+            if (value < 0)  {
+                this.buffer[this.count++] = '-';
+                value = -value;
+            }
+            int digits = 1;
+            for (long rest = value / 10; rest > 0; rest /= 10)  {
+                digits++;
+            }
+            int pos = this.count + digits;
+            this.count = pos;
+            do  {
+                this.buffer[--pos] = (byte) ('0' + (value % 10));
+                value /= 10;
+            } while (value > 0);
+        }
+    }
+
+    /**
+     * Encodes given text UTF-8 directly into the buffer.
+     *
+     * @param _text     text to encode
+     * @throws IOException if the buffer could not be written
+     */
+    private void writeUTF8(final CharSequence _text)
+            throws IOException
+    {
+        final int length = _text.length();
+        for (int idx = 0; idx < length; idx++)  {
+            final char ch = _text.charAt(idx);
+            if (ch < 0x80)  {
+                this.ensure(1);
+                this.buffer[this.count++] = (byte) ch;
+            } else if (ch < 0x800)  {
+                this.ensure(2);
+                this.buffer[this.count++] = (byte) (0xC0 | (ch >> 6));
+                this.buffer[this.count++] = (byte) (0x80 | (ch & 0x3F));
+            } else if (Character.isHighSurrogate(ch)
+                    && ((idx + 1) < length)
+                    && Character.isLowSurrogate(_text.charAt(idx + 1)))  {
+                final int codePoint = Character.toCodePoint(ch, _text.charAt(++idx));
+                this.ensure(4);
+                this.buffer[this.count++] = (byte) (0xF0 | (codePoint >> 18));
+                this.buffer[this.count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                this.buffer[this.count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                this.buffer[this.count++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isHighSurrogate(ch) || Character.isLowSurrogate(ch))  {
+                this.ensure(1);
+                this.buffer[this.count++] = '?';
+            } else  {
+                this.ensure(3);
+                this.buffer[this.count++] = (byte) (0xE0 | (ch >> 12));
+                this.buffer[this.count++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                this.buffer[this.count++] = (byte) (0x80 | (ch & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Evaluates the length of given text if the text is UTF-8 encoded.
+     *
+     * @param _text     text
+     * @return length of the UTF-8 encoded text
+     * @see #writeUTF8(CharSequence)
+     */
+    static int utf8Length(final CharSequence _text)
+    {
+        final int length = _text.length();
+        int ret = length;
+        for (int idx = 0; idx < length; idx++)  {
+            final char ch = _text.charAt(idx);
+            if (ch >= 0x80)  {
+                if (ch < 0x800)  {
+                    ret++;
+                } else if (Character.isHighSurrogate(ch)
+                        && ((idx + 1) < length)
+                        && Character.isLowSurrogate(_text.charAt(idx + 1)))  {
+                    // two characters are encoded with four bytes
+                    ret += 2;
+                    idx++;
+                } else if (!Character.isHighSurrogate(ch) && !Character.isLowSurrogate(ch))  {
+                    ret += 2;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Makes sure that given count of bytes could be written into the buffer.
+     * If not, the buffer is written to the underlying output stream.
+     *
+     * @param _length   count of bytes which will be written
+     * @throws IOException if the buffer could not be written or the stream is
+     *                     already released
+     */
+    private void ensure(final int _length)
+            throws IOException
+    {
+        if (this.buffer == null)  {
+            throw new IOException("Stream is already released");
+        }
+        if ((this.count + _length) > this.buffer.length)  {
+            this.flushBuffer();
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the underlying output stream.
+     *
+     * @throws IOException if the bytes could not be written
+     */
+    private void flushBuffer()
+            throws IOException
+    {
+        if (this.count > 0)  {
+            final int length = this.count;
+            this.count = 0;
+            this.out.write(this.buffer, 0, length);
+            this.unflushed += length;
+        }
+    }
+}
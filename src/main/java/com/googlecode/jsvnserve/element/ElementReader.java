@@ -0,0 +1,399 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.element;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Tokenizer for the SVN protocol. The bytes from the input stream are read
+ * block wise into a reusable buffer and parsed in place:
+ * <ul>
+ * <li>numbers are evaluated digit by digit without any intermediate
+ *     string,</li>
+ * <li>words are resolved with the perfect hash table of the
+ *     {@link WordElement.Word words} without creating a string (only unknown
+ *     words are converted to a string),</li>
+ * <li>the byte array of a string is allocated with the final length and the
+ *     content is copied only once; if the string is larger than the buffered
+ *     bytes, the rest is read directly from the input stream into the byte
+ *     array.</li>
+ * </ul></p>
+ *
+ * <p>The string payloads are not returned as slices of the buffer, because
+ * the elements are used (e.g. within the report or the editor commands) after
+ * the buffer is reused.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class ElementReader
+{
+    /**
+     * Default size of the {@link #buffer}.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * Maximum count of digits of a number (so that the number could not
+     * overflow a long).
+     */
+    private static final int MAX_DIGITS = 18;
+
+    /**
+     * Input stream from which the bytes are read. If <code>null</code>, only
+     * the bytes from the {@link #buffer} are parsed.
+     */
+    private final InputStream in;
+
+    /**
+     * Reusable buffer. The position of the buffer is the current read
+     * position, the limit the end of the read bytes.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates a new reader with the {@link #DEFAULT_BUFFER_SIZE default buffer
+     * size}.
+     *
+     * @param _in   input stream to read
+     */
+    public ElementReader(final InputStream _in)
+    {
+        this(_in, ElementReader.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     *
+     * @param _in           input stream to read
+     * @param _bufferSize   size of the buffer
+     */
+    public ElementReader(final InputStream _in,
+                         final int _bufferSize)
+    {
+        this.in = _in;
+        this.buffer = ByteBuffer.allocate(_bufferSize);
+        this.buffer.flip();
+    }
+
+    /**
+     * Creates a reader which parses only the bytes of given buffer. The
+     * position of the buffer is moved for each parsed element.
+     *
+     * @param _buffer   buffer to parse
+     */
+    public ElementReader(final ByteBuffer _buffer)
+    {
+        this.in = null;
+        this.buffer = _buffer;
+    }
+
+    /**
+     * Creates a reader without own input; used for readers which overwrite
+     * {@link #readItemList()} and {@link #readElement()} (e.g. if the elements
+     * are already tokenized by a protocol decoder).
+     */
+    protected ElementReader()
+    {
+        this(ByteBuffer.allocate(0));
+    }
+
+    /**
+     * Reads the next list.
+     *
+     * @return read list or <code>null</code> if the end of the input stream
+     *         is reached
+     * @throws IOException if the list could not be read or the next element
+     *                     is not a list
+     */
+    public ListElement readItemList()
+            throws IOException
+    {
+        ListElement ret = null;
+        if (this.skipWhitespaces())  {
+            if (this.buffer.get() != '(')  {
+                throw new IOException("Malformed network data");
+            }
+            ret = this.readList();
+        }
+        return ret;
+    }
+
+    /**
+     * Reads the next element.
+     *
+     * @return read element or <code>null</code> if the end of the input
+     *         stream is reached
+     * @throws IOException if the element could not be read
+     */
+    public AbstractElement<?> readElement()
+            throws IOException
+    {
+        return this.skipWhitespaces() ? this.readItem() : null;
+    }
+
+    /**
+     * Returns an input stream with all bytes which are read into the buffer,
+     * but not parsed, followed by the bytes of the input stream. The method is
+     * used if the input stream must be filtered (e.g. for SASL).
+     *
+     * @return input stream with all not parsed bytes
+     */
+    public InputStream getUnreadInputStream()
+    {
+        final InputStream ret;
+        if (this.buffer.hasRemaining())  {
+            final byte[] unread = new byte[this.buffer.remaining()];
+            this.buffer.get(unread);
+            ret = new SequenceInputStream(new ByteArrayInputStream(unread), this.in);
+        } else  {
+            ret = this.in;
+        }
+        return ret;
+    }
+
+    /**
+     * Reads the content of a list. The open brace is already read.
+     *
+     * @return read list
+     * @throws IOException if the list could not be read
+     */
+    private ListElement readList()
+            throws IOException
+    {
+        this.readWhitespace();
+        final ListElement list = new ListElement();
+        while (true)  {
+            if (!this.skipWhitespaces())  {
+                throw new EOFException();
+            }
+            if (this.buffer.get(this.buffer.position()) == ')')  {
+                this.buffer.get();
+                this.readWhitespace();
+                break;
+            }
+            list.getList().add(this.readItem());
+        }
+        return list;
+    }
+
+    /**
+     * Reads one item (list, number, string or word). The reader is positioned
+     * on the first byte of the item.
+     *
+     * @return read item
+     * @throws IOException if the item could not be read
+     */
+    private AbstractElement<?> readItem()
+            throws IOException
+    {
+        final AbstractElement<?> ret;
+        final byte first = this.buffer.get(this.buffer.position());
+        if (first == '(')  {
+            this.buffer.get();
+            ret = this.readList();
+        } else if ((first >= '0') && (first <= '9'))  {
+            long value = 0;
+            int digits = 0;
+            byte ch = this.readByte();
+            while ((ch >= '0') && (ch <= '9'))  {
+                if (++digits > ElementReader.MAX_DIGITS)  {
+                    throw new IOException("Malformed network data");
+                }
+                value = value * 10 + (ch - '0');
+                ch = this.readByte();
+            }
+            if (ch == ':')  {
+                if (value > Integer.MAX_VALUE)  {
+                    throw new IOException("Malformed network data");
+                }
+                ret = new StringElement(this.readBytes((int) value));
+                this.readWhitespace();
+            } else if (ElementReader.isWhitespace(ch))  {
+                ret = new NumberElement(Long.valueOf(value));
+            } else  {
+                throw new IOException("Malformed network data");
+            }
+        } else  {
+            ret = this.readWord();
+        }
+        return ret;
+    }
+
+    /**
+     * Reads a word. All bytes until the next whitespace are part of the word.
+     *
+     * @return read word
+     * @throws IOException if the word could not be read
+     */
+    private WordElement readWord()
+            throws IOException
+    {
+        int length = 0;
+        while (true)  {
+            final int pos = this.buffer.position() + length;
+            if (pos >= this.buffer.limit())  {
+                if (!this.fill())  {
+                    throw new EOFException();
+                }
+            } else if (ElementReader.isWhitespace(this.buffer.get(pos)))  {
+                break;
+            } else  {
+                length++;
+            }
+        }
+        final byte[] array = this.buffer.array();
+        final int offset = this.buffer.arrayOffset() + this.buffer.position();
+        final WordElement.Word word = WordElement.wordByBytes(array, offset, length);
+        final WordElement ret = new WordElement(word,
+                                                (word != null) ? word.value : new String(array, offset, length, "UTF8"));
+        this.buffer.position(this.buffer.position() + length + 1);
+        return ret;
+    }
+
+    /**
+     * Reads given count of bytes into a new byte array.
+     *
+     * @param _length   count of bytes to read
+     * @return byte array with the read bytes
+     * @throws IOException if the bytes could not be read
+     */
+    private byte[] readBytes(final int _length)
+            throws IOException
+    {
+        // without input stream, all bytes must be buffered (so that a
+        // decoder could wait for more bytes without allocating the array)
+        if ((this.in == null) && (this.buffer.remaining() < _length))  {
+            throw new EOFException();
+        }
+        final byte[] ret = new byte[_length];
+        final int buffered = Math.min(_length, this.buffer.remaining());
+        this.buffer.get(ret, 0, buffered);
+        int offset = buffered;
+        while (offset < _length)  {
+            final int read = (this.in == null) ? -1 : this.in.read(ret, offset, _length - offset);
+            if (read < 0)  {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+        return ret;
+    }
+
+    /**
+     * Reads one byte which must be a whitespace.
+     *
+     * @throws IOException if the byte could not be read or is not a whitespace
+     */
+    private void readWhitespace()
+            throws IOException
+    {
+        if (!ElementReader.isWhitespace(this.readByte()))  {
+            throw new IOException("Malformed network data");
+        }
+    }
+
+    /**
+     * Reads the next byte.
+     *
+     * @return read byte
+     * @throws IOException if no byte could be read
+     */
+    private byte readByte()
+            throws IOException
+    {
+        if (!this.buffer.hasRemaining() && !this.fill())  {
+            throw new EOFException();
+        }
+        return this.buffer.get();
+    }
+
+    /**
+     * Skips all whitespaces.
+     *
+     * @return <i>true</i> if a byte which is not a whitespace is available;
+     *         <i>false</i> if the end of the input stream is reached
+     * @throws IOException if the input stream could not be read
+     */
+    private boolean skipWhitespaces()
+            throws IOException
+    {
+        while (true)  {
+            while (this.buffer.hasRemaining())  {
+                if (!ElementReader.isWhitespace(this.buffer.get(this.buffer.position())))  {
+                    return true;
+                }
+                this.buffer.get();
+            }
+            if (!this.fill())  {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Reads the next bytes from the input stream into the {@link #buffer}.
+     * The not parsed bytes are moved to the beginning of the buffer.
+     *
+     * @return <i>true</i> if bytes are read; <i>false</i> if the end of the
+     *         input stream is reached
+     * @throws IOException if the input stream could not be read or the buffer
+     *                     is full
+     */
+    protected boolean fill()
+            throws IOException
+    {
+        boolean ret = false;
+        if (this.in != null)  {
+            this.buffer.compact();
+            try  {
+                if (!this.buffer.hasRemaining())  {
+                    throw new IOException("Malformed network data");
+                }
+                final int read = this.in.read(this.buffer.array(),
+                                              this.buffer.arrayOffset() + this.buffer.position(),
+                                              this.buffer.remaining());
+                if (read > 0)  {
+                    this.buffer.position(this.buffer.position() + read);
+                    ret = true;
+                }
+            } finally  {
+                this.buffer.flip();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Checks if given byte is a whitespace (space, tab or line feed).
+     *
+     * @param _byte     byte to check
+     * @return <i>true</i> if the byte is a whitespace; otherwise <i>false</i>
+     */
+    private static boolean isWhitespace(final byte _byte)
+    {
+        return (_byte == ' ') || (_byte == '\n') || (_byte == '\r') || (_byte == '\t');
+    }
+}
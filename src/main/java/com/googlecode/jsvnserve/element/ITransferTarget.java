@@ -0,0 +1,62 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.element;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Output stream which could transfer the bytes of a file channel directly to
+ * the network without copying them into the heap (e.g. with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}).
+ * The {@link ElementOutputStream} uses the transfer for the content of files
+ * if the underlying output stream implements this interface.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see ElementOutputStream#writeContent(java.io.InputStream)
+ */
+public interface ITransferTarget
+{
+    /**
+     * Checks if the bytes could be currently transferred. The transfer is not
+     * possible if the bytes must be encoded (e.g. by a security layer).
+     *
+     * @return <i>true</i> if the transfer is supported; otherwise
+     *         <i>false</i>
+     */
+    boolean isTransferSupported();
+
+    /**
+     * Transfers given region of the file channel. The transfer could be done
+     * asynchronously; the file channel must not be closed before the output
+     * stream is flushed.
+     *
+     * @param _channel      file channel from which the bytes are transferred
+     * @param _position     position within the file channel
+     * @param _length       count of bytes to transfer
+     * @throws IOException if the bytes could not be transferred
+     */
+    void transferFrom(final FileChannel _channel,
+                      final long _position,
+                      final long _length)
+            throws IOException;
+}
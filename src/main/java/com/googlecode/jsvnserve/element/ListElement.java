@@ -21,8 +21,6 @@
 package com.googlecode.jsvnserve.element;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Date;
@@ -76,66 +74,15 @@ System.err.println("unknown class "+ arg.getClass());
         }
     }
 
-    public void read(final InputStream _in)
-            throws IOException
-    {
-        AbstractElement<?> element;
-        while (true)  {
-            element = readElement(_in);
-            if (element.getWord() == WordElement.Word.BRACE_OPEN)  {
-                ListElement list = new ListElement();
-                list.read(_in);
-                this.getValue().add(list);
-            } else if (element.getWord() == WordElement.Word.BRACE_CLOSE)  {
-                break;
-            } else  {
-                this.getValue().add(element);
-            }
-        }
-    }
-
-    public AbstractElement<?> readElement(final InputStream _in)
-        throws IOException
-    {
-        AbstractElement<?> ret = null;
-        final StringBuilder buf = new StringBuilder();
-        char ch = (char) _in.read();
-        if (Character.isDigit(ch))  {
-            while (Character.isDigit(ch))  {
-                buf.append(ch);
-                ch = (char) _in.read();
-            }
-            if (ch == ':')  {
-                final int length = Integer.parseInt(buf.toString());
-                final byte[] byteBuffer = new byte[length];
-                _in.read(byteBuffer, 0, length);
-                ret = new StringElement(byteBuffer);
-                ch = (char) _in.read();
-            } else  {
-                ret = new NumberElement(buf);
-            }
-            if (!Character.isWhitespace(ch))  {
-                throw new Error("Malformed network data");
-            }
-        } else  {
-            while (!Character.isWhitespace(ch))  {
-                buf.append(ch);
-                ch = (char) _in.read();
-            }
-            ret = new WordElement(buf);
-        }
-        return ret;
-    }
-
     @Override
-    public void write(final OutputStream _out)
+    public void write(final ElementOutputStream _out)
             throws IOException
     {
-        _out.write("( ".getBytes());
+        _out.writeListStart();
         for (final AbstractElement<?> element : this.getValue())  {
             element.write(_out);
         }
-        _out.write(") ".getBytes());
+        _out.writeListEnd();
     }
 
     /**
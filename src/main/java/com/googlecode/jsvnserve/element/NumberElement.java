@@ -21,7 +21,6 @@
 package com.googlecode.jsvnserve.element;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
 /**
  *
@@ -47,11 +46,10 @@ public class NumberElement
     }
 
     @Override
-    public void write(final OutputStream _out)
+    public void write(final ElementOutputStream _out)
             throws IOException
     {
-        _out.write(String.valueOf(this.getValue()).getBytes());
-        _out.write(' ');
+        _out.writeNumber(this.getValue());
     }
 
     /**
@@ -21,7 +21,6 @@
 package com.googlecode.jsvnserve.element;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -39,15 +38,21 @@ public class StringElement
     /**
      * Date time format from SVN used to format date instance to strings.<br/>
      * Example:<br/>
-     * <code>2009-03-14T18:49:06.097886Z</code>
+     * <code>2009-03-14T18:49:06.097886Z</code><br/>
+     * Because a date format is not thread safe, each thread uses an own
+     * instance (the format is used from all sessions of the SVN server).
      *
      * @see #StringElement(Date)
      */
-    private static final DateFormat DATETIMEFORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'000Z'");
-    static
-    {
-        DATETIMEFORMAT.setTimeZone(new SimpleTimeZone(0, "GMT"));
-    }
+    private static final ThreadLocal<DateFormat> DATETIMEFORMAT = new ThreadLocal<DateFormat>()  {
+        @Override
+        protected DateFormat initialValue()
+        {
+            final DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'000Z'");
+            format.setTimeZone(new SimpleTimeZone(0, "GMT"));
+            return format;
+        }
+    };
 
     /**
      * Default string for the null date time.
@@ -82,7 +87,19 @@ public class StringElement
      */
     public StringElement(final Date _value)
     {
-        super(DATETIMEFORMAT.format(_value).getBytes());
+        super(StringElement.formatDate(_value));
+    }
+
+    /**
+     * Formats given date in the SVN date time format.
+     *
+     * @param _value    date value to format
+     * @return bytes of the formatted date
+     * @see #DATETIMEFORMAT
+     */
+    static byte[] formatDate(final Date _value)
+    {
+        return StringElement.DATETIMEFORMAT.get().format(_value).getBytes();
     }
 
     /**
@@ -90,19 +107,14 @@ public class StringElement
      * length of the byte buffer is written, then a colon and at last the byte
      * buffer itself.
      *
-     * @param _out      output stream
+     * @param _out      element output stream
      * @throws IOException if the byte buffer could not be written
      */
     @Override
-    public void write(final OutputStream _out)
+    public void write(final ElementOutputStream _out)
             throws IOException
     {
-        _out.write(String.valueOf(this.getValue().length).getBytes());
-        _out.write(':');
-        if (this.getValue().length > 0)  {
-            _out.write(this.getValue());
-        }
-        _out.write(' ');
+        _out.writeString(this.getValue());
     }
 
     /**
@@ -21,8 +21,6 @@
 package com.googlecode.jsvnserve.element;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -169,6 +167,7 @@ public class WordElement
         CLOSE_EDIT("close-edit"),
         ABORT_EDIT("abort-edit"),
         FINISH_REPLAY("finish-replay"),
+        REVPROPS("revprops"),
 
         // Report Command Set
         SET_PATH("set-path"),
@@ -179,10 +178,19 @@ public class WordElement
 
         public final String value;
 
+        /**
+         * Byte representation of the {@link #value} (all words are ASCII
+         * words).
+         */
+        final byte[] bytes;
 
         private Word(final String _value)
         {
             this.value = _value;
+            this.bytes = new byte[_value.length()];
+            for (int idx = 0; idx < this.bytes.length; idx++)  {
+                this.bytes[idx] = (byte) _value.charAt(idx);
+            }
             WordElement.MAP.put(this.value, this);
         }
 
@@ -196,6 +204,14 @@ public class WordElement
 
     final String origValue;
 
+    /**
+     * UTF-8 encoded {@link #origValue} of an unknown word; evaluated with the
+     * first write.
+     *
+     * @see #write(ElementOutputStream)
+     */
+    private byte[] origBytes;
+
 
     public WordElement(final CharSequence _value)
     {
@@ -209,12 +225,112 @@ public class WordElement
         this.origValue = _value.value;
     }
 
+    /**
+     * Constructor used from the {@link ElementReader} where the word is
+     * already resolved.
+     *
+     * @param _value        resolved word or <code>null</code> if unknown
+     * @param _origValue    original value of the word
+     */
+    WordElement(final WordElement.Word _value,
+                final String _origValue)
+    {
+        super(_value);
+        this.origValue = _origValue;
+    }
+
+    /**
+     * Searches the word for given bytes via the perfect hash table
+     * {@link WordTable#TABLE}.
+     *
+     * @param _buffer   buffer with the bytes of the word
+     * @param _offset   offset of the word within the buffer
+     * @param _length   length of the word
+     * @return found word or <code>null</code> if not known
+     */
+    static Word wordByBytes(final byte[] _buffer,
+                            final int _offset,
+                            final int _length)
+    {
+        final Word word = WordTable.TABLE[WordTable.index(_buffer, _offset, _length, WordTable.TABLE.length)];
+        boolean equal = (word != null) && (word.bytes.length == _length);
+        for (int idx = 0; equal && (idx < _length); idx++)  {
+            equal = (word.bytes[idx] == _buffer[_offset + idx]);
+        }
+        return equal ? word : null;
+    }
+
+    /**
+     * Perfect hash table of all words. The size of the table is evaluated so
+     * that no two words are mapped to the same index.
+     */
+    private static final class WordTable
+    {
+        /**
+         * Table with all words.
+         */
+        static final Word[] TABLE;
+        static
+        {
+            final Word[] words = Word.values();
+            Word[] table = null;
+            for (int size = words.length; table == null; size++)  {
+                table = new Word[size];
+                for (final Word word : words)  {
+                    final int index = WordTable.index(word.bytes, 0, word.bytes.length, size);
+                    if (table[index] != null)  {
+                        table = null;
+                        break;
+                    }
+                    table[index] = word;
+                }
+            }
+            TABLE = table;
+        }
+
+        /**
+         * Calculates the index of given bytes in a table with given size.
+         *
+         * @param _buffer   buffer with the bytes of the word
+         * @param _offset   offset of the word within the buffer
+         * @param _length   length of the word
+         * @param _size     size of the table
+         * @return index within the table
+         */
+        static int index(final byte[] _buffer,
+                         final int _offset,
+                         final int _length,
+                         final int _size)
+        {
+            int hash = _length;
+            for (int idx = 0; idx < _length; idx++)  {
+                hash = 31 * hash + _buffer[_offset + idx];
+            }
+            return (hash & 0x7fffffff) % _size;
+        }
+    }
+
+    /**
+     * Writes the word. For known words the precomputed bytes are written,
+     * unknown words are encoded only once.
+     *
+     * @param _out  element output stream
+     * @throws IOException if the word could not be written
+     * @see Word#bytes
+     * @see #origBytes
+     */
     @Override
-    public void write(final OutputStream _out)
-            throws UnsupportedEncodingException, IOException
+    public void write(final ElementOutputStream _out)
+            throws IOException
     {
-        _out.write(this.origValue.getBytes("UTF8"));
-        _out.write(' ');
+        if (this.getValue() != null)  {
+            _out.writeWord(this.getValue());
+        } else  {
+            if (this.origBytes == null)  {
+                this.origBytes = this.origValue.getBytes("UTF8");
+            }
+            _out.writeWord(this.origBytes);
+        }
     }
 
     @Override
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.nio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.googlecode.jsvnserve.element.AbstractElement;
+import com.googlecode.jsvnserve.element.ElementReader;
+import com.googlecode.jsvnserve.element.ListElement;
+import com.googlecode.jsvnserve.util.CompensatingThreadPool;
+
+/**
+ * Queue of the elements decoded by the {@link SVNProtocolCodecFactory}. The
+ * I/O threads of MINA {@link #add(AbstractElement) add} the elements, the
+ * session reads them. If a command must read further elements (e.g. the
+ * report of an update or the editor commands of a commit), the session waits
+ * until the elements are received. While the session waits, the worker
+ * thread is {@link CompensatingThreadPool#beginBlocking() compensated}, so
+ * that other sessions are not blocked by a slow SVN client.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class ElementQueue
+        extends ElementReader
+{
+    /**
+     * Marker added to the {@link #queue} if the session is closed.
+     *
+     * @see #close()
+     */
+    private static final AbstractElement<?> END_OF_STREAM = new ListElement();
+
+    /**
+     * Queue of the received elements.
+     */
+    private final BlockingQueue<AbstractElement<?>> queue = new LinkedBlockingQueue<AbstractElement<?>>();
+
+    /**
+     * Is the end of the stream reached (the end of stream marker was already
+     * taken from the queue)?
+     */
+    private boolean endOfStream;
+
+    /**
+     * Adds a received element.
+     *
+     * @param _element  received element
+     */
+    public void add(final AbstractElement<?> _element)
+    {
+        this.queue.add(_element);
+    }
+
+    /**
+     * Marks the end of the stream. All elements added before could still be
+     * read.
+     */
+    public void close()
+    {
+        this.queue.add(ElementQueue.END_OF_STREAM);
+    }
+
+    /**
+     * Checks if an element (or the end of the stream) could be read without
+     * waiting.
+     *
+     * @return <i>true</i> if the next read does not block
+     */
+    public boolean isAvailable()
+    {
+        return this.endOfStream || !this.queue.isEmpty();
+    }
+
+    /**
+     * Reads the next list. The method waits until the list is received.
+     *
+     * @return read list or <code>null</code> if the session is closed
+     * @throws IOException if the next element is not a list or the wait was
+     *                     interrupted
+     */
+    @Override
+    public ListElement readItemList()
+            throws IOException
+    {
+        final AbstractElement<?> element = this.readElement();
+        if ((element != null) && (element.getList() == null))  {
+            throw new IOException("Malformed network data");
+        }
+        return (ListElement) element;
+    }
+
+    /**
+     * Reads the next element. The method waits until the element is
+     * received.
+     *
+     * @return read element or <code>null</code> if the session is closed
+     * @throws IOException if the wait was interrupted
+     */
+    @Override
+    public AbstractElement<?> readElement()
+            throws IOException
+    {
+        AbstractElement<?> ret = null;
+        if (!this.endOfStream)  {
+            ret = this.queue.poll();
+            if (ret == null)  {
+                CompensatingThreadPool.beginBlocking();
+                try  {
+                    ret = this.queue.take();
+                } catch (final InterruptedException ex)  {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                } finally  {
+                    CompensatingThreadPool.endBlocking();
+                }
+            }
+            if (ret == ElementQueue.END_OF_STREAM)  {
+                this.endOfStream = true;
+                ret = null;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * The bytes are already decoded, so no unread input stream exists.
+     *
+     * @return always an exception
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public InputStream getUnreadInputStream()
+    {
+        throw new UnsupportedOperationException("elements are already decoded");
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.sasl.Sasl;
+import javax.security.sasl.SaslServer;
+import javax.security.sasl.SaslServerFactory;
+
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.jsvnserve.SVNServerSession;
+import com.googlecode.jsvnserve.api.IRepositoryFactory;
+import com.googlecode.jsvnserve.element.AbstractElement;
+import com.googlecode.jsvnserve.element.ListElement;
+import com.googlecode.jsvnserve.sasl.SaslFilter;
+import com.googlecode.jsvnserve.sasl.SaslOutputStream;
+
+/**
+ * <p>SVN server session driven by the events of a MINA session. The session
+ * does not own a thread: each received top level item schedules one step of
+ * the session on the worker {@link #executor}. Between two commands no thread
+ * is used, so a small pool of worker threads could serve many connected SVN
+ * clients.</p>
+ *
+ * <p>The steps of the session are defined by the {@link SessionState state}:
+ * <ul>
+ * <li>{@link SessionState#GREETING}: the greeting is written (scheduled if
+ *     the session is opened),</li>
+ * <li>{@link SessionState#HELLO}: the hello of the SVN client is received
+ *     and the authentication is requested (or the repository is opened
+ *     directly if the user is already authenticated),</li>
+ * <li>{@link SessionState#AUTHENTICATION}: each received answer of the SVN
+ *     client is evaluated by the {@link SVNServerSession.SaslAuthentication
+ *     authentication}; if the user is authenticated, the repository is
+ *     opened,</li>
+ * <li>{@link SessionState#COMMAND}: each received command is dispatched,</li>
+ * <li>{@link SessionState#CLOSED}: the session is closed.</li>
+ * </ul>
+ * Because the SVN client could wait for the password input of the user, no
+ * worker waits for an answer during the authentication. If a command must
+ * read further items (e.g. the report of an update or the editor commands of
+ * a commit), the worker waits for them within the command; if the executor
+ * is a {@link com.googlecode.jsvnserve.util.CompensatingThreadPool}, the
+ * waiting worker is replaced by an additional thread meanwhile, so that the
+ * other sessions are not blocked. After each step the worker is given back,
+ * so that the sessions are processed fair.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class EventDrivenSession
+        extends SVNServerSession
+{
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventDrivenSession.class);
+
+    /**
+     * States of the event driven session.
+     */
+    public enum SessionState
+    {
+        /** The greeting must be written. */
+        GREETING,
+
+        /** The hello of the SVN client is expected. */
+        HELLO,
+
+        /** The answers of the SVN client for the authentication are expected. */
+        AUTHENTICATION,
+
+        /** Commands of the SVN client are dispatched. */
+        COMMAND,
+
+        /** The session is closed. */
+        CLOSED;
+    }
+
+    /**
+     * Related MINA session.
+     */
+    private final IoSession ioSession;
+
+    /**
+     * Executor used to run the steps of the session.
+     */
+    private final Executor executor;
+
+    /**
+     * Queue with the decoded elements.
+     */
+    private final ElementQueue queue;
+
+    /**
+     * Output stream to the MINA session.
+     */
+    private final IoSessionOutputStream out;
+
+    /**
+     * Is a step of this session scheduled (or running)? Used so that only
+     * one step is executed at the same time.
+     *
+     * @see #schedule()
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Current state of the session. Only changed within a step.
+     *
+     * @see #getSessionState()
+     */
+    private volatile SessionState state = SessionState.GREETING;
+
+    /**
+     * Running authentication of the SVN client (only in state
+     * {@link SessionState#AUTHENTICATION}).
+     */
+    private SaslAuthentication authentication;
+
+    /**
+     * @param _ioSession            MINA session
+     * @param _executor             executor for the steps of the session
+     * @param _maxScheduledBytes    maximum of not yet sent bytes before a
+     *                              writing step waits
+     * @param _repositoryFactory    repository factory to get related
+     *                              repository
+     * @param _saslServerFactory    factory to get {@link SaslServer} instance
+     *                              for authentication
+     * @param _callbackHandler      callback handler for the authentication
+     */
+    public EventDrivenSession(final IoSession _ioSession,
+                              final Executor _executor,
+                              final long _maxScheduledBytes,
+                              final IRepositoryFactory _repositoryFactory,
+                              final SaslServerFactory _saslServerFactory,
+                              final CallbackHandler _callbackHandler)
+    {
+        this(_ioSession, _executor, new ElementQueue(), new IoSessionOutputStream(_ioSession, _maxScheduledBytes),
+             _repositoryFactory, _saslServerFactory, _callbackHandler);
+    }
+
+    /**
+     * @param _ioSession            MINA session
+     * @param _executor             executor for the steps of the session
+     * @param _queue                queue for the decoded elements
+     * @param _out                  output stream to the MINA session
+     * @param _repositoryFactory    repository factory to get related
+     *                              repository
+     * @param _saslServerFactory    factory to get {@link SaslServer} instance
+     *                              for authentication
+     * @param _callbackHandler      callback handler for the authentication
+     */
+    private EventDrivenSession(final IoSession _ioSession,
+                               final Executor _executor,
+                               final ElementQueue _queue,
+                               final IoSessionOutputStream _out,
+                               final IRepositoryFactory _repositoryFactory,
+                               final SaslServerFactory _saslServerFactory,
+                               final CallbackHandler _callbackHandler)
+    {
+        super(_queue, _out, _repositoryFactory, null, _saslServerFactory, _callbackHandler);
+        this.ioSession = _ioSession;
+        this.executor = _executor;
+        this.queue = _queue;
+        this.out = _out;
+    }
+
+    /**
+     * Called if an element is received.
+     *
+     * @param _element  received element
+     */
+    public void received(final AbstractElement<?> _element)
+    {
+        this.queue.add(_element);
+        this.schedule();
+    }
+
+    /**
+     * Called if bytes are sent to the SVN client.
+     */
+    public void sent()
+    {
+        this.out.notifyWritten();
+    }
+
+    /**
+     * Called if the MINA session is closed.
+     */
+    public void closed()
+    {
+        this.queue.close();
+        this.out.notifyWritten();
+        this.schedule();
+    }
+
+    /**
+     * Schedules the next step of the session if no step is already scheduled.
+     * If the executor rejects the step, the MINA session is closed.
+     */
+    public void schedule()
+    {
+        if (this.scheduled.compareAndSet(false, true))  {
+            try  {
+                this.executor.execute(this);
+            } catch (final RejectedExecutionException ex)  {
+                EventDrivenSession.LOGGER.error("session step could not be scheduled", ex);
+                this.scheduled.set(false);
+                this.ioSession.close(true);
+            }
+        }
+    }
+
+    /**
+     * Executes one step of the session depending on the {@link #state}. If
+     * after the step elements are already received, the next step is
+     * scheduled again (and not executed directly, so that other sessions
+     * could be executed between).
+     */
+    @Override
+    public void run()
+    {
+        try  {
+            switch (this.state)  {
+                case GREETING:
+                    this.writeGreeting();
+                    this.state = SessionState.HELLO;
+                    break;
+                case HELLO:
+                    if (this.queue.isAvailable())  {
+                        final ListElement hello = this.queue.readItemList();
+                        if (hello == null)  {
+                            this.state = SessionState.CLOSED;
+                        } else  {
+                            this.authentication = this.readHello(hello);
+                            if (this.authentication != null)  {
+                                this.state = SessionState.AUTHENTICATION;
+                            } else  {
+                                this.state = this.openRepository() ? SessionState.COMMAND : SessionState.CLOSED;
+                            }
+                        }
+                    }
+                    break;
+                case AUTHENTICATION:
+                    if (this.queue.isAvailable())  {
+                        final AbstractElement<?> answer = this.queue.readElement();
+                        if (answer == null)  {
+                            this.state = SessionState.CLOSED;
+                        } else if (this.authentication.evaluate(answer))  {
+                            this.authentication = null;
+                            this.state = this.openRepository() ? SessionState.COMMAND : SessionState.CLOSED;
+                        }
+                    }
+                    break;
+                case COMMAND:
+                    if (this.queue.isAvailable())  {
+                        final ListElement items = this.queue.readItemList();
+                        if (items == null)  {
+                            this.state = SessionState.CLOSED;
+                        } else  {
+                            this.dispatch(items);
+                        }
+                    }
+                    break;
+                default:
+            }
+        } catch (final EOFException ex)  {
+            this.state = SessionState.CLOSED;
+        } catch (final Throwable ex)  {
+            // also errors (e.g. of the repository), otherwise the session
+            // would be never scheduled again
+            EventDrivenSession.LOGGER.error("SVN session failed", ex);
+            this.state = SessionState.CLOSED;
+        }
+
+        if (this.state == SessionState.CLOSED)  {
+            // the session is not scheduled anymore
+            try  {
+                this.closeSession();
+            } finally  {
+                this.ioSession.close(false);
+            }
+        } else  {
+            this.scheduled.set(false);
+            if (this.queue.isAvailable())  {
+                this.schedule();
+            }
+        }
+    }
+
+    /**
+     * The security layer is installed as {@link SaslFilter} at the beginning
+     * of the filter chain of the MINA session. All bytes written before (e.g.
+     * the success of the authentication) are not encoded.
+     *
+     * @param _saslServer   Sasl server used for the authentication
+     * @throws IOException if the buffered output could not be written
+     */
+    @Override
+    protected void startSecurityLayer(final SaslServer _saslServer)
+            throws IOException
+    {
+        final String qop = (String) _saslServer.getNegotiatedProperty(Sasl.QOP);
+        if ("auth-int".equals(qop) || "auth-conf".equals(qop))  {
+            final int outBuffSize = SaslOutputStream.getRawSendSize(_saslServer);
+            this.getStreams().flush();
+            this.ioSession.suspendRead();
+            try  {
+                this.ioSession.getFilterChain().addFirst("sasl", new SaslFilter(_saslServer, outBuffSize));
+            } finally  {
+                this.ioSession.resumeRead();
+            }
+        }
+    }
+
+    /**
+     * Returns the current state of the session.
+     *
+     * @return current state
+     * @see #state
+     */
+    public SessionState getSessionState()
+    {
+        return this.state;
+    }
+}
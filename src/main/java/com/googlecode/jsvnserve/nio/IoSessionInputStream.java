@@ -0,0 +1,210 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.mina.core.buffer.IoBuffer;
+
+import com.googlecode.jsvnserve.util.CompensatingThreadPool;
+
+/**
+ * Blocking input stream for the bytes received from a MINA session. The
+ * received buffers are {@link #append(IoBuffer) appended} from the I/O
+ * processor of MINA, the session reads them blocking. The reader waits on a
+ * {@link Lock} (and not on a monitor like the stream of the MINA stream
+ * handler), so that a waiting virtual thread does not pin its carrier thread.
+ * While the reader waits for the SVN client, the worker thread is
+ * {@link CompensatingThreadPool#beginBlocking() compensated}, so that idle
+ * SVN clients do not hold back the threads of a bounded pool.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class IoSessionInputStream
+        extends InputStream
+{
+    /**
+     * Lock for all fields of the stream.
+     */
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Signaled if bytes are appended, the stream is closed or an exception
+     * is thrown.
+     */
+    private final Condition available = this.lock.newCondition();
+
+    /**
+     * Buffer with the received, but not read bytes.
+     */
+    private final IoBuffer buffer = IoBuffer.allocate(16).setAutoExpand(true);
+
+    /**
+     * Is the MINA session closed?
+     *
+     * @see #close()
+     */
+    private boolean closed;
+
+    /**
+     * Exception of the MINA session which is thrown on the next read.
+     *
+     * @see #throwException(IOException)
+     */
+    private IOException exception;
+
+    /**
+     * Creates the stream with an empty buffer.
+     */
+    public IoSessionInputStream()
+    {
+        this.buffer.flip();
+    }
+
+    /**
+     * Appends the received bytes of given buffer.
+     *
+     * @param _received     received bytes
+     */
+    public void append(final IoBuffer _received)
+    {
+        this.lock.lock();
+        try  {
+            if (!this.closed)  {
+                this.buffer.compact();
+                this.buffer.put(_received);
+                this.buffer.flip();
+                this.available.signalAll();
+            }
+        } finally  {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Defines the exception which is thrown on the next read.
+     *
+     * @param _exception    exception of the MINA session
+     */
+    public void throwException(final IOException _exception)
+    {
+        this.lock.lock();
+        try  {
+            if (this.exception == null)  {
+                this.exception = _exception;
+            }
+            this.available.signalAll();
+        } finally  {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int available()
+    {
+        this.lock.lock();
+        try  {
+            return this.buffer.remaining();
+        } finally  {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int read()
+            throws IOException
+    {
+        final byte[] bytes = new byte[1];
+        return (this.read(bytes, 0, 1) < 0) ? -1 : (bytes[0] & 0xff);
+    }
+
+    /**
+     * Reads the received bytes. If no bytes are received, the method waits
+     * until bytes are received or the MINA session is closed.
+     *
+     * @param _bytes    byte array into which the bytes are read
+     * @param _offset   offset within the byte array
+     * @param _length   maximum count of bytes to read
+     * @return count of read bytes or <code>-1</code> if the MINA session is
+     *         closed
+     * @throws IOException if the MINA session failed or the wait is
+     *                     interrupted
+     */
+    @Override
+    public int read(final byte[] _bytes,
+                    final int _offset,
+                    final int _length)
+            throws IOException
+    {
+        this.lock.lock();
+        try  {
+            if (!this.buffer.hasRemaining() && !this.closed && (this.exception == null))  {
+                CompensatingThreadPool.beginBlocking();
+                try  {
+                    while (!this.buffer.hasRemaining() && !this.closed && (this.exception == null))  {
+                        this.available.await();
+                    }
+                } catch (final InterruptedException ex)  {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                } finally  {
+                    CompensatingThreadPool.endBlocking();
+                }
+            }
+            final int ret;
+            if (this.buffer.hasRemaining())  {
+                ret = Math.min(_length, this.buffer.remaining());
+                this.buffer.get(_bytes, _offset, ret);
+            } else if (this.exception != null)  {
+                final IOException ex = this.exception;
+                this.exception = new EOFException();
+                throw ex;
+            } else  {
+                ret = -1;
+            }
+            return ret;
+        } finally  {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the stream; a waiting reader gets the end of the stream.
+     */
+    @Override
+    public void close()
+    {
+        this.lock.lock();
+        try  {
+            this.closed = true;
+            this.available.signalAll();
+        } finally  {
+            this.lock.unlock();
+        }
+    }
+}
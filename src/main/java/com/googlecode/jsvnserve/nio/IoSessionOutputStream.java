@@ -0,0 +1,269 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.nio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.file.DefaultFileRegion;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.ssl.SslFilter;
+
+import com.googlecode.jsvnserve.element.ITransferTarget;
+import com.googlecode.jsvnserve.sasl.SaslFilter;
+import com.googlecode.jsvnserve.util.CompensatingThreadPool;
+
+/**
+ * Output stream which writes the bytes as messages to a MINA session. The
+ * bytes are copied, because the buffers of the
+ * {@link com.googlecode.jsvnserve.element.ElementOutputStream} are reused.
+ * If the SVN client reads slower than the session writes, the writer waits
+ * until the scheduled bytes of the session are below the
+ * {@link #maxScheduledBytes limit}. The writer waits on a {@link Lock} (and
+ * not on a monitor), so that a waiting virtual thread does not pin its carrier
+ * thread.
+ *
+ * <p>The content of files is written as {@link DefaultFileRegion}, so that
+ * the MINA processor transfers the bytes with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * directly from the file to the socket. The transfer is only supported if no
+ * filter must encode the bytes (SASL or SSL).</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class IoSessionOutputStream
+        extends OutputStream
+        implements ITransferTarget
+{
+    /**
+     * Default maximum of scheduled (not yet sent) bytes.
+     */
+    public static final long DEFAULT_MAX_SCHEDULED_BYTES = 1024 * 1024;
+
+    /**
+     * MINA session to which the bytes are written.
+     */
+    private final IoSession session;
+
+    /**
+     * Maximum of scheduled bytes before the writer waits.
+     */
+    private final long maxScheduledBytes;
+
+    /**
+     * Lock for {@link #written}.
+     */
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Signaled if bytes are sent or the session is closed.
+     *
+     * @see #notifyWritten()
+     */
+    private final Condition written = this.lock.newCondition();
+
+    /**
+     * Future of the last written file region; the file channel of the region
+     * must be open until the region is written.
+     *
+     * @see #transferFrom(FileChannel, long, long)
+     * @see #flush()
+     */
+    private WriteFuture pendingRegion;
+
+    /**
+     * @param _session              MINA session
+     * @param _maxScheduledBytes    maximum of scheduled bytes before the
+     *                              writer waits
+     */
+    public IoSessionOutputStream(final IoSession _session,
+                                 final long _maxScheduledBytes)
+    {
+        this.session = _session;
+        this.maxScheduledBytes = _maxScheduledBytes;
+    }
+
+    @Override
+    public void write(final int _byte)
+            throws IOException
+    {
+        this.write(new byte[]{(byte) _byte}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] _bytes,
+                      final int _offset,
+                      final int _length)
+            throws IOException
+    {
+        if (!this.session.isConnected())  {
+            throw new IOException("Session is closed");
+        }
+        if (_length > 0)  {
+            this.waitForWrittenBytes();
+            final IoBuffer buffer = IoBuffer.allocate(_length);
+            buffer.put(_bytes, _offset, _length);
+            buffer.flip();
+            this.session.write(buffer);
+        }
+    }
+
+    /**
+     * Waits until the scheduled bytes of the session are below the
+     * {@link #maxScheduledBytes limit}.
+     *
+     * @throws IOException if the session is closed or the wait is interrupted
+     * @see #notifyWritten()
+     */
+    private void waitForWrittenBytes()
+            throws IOException
+    {
+        if (this.session.getScheduledWriteBytes() > this.maxScheduledBytes)  {
+            CompensatingThreadPool.beginBlocking();
+            this.lock.lock();
+            try  {
+                while (this.session.isConnected()
+                        && (this.session.getScheduledWriteBytes() > this.maxScheduledBytes))  {
+                    try  {
+                        this.written.await(1000, TimeUnit.MILLISECONDS);
+                    } catch (final InterruptedException ex)  {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+            } finally  {
+                this.lock.unlock();
+                CompensatingThreadPool.endBlocking();
+            }
+        }
+        if (!this.session.isConnected())  {
+            throw new IOException("Session is closed");
+        }
+    }
+
+    /**
+     * Called from the handler if bytes are sent (or the session is closed),
+     * so that a waiting writer could continue.
+     *
+     * @see #waitForWrittenBytes()
+     */
+    public void notifyWritten()
+    {
+        this.lock.lock();
+        try  {
+            this.written.signalAll();
+        } finally  {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * The transfer is supported if the bytes must not be encoded by a
+     * {@link SaslFilter} or a {@link SslFilter}.
+     *
+     * @return <i>true</i> if the file regions could be written; otherwise
+     *         <i>false</i>
+     */
+    public boolean isTransferSupported()
+    {
+        return !this.session.getFilterChain().contains(SaslFilter.class)
+                && !this.session.getFilterChain().contains(SslFilter.class);
+    }
+
+    /**
+     * Writes given region of the file channel to the MINA session. Before the
+     * region is written, the previous written region must be sent, so that at
+     * most two regions are scheduled.
+     *
+     * @param _channel      file channel from which the bytes are transferred
+     * @param _position     position within the file channel
+     * @param _length       count of bytes to transfer
+     * @throws IOException if the session is closed
+     */
+    public void transferFrom(final FileChannel _channel,
+                             final long _position,
+                             final long _length)
+            throws IOException
+    {
+        if (_length > 0)  {
+            this.waitForPendingRegion();
+            this.waitForWrittenBytes();
+            this.pendingRegion = this.session.write(new DefaultFileRegion(_channel, _position, _length));
+        }
+    }
+
+    /**
+     * Waits until the {@link #pendingRegion last written file region} is
+     * sent.
+     *
+     * @throws IOException if the session is closed or the wait is interrupted
+     */
+    private void waitForPendingRegion()
+            throws IOException
+    {
+        if (this.pendingRegion != null)  {
+            final WriteFuture future = this.pendingRegion;
+            this.pendingRegion = null;
+            try  {
+                future.await();
+            } catch (final InterruptedException ex)  {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (!future.isWritten())  {
+                throw new IOException("Session is closed");
+            }
+        }
+    }
+
+    /**
+     * The bytes are already given to the session, so only the last written
+     * file region must be waited for (so that the file channel could be
+     * closed).
+     *
+     * @throws IOException if the file region could not be sent
+     * @see #pendingRegion
+     */
+    @Override
+    public void flush()
+            throws IOException
+    {
+        this.waitForPendingRegion();
+    }
+
+    /**
+     * Closes the MINA session after all scheduled bytes are written.
+     */
+    @Override
+    public void close()
+    {
+        this.session.close(false);
+    }
+}
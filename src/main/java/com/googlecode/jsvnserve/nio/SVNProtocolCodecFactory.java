@@ -0,0 +1,277 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.CumulativeProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolCodecFactory;
+import org.apache.mina.filter.codec.ProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.apache.mina.filter.codec.ProtocolEncoder;
+import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
+import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+
+import com.googlecode.jsvnserve.element.AbstractElement;
+import com.googlecode.jsvnserve.element.ElementOutputStream;
+import com.googlecode.jsvnserve.element.ElementReader;
+
+/**
+ * Codec for the SVN protocol. The decoder cuts the received bytes into the
+ * top level items (normally lists) of the SVN protocol; each item is given as
+ * {@link AbstractElement element} to the handler. The encoder writes
+ * elements; byte buffers written directly to the session are not encoded.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class SVNProtocolCodecFactory
+        implements ProtocolCodecFactory
+{
+    /**
+     * Stateless encoder used for all sessions.
+     */
+    private final ProtocolEncoder encoder = new ElementEncoder();
+
+    /**
+     * The decoder is stateful (the cumulated bytes are stored within the
+     * session), so the same instance is used for all sessions.
+     */
+    private final ProtocolDecoder decoder = new ElementDecoder();
+
+    public ProtocolEncoder getEncoder(final IoSession _session)
+    {
+        return this.encoder;
+    }
+
+    public ProtocolDecoder getDecoder(final IoSession _session)
+    {
+        return this.decoder;
+    }
+
+    /**
+     * Decodes the top level items. The received bytes are first checked with
+     * the {@link ItemScanner scanner} of the session if the item is
+     * complete; the scanner keeps its state between the received packets,
+     * so that each byte is scanned only once (and the payload of a string is
+     * skipped by the declared length). Only a complete item is parsed with
+     * the {@link ElementReader tokenizer}, so that an item received in many
+     * packets is not parsed again for each packet.
+     */
+    public static class ElementDecoder
+            extends CumulativeProtocolDecoder
+    {
+        /**
+         * Key of the session attribute for the {@link ItemScanner scanner}
+         * of the current item.
+         */
+        private static final String SCANNER_KEY = ElementDecoder.class.getName() + ".scanner";
+
+        @Override
+        protected boolean doDecode(final IoSession _session,
+                                   final IoBuffer _in,
+                                   final ProtocolDecoderOutput _out)
+                throws Exception
+        {
+            ItemScanner scanner = (ItemScanner) _session.getAttribute(ElementDecoder.SCANNER_KEY);
+            if (scanner == null)  {
+                scanner = new ItemScanner();
+                _session.setAttribute(ElementDecoder.SCANNER_KEY, scanner);
+            }
+            boolean ret = false;
+            final int start = _in.position();
+            if (scanner.scan(_in, start))  {
+                _session.removeAttribute(ElementDecoder.SCANNER_KEY);
+                try  {
+                    final AbstractElement<?> element = new ElementReader(_in.buf()).readElement();
+                    if (element != null)  {
+                        _out.write(element);
+                        ret = true;
+                    }
+                } catch (final EOFException ex)  {
+                    // the scanned item is complete, so the item is malformed
+                    throw new IOException("Malformed network data");
+                }
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Scans the received bytes of a top level item until the item is
+     * complete. The scanner does not check the syntax of the item; if
+     * unexpected bytes are found, the item is handled as complete, so that
+     * the {@link ElementReader tokenizer} reports the malformed item. The
+     * scanned position is stored relative to the start of the item, because
+     * the buffer of the decoder is compacted between the received packets.
+     */
+    static class ItemScanner
+    {
+        /**
+         * Maximum count of digits of a number.
+         */
+        private static final int MAX_DIGITS = 18;
+
+        /**
+         * States of the scanner.
+         */
+        private enum State
+        {
+            /** Before the next item of a list or the top level item. */
+            ITEM,
+            /** Within the digits of a number or of a string length. */
+            NUMBER,
+            /** Within the payload of a string. */
+            STRING,
+            /** Within a word. */
+            WORD,
+            /** The top level item ends with the next whitespace. */
+            TRAILER;
+        }
+
+        /**
+         * Count of scanned bytes from the start of the item.
+         */
+        private int scanned;
+
+        /**
+         * Current state.
+         */
+        private State state = ItemScanner.State.ITEM;
+
+        /**
+         * Depth of the open lists.
+         */
+        private int depth;
+
+        /**
+         * Value of the scanned number or the not scanned bytes of a string.
+         */
+        private long value;
+
+        /**
+         * Count of scanned digits of a number.
+         */
+        private int digits;
+
+        /**
+         * Scans the not yet scanned bytes of the buffer.
+         *
+         * @param _in       buffer with the received bytes
+         * @param _start    position of the start of the item
+         * @return <i>true</i> if the item is complete (or malformed);
+         *         <i>false</i> if more bytes are needed
+         */
+        boolean scan(final IoBuffer _in,
+                     final int _start)
+        {
+            boolean complete = false;
+            final int limit = _in.limit();
+            int pos = _start + this.scanned;
+            while (!complete && (pos < limit))  {
+                if (this.state == ItemScanner.State.STRING)  {
+                    final int skip = (int) Math.min(this.value, limit - pos);
+                    pos += skip;
+                    this.value -= skip;
+                    if (this.value == 0)  {
+                        this.state = (this.depth == 0) ? ItemScanner.State.TRAILER : ItemScanner.State.ITEM;
+                    }
+                    continue;
+                }
+                final byte ch = _in.get(pos++);
+                final boolean whitespace = (ch == ' ') || (ch == '\n') || (ch == '\r') || (ch == '\t');
+                switch (this.state)  {
+                    case ITEM:
+                        if (ch == '(')  {
+                            this.depth++;
+                        } else if (ch == ')')  {
+                            this.depth--;
+                            if (this.depth == 0)  {
+                                this.state = ItemScanner.State.TRAILER;
+                            } else if (this.depth < 0)  {
+                                complete = true;
+                            }
+                        } else if ((ch >= '0') && (ch <= '9'))  {
+                            this.value = ch - '0';
+                            this.digits = 1;
+                            this.state = ItemScanner.State.NUMBER;
+                        } else if (!whitespace)  {
+                            this.state = ItemScanner.State.WORD;
+                        }
+                        break;
+                    case NUMBER:
+                        if ((ch >= '0') && (ch <= '9') && (++this.digits <= ItemScanner.MAX_DIGITS))  {
+                            this.value = this.value * 10 + (ch - '0');
+                        } else if ((ch == ':') && (this.value <= Integer.MAX_VALUE))  {
+                            this.state = (this.value > 0)
+                                         ? ItemScanner.State.STRING
+                                         : ((this.depth == 0) ? ItemScanner.State.TRAILER : ItemScanner.State.ITEM);
+                        } else if (whitespace && (this.depth > 0))  {
+                            this.state = ItemScanner.State.ITEM;
+                        } else  {
+                            complete = true;
+                        }
+                        break;
+                    case WORD:
+                        if (whitespace)  {
+                            if (this.depth == 0)  {
+                                complete = true;
+                            } else  {
+                                this.state = ItemScanner.State.ITEM;
+                            }
+                        }
+                        break;
+                    default:
+                        complete = true;
+                        break;
+                }
+            }
+            this.scanned = pos - _start;
+            return complete;
+        }
+    }
+
+    /**
+     * Encodes elements written to the session.
+     */
+    public static class ElementEncoder
+            extends ProtocolEncoderAdapter
+    {
+        public void encode(final IoSession _session,
+                           final Object _message,
+                           final ProtocolEncoderOutput _out)
+                throws Exception
+        {
+            final IoBuffer buffer = IoBuffer.allocate(256).setAutoExpand(true);
+            final ElementOutputStream out = new ElementOutputStream(buffer.asOutputStream());
+            try  {
+                ((AbstractElement<?>) _message).write(out);
+            } finally  {
+                out.release();
+            }
+            buffer.flip();
+            _out.write(buffer);
+        }
+    }
+}
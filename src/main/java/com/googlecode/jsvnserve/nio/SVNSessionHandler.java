@@ -0,0 +1,162 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.nio;
+
+import java.util.concurrent.Executor;
+
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.jsvnserve.element.AbstractElement;
+
+/**
+ * MINA handler for the event driven session engine. For each opened MINA
+ * session an {@link EventDrivenSession} is created; all events of the MINA
+ * session are forwarded to them. The protocol must be decoded by the
+ * {@link SVNProtocolCodecFactory}.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class SVNSessionHandler
+        extends IoHandlerAdapter
+{
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SVNSessionHandler.class);
+
+    /**
+     * Key of the attribute of the MINA session with the related
+     * {@link EventDrivenSession}.
+     */
+    private static final String SESSION_KEY = SVNSessionHandler.class.getName() + ".session";
+
+    /**
+     * Executor used to run the steps of all sessions.
+     */
+    private final Executor executor;
+
+    /**
+     * Settings of the SVN server for all sessions.
+     */
+    private final SessionConfiguration configuration;
+
+    /**
+     * @param _executor         executor for the steps of all sessions
+     * @param _configuration    settings of the SVN server for all sessions
+     */
+    public SVNSessionHandler(final Executor _executor,
+                             final SessionConfiguration _configuration)
+    {
+        this.executor = _executor;
+        this.configuration = _configuration;
+    }
+
+    /**
+     * Creates the SVN session and schedules the greeting.
+     *
+     * @param _ioSession    opened MINA session
+     */
+    @Override
+    public void sessionOpened(final IoSession _ioSession)
+    {
+        final EventDrivenSession session = new EventDrivenSession(_ioSession,
+                                                                  this.executor,
+                                                                  this.configuration.getMaxScheduledBytes(),
+                                                                  this.configuration.getRepositoryFactory(),
+                                                                  this.configuration.getSaslServerFactory(),
+                                                                  this.configuration.getCallbackHandler());
+        this.configuration.configure(session, _ioSession);
+        _ioSession.setAttribute(SVNSessionHandler.SESSION_KEY, session);
+        session.schedule();
+    }
+
+    /**
+     * Forwards the decoded element to the SVN session.
+     *
+     * @param _ioSession    MINA session
+     * @param _message      decoded element
+     */
+    @Override
+    public void messageReceived(final IoSession _ioSession,
+                                final Object _message)
+    {
+        this.getSession(_ioSession).received((AbstractElement<?>) _message);
+    }
+
+    /**
+     * Informs the SVN session that bytes are sent.
+     *
+     * @param _ioSession    MINA session
+     * @param _message      sent message
+     */
+    @Override
+    public void messageSent(final IoSession _ioSession,
+                            final Object _message)
+    {
+        final EventDrivenSession session = this.getSession(_ioSession);
+        if (session != null)  {
+            session.sent();
+        }
+    }
+
+    /**
+     * Informs the SVN session that the MINA session is closed.
+     *
+     * @param _ioSession    closed MINA session
+     */
+    @Override
+    public void sessionClosed(final IoSession _ioSession)
+    {
+        final EventDrivenSession session = this.getSession(_ioSession);
+        if (session != null)  {
+            session.closed();
+        }
+    }
+
+    /**
+     * Logs the exception and closes the MINA session.
+     *
+     * @param _ioSession    MINA session
+     * @param _cause        exception
+     */
+    @Override
+    public void exceptionCaught(final IoSession _ioSession,
+                                final Throwable _cause)
+    {
+        SVNSessionHandler.LOGGER.error("SVN session failed", _cause);
+        _ioSession.close(true);
+    }
+
+    /**
+     * Returns the SVN session for given MINA session.
+     *
+     * @param _ioSession    MINA session
+     * @return related SVN session
+     */
+    protected EventDrivenSession getSession(final IoSession _ioSession)
+    {
+        return (EventDrivenSession) _ioSession.getAttribute(SVNSessionHandler.SESSION_KEY);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.nio;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.jsvnserve.SVNServerSession;
+
+/**
+ * MINA handler which runs each {@link SVNServerSession} with blocking streams
+ * as one task of the session executor (e.g. a thread per session, a bounded
+ * pool or a virtual thread per session, see
+ * {@link com.googlecode.jsvnserve.SessionExecutorType}). The received bytes
+ * are appended to the {@link IoSessionInputStream} of the session, the
+ * written bytes are given to the MINA session by the
+ * {@link IoSessionOutputStream}. If the SVN session ends, the MINA session is
+ * closed.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class SVNStreamHandler
+        extends IoHandlerAdapter
+{
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SVNStreamHandler.class);
+
+    /**
+     * Key of the attribute of the MINA session with the related
+     * {@link IoSessionInputStream}.
+     */
+    private static final String IN_KEY = SVNStreamHandler.class.getName() + ".in";
+
+    /**
+     * Key of the attribute of the MINA session with the related
+     * {@link IoSessionOutputStream}.
+     */
+    private static final String OUT_KEY = SVNStreamHandler.class.getName() + ".out";
+
+    /**
+     * Executor used to run the SVN sessions.
+     */
+    private final Executor executor;
+
+    /**
+     * Settings of the SVN server for all sessions.
+     */
+    private final SessionConfiguration configuration;
+
+    /**
+     * @param _executor         executor for the SVN sessions
+     * @param _configuration    settings of the SVN server for all sessions
+     */
+    public SVNStreamHandler(final Executor _executor,
+                            final SessionConfiguration _configuration)
+    {
+        this.executor = _executor;
+        this.configuration = _configuration;
+    }
+
+    /**
+     * Creates the streams and the SVN session and executes the SVN session
+     * with the {@link #executor}. If the executor rejects the session, the
+     * MINA session is closed.
+     *
+     * @param _ioSession    opened MINA session
+     */
+    @Override
+    public void sessionOpened(final IoSession _ioSession)
+    {
+        final IoSessionInputStream in = new IoSessionInputStream();
+        final IoSessionOutputStream out = new IoSessionOutputStream(_ioSession,
+                                                                    this.configuration.getMaxScheduledBytes());
+        _ioSession.setAttribute(SVNStreamHandler.IN_KEY, in);
+        _ioSession.setAttribute(SVNStreamHandler.OUT_KEY, out);
+
+        final SVNServerSession session = new SVNServerSession(in,
+                                                              out,
+                                                              this.configuration.getRepositoryFactory(),
+                                                              null,
+                                                              this.configuration.getSaslServerFactory(),
+                                                              this.configuration.getCallbackHandler());
+        this.configuration.configure(session, _ioSession);
+        try  {
+            this.executor.execute(new Runnable()  {
+                public void run()
+                {
+                    try  {
+                        session.run();
+                    } finally  {
+                        _ioSession.close(false);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException ex)  {
+            SVNStreamHandler.LOGGER.error("SVN session could not be executed", ex);
+            _ioSession.close(true);
+        }
+    }
+
+    /**
+     * Appends the received bytes to the input stream of the SVN session.
+     *
+     * @param _ioSession    MINA session
+     * @param _message      received bytes
+     */
+    @Override
+    public void messageReceived(final IoSession _ioSession,
+                                final Object _message)
+    {
+        final IoSessionInputStream in = (IoSessionInputStream) _ioSession.getAttribute(SVNStreamHandler.IN_KEY);
+        in.append((IoBuffer) _message);
+    }
+
+    /**
+     * Informs a waiting writer of the SVN session that bytes are sent.
+     *
+     * @param _ioSession    MINA session
+     * @param _message      sent message
+     */
+    @Override
+    public void messageSent(final IoSession _ioSession,
+                            final Object _message)
+    {
+        final IoSessionOutputStream out = (IoSessionOutputStream) _ioSession.getAttribute(SVNStreamHandler.OUT_KEY);
+        if (out != null)  {
+            out.notifyWritten();
+        }
+    }
+
+    /**
+     * Closes the input stream (so that the SVN session ends) and wakes up a
+     * waiting writer.
+     *
+     * @param _ioSession    closed MINA session
+     */
+    @Override
+    public void sessionClosed(final IoSession _ioSession)
+    {
+        final IoSessionInputStream in = (IoSessionInputStream) _ioSession.getAttribute(SVNStreamHandler.IN_KEY);
+        if (in != null)  {
+            in.close();
+        }
+        this.messageSent(_ioSession, null);
+    }
+
+    /**
+     * The exception is thrown on the next read of the SVN session and the
+     * MINA session is closed.
+     *
+     * @param _ioSession    MINA session
+     * @param _cause        exception
+     */
+    @Override
+    public void exceptionCaught(final IoSession _ioSession,
+                                final Throwable _cause)
+    {
+        final IoSessionInputStream in = (IoSessionInputStream) _ioSession.getAttribute(SVNStreamHandler.IN_KEY);
+        if (in != null)  {
+            in.throwException((_cause instanceof IOException)
+                              ? (IOException) _cause
+                              : new IOException(_cause.getMessage()));
+        } else  {
+            SVNStreamHandler.LOGGER.error("SVN session failed", _cause);
+        }
+        _ioSession.close(true);
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.nio;
+
+import java.util.concurrent.Executor;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.sasl.SaslServerFactory;
+
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.ssl.SslFilter;
+
+import com.googlecode.jsvnserve.SVNServerSession;
+import com.googlecode.jsvnserve.SessionAdmission;
+import com.googlecode.jsvnserve.api.IRepositoryFactory;
+import com.googlecode.jsvnserve.cache.DeltaCache;
+import com.googlecode.jsvnserve.util.DeltaCompression;
+import com.googlecode.jsvnserve.util.MemoryBudget;
+import com.googlecode.jsvnserve.util.SpillOutputStream;
+
+/**
+ * Settings of the SVN server shared by all sessions. The configuration is
+ * defined from the {@link com.googlecode.jsvnserve.SVNServer} when the
+ * server is started and is given to the MINA handler
+ * ({@link SVNSessionHandler} or {@link SVNStreamHandler}), which
+ * {@link #configure(SVNServerSession, IoSession) configures} each new
+ * session with them. The configuration must not be changed after the
+ * handler is created.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class SessionConfiguration
+{
+    /**
+     * Maximum of not yet sent bytes of a session before the session waits.
+     *
+     * @see #setMaxScheduledBytes(long)
+     */
+    private long maxScheduledBytes = IoSessionOutputStream.DEFAULT_MAX_SCHEDULED_BYTES;
+
+    /**
+     * Factory to create new repository instances.
+     *
+     * @see #setRepositoryFactory(IRepositoryFactory)
+     */
+    private IRepositoryFactory repositoryFactory;
+
+    /**
+     * Factory to get the Sasl server for the authentication.
+     *
+     * @see #setSaslServerFactory(SaslServerFactory)
+     */
+    private SaslServerFactory saslServerFactory;
+
+    /**
+     * Callback handler for the authentication.
+     *
+     * @see #setCallbackHandler(CallbackHandler)
+     */
+    private CallbackHandler callbackHandler;
+
+    /**
+     * Admission control for the sessions; <code>null</code> if not limited.
+     *
+     * @see #setAdmission(SessionAdmission)
+     */
+    private SessionAdmission admission;
+
+    /**
+     * Cache of the generated deltas; <code>null</code> if not cached.
+     *
+     * @see #setDeltaCache(DeltaCache)
+     */
+    private DeltaCache deltaCache;
+
+    /**
+     * Compression levels of the svndiff deltas; <code>null</code> if the
+     * default compression level of the sessions is used.
+     *
+     * @see #setDeltaCompression(DeltaCompression)
+     */
+    private DeltaCompression deltaCompression;
+
+    /**
+     * Executor to compute the deltas in advance; <code>null</code> if the
+     * deltas are computed sequentially.
+     *
+     * @see #setDeltaPipeline(Executor, int)
+     */
+    private Executor deltaExecutor;
+
+    /**
+     * Maximum count of files for which the deltas are computed in advance.
+     *
+     * @see #setDeltaPipeline(Executor, int)
+     */
+    private int deltaLookAhead;
+
+    /**
+     * Maximum bytes of the content of a committed file hold in the memory.
+     *
+     * @see #setCommitSpillThreshold(int)
+     */
+    private int commitSpillThreshold = SpillOutputStream.DEFAULT_THRESHOLD;
+
+    /**
+     * Memory budget for the contents of committed files shared by all
+     * sessions; <code>null</code> if not limited.
+     *
+     * @see #setCommitMemoryBudget(MemoryBudget)
+     */
+    private MemoryBudget commitMemoryBudget;
+
+    /**
+     * Configures a new SVN session with the settings which are not needed to
+     * create the session (the admission control, the delta cache, the delta
+     * compression level depending on the remote address, the delta pipeline,
+     * the spill threshold and memory budget of the commits and if the
+     * transport is secure).
+     *
+     * @param _session      new SVN session
+     * @param _ioSession    related MINA session
+     */
+    public void configure(final SVNServerSession _session,
+                          final IoSession _ioSession)
+    {
+        _session.setAdmission(this.admission);
+        _session.setDeltaCache(this.deltaCache);
+        if (this.deltaCompression != null)  {
+            _session.setDeltaCompressionLevel(this.deltaCompression.getLevel(_ioSession.getRemoteAddress()));
+        }
+        _session.setDeltaPipeline(this.deltaExecutor, this.deltaLookAhead);
+        _session.setCommitSpillThreshold(this.commitSpillThreshold);
+        _session.setCommitMemoryBudget(this.commitMemoryBudget);
+        _session.setSecureTransport(_ioSession.getFilterChain().contains(SslFilter.class));
+    }
+
+    /**
+     * Returns the maximum of not yet sent bytes of a session.
+     *
+     * @return maximum of not yet sent bytes
+     * @see #maxScheduledBytes
+     */
+    public long getMaxScheduledBytes()
+    {
+        return this.maxScheduledBytes;
+    }
+
+    /**
+     * Defines the maximum of not yet sent bytes of a session before the
+     * session waits.
+     *
+     * @param _maxScheduledBytes    maximum of not yet sent bytes
+     * @see #maxScheduledBytes
+     */
+    public void setMaxScheduledBytes(final long _maxScheduledBytes)
+    {
+        this.maxScheduledBytes = _maxScheduledBytes;
+    }
+
+    /**
+     * Returns the factory to create new repository instances.
+     *
+     * @return repository factory
+     * @see #repositoryFactory
+     */
+    public IRepositoryFactory getRepositoryFactory()
+    {
+        return this.repositoryFactory;
+    }
+
+    /**
+     * Defines the factory to create new repository instances.
+     *
+     * @param _repositoryFactory    repository factory
+     * @see #repositoryFactory
+     */
+    public void setRepositoryFactory(final IRepositoryFactory _repositoryFactory)
+    {
+        this.repositoryFactory = _repositoryFactory;
+    }
+
+    /**
+     * Returns the factory to get the Sasl server for the authentication.
+     *
+     * @return Sasl server factory
+     * @see #saslServerFactory
+     */
+    public SaslServerFactory getSaslServerFactory()
+    {
+        return this.saslServerFactory;
+    }
+
+    /**
+     * Defines the factory to get the Sasl server for the authentication.
+     *
+     * @param _saslServerFactory    Sasl server factory
+     * @see #saslServerFactory
+     */
+    public void setSaslServerFactory(final SaslServerFactory _saslServerFactory)
+    {
+        this.saslServerFactory = _saslServerFactory;
+    }
+
+    /**
+     * Returns the callback handler for the authentication.
+     *
+     * @return callback handler
+     * @see #callbackHandler
+     */
+    public CallbackHandler getCallbackHandler()
+    {
+        return this.callbackHandler;
+    }
+
+    /**
+     * Defines the callback handler for the authentication.
+     *
+     * @param _callbackHandler  callback handler
+     * @see #callbackHandler
+     */
+    public void setCallbackHandler(final CallbackHandler _callbackHandler)
+    {
+        this.callbackHandler = _callbackHandler;
+    }
+
+    /**
+     * Defines the admission control for the sessions.
+     *
+     * @param _admission    admission control; <code>null</code> if not
+     *                      limited
+     * @see #admission
+     */
+    public void setAdmission(final SessionAdmission _admission)
+    {
+        this.admission = _admission;
+    }
+
+    /**
+     * Defines the cache of the generated deltas.
+     *
+     * @param _deltaCache   delta cache; <code>null</code> if not cached
+     * @see #deltaCache
+     */
+    public void setDeltaCache(final DeltaCache _deltaCache)
+    {
+        this.deltaCache = _deltaCache;
+    }
+
+    /**
+     * Defines the compression levels of the svndiff deltas.
+     *
+     * @param _deltaCompression     compression levels
+     * @see #deltaCompression
+     */
+    public void setDeltaCompression(final DeltaCompression _deltaCompression)
+    {
+        this.deltaCompression = _deltaCompression;
+    }
+
+    /**
+     * Defines the executor and the look ahead to compute the deltas in
+     * advance.
+     *
+     * @param _deltaExecutor    executor to compute the deltas in advance;
+     *                          <code>null</code> if the deltas are computed
+     *                          sequentially
+     * @param _deltaLookAhead   maximum count of files for which the deltas
+     *                          are computed in advance
+     * @see #deltaExecutor
+     * @see #deltaLookAhead
+     */
+    public void setDeltaPipeline(final Executor _deltaExecutor,
+                                 final int _deltaLookAhead)
+    {
+        this.deltaExecutor = _deltaExecutor;
+        this.deltaLookAhead = _deltaLookAhead;
+    }
+
+    /**
+     * Defines the maximum bytes of the content of a committed file hold in
+     * the memory.
+     *
+     * @param _commitSpillThreshold     threshold in bytes; <code>0</code> if
+     *                                  all contents are written to temporary
+     *                                  files
+     * @see #commitSpillThreshold
+     */
+    public void setCommitSpillThreshold(final int _commitSpillThreshold)
+    {
+        this.commitSpillThreshold = _commitSpillThreshold;
+    }
+
+    /**
+     * Defines the memory budget for the contents of committed files shared
+     * by all sessions.
+     *
+     * @param _commitMemoryBudget   memory budget; <code>null</code> if not
+     *                              limited
+     * @see #commitMemoryBudget
+     */
+    public void setCommitMemoryBudget(final MemoryBudget _commitMemoryBudget)
+    {
+        this.commitMemoryBudget = _commitMemoryBudget;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.sasl;
+
+import javax.security.sasl.SaslServer;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.DefaultWriteRequest;
+import org.apache.mina.core.write.WriteRequest;
+
+/**
+ * MINA filter for the Sasl security layer (used by the event driven session
+ * engine instead of the {@link SaslInputStream} and
+ * {@link SaslOutputStream}). Each block is prefixed with the length of the
+ * encoded bytes as four byte integer. The filter is only used for one
+ * session.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class SaslFilter
+        extends IoFilterAdapter
+{
+    /**
+     * Sasl server used to encode and decode the blocks.
+     */
+    private final SaslServer saslServer;
+
+    /**
+     * Maximum count of bytes which are encoded within one block.
+     */
+    private final int maxRawSendSize;
+
+    /**
+     * Cumulated encoded bytes of the not complete received block.
+     */
+    private IoBuffer received;
+
+    /**
+     * @param _saslServer       Sasl server used to encode and decode
+     * @param _maxRawSendSize   maximum count of bytes encoded within one block
+     */
+    public SaslFilter(final SaslServer _saslServer,
+                      final int _maxRawSendSize)
+    {
+        this.saslServer = _saslServer;
+        this.maxRawSendSize = _maxRawSendSize;
+    }
+
+    /**
+     * Decodes all complete received blocks and forwards the decoded bytes of
+     * all blocks together as one message. The blocks are decoded directly
+     * from the cumulated buffer. Not complete blocks are cumulated until the
+     * rest of the block is received.
+     *
+     * @param _nextFilter   next filter
+     * @param _session      MINA session
+     * @param _message      received message
+     * @throws Exception if a block could not be decoded
+     */
+    @Override
+    public void messageReceived(final NextFilter _nextFilter,
+                                final IoSession _session,
+                                final Object _message)
+            throws Exception
+    {
+        if (!(_message instanceof IoBuffer))  {
+            _nextFilter.messageReceived(_session, _message);
+        } else  {
+            if (this.received == null)  {
+                this.received = IoBuffer.allocate(((IoBuffer) _message).remaining()).setAutoExpand(true);
+            }
+            this.received.put((IoBuffer) _message);
+            this.received.flip();
+            byte[] first = null;
+            IoBuffer decoded = null;
+            while ((this.received.remaining() >= 4)
+                    && (this.received.remaining() >= (4 + this.received.getInt(this.received.position()))))  {
+                final int length = this.received.getInt();
+                final byte[] block;
+                synchronized (this.saslServer)  {
+                    block = this.saslServer.unwrap(this.received.array(),
+                                                   this.received.arrayOffset() + this.received.position(),
+                                                   length);
+                }
+                this.received.skip(length);
+                if (first == null)  {
+                    first = block;
+                } else  {
+                    if (decoded == null)  {
+                        decoded = IoBuffer.allocate(first.length + block.length).setAutoExpand(true);
+                        decoded.put(first);
+                    }
+                    decoded.put(block);
+                }
+            }
+            this.received.compact();
+            if (decoded != null)  {
+                decoded.flip();
+                _nextFilter.messageReceived(_session, decoded);
+            } else if (first != null)  {
+                _nextFilter.messageReceived(_session, IoBuffer.wrap(first));
+            }
+        }
+    }
+
+    /**
+     * Encodes the written bytes in blocks of maximum
+     * {@link #maxRawSendSize} bytes. The bytes are encoded directly from the
+     * array of the written buffer (if the buffer has an array).
+     *
+     * @param _nextFilter   next filter
+     * @param _session      MINA session
+     * @param _writeRequest write request with the bytes to encode
+     * @throws Exception if the bytes could not be encoded
+     */
+    @Override
+    public void filterWrite(final NextFilter _nextFilter,
+                            final IoSession _session,
+                            final WriteRequest _writeRequest)
+            throws Exception
+    {
+        if (!(_writeRequest.getMessage() instanceof IoBuffer))  {
+            _nextFilter.filterWrite(_session, _writeRequest);
+        } else  {
+            final IoBuffer raw = (IoBuffer) _writeRequest.getMessage();
+            final byte[] bytes = raw.hasArray() ? raw.array() : new byte[Math.min(raw.remaining(), this.maxRawSendSize)];
+            final IoBuffer encoded = IoBuffer.allocate(raw.remaining() + 64).setAutoExpand(true);
+            while (raw.hasRemaining())  {
+                final int length = Math.min(raw.remaining(), this.maxRawSendSize);
+                final int offset;
+                if (raw.hasArray())  {
+                    offset = raw.arrayOffset() + raw.position();
+                    raw.skip(length);
+                } else  {
+                    offset = 0;
+                    raw.get(bytes, 0, length);
+                }
+                final byte[] block;
+                synchronized (this.saslServer)  {
+                    block = this.saslServer.wrap(bytes, offset, length);
+                }
+                encoded.putInt(block.length);
+                encoded.put(block);
+            }
+            encoded.flip();
+            _nextFilter.filterWrite(_session,
+                                    new DefaultWriteRequest(encoded,
+                                                            _writeRequest.getFuture(),
+                                                            _writeRequest.getDestination()));
+        }
+    }
+}
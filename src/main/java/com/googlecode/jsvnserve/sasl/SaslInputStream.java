@@ -23,14 +23,25 @@ package com.googlecode.jsvnserve.sasl;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
 
+import javax.security.sasl.Sasl;
 import javax.security.sasl.SaslServer;
 
 /**
- * Depending on the Sasl mechanism the input stream must be decoded before
+ * <p>Depending on the Sasl mechanism the input stream must be decoded before
  * it could be used. The original stream {@link #in} is decoded with using
- * {@link SaslServer#unwrap(byte[], int, int)}.
+ * {@link SaslServer#unwrap(byte[], int, int)}.</p>
+ *
+ * <p>The encoded bytes are read block wise into a reusable buffer. All
+ * complete blocks within the buffer are decoded together into a second
+ * reusable buffer, so that the tokenizer reads the decoded bytes (also byte
+ * by byte) without any allocation and without a read of the original input
+ * stream.</p>
+ *
+ * <p>A block must not be larger than the negotiated receive size (the
+ * buffer size, see {@link #getBufferSize(SaslServer)}); otherwise the
+ * stream is malformed and no buffer is allocated for the declared
+ * length.</p>
  *
  * @author jSVNServe Team
  * @version $Id$
@@ -38,6 +49,17 @@ import javax.security.sasl.SaslServer;
 public class SaslInputStream
         extends InputStream
 {
+    /**
+     * Default size of the buffers if the Sasl server has not negotiated
+     * the maximum buffer size.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    /**
+     * Maximum size of the buffers used for a negotiated buffer size.
+     */
+    public static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
     /**
      * Original input stream which must be decoded.
      */
@@ -49,15 +71,45 @@ public class SaslInputStream
     private final SaslServer saslServer;
 
     /**
-     * Byte buffer used to read from input stream {@link #in} in
-     * {@link #readDecodedBuffer()}. The bytes are encoded.
+     * Reusable buffer for the encoded bytes read from the input stream
+     * {@link #in}. Each block is prefixed with the length of the encoded
+     * block as four byte integer.
+     *
+     * @see #readEncoded()
+     */
+    private final byte[] encoded;
+
+    /**
+     * Position of the first not decoded byte in {@link #encoded}.
+     */
+    private int encodedPos;
+
+    /**
+     * End of the read bytes in {@link #encoded}.
+     */
+    private int encodedLimit;
+
+    /**
+     * Maximum length of one encoded block (the negotiated receive size).
+     */
+    private final int maxBlockLength;
+
+    /**
+     * Reusable buffer for the decoded bytes which are returned.
+     *
+     * @see #decodeBlocks()
+     */
+    private byte[] decoded;
+
+    /**
+     * Position of the next returned byte in {@link #decoded}.
      */
-    private byte[] readBuffer;
+    private int decodedPos;
 
     /**
-     * Buffers decoded bytes which are returned.
+     * End of the decoded bytes in {@link #decoded}.
      */
-    private ByteBuffer byteBuffer;
+    private int decodedLimit;
 
     /**
      * Default constructor.
@@ -72,10 +124,52 @@ public class SaslInputStream
                            final InputStream _in)
     {
         this.in = _in;
-        this.readBuffer = new byte[_bufferSize * 2];
+        this.maxBlockLength = _bufferSize;
+        this.encoded = new byte[_bufferSize + 4];
+        this.decoded = new byte[_bufferSize];
         this.saslServer = _saslServer;
     }
 
+    /**
+     * Returns the maximum size of a received block as negotiated by the Sasl
+     * server (property {@link Sasl#MAX_BUFFER}). If the size is not
+     * negotiated, the {@link #DEFAULT_BUFFER_SIZE default} is used; the size
+     * is never larger than {@link #MAX_BUFFER_SIZE}.
+     *
+     * @param _saslServer   Sasl server
+     * @return buffer size
+     */
+    public static int getBufferSize(final SaslServer _saslServer)
+    {
+        return SaslInputStream.getNegotiatedSize(_saslServer, Sasl.MAX_BUFFER);
+    }
+
+    /**
+     * Returns the negotiated size for given property of the Sasl server.
+     *
+     * @param _saslServer   Sasl server
+     * @param _property     name of the negotiated property
+     * @return negotiated size; {@link #DEFAULT_BUFFER_SIZE} if not
+     *         negotiated, but maximum {@link #MAX_BUFFER_SIZE}
+     */
+    static int getNegotiatedSize(final SaslServer _saslServer,
+                                 final String _property)
+    {
+        int ret = SaslInputStream.DEFAULT_BUFFER_SIZE;
+        final Object value = _saslServer.getNegotiatedProperty(_property);
+        if (value != null)  {
+            try  {
+                final int size = Integer.parseInt(value.toString());
+                if (size > 0)  {
+                    ret = Math.min(size, SaslInputStream.MAX_BUFFER_SIZE);
+                }
+            } catch (final NumberFormatException ex)  {
+                ret = SaslInputStream.DEFAULT_BUFFER_SIZE;
+            }
+        }
+        return ret;
+    }
+
     /**
      * Closes the original input stream {@link #in}.
      *
@@ -90,34 +184,36 @@ public class SaslInputStream
     }
 
     /**
-     * Reads next byte of the stream. Because the original steam is encoded,
-     * method {@link #read(byte[], int, int)} is used to get next byte.
+     * Reads next byte of the stream. If decoded bytes are available, the
+     * byte is returned directly from {@link #decoded}.
      *
-     * @return next byte from the stream or <code>-1</code> if end of file
-     *         reached
+     * @return next byte from the stream
+     * @throws EOFException if end of stream is reached
      * @throws IOException if read failed
      */
     @Override
     public int read()
         throws IOException
     {
-        final byte[] buf = new byte[1];
-        final int len = this.read(buf, 0, 1);
-        return (len == 1) ? buf[0] : -1;
+        if (this.decodedPos >= this.decodedLimit)  {
+            this.fill();
+        }
+        return this.decoded[this.decodedPos++] & 0xFF;
     }
 
     /**
-     * Reads up to <code>_len</code> bytes from {@link #byteBuffer}. If
-     * {@link #byteBuffer} is <code>null</code>, {@link #readDecodedBuffer()}
-     * is called to decode next block of input stream {@link #in}.
+     * Reads up to <code>_len</code> bytes from {@link #decoded}. If no
+     * decoded bytes are available, {@link #fill()} is called to decode the
+     * next blocks of input stream {@link #in}.
      *
      * @param _bytes    buffer into which the date is read
      * @param _offset   start offset in array <code>_bytes</code> at which the
      *                  data is written
      * @param _len      length of bytes to read
-     * @return read integer value
+     * @return count of read bytes
+     * @throws EOFException if end of stream is reached
      * @throws IOException if read failed
-     * @see #byteBuffer
+     * @see #decoded
      */
     @Override
     public int read(final byte[] _bytes,
@@ -127,18 +223,27 @@ public class SaslInputStream
     {
         int read = 0;
         if (_len > 0)  {
-            if (this.byteBuffer == null)  {
-                this.readDecodedBuffer();
-            }
-            read = Math.min(_len, this.byteBuffer.remaining());
-            this.byteBuffer.get(_bytes, _offset, read);
-            if (this.byteBuffer.remaining() == 0)  {
-                this.byteBuffer = null;
+            if (this.decodedPos >= this.decodedLimit)  {
+                this.fill();
             }
+            read = Math.min(_len, this.decodedLimit - this.decodedPos);
+            System.arraycopy(this.decoded, this.decodedPos, _bytes, _offset, read);
+            this.decodedPos += read;
         }
         return read;
     }
 
+    /**
+     * Returns the count of already decoded bytes.
+     *
+     * @return count of bytes which could be read without blocking
+     */
+    @Override
+    public int available()
+    {
+        return this.decodedLimit - this.decodedPos;
+    }
+
     /**
      * To skip input is not supported from this Sasl input stream. So the
      * method overwrites the original method and returns always <code>0</code>.
@@ -153,12 +258,9 @@ public class SaslInputStream
     }
 
     /**
-     * <p>Reads next block of bytes and decodes them. The next first four bytes
-     * are the length of the block (as integer). The block itself must be then
-     * decoded.</p>
-     * <p>The method blocks until
+     * <p>Decodes the next blocks. The method blocks until
      * <ul>
-     * <li>the complete block to decode was read</li>
+     * <li>at least one complete block was read and decoded</li>
      * <li>end of stream was reached</li>
      * <li>or an I/O error was occurred.</li>
      * </ul>
@@ -167,34 +269,90 @@ public class SaslInputStream
      * @throws EOFException if end of stream is reached
      * @throws IOException  if an I/O error occurs
      */
-    private void readDecodedBuffer()
+    private void fill()
         throws EOFException, IOException
     {
-        // get length of bytes to decode
-        final int ch1 = this.in.read();
-        final int ch2 = this.in.read();
-        final int ch3 = this.in.read();
-        final int ch4 = this.in.read();
-        if ((ch1 | ch2 | ch3 | ch4) < 0)  {
-            throw new EOFException();
+        this.decodedPos = 0;
+        this.decodedLimit = 0;
+        this.decodeBlocks();
+        while (this.decodedLimit == 0)  {
+            this.readEncoded();
+            this.decodeBlocks();
         }
-        final int decodedLength =  ((ch1 << 24) + (ch2 << 16) + (ch3 << 8) + (ch4 << 0));
+    }
 
-        // check that read buffer is big enough
-        if (this.readBuffer.length < decodedLength)  {
-            this.readBuffer = new byte[(decodedLength * 3) / 2];
+    /**
+     * Reads the next encoded bytes into {@link #encoded}. The not decoded
+     * bytes are moved to the beginning of the buffer. The buffer is large
+     * enough for the largest allowed block (see {@link #getBlockLength()}).
+     *
+     * @throws EOFException if end of stream is reached
+     * @throws IOException  if an I/O error occurs
+     */
+    private void readEncoded()
+        throws EOFException, IOException
+    {
+        final int remaining = this.encodedLimit - this.encodedPos;
+        if (this.encodedPos > 0)  {
+            System.arraycopy(this.encoded, this.encodedPos, this.encoded, 0, remaining);
+            this.encodedPos = 0;
+            this.encodedLimit = remaining;
+        }
+        if (remaining >= 4)  {
+            // checks the length of the current block
+            this.getBlockLength();
+        }
+        final int count = this.in.read(this.encoded, this.encodedLimit, this.encoded.length - this.encodedLimit);
+        if (count < 0)  {
+            throw new EOFException();
         }
+        this.encodedLimit += count;
+    }
 
-        // read until all bytes needed to decode are read
-        int n = 0;
-        while (n < decodedLength)  {
-            final int count = this.in.read(this.readBuffer, n, decodedLength - n);
-            if (count < 0)  {
-                throw new EOFException();
+    /**
+     * Decodes all complete blocks of {@link #encoded} and appends the
+     * decoded bytes to {@link #decoded}.
+     *
+     * @throws IOException if a block could not be decoded
+     */
+    private void decodeBlocks()
+        throws IOException
+    {
+        while ((this.encodedLimit - this.encodedPos) >= 4)  {
+            final int blockLength = this.getBlockLength();
+            if ((this.encodedLimit - this.encodedPos - 4) < blockLength)  {
+                break;
+            }
+            final byte[] block = this.saslServer.unwrap(this.encoded, this.encodedPos + 4, blockLength);
+            this.encodedPos += 4 + blockLength;
+            if ((this.decodedLimit + block.length) > this.decoded.length)  {
+                final byte[] enlarged = new byte[Math.max(this.decodedLimit + block.length, this.decoded.length * 2)];
+                System.arraycopy(this.decoded, 0, enlarged, 0, this.decodedLimit);
+                this.decoded = enlarged;
             }
-            n += count;
+            System.arraycopy(block, 0, this.decoded, this.decodedLimit, block.length);
+            this.decodedLimit += block.length;
         }
+    }
 
-        this.byteBuffer = ByteBuffer.wrap(this.saslServer.unwrap(this.readBuffer, 0, decodedLength));
+    /**
+     * Returns the length of the block at the current position of
+     * {@link #encoded}.
+     *
+     * @return length of the block (without the length itself)
+     * @throws IOException if the length is negative or larger than the
+     *                     negotiated receive size {@link #maxBlockLength}
+     */
+    private int getBlockLength()
+        throws IOException
+    {
+        final int ret = ((this.encoded[this.encodedPos] & 0xFF) << 24)
+                | ((this.encoded[this.encodedPos + 1] & 0xFF) << 16)
+                | ((this.encoded[this.encodedPos + 2] & 0xFF) << 8)
+                | (this.encoded[this.encodedPos + 3] & 0xFF);
+        if ((ret < 0) || (ret > this.maxBlockLength))  {
+            throw new IOException("Malformed network data");
+        }
+        return ret;
     }
 }
@@ -22,14 +22,19 @@ package com.googlecode.jsvnserve.sasl;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
 
+import javax.security.sasl.Sasl;
 import javax.security.sasl.SaslServer;
 
 /**
- * Depending on the Sasl mechanism the output stream must be encoded before
+ * <p>Depending on the Sasl mechanism the output stream must be encoded before
  * it could be send to client. The original stream {@link #out} is encoded by
- * using {@link SaslServer#wrap(byte[], int, int)}.
+ * using {@link SaslServer#wrap(byte[], int, int)}.</p>
+ *
+ * <p>The written bytes are collected in a reusable buffer with the negotiated
+ * raw send size, so that each encoded block is as large as possible. The
+ * length and the encoded block are written with one write to the original
+ * output stream.</p>
  *
  * @author jSVNServe Team
  * @version $Id$
@@ -47,29 +52,33 @@ public class SaslOutputStream
      */
     private final SaslServer saslServer;
 
-    /**
-     * Buffer used to store the length of a encoded block.
-     *
-     * @see #flush()
-     */
-    private final byte[] lengthBuffer = new byte[4];
-
     /**
      * Buffer used to buffer written bytes from
      * {@link #write(byte[], int, int)} before they are encoded and written to
      * the original output stream {@link #out}.
+     */
+    private final byte[] buffer;
+
+    /**
+     * Count of bytes in {@link #buffer}.
+     */
+    private int count;
+
+    /**
+     * Reusable buffer for the length and the encoded block written to the
+     * original output stream.
      *
      * @see #flush()
      */
-    private final ByteBuffer buffer;
+    private byte[] block;
 
     /**
      * Default constructor.
      *
-     * @param _saslServer   Sasl server used to decode the original output
+     * @param _saslServer   Sasl server used to encode the original output
      *                      stream
-     * @param _bufferSize   buffer size
-     * @param _out          original output stream which must be decoded
+     * @param _bufferSize   maximum count of bytes encoded within one block
+     * @param _out          original output stream
      */
     public SaslOutputStream(final SaslServer _saslServer,
                             final int _bufferSize,
@@ -77,33 +86,49 @@ public class SaslOutputStream
     {
         this.out = _out;
         this.saslServer = _saslServer;
-        this.buffer = ByteBuffer.allocate(_bufferSize);
+        this.buffer = new byte[_bufferSize];
+        this.block = new byte[_bufferSize + 64];
     }
 
     /**
-     * Writes given byte into {@link #buffer}.
+     * Returns the maximum count of bytes encoded within one block as
+     * negotiated by the Sasl server (property {@link Sasl#RAW_SEND_SIZE}). If
+     * the size is not negotiated, the
+     * {@link SaslInputStream#DEFAULT_BUFFER_SIZE default} is used; the size is
+     * never larger than {@link SaslInputStream#MAX_BUFFER_SIZE}.
+     *
+     * @param _saslServer   Sasl server
+     * @return raw send size
+     */
+    public static int getRawSendSize(final SaslServer _saslServer)
+    {
+        return SaslInputStream.getNegotiatedSize(_saslServer, Sasl.RAW_SEND_SIZE);
+    }
+
+    /**
+     * Writes one byte into the {@link #buffer}.
      *
      * @param _byte     byte to write
-     * @throws IOException if write failed
-     * @see #write(byte[], int, int)
+     * @throws IOException if the full buffer could not be written
      */
     @Override
     public void write(final int _byte)
         throws IOException
     {
-        write(new byte[] {(byte) (_byte & 0xff)});
+        if (this.count >= this.buffer.length)  {
+            this.flush();
+        }
+        this.buffer[this.count++] = (byte) _byte;
     }
 
     /**
-     * The <code>_bytes</code> are written to into {@link #buffer}. If the
-     * buffer size is reached, the buffer is flushed with {@link #flush()}.
+     * Writes given bytes into the {@link #buffer}. Each time the buffer is
+     * full, the buffer is encoded and written.
      *
-     * @param _bytes    bytes buffer to write
-     * @param _offset   offset in <code>_bytes</code> to start to write
-     * @param _len      length of bytes to write
-     * @throws IOException if write failed
-     * @see #buffer
-     * @see #flush()
+     * @param _bytes    byte array
+     * @param _offset   offset within the byte array
+     * @param _len      count of bytes to write
+     * @throws IOException if a full buffer could not be written
      */
     @Override
     public void write(final byte[] _bytes,
@@ -114,24 +139,17 @@ public class SaslOutputStream
         int offset = _offset;
         int len = _len;
         while (len > 0)  {
-            final int toPut = Math.min(this.buffer.remaining(), len);
-            this.buffer.put(_bytes, offset, toPut);
-            offset += toPut;
-            len -= toPut;
-            if (this.buffer.remaining() == 0) {
+            if (this.count >= this.buffer.length)  {
                 this.flush();
             }
+            final int toPut = Math.min(this.buffer.length - this.count, len);
+            System.arraycopy(_bytes, offset, this.buffer, this.count, toPut);
+            this.count += toPut;
+            offset += toPut;
+            len -= toPut;
         }
     }
 
-    /**
-     * Flushes current buffered bytes in {@link #buffer} with {@link #flush()}
-     * and closes original output stream {@link #out}.
-     *
-     * @throws IOException if closing failed
-     * @see #flush()
-     * @see #out
-     */
     @Override
     public void close()
         throws IOException
@@ -141,37 +159,29 @@ public class SaslOutputStream
     }
 
     /**
-     * Encodes buffered bytes {@link #buffer} and writes them to the output
-     * stream {@link #out}.
+     * Encodes the buffered bytes and writes the length of the encoded block
+     * together with the block to the original output stream.
      *
-     * @throws IOException if flushing failed
-     * @see #out
-     * @see #buffer
-     * @see #lengthBuffer
+     * @throws IOException if the bytes could not be encoded or written
      */
     @Override
     public void flush()
         throws IOException
     {
-        final byte[] bytes = this.buffer.array();
-        final int off = this.buffer.arrayOffset();
-        final int len = this.buffer.position();
-        if (len > 0)  {
-            final byte[] encoded = this.saslServer.wrap(bytes, off, len);
+        if (this.count > 0)  {
+            final byte[] encoded = this.saslServer.wrap(this.buffer, 0, this.count);
+            this.count = 0;
 
-            // first length of encoded block must be written
-            this.lengthBuffer[0] = (byte) ((encoded.length & 0xff000000) >> 24);
-            this.lengthBuffer[1] = (byte) ((encoded.length & 0x00ff0000) >> 16);
-            this.lengthBuffer[2] = (byte) ((encoded.length & 0x0000ff00) >> 8);
-            this.lengthBuffer[3] = (byte) ((encoded.length & 0x000000ff));
-            this.out.write(this.lengthBuffer, 0, this.lengthBuffer.length);
-
-            // write encoded block
-            this.out.write(encoded, 0, encoded.length);
-
-            // and flush block
-            this.out.flush();
-            this.buffer.clear();
+            if (this.block.length < (encoded.length + 4))  {
+                this.block = new byte[encoded.length + 4];
+            }
+            this.block[0] = (byte) (encoded.length >>> 24);
+            this.block[1] = (byte) (encoded.length >>> 16);
+            this.block[2] = (byte) (encoded.length >>> 8);
+            this.block[3] = (byte) encoded.length;
+            System.arraycopy(encoded, 0, this.block, 4, encoded.length);
+            this.out.write(this.block, 0, encoded.length + 4);
         }
+        this.out.flush();
     }
 }
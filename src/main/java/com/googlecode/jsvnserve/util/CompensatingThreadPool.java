@@ -0,0 +1,160 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.util;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Thread pool with a fixed count of running threads which compensates
+ * waiting threads. If a task of the pool must wait for something outside of
+ * the server (e.g. for the next item of the SVN client or for the admission
+ * of the session), the task calls {@link #beginBlocking()} before and
+ * {@link #endBlocking()} after the wait. While the task waits, an additional
+ * thread is allowed, so that the waiting task does not hold back the other
+ * tasks. After the wait, the additional thread ends if it is idle.</p>
+ *
+ * <p>So the count of threads which are really working is still limited to
+ * the {@link #threads fixed count}, but a slow SVN client could not block the
+ * pool.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class CompensatingThreadPool
+        extends ThreadPoolExecutor
+{
+    /**
+     * Time in seconds how long an idle additional thread is kept.
+     */
+    private static final long KEEP_ALIVE = 60;
+
+    /**
+     * Pool of the task executed from current thread; <code>null</code> if
+     * current thread is not a thread of a compensating thread pool.
+     */
+    private static final ThreadLocal<CompensatingThreadPool> CURRENT = new ThreadLocal<CompensatingThreadPool>();
+
+    /**
+     * Fixed count of running threads.
+     */
+    private final int threads;
+
+    /**
+     * Count of currently waiting tasks.
+     *
+     * @see #getBlockedThreads()
+     */
+    private int blocked;
+
+    /**
+     * @param _threads          fixed count of running threads
+     * @param _threadFactory    factory for new threads
+     */
+    public CompensatingThreadPool(final int _threads,
+                                  final ThreadFactory _threadFactory)
+    {
+        super(_threads, Integer.MAX_VALUE,
+              CompensatingThreadPool.KEEP_ALIVE, TimeUnit.SECONDS,
+              new LinkedBlockingQueue<Runnable>(),
+              _threadFactory);
+        this.threads = _threads;
+    }
+
+    /**
+     * Marks current thread as thread of this pool.
+     *
+     * @param _thread   thread which executes the task
+     * @param _task     task to execute
+     */
+    @Override
+    protected void beforeExecute(final Thread _thread,
+                                 final Runnable _task)
+    {
+        CompensatingThreadPool.CURRENT.set(this);
+        super.beforeExecute(_thread, _task);
+    }
+
+    /**
+     * Removes the mark of current thread.
+     *
+     * @param _task     executed task
+     * @param _cause    exception thrown from the task; <code>null</code> if
+     *                  the task ended normally
+     */
+    @Override
+    protected void afterExecute(final Runnable _task,
+                                final Throwable _cause)
+    {
+        super.afterExecute(_task, _cause);
+        CompensatingThreadPool.CURRENT.remove();
+    }
+
+    /**
+     * Must be called before current thread waits. If current thread is a
+     * thread of a compensating thread pool, an additional thread is allowed
+     * for the pool. Each call must be followed by {@link #endBlocking()}.
+     */
+    public static void beginBlocking()
+    {
+        final CompensatingThreadPool pool = CompensatingThreadPool.CURRENT.get();
+        if (pool != null)  {
+            pool.compensate(1);
+        }
+    }
+
+    /**
+     * Must be called after current thread has waited. The additional thread
+     * allowed from {@link #beginBlocking()} is removed again.
+     */
+    public static void endBlocking()
+    {
+        final CompensatingThreadPool pool = CompensatingThreadPool.CURRENT.get();
+        if (pool != null)  {
+            pool.compensate(-1);
+        }
+    }
+
+    /**
+     * Updates the count of waiting tasks and the core pool size. If the core
+     * pool size is increased, a new thread is started for the queued tasks;
+     * if decreased, the additional threads end if they are idle.
+     *
+     * @param _delta    difference of the waiting tasks
+     */
+    private synchronized void compensate(final int _delta)
+    {
+        this.blocked += _delta;
+        this.setCorePoolSize(this.threads + this.blocked);
+    }
+
+    /**
+     * Returns the count of threads which currently waits.
+     *
+     * @return count of waiting threads
+     */
+    public synchronized int getBlockedThreads()
+    {
+        return this.blocked;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.util;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * Defines the compression levels of the svndiff deltas sent to the SVN
+ * clients. Clients within the local network (loopback, link local and site
+ * local addresses) normally have a fast connection so that the compression
+ * costs more time than it saves; therefore another (normally lower) level is
+ * used for them than for clients from a wide area network.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ * @see SVNDiffEncoder
+ */
+public class DeltaCompression
+{
+    /**
+     * Compression level which means no compression (svndiff0 is written).
+     */
+    public static final int NO_COMPRESSION = 0;
+
+    /**
+     * Default compression level (same as the SVN server).
+     */
+    public static final int DEFAULT_LEVEL = 5;
+
+    /**
+     * Compression level for clients from a wide area network.
+     */
+    private final int level;
+
+    /**
+     * Compression level for clients from the local network.
+     */
+    private final int localLevel;
+
+    /**
+     * @param _level        compression level for clients from a wide area
+     *                      network
+     * @param _localLevel   compression level for clients from the local
+     *                      network
+     */
+    public DeltaCompression(final int _level,
+                            final int _localLevel)
+    {
+        this.level = _level;
+        this.localLevel = _localLevel;
+    }
+
+    /**
+     * Returns the compression level for a client with given remote address.
+     *
+     * @param _remoteAddress    remote address of the client
+     * @return compression level
+     */
+    public int getLevel(final SocketAddress _remoteAddress)
+    {
+        boolean local = false;
+        if (_remoteAddress instanceof InetSocketAddress)  {
+            final InetAddress address = ((InetSocketAddress) _remoteAddress).getAddress();
+            local = (address != null)
+                    && (address.isLoopbackAddress() || address.isLinkLocalAddress() || address.isSiteLocalAddress());
+        }
+        return local ? this.localLevel : this.level;
+    }
+
+    /**
+     * Returns the compression level for clients from a wide area network.
+     *
+     * @return compression level
+     * @see #level
+     */
+    public int getLevel()
+    {
+        return this.level;
+    }
+
+    /**
+     * Returns the compression level for clients from the local network.
+     *
+     * @return compression level
+     * @see #localLevel
+     */
+    public int getLocalLevel()
+    {
+        return this.localLevel;
+    }
+}
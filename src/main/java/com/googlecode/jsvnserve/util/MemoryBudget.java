@@ -0,0 +1,93 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory budget shared by the {@link SpillOutputStream spill output streams}
+ * of all sessions. A spill output stream reserves the memory of its buffer
+ * from the budget; if the budget is exhausted, the content is spilled to a
+ * temporary file even if the threshold of the stream is not reached. So many
+ * small files of a commit (which are all held until the commit is finished)
+ * could not use more memory than the budget.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class MemoryBudget
+{
+    /**
+     * Default size of the budget in bytes.
+     */
+    public static final long DEFAULT_SIZE = 64L * 1024L * 1024L;
+
+    /**
+     * Not reserved bytes of the budget.
+     */
+    private final AtomicLong available;
+
+    /**
+     * @param _size     size of the budget in bytes
+     */
+    public MemoryBudget(final long _size)
+    {
+        this.available = new AtomicLong(_size);
+    }
+
+    /**
+     * Reserves bytes of the budget.
+     *
+     * @param _bytes    count of bytes to reserve
+     * @return <i>true</i> if the bytes are reserved; <i>false</i> if the
+     *         budget is exhausted (nothing is reserved)
+     */
+    public boolean reserve(final long _bytes)
+    {
+        boolean ret = false;
+        long current = this.available.get();
+        while (!ret && (current >= _bytes))  {
+            ret = this.available.compareAndSet(current, current - _bytes);
+            current = this.available.get();
+        }
+        return ret;
+    }
+
+    /**
+     * Releases bytes reserved with {@link #reserve(long)}.
+     *
+     * @param _bytes    count of bytes to release
+     */
+    public void release(final long _bytes)
+    {
+        this.available.addAndGet(_bytes);
+    }
+
+    /**
+     * Returns the not reserved bytes of the budget.
+     *
+     * @return available bytes
+     */
+    public long getAvailable()
+    {
+        return this.available.get();
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * <p>Encodes the windows of one delta in the svndiff format. If the
+ * compression level is <code>0</code>, the windows are written as svndiff0;
+ * otherwise as svndiff1 where the instructions and the new data of each
+ * window are zlib compressed with the compression level:
+ * <ul>
+ * <li>sections smaller than {@link #MIN_COMPRESS_SIZE} are not
+ *     compressed,</li>
+ * <li>new data which looks already compressed (the entropy of a
+ *     {@link #ENTROPY_PROBE_SIZE sample} is higher than
+ *     {@link #MAX_COMPRESS_ENTROPY}) is not compressed,</li>
+ * <li>if the compressed section is not smaller than the original section,
+ *     the original section is used.</li>
+ * </ul>
+ * Each window (and the header together with the first window) is written
+ * with one write to the output stream.</p>
+ *
+ * <p>An encoder is used for one delta only and is not thread safe. If the
+ * delta is written, the encoder must be {@link #end() ended}.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class SVNDiffEncoder
+{
+    /**
+     * Minimum size of a section which is compressed (same as the minimum of
+     * the SVN server).
+     */
+    public static final int MIN_COMPRESS_SIZE = 512;
+
+    /**
+     * Maximum count of bytes of the new data used to evaluate the entropy.
+     */
+    public static final int ENTROPY_PROBE_SIZE = 4096;
+
+    /**
+     * Maximum entropy in bits per byte of the new data which is compressed.
+     * New data with a higher entropy is e.g. already compressed and would
+     * not become smaller.
+     */
+    public static final double MAX_COMPRESS_ENTROPY = 7.5;
+
+    /**
+     * Compression level; <code>0</code> means svndiff0.
+     */
+    private final int level;
+
+    /**
+     * Deflater used for all windows; <code>null</code> for svndiff0.
+     */
+    private final Deflater deflater;
+
+    /**
+     * Reusable buffer for the window in svndiff0 format written by the
+     * {@link SVNDiffWindow}.
+     */
+    private final WindowBuffer window = new WindowBuffer();
+
+    /**
+     * Reusable buffer for the encoded window.
+     */
+    private byte[] encoded = new byte[1024];
+
+    /**
+     * Count of bytes in {@link #encoded}.
+     */
+    private int count;
+
+    /**
+     * Reusable buffer for a compressed section.
+     */
+    private byte[] compressed = new byte[1024];
+
+    /**
+     * Must the header still be written?
+     */
+    private boolean writeHeader = true;
+
+    /**
+     * @param _level    compression level (<code>0</code> for svndiff0,
+     *                  otherwise the zlib compression level from
+     *                  <code>1</code> to <code>9</code>)
+     */
+    public SVNDiffEncoder(final int _level)
+    {
+        this.level = Math.max(0, Math.min(_level, Deflater.BEST_COMPRESSION));
+        this.deflater = (this.level > 0) ? new Deflater(this.level) : null;
+    }
+
+    /**
+     * Writes given window. Windows without instructions are not written (but
+     * the header is written for the first window).
+     *
+     * @param _window   window to write
+     * @param _out      output stream
+     * @throws IOException if the window could not be written
+     */
+    public void writeWindow(final SVNDiffWindow _window,
+                            final OutputStream _out)
+            throws IOException
+    {
+        this.count = 0;
+        if (this.writeHeader)  {
+            this.writeHeader = false;
+            this.append((this.level > 0) ? SVNDiffWindow.SVN1_HEADER : SVNDiffWindow.SVN_HEADER,
+                        0,
+                        4);
+        }
+        if (_window.hasInstructions())  {
+            this.window.reset();
+            _window.writeTo(this.window, false, false);
+            final byte[] bytes = this.window.getBuffer();
+            int pos = 0;
+            // source view offset, source view length, target view length
+            for (int idx = 0; idx < 3; idx++)  {
+                final int start = pos;
+                pos = SVNDiffEncoder.skipNumber(bytes, pos);
+                this.append(bytes, start, pos - start);
+            }
+            final long insLength = SVNDiffEncoder.readNumber(bytes, pos);
+            pos = SVNDiffEncoder.skipNumber(bytes, pos);
+            final long dataLength = SVNDiffEncoder.readNumber(bytes, pos);
+            pos = SVNDiffEncoder.skipNumber(bytes, pos);
+            if (this.level == 0)  {
+                this.appendNumber(insLength);
+                this.appendNumber(dataLength);
+                this.append(bytes, pos, (int) (insLength + dataLength));
+            } else  {
+                this.appendSections(bytes, pos, (int) insLength, (int) dataLength);
+            }
+        }
+        if (this.count > 0)  {
+            _out.write(this.encoded, 0, this.count);
+        }
+    }
+
+    /**
+     * Releases the deflater.
+     */
+    public void end()
+    {
+        if (this.deflater != null)  {
+            this.deflater.end();
+        }
+    }
+
+    /**
+     * Appends the instructions and the new data as compressed sections
+     * (svndiff1) including the lengths of the sections.
+     *
+     * @param _bytes        window in svndiff0 format
+     * @param _offset       offset of the instructions
+     * @param _insLength    length of the instructions
+     * @param _dataLength   length of the new data
+     */
+    private void appendSections(final byte[] _bytes,
+                                final int _offset,
+                                final int _insLength,
+                                final int _dataLength)
+    {
+        final int insCompressed = this.compress(_bytes, _offset, _insLength, false);
+        final byte[] insSection;
+        if (insCompressed >= 0)  {
+            insSection = new byte[insCompressed];
+            System.arraycopy(this.compressed, 0, insSection, 0, insCompressed);
+        } else  {
+            insSection = null;
+        }
+        final int dataCompressed = this.compress(_bytes, _offset + _insLength, _dataLength, true);
+
+        this.appendNumber(SVNDiffEncoder.lengthOfNumber(_insLength)
+                          + ((insSection != null) ? insSection.length : _insLength));
+        this.appendNumber(SVNDiffEncoder.lengthOfNumber(_dataLength)
+                          + ((dataCompressed >= 0) ? dataCompressed : _dataLength));
+        this.appendNumber(_insLength);
+        if (insSection != null)  {
+            this.append(insSection, 0, insSection.length);
+        } else  {
+            this.append(_bytes, _offset, _insLength);
+        }
+        this.appendNumber(_dataLength);
+        if (dataCompressed >= 0)  {
+            this.append(this.compressed, 0, dataCompressed);
+        } else  {
+            this.append(_bytes, _offset + _insLength, _dataLength);
+        }
+    }
+
+    /**
+     * Compresses given section into {@link #compressed}.
+     *
+     * @param _bytes        byte array
+     * @param _offset       offset of the section
+     * @param _length       length of the section
+     * @param _probe        <i>true</i> if the entropy of the section must be
+     *                      probed before the compression
+     * @return length of the compressed section; <code>-1</code> if the
+     *         section is not compressed
+     */
+    private int compress(final byte[] _bytes,
+                         final int _offset,
+                         final int _length,
+                         final boolean _probe)
+    {
+        int ret = -1;
+        if ((_length >= SVNDiffEncoder.MIN_COMPRESS_SIZE)
+                && (!_probe || (SVNDiffEncoder.entropy(_bytes, _offset, _length) <= SVNDiffEncoder.MAX_COMPRESS_ENTROPY)))  {
+            if (this.compressed.length < _length)  {
+                this.compressed = new byte[_length];
+            }
+            this.deflater.reset();
+            this.deflater.setInput(_bytes, _offset, _length);
+            this.deflater.finish();
+            int length = 0;
+            while (!this.deflater.finished() && (length < _length))  {
+                length += this.deflater.deflate(this.compressed, length, _length - length);
+            }
+            // only used if smaller than the original section
+            if (this.deflater.finished() && (length < _length))  {
+                ret = length;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Evaluates the entropy in bits per byte of the first
+     * {@link #ENTROPY_PROBE_SIZE} bytes of given section.
+     *
+     * @param _bytes    byte array
+     * @param _offset   offset of the section
+     * @param _length   length of the section
+     * @return entropy in bits per byte (between <code>0</code> and
+     *         <code>8</code>)
+     */
+    public static double entropy(final byte[] _bytes,
+                                 final int _offset,
+                                 final int _length)
+    {
+        final int length = Math.min(_length, SVNDiffEncoder.ENTROPY_PROBE_SIZE);
+        final int[] histogram = new int[256];
+        for (int idx = _offset; idx < (_offset + length); idx++)  {
+            histogram[_bytes[idx] & 0xFF]++;
+        }
+        double ret = 0;
+        for (final int frequency : histogram)  {
+            if (frequency > 0)  {
+                final double probability = (double) frequency / length;
+                ret -= probability * Math.log(probability);
+            }
+        }
+        return ret / Math.log(2);
+    }
+
+    /**
+     * Appends given bytes to {@link #encoded}.
+     *
+     * @param _bytes    byte array
+     * @param _offset   offset within the byte array
+     * @param _length   count of bytes
+     */
+    private void append(final byte[] _bytes,
+                        final int _offset,
+                        final int _length)
+    {
+        this.ensure(_length);
+        System.arraycopy(_bytes, _offset, this.encoded, this.count, _length);
+        this.count += _length;
+    }
+
+    /**
+     * Appends given number in the variable length format of svndiff (seven
+     * bits for each byte, most significant bits first, the high bit is set
+     * for all bytes except the last).
+     *
+     * @param _number   number to append
+     */
+    private void appendNumber(final long _number)
+    {
+        final int length = SVNDiffEncoder.lengthOfNumber(_number);
+        this.ensure(length);
+        for (int idx = length - 1; idx >= 0; idx--)  {
+            final int bits = (int) ((_number >> (7 * idx)) & 0x7F);
+            this.encoded[this.count++] = (byte) ((idx > 0) ? (bits | 0x80) : bits);
+        }
+    }
+
+    /**
+     * Makes sure that given count of bytes could be appended to
+     * {@link #encoded}.
+     *
+     * @param _length   count of bytes
+     */
+    private void ensure(final int _length)
+    {
+        if ((this.count + _length) > this.encoded.length)  {
+            final byte[] enlarged = new byte[Math.max(this.count + _length, this.encoded.length * 2)];
+            System.arraycopy(this.encoded, 0, enlarged, 0, this.count);
+            this.encoded = enlarged;
+        }
+    }
+
+    /**
+     * Returns the count of bytes of given number in the variable length
+     * format.
+     *
+     * @param _number   number
+     * @return count of bytes
+     */
+    private static int lengthOfNumber(final long _number)
+    {
+        int ret = 1;
+        long number = _number >> 7;
+        while (number > 0)  {
+            ret++;
+            number >>= 7;
+        }
+        return ret;
+    }
+
+    /**
+     * Reads a number in the variable length format.
+     *
+     * @param _bytes    byte array
+     * @param _offset   offset of the number
+     * @return read number
+     */
+    private static long readNumber(final byte[] _bytes,
+                                   final int _offset)
+    {
+        long ret = 0;
+        int pos = _offset;
+        byte current;
+        do  {
+            current = _bytes[pos++];
+            ret = (ret << 7) | (current & 0x7F);
+        } while ((current & 0x80) != 0);
+        return ret;
+    }
+
+    /**
+     * Skips a number in the variable length format.
+     *
+     * @param _bytes    byte array
+     * @param _offset   offset of the number
+     * @return offset after the number
+     */
+    private static int skipNumber(final byte[] _bytes,
+                                  final int _offset)
+    {
+        int pos = _offset;
+        while ((_bytes[pos] & 0x80) != 0)  {
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    /**
+     * Byte array output stream with access to the internal buffer.
+     */
+    private static final class WindowBuffer
+            extends ByteArrayOutputStream
+    {
+        /**
+         * Returns the internal buffer.
+         *
+         * @return internal buffer
+         */
+        byte[] getBuffer()
+        {
+            return this.buf;
+        }
+    }
+}
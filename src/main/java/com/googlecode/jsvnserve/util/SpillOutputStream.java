@@ -0,0 +1,316 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Output stream which holds the written bytes in the memory until the
+ * threshold is reached. If more bytes are written, all bytes are spilled to
+ * a temporary file and the following bytes are written directly to the
+ * file. So small contents (e.g. of the files of a commit) are never written
+ * to the file system, and large contents do not use the memory. If a
+ * {@link MemoryBudget} is defined, the memory of the buffer is reserved from
+ * the budget and the bytes are spilled as soon as the budget is exhausted.
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class SpillOutputStream
+        extends OutputStream
+{
+    /**
+     * Default threshold in bytes.
+     */
+    public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Initial size of the memory buffer.
+     */
+    private static final int INITIAL_SIZE = 8192;
+
+    /**
+     * Size of the buffer of the file output stream.
+     */
+    private static final int FILE_BUFFER_SIZE = 65536;
+
+    /**
+     * Maximum bytes hold in the memory.
+     */
+    private final int threshold;
+
+    /**
+     * Prefix of the temporary file.
+     */
+    private final String prefix;
+
+    /**
+     * Memory budget from which the {@link #buffer} is reserved;
+     * <code>null</code> if not limited.
+     */
+    private final MemoryBudget budget;
+
+    /**
+     * Bytes in the memory; <code>null</code> if spilled to the
+     * {@link #file}.
+     */
+    private byte[] buffer = new byte[0];
+
+    /**
+     * Bytes reserved from the {@link #budget} for the {@link #buffer}.
+     */
+    private long reserved;
+
+    /**
+     * Count of all written bytes.
+     */
+    private long size;
+
+    /**
+     * Temporary file; <code>null</code> if not spilled.
+     */
+    private File file;
+
+    /**
+     * Output stream of the {@link #file}.
+     */
+    private OutputStream fileOut;
+
+    /**
+     * @param _threshold    maximum bytes hold in the memory
+     * @param _prefix       prefix of the temporary file
+     */
+    public SpillOutputStream(final int _threshold,
+                             final String _prefix)
+    {
+        this(_threshold, _prefix, null);
+    }
+
+    /**
+     * @param _threshold    maximum bytes hold in the memory
+     * @param _prefix       prefix of the temporary file
+     * @param _budget       memory budget shared with other streams;
+     *                      <code>null</code> if not limited
+     */
+    public SpillOutputStream(final int _threshold,
+                             final String _prefix,
+                             final MemoryBudget _budget)
+    {
+        this.threshold = _threshold;
+        this.prefix = _prefix;
+        this.budget = _budget;
+    }
+
+    /**
+     * Writes one byte.
+     *
+     * @param _byte     byte to write
+     * @throws IOException if the byte could not be spilled to the file
+     */
+    @Override
+    public void write(final int _byte)
+            throws IOException
+    {
+        this.write(new byte[]{(byte) _byte}, 0, 1);
+    }
+
+    /**
+     * Writes the bytes into the memory or, if the threshold is exceeded or
+     * the memory budget is exhausted, to the temporary file.
+     *
+     * @param _bytes    bytes to write
+     * @param _offset   offset within the bytes
+     * @param _length   count of bytes to write
+     * @throws IOException if the bytes could not be written to the file
+     */
+    @Override
+    public void write(final byte[] _bytes,
+                      final int _offset,
+                      final int _length)
+            throws IOException
+    {
+        if ((this.file == null) && ((this.size + _length) > this.threshold))  {
+            this.spill();
+        }
+        final int count = (int) this.size;
+        if ((this.file == null) && ((count + _length) > this.buffer.length))  {
+            final int length = Math.min(this.threshold,
+                                        Math.max(count + _length,
+                                                 Math.max(SpillOutputStream.INITIAL_SIZE, this.buffer.length * 2)));
+            if ((this.budget == null) || this.budget.reserve(length - this.buffer.length))  {
+                final byte[] enlarged = new byte[length];
+                System.arraycopy(this.buffer, 0, enlarged, 0, count);
+                this.buffer = enlarged;
+                if (this.budget != null)  {
+                    this.reserved = length;
+                }
+            } else  {
+                this.spill();
+            }
+        }
+        if (this.file == null)  {
+            System.arraycopy(_bytes, _offset, this.buffer, count, _length);
+        } else  {
+            this.fileOut.write(_bytes, _offset, _length);
+        }
+        this.size += _length;
+    }
+
+    /**
+     * Flushes the output stream of the temporary file (if spilled).
+     *
+     * @throws IOException if the file could not be flushed
+     */
+    @Override
+    public void flush()
+            throws IOException
+    {
+        if (this.fileOut != null)  {
+            this.fileOut.flush();
+        }
+    }
+
+    /**
+     * Closes the output stream of the temporary file (if spilled). The
+     * written bytes could be read afterwards with {@link #getInputStream()}.
+     *
+     * @throws IOException if the file could not be closed
+     */
+    @Override
+    public void close()
+            throws IOException
+    {
+        if (this.fileOut != null)  {
+            this.fileOut.close();
+            this.fileOut = null;
+        }
+    }
+
+    /**
+     * Returns the count of written bytes.
+     *
+     * @return count of written bytes
+     */
+    public long getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * Checks if the written bytes are spilled to a temporary file.
+     *
+     * @return <i>true</i> if spilled; otherwise <i>false</i>
+     */
+    public boolean isSpilled()
+    {
+        return this.file != null;
+    }
+
+    /**
+     * Returns a new input stream of all written bytes. The stream must be
+     * closed before the written bytes could be read.
+     *
+     * @return input stream of the written bytes
+     * @throws FileNotFoundException if the temporary file was deleted
+     */
+    public InputStream getInputStream()
+            throws FileNotFoundException
+    {
+        final InputStream ret;
+        if (this.file == null)  {
+            if (this.buffer == null)  {
+                throw new FileNotFoundException("content was already deleted");
+            }
+            ret = new ByteArrayInputStream(this.buffer, 0, (int) this.size);
+        } else  {
+            ret = new FileInputStream(this.file);
+        }
+        return ret;
+    }
+
+    /**
+     * Releases the memory and deletes the temporary file (if spilled).
+     */
+    public void delete()
+    {
+        this.releaseBuffer();
+        if (this.fileOut != null)  {
+            try  {
+                this.fileOut.close();
+            } catch (final IOException ex)  {
+            }
+            this.fileOut = null;
+        }
+        if (this.file != null)  {
+            this.file.delete();
+        }
+    }
+
+    /**
+     * Releases the {@link #buffer} and the bytes {@link #reserved reserved}
+     * from the {@link #budget}.
+     */
+    private void releaseBuffer()
+    {
+        this.buffer = null;
+        if (this.reserved > 0)  {
+            this.budget.release(this.reserved);
+            this.reserved = 0;
+        }
+    }
+
+    /**
+     * Creates the temporary file and writes all bytes from the memory into
+     * the file.
+     *
+     * @throws IOException if the temporary file could not be created or
+     *                     written
+     */
+    private void spill()
+            throws IOException
+    {
+        this.file = File.createTempFile(this.prefix, ".tmp");
+        this.fileOut = new BufferedOutputStream(new FileOutputStream(this.file), SpillOutputStream.FILE_BUFFER_SIZE);
+        this.fileOut.write(this.buffer, 0, (int) this.size);
+        this.releaseBuffer();
+    }
+
+    /**
+     * Returns a string representation of this output stream.
+     *
+     * @return string representation
+     */
+    @Override
+    public String toString()
+    {
+        return (this.file == null)
+               ? "SpillOutputStream[memory, " + this.size + " bytes]"
+               : "SpillOutputStream[" + this.file + ", " + this.size + " bytes]";
+    }
+}
@@ -45,16 +45,22 @@ public class Timestamp
     /**
      * Date time format from SVN used to format date instance to strings.<br/>
      * Example:<br/>
-     * <code>2009-03-14T18:49:06.097886Z</code>
+     * <code>2009-03-14T18:49:06.097886Z</code><br/>
+     * Because a date format is not thread safe, each thread uses an own
+     * instance (the format is used from all sessions of the SVN server).
      *
      * @see #valueOf(String)
      * @see #toString()
      */
-    private static final DateFormat DATETIMEFORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
-    static
-    {
-        Timestamp.DATETIMEFORMAT.setTimeZone(new SimpleTimeZone(0, "GMT"));
-    }
+    private static final ThreadLocal<DateFormat> DATETIMEFORMAT = new ThreadLocal<DateFormat>()  {
+        @Override
+        protected DateFormat initialValue()
+        {
+            final DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+            format.setTimeZone(new SimpleTimeZone(0, "GMT"));
+            return format;
+        }
+    };
 
     /**
      * Date instance to hold the part of the date in milliseconds.
@@ -86,6 +92,19 @@ public class Timestamp
         this.microseconds = _microseconds - (miliseconds * 1000);
     }
 
+    /**
+     * Returns the time stamp as microseconds since January 1, 1970, 00:00:00
+     * GMT (e.g. to compare time stamps without any instance).
+     *
+     * @return microseconds of the time stamp
+     * @see #date
+     * @see #microseconds
+     */
+    public long getTimeInMicros()
+    {
+        return this.date.getTime() * 1000 + this.microseconds;
+    }
+
     /**
      * Returns the string formatted in SVN of the time stamp. First,
      * {@link #date} is formatted with {@link #DATETIMEFORMAT}, then as prefix
@@ -99,7 +118,7 @@ public class Timestamp
     public String toString()
     {
         return new StringBuilder()
-                .append(Timestamp.DATETIMEFORMAT.format(this.date))
+                .append(Timestamp.DATETIMEFORMAT.get().format(this.date))
                 .append(String.format("%03d", this.microseconds))
                 .append('Z')
                 .toString();
@@ -120,7 +139,7 @@ public class Timestamp
             final int pointIdx = _value.indexOf('.');
             final Date date;
             try  {
-                date = Timestamp.DATETIMEFORMAT.parse(_value.substring(0, pointIdx + 4));
+                date = Timestamp.DATETIMEFORMAT.get().parse(_value.substring(0, pointIdx + 4));
             } catch (final ParseException ex)  {
                 throw new IllegalArgumentException("Timestamp format must be yyyy-MM-dd'T'HH:mm:ss.ffffff");
             }
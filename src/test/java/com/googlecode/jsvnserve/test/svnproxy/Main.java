@@ -25,6 +25,7 @@ import java.io.IOException;
 import org.tmatesoft.svn.core.SVNException;
 
 import com.googlecode.jsvnserve.SVNServer;
+import com.googlecode.jsvnserve.SessionExecutorType;
 
 /**
  * Main class to start the test SVN proxy repository.
@@ -36,6 +37,8 @@ public class Main
 {
     /**
      * The first argument is the SVN URI, e.g. &quot;file:///svn/test&quot;.
+     * The optional second argument is the type of the session executor, e.g.
+     * &quot;VIRTUAL_THREADS&quot; (see {@link SessionExecutorType}).
      *
      * @param _args
      * @throws IOException
@@ -49,6 +52,9 @@ public class Main
         svnServer.setPort(9999);
         svnServer.setRepositoryFactory(new RepositoryFactory(_args[0]));
         svnServer.setCallbackHandler(new SVNProxyCallbackHandler());
+        if (_args.length > 1)  {
+            svnServer.setSessionExecutorType(SessionExecutorType.valueOf(_args[1]));
+        }
         svnServer.start();
         Thread.sleep(100000);
 
@@ -37,9 +37,11 @@ import java.util.UUID;
 
 import org.tmatesoft.svn.core.ISVNDirEntryHandler;
 import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNCancelException;
 import org.tmatesoft.svn.core.SVNCommitInfo;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNLock;
@@ -67,7 +69,10 @@ import com.googlecode.jsvnserve.api.CommitInfo;
 import com.googlecode.jsvnserve.api.Depth;
 import com.googlecode.jsvnserve.api.DirEntry;
 import com.googlecode.jsvnserve.api.DirEntryList;
+import com.googlecode.jsvnserve.api.ILogReceiver;
+import com.googlecode.jsvnserve.api.IReplay;
 import com.googlecode.jsvnserve.api.IRepository;
+import com.googlecode.jsvnserve.api.IStreamingLog;
 import com.googlecode.jsvnserve.api.LocationEntries;
 import com.googlecode.jsvnserve.api.LockDescriptionList;
 import com.googlecode.jsvnserve.api.LogEntryList;
@@ -93,6 +98,7 @@ import com.googlecode.jsvnserve.api.editorcommands.DeltaRootOpen;
 import com.googlecode.jsvnserve.api.editorcommands.DirectoryNotExistsException;
 import com.googlecode.jsvnserve.api.editorcommands.EditorCommandSet;
 import com.googlecode.jsvnserve.api.editorcommands.FileNotExistsException;
+import com.googlecode.jsvnserve.api.editorcommands.IDeltaEditor;
 import com.googlecode.jsvnserve.api.filerevisions.FileRevision;
 import com.googlecode.jsvnserve.api.filerevisions.FileRevisionsList;
 import com.googlecode.jsvnserve.api.properties.Properties;
@@ -106,7 +112,7 @@ import com.googlecode.jsvnserve.util.Timestamp;
  * @version $Id$
  */
 public class Repository
-            implements IRepository
+            implements IRepository, IStreamingLog, IReplay
 {
     private final SVNURL baseUrl;
 
@@ -115,6 +121,16 @@ public class Repository
      */
     final SVNRepository svnRepository;
 
+    /**
+     * SVN kit repository used to get the file contents. An own instance is
+     * required, because the contents are fetched while the editor of a
+     * status or switch is driven by {@link #svnRepository} (and the SVN kit
+     * repositories are not reenterable).
+     *
+     * @see #getFile(Long, CharSequence)
+     */
+    final SVNRepository fileRepository;
+
     final SVNClientManager clientManager;
 
     /**
@@ -142,6 +158,7 @@ public class Repository
         final SVNURL svnUrl = _svnUrl.appendPath(_location, false);
 
         this.svnRepository = this.clientManager.createRepository(svnUrl, false);
+        this.fileRepository = this.clientManager.createRepository(svnUrl, false);
 
         // get current root path
         final String rootPath = this.svnRepository.getRepositoryRoot(true).getPath();
@@ -196,6 +213,7 @@ public class Repository
             this.location = _newPath.toString();
             try {
                 this.svnRepository.setLocation(this.baseUrl.appendPath(_newPath.toString(), false), false);
+                this.fileRepository.setLocation(this.baseUrl.appendPath(_newPath.toString(), false), false);
             } catch (final SVNException e) {
                 // TODO Auto-generated catch block
                 e.printStackTrace();
@@ -390,6 +408,70 @@ public class Repository
             return ret;
         }
 
+        public boolean getLog(final long _startRevision,
+                              final long _endRevision,
+                              final boolean _includeChangedPaths,
+                              final long _limit,
+                              final ILogReceiver _receiver,
+                              final CharSequence... _paths)
+                throws ServerException, IOException
+        {
+            final IOException[] writeException = new IOException[1];
+
+            final ISVNLogEntryHandler logHandler = new ISVNLogEntryHandler()  {
+                public void handleLogEntry(final SVNLogEntry _logEntry)
+                        throws SVNException
+                {
+                    try  {
+                        if (_includeChangedPaths)  {
+                            for (final Object logEntryPathObj : _logEntry.getChangedPaths().values())  {
+                                final SVNLogEntryPath logEntryPath = (SVNLogEntryPath) logEntryPathObj;
+                                if (SVNLogEntryPath.TYPE_ADDED == logEntryPath.getType())  {
+                                    if (logEntryPath.getCopyPath() != null)  {
+                                        _receiver.addCopied(logEntryPath.getPath(), logEntryPath.getCopyPath(), logEntryPath.getCopyRevision());
+                                    } else  {
+                                        _receiver.addLogCreated(logEntryPath.getPath());
+                                    }
+                                } else if (SVNLogEntryPath.TYPE_DELETED == logEntryPath.getType())  {
+                                    _receiver.addDeleted(logEntryPath.getPath());
+                                } else if (SVNLogEntryPath.TYPE_MODIFIED == logEntryPath.getType())  {
+                                    _receiver.addModified(logEntryPath.getPath());
+                                } else if (SVNLogEntryPath.TYPE_REPLACED == logEntryPath.getType())  {
+                                    _receiver.addRead(logEntryPath.getPath());
+                                }
+                            }
+                        }
+                        _receiver.addLogEntry(_logEntry.getRevision(), _logEntry.getAuthor(), _logEntry.getDate(), _logEntry.getMessage());
+                    } catch (final IOException e)  {
+                        writeException[0] = e;
+                        throw new SVNCancelException();
+                    }
+                }
+            };
+
+            final String[] paths = new String[_paths.length];
+            for (int idx = 0; idx < _paths.length; idx++)
+            {
+                paths[idx] = _paths[idx].toString();
+            }
+
+            try  {
+                this.svnRepository.log(paths,
+                                       _startRevision,
+                                       _endRevision,
+                                       _includeChangedPaths,
+                                       false, /* if true then copy history (if any) is not to be traversed*/
+                                       _limit,
+                                       logHandler);
+            } catch (final SVNException e)  {
+                if (writeException[0] != null)  {
+                    throw writeException[0];
+                }
+                throw new OtherServerException(e);
+            }
+            return true;
+        }
+
         public DirEntryList getDir(final Long _revision,
                                  final CharSequence _path,
                                  final boolean _retFileSize,
@@ -448,12 +530,12 @@ public class Repository
                     final String path;
                     if (_path.toString().startsWith("/"))  {
                         final String absPath = this.baseUrl.appendPath(_path.toString(), false).getPath();
-                        final String rootPath = this.svnRepository.getRepositoryRoot(false).getPath();
+                        final String rootPath = this.baseUrl.getPath();
                         path = absPath.substring(rootPath.length());
                     } else  {
                         path = _path.toString();
                     }
-                    this.svnRepository.getFile(path,
+                    this.fileRepository.getFile(path,
                                                _revision,
                                                null,
                                                out);
@@ -761,15 +843,16 @@ System.out.println("nodeKind="+nodeKind);
         }
 
 
-        public EditorCommandSet getSwitchEditor(final String _newPath,
-                                                final Long _revision,
-                                                final String _path,
-                                                final Depth _depth,
-                                                final ReportList _report)
-                throws ServerException
+        public void getSwitchEditor(final String _newPath,
+                                    final Long _revision,
+                                    final String _path,
+                                    final Depth _depth,
+                                    final ReportList _report,
+                                    final IDeltaEditor _editor)
+                throws ServerException, IOException
         {
 
-            final SVNEditor editor = new SVNEditor();
+            final SVNEditor editor = new SVNEditor(_editor);
 
             SVNDepth svnDepth = SVNDepth.UNKNOWN;
             switch (_depth)  {
@@ -814,21 +897,19 @@ editor.orgPath = _newPath;
 
     }, editor);
 } catch (final SVNException e) {
+    editor.throwIOException();
     throw new ServerException(e.getMessage(), e);
 }
-
-System.out.println("editor.deltaEditor="+editor.deltaEditor);
-
-            return editor.deltaEditor;
         }
 
-        public EditorCommandSet getStatus(final Long _revision,
-                                  final String _path,
-                                  final Depth _depth,
-                                  final ReportList _report)
-                throws ServerException
+        public void getStatus(final Long _revision,
+                              final String _path,
+                              final Depth _depth,
+                              final ReportList _report,
+                              final IDeltaEditor _editor)
+                throws ServerException, IOException
         {
-            final SVNEditor editor = new SVNEditor();
+            final SVNEditor editor = new SVNEditor(_editor);
 
             SVNDepth svnDepth = SVNDepth.UNKNOWN;
             switch (_depth)  {
@@ -866,21 +947,140 @@ try {
 
     }, editor);
 } catch (final SVNException e) {
+    editor.throwIOException();
     throw new ServerException(e.getMessage(), e);
 }
+        }
 
-            return editor.deltaEditor;
+    /**
+     * The SVN kit repository replays the revisions.
+     *
+     * @return always <i>true</i>
+     */
+    public boolean supportsReplay()
+    {
+        return true;
+    }
+
+    /**
+     * Replays given revision with the SVN kit repository. The copy sources
+     * of the SVN kit editor are forwarded to the delta editor.
+     *
+     * @param _revision         revision to replay
+     * @param _lowWaterMark     copies from lower revisions are replayed as
+     *                          additions
+     * @param _sendDeltas       must the text deltas be sent?
+     * @param _editor           delta editor
+     * @return always <i>true</i>
+     * @throws ServerException if the revision could not be replayed
+     * @throws IOException if the delta editor failed
+     */
+    public boolean replay(final long _revision,
+                          final long _lowWaterMark,
+                          final boolean _sendDeltas,
+                          final IDeltaEditor _editor)
+            throws ServerException, IOException
+    {
+        final SVNEditor editor = new SVNEditor(_editor);
+        try  {
+            this.svnRepository.replay(_lowWaterMark, _revision, _sendDeltas, editor);
+        } catch (final SVNException e)  {
+            editor.throwIOException();
+            throw new ServerException(e.getMessage(), e);
         }
+        return true;
+    }
 
+    /**
+     * Maps the SVN kit editor to the delta editor of jSVNServe. All calls are
+     * directly forwarded, so that the editor commands are written to the
+     * client while the SVN kit walks the tree.
+     */
     class SVNEditor
             implements ISVNEditor
     {
-        EditorCommandSet deltaEditor;
+        /**
+         * Delta editor to which all calls are forwarded.
+         */
+        final IDeltaEditor deltaEditor;
+
+        /**
+         * Input / output exception thrown from the {@link #deltaEditor}. The
+         * exception could not be thrown directly because the SVN kit editor
+         * only allows SVN exceptions.
+         *
+         * @see #throwIOException()
+         */
+        IOException ioException;
 
 String newPath;
 String orgPath;
 
-        private final Stack<AbstractDelta> stack = new Stack<AbstractDelta>();
+        SVNEditor(final IDeltaEditor _deltaEditor)
+        {
+            this.deltaEditor = _deltaEditor;
+        }
+
+        /**
+         * Converts given input / output exception to a SVN exception.
+         *
+         * @param _ex   input / output exception
+         * @return SVN exception to throw
+         */
+        private SVNException convert(final IOException _ex)
+        {
+            this.ioException = _ex;
+            return new SVNException(SVNErrorMessage.create(SVNErrorCode.IO_ERROR, _ex.getMessage()), _ex);
+        }
+
+        /**
+         * Throws the input / output exception from the {@link #deltaEditor}
+         * (if one was thrown).
+         *
+         * @throws IOException from the delta editor
+         */
+        void throwIOException()
+                throws IOException
+        {
+            if (this.ioException != null)  {
+                throw this.ioException;
+            }
+        }
+
+        /**
+         * Returns the copied path of the SVN kit editor absolute to the
+         * repository path.
+         *
+         * @param _copiedPath       copied path of the SVN kit editor
+         * @param _copiedRevision   copied revision of the SVN kit editor
+         * @return copied path; <code>null</code> if not copied
+         */
+        private String getCopiedPath(final String _copiedPath,
+                                     final long _copiedRevision)
+        {
+            final String ret;
+            if ((_copiedPath == null) || (_copiedRevision < 0))  {
+                ret = null;
+            } else if (_copiedPath.startsWith("/"))  {
+                ret = _copiedPath;
+            } else  {
+                ret = "/" + _copiedPath;
+            }
+            return ret;
+        }
+
+        /**
+         * Returns the copied revision of the SVN kit editor.
+         *
+         * @param _copiedPath       copied path of the SVN kit editor
+         * @param _copiedRevision   copied revision of the SVN kit editor
+         * @return copied revision; <code>null</code> if not copied
+         */
+        private Long getCopiedRevision(final String _copiedPath,
+                                       final long _copiedRevision)
+        {
+            return ((_copiedPath == null) || (_copiedRevision < 0)) ? null : Long.valueOf(_copiedRevision);
+        }
 
         public void abortEdit() throws SVNException
         {
@@ -898,13 +1098,11 @@ String orgPath;
                 throws SVNException
         {
             System.out.println("addDir("+_path+","+_copiedPath+","+_copiedRevision+")");
-            final AbstractDelta delta;
-            if ((_copiedPath != null) && (_copiedRevision >= 0))  {
-delta= null;
-            } else  {
-                delta = this.deltaEditor.createDir(_path);
+            try  {
+                this.deltaEditor.addDir(_path, this.getCopiedPath(_copiedPath, _copiedRevision), this.getCopiedRevision(_copiedPath, _copiedRevision));
+            } catch (final IOException ex)  {
+                throw this.convert(ex);
             }
-            this.stack.add(delta);
         }
 
         public void changeDirProperty(final String _propKey,
@@ -913,21 +1111,33 @@ delta= null;
         {
             System.out.println("changeDirProperty("+_propKey+","+_propValue+")");
             if (!"svn:entry:uuid".equals(_propKey))  {
-                this.stack.peek().put(_propKey, (_propValue != null) ? _propValue.toString() : null);
+                try  {
+                    this.deltaEditor.changeDirProperty(_propKey, (_propValue != null) ? _propValue.toString() : null);
+                } catch (final IOException ex)  {
+                    throw this.convert(ex);
+                }
             }
         }
 
         public void closeDir() throws SVNException
         {
             System.out.println("closeDir()");
-            this.stack.pop();
+            try  {
+                this.deltaEditor.closeDir();
+            } catch (final IOException ex)  {
+                throw this.convert(ex);
+            }
         }
 
         public void openDir(final String _path, final long _revision)
+                throws SVNException
         {
             System.out.println("openDir("+_path+","+_revision+")");
-            final AbstractDelta delta = this.deltaEditor.updateDir(_path, (_revision >= 0) ? _revision : null);
-            this.stack.add(delta);
+            try  {
+                this.deltaEditor.openDir(_path, (_revision >= 0) ? _revision : null);
+            } catch (final IOException ex)  {
+                throw this.convert(ex);
+            }
         }
 
         public void absentFile(final String s)
@@ -938,75 +1148,116 @@ delta= null;
         public void addFile(final String _path,
                             final String _copiedPath,
                             final long _copiedRevision)
+                throws SVNException
         {
             System.out.println("addFile("+_path+","+_copiedPath+","+_copiedRevision+")");
-            final AbstractDelta delta;
-            if ((_copiedPath != null) && (_copiedRevision >= 0))  {
-delta= null;
-            } else  {
+            try  {
                 // must the file get on the server from original path?
                 if (this.newPath != null)  {
-                    delta = this.deltaEditor.createFile(_path,
-                                                        this.orgPath + _path.substring(this.newPath.length()));
+                    this.deltaEditor.addFile(_path,
+                                             this.orgPath + _path.substring(this.newPath.length()),
+                                             null,
+                                             null);
                 } else  {
-                    delta = this.deltaEditor.createFile(_path);
+                    this.deltaEditor.addFile(_path,
+                                             _path,
+                                             this.getCopiedPath(_copiedPath, _copiedRevision),
+                                             this.getCopiedRevision(_copiedPath, _copiedRevision));
                 }
+            } catch (final IOException ex)  {
+                throw this.convert(ex);
             }
-            this.stack.add(delta);
         }
 
         public void changeFileProperty(final String _path,
                                        final String _propKey,
                                        final SVNPropertyValue _propValue)
+                throws SVNException
         {
             System.out.println("changeFileProperty("+_propKey+","+_propValue+")");
             if (!"svn:entry:uuid".equals(_propKey))  {
-                this.stack.peek().put(_propKey, (_propValue != null) ? _propValue.toString() : null);
+                try  {
+                    this.deltaEditor.changeFileProperty(_propKey, (_propValue != null) ? _propValue.toString() : null);
+                } catch (final IOException ex)  {
+                    throw this.convert(ex);
+                }
             }
         }
 
         public void closeFile(final String s, final String s1)
+                throws SVNException
         {
             System.out.println("closeFile("+s+","+s1+")");
-            this.stack.pop();
+            try  {
+                this.deltaEditor.closeFile(s1);
+            } catch (final IOException ex)  {
+                throw this.convert(ex);
+            }
         }
 
         public void openFile(final String _path,
                              final long _revision)
+                throws SVNException
         {
             System.out.println("openFile("+_path+","+_revision+")");
-            final AbstractDelta delta = this.deltaEditor.updateFile(_path, (_revision >= 0) ? _revision : null, _path);
-            this.stack.add(delta);
+            try  {
+                this.deltaEditor.openFile(_path, (_revision >= 0) ? _revision : null, _path);
+            } catch (final IOException ex)  {
+                throw this.convert(ex);
+            }
         }
 
         public SVNCommitInfo closeEdit()
+                throws SVNException
         {
             System.out.println("closeEdit()");
+            try  {
+                this.deltaEditor.closeEdit();
+            } catch (final IOException ex)  {
+                throw this.convert(ex);
+            }
             return null;
         }
 
         public void deleteEntry(final String _path, final long _revision)
+                throws SVNException
         {
             System.out.println("deleteEntry("+_path+","+_revision+")");
-            this.deltaEditor.delete(_path, (_revision >= 0) ? _revision : null);
+            try  {
+                this.deltaEditor.deleteEntry(_path, (_revision >= 0) ? _revision : null);
+            } catch (final IOException ex)  {
+                throw this.convert(ex);
+            }
         }
 
         public void openRoot(final long _revision) throws SVNException
         {
             System.out.println("openRoot("+_revision+")");
-            final AbstractDelta delta = this.deltaEditor.updateRoot((_revision >= 0) ? _revision : null);
-            this.stack.add(delta);
+            try  {
+                this.deltaEditor.openRoot((_revision >= 0) ? _revision : null);
+            } catch (final IOException ex)  {
+                throw this.convert(ex);
+            }
         }
 
         public void targetRevision(final long _targetRevision)
+                throws SVNException
         {
-            this.deltaEditor = new EditorCommandSet(_targetRevision);
+            try  {
+                this.deltaEditor.targetRevision(_targetRevision);
+            } catch (final IOException ex)  {
+                throw this.convert(ex);
+            }
         }
 
         public void applyTextDelta(final String s, final String _baseMD5) throws SVNException
         {
             System.out.println("applyTextDelta("+s+","+_baseMD5+")");
-            ((AbstractDeltaFile) this.stack.peek()).setBaseCheckSumMD5(_baseMD5);
+            try  {
+                this.deltaEditor.applyTextDelta(_baseMD5);
+            } catch (final IOException ex)  {
+                throw this.convert(ex);
+            }
         }
 
         public OutputStream textDeltaChunk(final String s, final SVNDiffWindow svndiffwindow)
@@ -36,6 +36,12 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Parameters;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.BasicAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.svn.SVNRepositoryFactoryImpl;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -189,6 +195,23 @@ System.err.println("Execute " + cmd);
         return this.wcPath;
     }
 
+    /**
+     * Creates a new SVNKit repository for the {@link #repository repository
+     * URL} authenticated with the {@link #svnUser SVN user}. Used for the
+     * SVN calls which are not available from the SVN command line.
+     *
+     * @return new SVNKit repository
+     * @throws SVNException if the repository could not be created
+     */
+    protected SVNRepository createSVNRepository()
+            throws SVNException
+    {
+        SVNRepositoryFactoryImpl.setup();
+        final SVNRepository ret = SVNRepositoryFactory.create(SVNURL.parseURIEncoded(this.repository));
+        ret.setAuthenticationManager(new BasicAuthenticationManager(this.svnUser, this.svnPassword));
+        return ret;
+    }
+
     /**
      * Returns the URL of the repository.
      *
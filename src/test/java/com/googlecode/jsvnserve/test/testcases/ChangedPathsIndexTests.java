@@ -0,0 +1,277 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.test.testcases;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.googlecode.jsvnserve.api.LogEntryList;
+import com.googlecode.jsvnserve.api.LogEntryList.ChangedPath;
+import com.googlecode.jsvnserve.api.LogEntryList.LogEntry;
+import com.googlecode.jsvnserve.cache.ChangedPathsIndex;
+import com.googlecode.jsvnserve.cache.DelegatingRepository;
+
+/**
+ * <p>Tests and benchmark of the {@link ChangedPathsIndex} with a synthetic
+ * history of {@link #REVISIONS} revisions (no SVN repository is needed).
+ * Revision 1 adds &quot;/trunk&quot;, revision {@link #COPY_REVISION} copies
+ * &quot;/trunk&quot; to &quot;/branches/b1&quot;; all other revisions modify
+ * one file below a module of the trunk or (odd revisions after the copy) of
+ * the branch.</p>
+ *
+ * <p>The revisions of a module of the branch are searched once with a scan
+ * of all log entries and once with the index; both results must be equal.
+ * The needed times (and the time to open the index again) are printed.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class ChangedPathsIndexTests
+{
+    /**
+     * Count of revisions of the synthetic history.
+     */
+    private static final long REVISIONS = 100000;
+
+    /**
+     * Revision in which the trunk is copied to the branch.
+     */
+    private static final long COPY_REVISION = 50000;
+
+    /**
+     * Count of modules below trunk and branch.
+     */
+    private static final int MODULES = 100;
+
+    /**
+     * Searched module.
+     */
+    private static final int MODULE = 7;
+
+    /**
+     * Directory of the index files.
+     */
+    private File directory;
+
+    /**
+     * Repository with the synthetic history.
+     */
+    private final SyntheticRepository repository = new SyntheticRepository();
+
+    /**
+     * Creates the directory of the index files.
+     *
+     * @throws IOException if the directory could not be created
+     */
+    @BeforeClass
+    public void createDirectory()
+            throws IOException
+    {
+        this.directory = File.createTempFile("changedpaths", "");
+        this.directory.delete();
+        this.directory.mkdirs();
+    }
+
+    /**
+     * Removes the directory of the index files.
+     */
+    @AfterClass
+    public void removeDirectory()
+    {
+        for (final File file : this.directory.listFiles())  {
+            file.delete();
+        }
+        this.directory.delete();
+    }
+
+    /**
+     * Builds the index, compares the revisions of a module of the branch
+     * with a scan of all log entries and opens the index again. After the
+     * close the journal is merged into the posting file, so the opened index
+     * must not read any journal record.
+     *
+     * @throws IOException if the index could not be written or read
+     */
+    @Test(timeOut = 300000)
+    public void compareWithScan()
+            throws IOException
+    {
+        final String path = "/branches/b1/mod" + ChangedPathsIndexTests.MODULE;
+        final File file = new File(this.directory, "compare.idx");
+
+        long time = System.currentTimeMillis();
+        final SortedMap<Long,String> scanned = this.scan(path);
+        final long scanTime = System.currentTimeMillis() - time;
+
+        time = System.currentTimeMillis();
+        ChangedPathsIndex index = new ChangedPathsIndex(file);
+        index.update(this.repository);
+        final long buildTime = System.currentTimeMillis() - time;
+
+        time = System.currentTimeMillis();
+        Assert.assertEquals(index.getRevisions(path, 0, ChangedPathsIndexTests.REVISIONS), scanned);
+        final long searchTime = System.currentTimeMillis() - time;
+        index.close();
+
+        Assert.assertEquals(file.length(), 0, "journal must be merged into the posting file");
+
+        time = System.currentTimeMillis();
+        index = new ChangedPathsIndex(file);
+        final long openTime = System.currentTimeMillis() - time;
+        try  {
+            Assert.assertEquals(index.getLatestRevision(), ChangedPathsIndexTests.REVISIONS);
+            time = System.currentTimeMillis();
+            Assert.assertEquals(index.getRevisions(path, 0, ChangedPathsIndexTests.REVISIONS), scanned);
+            final long reopenedSearchTime = System.currentTimeMillis() - time;
+
+            System.out.println(ChangedPathsIndexTests.REVISIONS + " revisions: scan " + scanTime + "ms, "
+                    + "build index " + buildTime + "ms, search " + searchTime + "ms, "
+                    + "open index " + openTime + "ms, search after open " + reopenedSearchTime + "ms");
+        } finally  {
+            index.close();
+        }
+    }
+
+    /**
+     * Opens an index while the journal is not merged (like after a crash)
+     * and appends new revisions after the posting file. The found revisions
+     * must include the revisions of the posting file and of the journal.
+     *
+     * @throws IOException if the index could not be written or read
+     */
+    @Test(timeOut = 300000)
+    public void journalAfterPostingFile()
+            throws IOException
+    {
+        final String path = "/trunk/mod" + ChangedPathsIndexTests.MODULE;
+        final File file = new File(this.directory, "journal.idx");
+        final SyntheticRepository first = new SyntheticRepository();
+        first.latestRevision = ChangedPathsIndexTests.COPY_REVISION - 1;
+
+        final ChangedPathsIndex index = new ChangedPathsIndex(file);
+        index.update(first);
+        index.close();
+
+        final ChangedPathsIndex appended = new ChangedPathsIndex(file);
+        appended.update(this.repository);
+        // not closed, so the journal is not merged
+        final ChangedPathsIndex reopened = new ChangedPathsIndex(file);
+        try  {
+            Assert.assertEquals(reopened.getLatestRevision(), ChangedPathsIndexTests.REVISIONS);
+            Assert.assertEquals(reopened.getRevisions(path, 0, ChangedPathsIndexTests.REVISIONS), this.scan(path));
+            Assert.assertEquals(reopened.getRevisions("/branches/b1", ChangedPathsIndexTests.REVISIONS, 0),
+                                this.scan("/branches/b1"));
+        } finally  {
+            reopened.close();
+            appended.close();
+        }
+    }
+
+    /**
+     * Searches the revisions of given path by scanning the log entries of all
+     * revisions backwards and following the copies of the path.
+     *
+     * @param _path     absolute path
+     * @return map of the revisions with the path within the revision
+     */
+    private SortedMap<Long,String> scan(final String _path)
+    {
+        final SortedMap<Long,String> ret = new TreeMap<Long,String>();
+        final LogEntryList log = this.repository.getLog(1, ChangedPathsIndexTests.REVISIONS, true, "/");
+        final LogEntry[] entries = log.getLogEntries().toArray(new LogEntry[0]);
+        String path = _path;
+        for (int idx = entries.length - 1; (idx >= 0) && (path != null); idx--)  {
+            String newPath = path;
+            for (final ChangedPath changedPath : entries[idx].getChangedPaths())  {
+                final String changed = changedPath.getPath();
+                if (changed.equals(path) || changed.startsWith(path + "/") || path.startsWith(changed + "/"))  {
+                    ret.put(entries[idx].getRevision(), path);
+                }
+                if (path.equals(changed) || path.startsWith(changed + "/"))  {
+                    newPath = (changedPath.getCopiedFromPath() == null)
+                              ? null
+                              : changedPath.getCopiedFromPath() + path.substring(changed.length());
+                }
+            }
+            path = newPath;
+        }
+        return ret;
+    }
+
+    /**
+     * Repository with the synthetic history; only the latest revision and
+     * the log are implemented.
+     */
+    private static final class SyntheticRepository
+            extends DelegatingRepository
+    {
+        /**
+         * Latest revision of the repository.
+         */
+        private long latestRevision = ChangedPathsIndexTests.REVISIONS;
+
+        /**
+         * Default constructor.
+         */
+        private SyntheticRepository()
+        {
+            super(null);
+        }
+
+        @Override
+        public long getLatestRevision()
+        {
+            return this.latestRevision;
+        }
+
+        @Override
+        public LogEntryList getLog(final long _startRevision,
+                                   final long _endRevision,
+                                   final boolean _includeChangedPaths,
+                                   final CharSequence... _paths)
+        {
+            final LogEntryList ret = new LogEntryList();
+            final Date date = new Date();
+            for (long rev = _startRevision; rev <= Math.min(_endRevision, this.latestRevision); rev++)  {
+                final LogEntry logEntry = ret.addLogEntry(rev, "test", date, "revision " + rev);
+                final String module = "/mod" + (rev % ChangedPathsIndexTests.MODULES) + "/file.txt";
+                if (rev == 1)  {
+                    logEntry.addCopied("/trunk", null, -1);
+                } else if (rev == ChangedPathsIndexTests.COPY_REVISION)  {
+                    logEntry.addCopied("/branches/b1", "/trunk", ChangedPathsIndexTests.COPY_REVISION - 1);
+                } else if ((rev > ChangedPathsIndexTests.COPY_REVISION) && ((rev % 2) == 1))  {
+                    logEntry.addModified("/branches/b1" + module);
+                } else  {
+                    logEntry.addModified("/trunk" + module);
+                }
+            }
+            return ret;
+        }
+    }
+}
@@ -25,10 +25,14 @@ import java.io.IOException;
 
 import org.testng.annotations.AfterTest;
 import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Optional;
 import org.testng.annotations.Parameters;
 import org.tmatesoft.svn.core.SVNException;
 
 import com.googlecode.jsvnserve.SVNServer;
+import com.googlecode.jsvnserve.SessionExecutorType;
+import com.googlecode.jsvnserve.api.IRepositoryFactory;
+import com.googlecode.jsvnserve.cache.CachingRepositoryFactory;
 import com.googlecode.jsvnserve.test.svnproxy.RepositoryFactory;
 import com.googlecode.jsvnserve.test.svnproxy.SVNProxyCallbackHandler;
 
@@ -45,8 +49,12 @@ public class InitSVNProxyServer
     private SVNServer svnServer;
 
     @BeforeTest(groups = "init.repository")
-    @Parameters({"port"})
-    public void createRepository(final int _port)
+    @Parameters({"port", "eventDriven", "workerThreads", "sessionExecutorType", "caching"})
+    public void createRepository(final int _port,
+                                 @Optional("false") final boolean _eventDriven,
+                                 @Optional("16") final int _workerThreads,
+                                 @Optional("") final String _sessionExecutorType,
+                                 @Optional("false") final boolean _caching)
             throws IOException, InterruptedException, SVNException
     {
         final String testPath = System.getProperty(PROPERTY_TEST_PATH);
@@ -66,7 +74,13 @@ public class InitSVNProxyServer
         System.out.println("- start repository");
         this.svnServer = new SVNServer();
         this.svnServer.setPort(_port);
-        this.svnServer.setRepositoryFactory(new RepositoryFactory("file://" + path.toString()));
+        this.svnServer.setEventDriven(_eventDriven);
+        this.svnServer.setWorkerThreads(_workerThreads);
+        if (_sessionExecutorType.length() > 0)  {
+            this.svnServer.setSessionExecutorType(SessionExecutorType.valueOf(_sessionExecutorType));
+        }
+        final IRepositoryFactory factory = new RepositoryFactory("file://" + path.toString());
+        this.svnServer.setRepositoryFactory(_caching ? new CachingRepositoryFactory(factory, null, null) : factory);
         this.svnServer.setCallbackHandler(new SVNProxyCallbackHandler());
         this.svnServer.start();
     }
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.test.testcases;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * <p>Load tests for the event driven session engine of jSVNServe: many SVN
+ * clients are connected in parallel, each with an own authentication and
+ * repository session.</p>
+ *
+ * <p>The tests show the concurrency ceiling of the event driven engine:
+ * sessions between two commands do not use a thread, but each session which
+ * waits within a command for the next item of the SVN client (e.g. within
+ * the editor drive of a commit or a report) uses a compensated thread of the
+ * pool. So the count of threads is the count of worker threads plus the
+ * count of sessions waiting within a command.</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class LoadTests
+        extends AbstractTest
+{
+    /**
+     * Executes SVN command &quot;info&quot; from many SVN clients in
+     * parallel. Each invocation must answer with the repository URL.
+     *
+     * @throws InterruptedException
+     * @throws IOException
+     * @throws ExecuteException
+     */
+    @Test(invocationCount = 200, threadPoolSize = 50, timeOut = 60000)
+    public void parallelInfo()
+            throws InterruptedException, IOException, ExecuteException
+    {
+        final String info = this.execute(true, "info", this.getRepositoryURL());
+        Assert.assertTrue(info.contains(this.getRepositoryURL()), "unexpected info " + info);
+    }
+
+    /**
+     * Lists the repository from many SVN clients in parallel.
+     *
+     * @throws InterruptedException
+     * @throws IOException
+     * @throws ExecuteException
+     */
+    @Test(dependsOnMethods = "parallelInfo", invocationCount = 200, threadPoolSize = 50, timeOut = 60000)
+    public void parallelList()
+            throws InterruptedException, IOException, ExecuteException
+    {
+        this.execute(true, "ls", this.getRepositoryURL());
+    }
+
+    /**
+     * Measures the concurrency ceiling of the event driven engine. More
+     * commits than worker threads are started, but their editor drives are
+     * not finished, so that each session waits within the command for the
+     * next item of the SVN client. New SVN clients must be still served
+     * because the waiting sessions must not hold back the worker threads,
+     * but each waiting session uses an own thread.
+     *
+     * @param _workerThreads    count of worker threads of the SVN server
+     * @throws InterruptedException
+     * @throws IOException
+     * @throws ExecuteException
+     * @throws SVNException
+     */
+    @Test(dependsOnMethods = "parallelList", timeOut = 60000)
+    @Parameters("workerThreads")
+    public void waitingSessions(final int _workerThreads)
+            throws InterruptedException, IOException, ExecuteException, SVNException
+    {
+        final List<SVNRepository> repositories = new ArrayList<SVNRepository>();
+        final int count = 4 * _workerThreads;
+        final int threadsBefore = LoadTests.getSessionThreadCount();
+        try  {
+            for (int idx = 0; idx < count; idx++)  {
+                final SVNRepository repository = this.createSVNRepository();
+                repositories.add(repository);
+                final ISVNEditor editor = repository.getCommitEditor("waiting commit", null);
+                editor.openRoot(-1);
+            }
+            final String info = this.execute(true, "info", this.getRepositoryURL());
+            Assert.assertTrue(info.contains(this.getRepositoryURL()), "unexpected info " + info);
+            // each waiting session holds a thread (at most the worker threads
+            // could be reused)
+            int threads = LoadTests.getSessionThreadCount();
+            for (int idx = 0; (idx < 100) && ((threads - threadsBefore) < (count - _workerThreads)); idx++)  {
+                Thread.sleep(100);
+                threads = LoadTests.getSessionThreadCount();
+            }
+            System.out.println(count + " waiting sessions use " + (threads - threadsBefore) + " additional session threads");
+            Assert.assertTrue((threads - threadsBefore) >= (count - _workerThreads),
+                              "waiting sessions use only " + (threads - threadsBefore) + " additional session threads");
+        } finally  {
+            for (final SVNRepository repository : repositories)  {
+                repository.closeSession();
+            }
+        }
+    }
+
+    /**
+     * Opens many idle sessions on the event driven engine. Each session is
+     * authenticated and then waits for the next command of the SVN client
+     * without a thread, so the count of threads must not grow with the count
+     * of sessions.
+     *
+     * @param _workerThreads    count of worker threads of the SVN server
+     * @throws InterruptedException
+     * @throws IOException
+     * @throws ExecuteException
+     * @throws SVNException
+     */
+    @Test(dependsOnMethods = "waitingSessions", timeOut = 60000)
+    @Parameters("workerThreads")
+    public void idleSessionsWithoutThreads(final int _workerThreads)
+            throws InterruptedException, IOException, ExecuteException, SVNException
+    {
+        final List<SVNRepository> repositories = new ArrayList<SVNRepository>();
+        final int count = 16 * _workerThreads;
+        final int threadsBefore = LoadTests.getSessionThreadCount();
+        try  {
+            for (int idx = 0; idx < count; idx++)  {
+                final SVNRepository repository = this.createSVNRepository();
+                repositories.add(repository);
+                repository.testConnection();
+            }
+            final int threads = LoadTests.getSessionThreadCount();
+            System.out.println(count + " idle sessions use " + (threads - threadsBefore) + " additional session threads");
+            Assert.assertTrue((threads - threadsBefore) < _workerThreads,
+                              "idle sessions use " + (threads - threadsBefore) + " additional session threads");
+        } finally  {
+            for (final SVNRepository repository : repositories)  {
+                repository.closeSession();
+            }
+        }
+    }
+
+    /**
+     * Opens more idle sessions than worker threads. Each session is
+     * authenticated and then waits for the next command of the SVN client.
+     * With a {@link com.googlecode.jsvnserve.SessionExecutorType#BOUNDED_POOL
+     * bounded pool} of the blocking engine, new SVN clients must be still
+     * served because the idle sessions must not hold back the worker
+     * threads.
+     *
+     * @param _workerThreads    count of worker threads of the SVN server
+     * @throws InterruptedException
+     * @throws IOException
+     * @throws ExecuteException
+     * @throws SVNException
+     */
+    @Test(timeOut = 60000)
+    @Parameters("workerThreads")
+    public void idleSessions(final int _workerThreads)
+            throws InterruptedException, IOException, ExecuteException, SVNException
+    {
+        final List<SVNRepository> repositories = new ArrayList<SVNRepository>();
+        try  {
+            for (int idx = 0; idx < 4 * _workerThreads; idx++)  {
+                final SVNRepository repository = this.createSVNRepository();
+                repositories.add(repository);
+                repository.testConnection();
+            }
+            final String info = this.execute(true, "info", this.getRepositoryURL());
+            Assert.assertTrue(info.contains(this.getRepositoryURL()), "unexpected info " + info);
+        } finally  {
+            for (final SVNRepository repository : repositories)  {
+                repository.closeSession();
+            }
+        }
+    }
+
+    /**
+     * Returns the count of the live session threads of the SVN server (the
+     * SVN server runs within the same Java VM as the tests).
+     *
+     * @return count of live threads with name <code>svn-session-</code>
+     */
+    private static int getSessionThreadCount()
+    {
+        int ret = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet())  {
+            if (thread.getName().startsWith("svn-session-"))  {
+                ret++;
+            }
+        }
+        return ret;
+    }
+}
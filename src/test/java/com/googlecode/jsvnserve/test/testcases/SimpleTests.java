@@ -21,9 +21,12 @@
 package com.googlecode.jsvnserve.test.testcases;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Date;
 import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -31,8 +34,23 @@ import javax.xml.parsers.ParserConfigurationException;
 import org.testng.Assert;
 import org.testng.annotations.Parameters;
 import org.testng.annotations.Test;
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.ISVNLocationSegmentHandler;
+import org.tmatesoft.svn.core.io.ISVNReplayHandler;
+import org.tmatesoft.svn.core.io.SVNLocationSegment;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import org.xml.sax.SAXException;
 
+import com.googlecode.jsvnserve.cache.CachingRepositoryFactory;
+
 /**
  * Some simple automatic tests for the SVN server implementation jSVNServe.
  *
@@ -514,4 +532,355 @@ public class SimpleTests
         Assert.assertTrue(new File(this.getWCPath(), "temp2/sub1").exists());
         Assert.assertTrue(new File(this.getWCPath(), "temp2/sub2").exists());
     }
+
+    /**
+     * Makes a new checkout of the repository into a second working copy and
+     * checks the content of file &quot;temp1/file1.txt&quot; (the contents
+     * of the files are fetched while the editor of the update is driven).
+     *
+     * @throws InterruptedException
+     * @throws IOException
+     * @throws ExecuteException
+     * @see #getCheckoutPath()
+     */
+    @Test(dependsOnMethods = "testSwitchURL", timeOut = 10000)
+    public void checkoutWithFiles()
+            throws InterruptedException, IOException, ExecuteException
+    {
+        final File checkout = this.getCheckoutPath();
+        Runtime.getRuntime().exec(new String[]{"rm", "-r", checkout.toString()}).waitFor();
+        this.execute(true, "co", this.getRepositoryURL(), checkout.toString());
+        Assert.assertEquals(this.readFile(new File(checkout, "temp1/file1.txt")),
+                            "This is the file 'file1.txt'.\nBut now updated\n");
+        Assert.assertTrue(new File(checkout, "temp3/file1.txt").exists());
+        Assert.assertTrue(new File(checkout, "u1/v1").exists());
+    }
+
+    /**
+     * Changes file &quot;temp1/file1.txt&quot; in the second working copy,
+     * commits and updates the first working copy. The update must apply the
+     * file delta to the changed file.
+     *
+     * @throws InterruptedException
+     * @throws IOException
+     * @throws ExecuteException
+     * @see #checkoutWithFiles()
+     */
+    @Test(dependsOnMethods = "checkoutWithFiles", timeOut = 10000)
+    public void updateChangedFile()
+            throws InterruptedException, IOException, ExecuteException
+    {
+        final File file = new File(this.getCheckoutPath(), "temp1/file1.txt");
+        final OutputStream out = new FileOutputStream(file);
+        final String text = "This is the file 'file1.txt'.\nBut now updated\nAnd changed from the checkout\n";
+        out.write(text.getBytes());
+        out.close();
+        this.execute(true, "--message", "Change file from checkout", "commit", this.getCheckoutPath().toString());
+        this.execute(true, "update");
+        Assert.assertEquals(this.readFile(new File(this.getWCPath(), "temp1/file1.txt")), text);
+        Assert.assertEquals(this.readFile(new File(this.getWCPath(), "temp2/file1.txt")), text);
+    }
+
+    /**
+     * Creates file &quot;seg/trunk/sub/c.bin&quot;, changes it and copies
+     * &quot;seg/trunk&quot; to &quot;seg/branch&quot;. The location
+     * segments of the file in the branch must follow the copy back to the
+     * trunk (the last two revisions in the trunk are merged into one
+     * segment).
+     *
+     * @throws InterruptedException
+     * @throws IOException
+     * @throws ExecuteException
+     * @throws SVNException
+     */
+    @Test(dependsOnMethods = "updateChangedFile", timeOut = 10000)
+    public void locationSegmentsOfBranch()
+            throws InterruptedException, IOException, ExecuteException, SVNException
+    {
+        final File file = new File(this.getWCPath(), "seg/trunk/sub/c.bin");
+        this.execute(false, "mkdir", "--parents", "seg/trunk/sub");
+        OutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{0, 1, 2, 3});
+        out.close();
+        this.execute(false, "add", "seg/trunk/sub/c.bin");
+        this.execute(true, "--message", "Create c.bin", "commit");
+        out = new FileOutputStream(file);
+        out.write(new byte[]{4, 5, 6, 7});
+        out.close();
+        this.execute(true, "--message", "Change c.bin", "commit");
+        this.execute(true, "--message", "Branch seg/trunk", "copy",
+                     this.getRepositoryURL() + "/seg/trunk",
+                     this.getRepositoryURL() + "/seg/branch");
+
+        final SVNRepository repository = this.createSVNRepository();
+        try  {
+            final long head = repository.getLatestRevision();
+            final StringBuilder segments = new StringBuilder();
+            repository.getLocationSegments("seg/branch/sub/c.bin", head, head, 0,
+                    new ISVNLocationSegmentHandler()  {
+                        public void handleLocationSegment(final SVNLocationSegment _segment)
+                        {
+                            segments.append(_segment.getStartRevision()).append('-')
+                                    .append(_segment.getEndRevision()).append(':')
+                                    .append(_segment.getPath()).append(' ');
+                        }
+                    });
+            Assert.assertEquals(segments.toString().trim(),
+                                head + "-" + head + ":/seg/branch/sub/c.bin "
+                                    + (head - 2) + "-" + (head - 1) + ":/seg/trunk/sub/c.bin");
+        } finally  {
+            repository.closeSession();
+        }
+    }
+
+    /**
+     * Copies a file and replays the revisions of the branch and of the copy
+     * with <code>replay-range</code>. The copied directory and the copied
+     * file must be replayed with their copy sources (so that e.g. a mirror
+     * of <code>svnsync</code> keeps the copy history).
+     *
+     * @throws InterruptedException
+     * @throws IOException
+     * @throws ExecuteException
+     * @throws SVNException
+     */
+    @Test(dependsOnMethods = "locationSegmentsOfBranch", timeOut = 10000)
+    public void replayRangeWithCopies()
+            throws InterruptedException, IOException, ExecuteException, SVNException
+    {
+        this.execute(true, "--message", "Copy c.bin", "copy",
+                     this.getRepositoryURL() + "/seg/trunk/sub/c.bin",
+                     this.getRepositoryURL() + "/seg/c-copy.bin");
+
+        final SVNRepository repository = this.createSVNRepository();
+        try  {
+            final long head = repository.getLatestRevision();
+            final CopyRecorder recorder = new CopyRecorder();
+            repository.replayRange(head - 1, head, 0, true, new ISVNReplayHandler()  {
+                public ISVNEditor handleStartRevision(final long _revision,
+                                                      final SVNProperties _revisionProperties)
+                {
+                    return recorder;
+                }
+
+                public void handleEndRevision(final long _revision,
+                                              final SVNProperties _revisionProperties,
+                                              final ISVNEditor _editor)
+                {
+                }
+            });
+            Assert.assertEquals(recorder.copies.toString().trim(),
+                                "seg/branch:/seg/trunk@" + (head - 2)
+                                    + " seg/c-copy.bin:/seg/trunk/sub/c.bin@" + (head - 1));
+        } finally  {
+            repository.closeSession();
+        }
+    }
+
+    /**
+     * Searches the revision of the date of each revision with
+     * <code>get-dated-rev</code>. The date of a revision (plus one
+     * millisecond, because the dates of the SVN client have no microseconds)
+     * must answer the revision itself; a date before all revisions answers
+     * revision 0 and a date in the future the latest revision. With
+     * {@link CachingRepositoryFactory} the dates are searched within the
+     * shared dated revision index.
+     *
+     * @throws SVNException
+     */
+    @Test(dependsOnMethods = "replayRangeWithCopies", timeOut = 10000)
+    public void datedRevisions()
+            throws SVNException
+    {
+        final SVNRepository repository = this.createSVNRepository();
+        try  {
+            final long head = repository.getLatestRevision();
+            for (long rev = 1; rev <= head; rev++)  {
+                final Date date = SVNDate.parseDate(repository.getRevisionPropertyValue(rev, SVNRevisionProperty.DATE).getString());
+                Assert.assertEquals(repository.getDatedRevision(new Date(date.getTime() + 1)), rev,
+                                    "revision of date " + date);
+            }
+            Assert.assertEquals(repository.getDatedRevision(new Date(0)), 0);
+            Assert.assertEquals(repository.getDatedRevision(new Date(System.currentTimeMillis() + 3600000)), head);
+        } finally  {
+            repository.closeSession();
+        }
+    }
+
+    /**
+     * Deletes a directory and adds the directory again. The deleted revision
+     * of the original directory must be the revision of the deletion, also
+     * if the end revision is after the new addition (because the path is
+     * then another node).
+     *
+     * @throws InterruptedException
+     * @throws IOException
+     * @throws ExecuteException
+     * @throws SVNException
+     */
+    @Test(dependsOnMethods = "datedRevisions", timeOut = 10000)
+    public void deletedRevisionOfReaddedPath()
+            throws InterruptedException, IOException, ExecuteException, SVNException
+    {
+        this.execute(true, "--message", "create del/a", "--parents", "mkdir", this.getRepositoryURL() + "/del/a");
+        this.execute(true, "--message", "delete del/a", "rm", this.getRepositoryURL() + "/del/a");
+        this.execute(true, "--message", "create del/a again", "mkdir", this.getRepositoryURL() + "/del/a");
+
+        final SVNRepository repository = this.createSVNRepository();
+        try  {
+            final long head = repository.getLatestRevision();
+            Assert.assertEquals(repository.getDeletedRevision("del/a", head - 2, head - 1), head - 1);
+            Assert.assertEquals(repository.getDeletedRevision("del/a", head - 2, head), head - 1);
+        } finally  {
+            repository.closeSession();
+        }
+    }
+
+    /**
+     * Returns the path of the second working copy (used to test the
+     * checkout).
+     *
+     * @return path of the second working copy
+     */
+    private File getCheckoutPath()
+    {
+        return new File(this.getWCPath().getParentFile(), this.getWCPath().getName() + "-checkout");
+    }
+
+    /**
+     * Reads the content of given file.
+     *
+     * @param _file     file to read
+     * @return content of the file
+     * @throws IOException if the file could not be read
+     */
+    private String readFile(final File _file)
+            throws IOException
+    {
+        final StringBuilder ret = new StringBuilder();
+        final InputStream in = new FileInputStream(_file);
+        try  {
+            int ch = in.read();
+            while (ch >= 0)  {
+                ret.append((char) ch);
+                ch = in.read();
+            }
+        } finally  {
+            in.close();
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Editor which records the added directories and files with copy
+     * sources of a replay.
+     *
+     * @see SimpleTests#replayRangeWithCopies()
+     */
+    private static class CopyRecorder
+            implements ISVNEditor
+    {
+        /**
+         * Recorded copies in the form <code>path:copied path@revision</code>.
+         */
+        private final StringBuilder copies = new StringBuilder();
+
+        private void record(final String _path,
+                            final String _copiedPath,
+                            final long _copiedRevision)
+        {
+            if (_copiedPath != null)  {
+                this.copies.append(_path).append(':').append(_copiedPath).append('@').append(_copiedRevision).append(' ');
+            }
+        }
+
+        public void addDir(final String _path,
+                           final String _copiedPath,
+                           final long _copiedRevision)
+        {
+            this.record(_path, _copiedPath, _copiedRevision);
+        }
+
+        public void addFile(final String _path,
+                            final String _copiedPath,
+                            final long _copiedRevision)
+        {
+            this.record(_path, _copiedPath, _copiedRevision);
+        }
+
+        public void targetRevision(final long _revision)
+        {
+        }
+
+        public void openRoot(final long _revision)
+        {
+        }
+
+        public void deleteEntry(final String _path,
+                                final long _revision)
+        {
+        }
+
+        public void absentDir(final String _path)
+        {
+        }
+
+        public void openDir(final String _path,
+                            final long _revision)
+        {
+        }
+
+        public void changeDirProperty(final String _name,
+                                      final SVNPropertyValue _value)
+        {
+        }
+
+        public void closeDir()
+        {
+        }
+
+        public void absentFile(final String _path)
+        {
+        }
+
+        public void openFile(final String _path,
+                             final long _revision)
+        {
+        }
+
+        public void changeFileProperty(final String _path,
+                                       final String _name,
+                                       final SVNPropertyValue _value)
+        {
+        }
+
+        public void closeFile(final String _path,
+                              final String _textChecksum)
+        {
+        }
+
+        public SVNCommitInfo closeEdit()
+        {
+            return null;
+        }
+
+        public void abortEdit()
+        {
+        }
+
+        public void applyTextDelta(final String _path,
+                                   final String _baseChecksum)
+        {
+        }
+
+        public OutputStream textDeltaChunk(final String _path,
+                                           final SVNDiffWindow _diffWindow)
+        {
+            return SVNFileUtil.DUMMY_OUT;
+        }
+
+        public void textDeltaEnd(final String _path)
+        {
+        }
+    }
 }
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2009 The jSVNServe Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Revision:        $Rev$
+ * Last Changed:    $Date$
+ * Last Changed By: $Author$
+ */
+
+package com.googlecode.jsvnserve.test.testcases;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Optional;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+
+import com.googlecode.jsvnserve.SVNServer;
+import com.googlecode.jsvnserve.api.IRepository;
+import com.googlecode.jsvnserve.api.IRepositoryFactory;
+
+/**
+ * <p>Tests of the TLS transport of jSVNServe with a JDK {@link SSLSocket}
+ * as client (no SVN repository is needed, because only the greeting of the
+ * SVN server is read). The key store of the server is created with the JDK
+ * <code>keytool</code>.</p>
+ *
+ * <p>No stock SVN client speaks TLS on <code>svn://</code>; a stock client
+ * connecting without a TLS tunnel gets no greeting (see
+ * {@link #plainClientGetsNoGreeting()}).</p>
+ *
+ * @author jSVNServe Team
+ * @version $Id$
+ */
+public class SslTests
+{
+    /**
+     * Password of the created key store.
+     */
+    private static final String PASSWORD = "jsvnserve";
+
+    /**
+     * Port of the SVN server.
+     */
+    private int port;
+
+    /**
+     * Key store file of the SVN server.
+     */
+    private File keyStore;
+
+    /**
+     * SVN server with TLS transport.
+     */
+    private SVNServer svnServer;
+
+    /**
+     * SSL context of the client which trusts the created certificate.
+     */
+    private SSLContext clientContext;
+
+    /**
+     * Creates the key store and starts the SVN server with TLS transport and
+     * TLS 1.2 (so that the resumption is visible from the session
+     * identifier).
+     *
+     * @param _port     port of the SVN server
+     * @throws IOException if the key store could not be created or the SVN
+     *                     server could not be started
+     * @throws InterruptedException if the key tool was interrupted
+     * @throws GeneralSecurityException if the SSL contexts could not be
+     *                                  initialized
+     */
+    @BeforeClass
+    @Parameters("sslPort")
+    public void startServer(@Optional("9998") final int _port)
+            throws IOException, InterruptedException, GeneralSecurityException
+    {
+        this.port = _port;
+        this.keyStore = File.createTempFile("jsvnserve", ".jks");
+        this.keyStore.delete();
+        final Process process = Runtime.getRuntime().exec(new String[]{
+                new File(new File(System.getProperty("java.home"), "bin"), "keytool").toString(),
+                "-genkeypair", "-alias", "jsvnserve", "-keyalg", "RSA", "-keysize", "2048",
+                "-dname", "CN=localhost", "-validity", "1", "-storetype", "JKS",
+                "-keystore", this.keyStore.toString(),
+                "-storepass", SslTests.PASSWORD, "-keypass", SslTests.PASSWORD});
+        Assert.assertEquals(process.waitFor(), 0, "key store could not be created");
+
+        final KeyStore store = KeyStore.getInstance("JKS");
+        final InputStream in = new FileInputStream(this.keyStore);
+        try  {
+            store.load(in, SslTests.PASSWORD.toCharArray());
+        } finally  {
+            in.close();
+        }
+        final KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(store, SslTests.PASSWORD.toCharArray());
+        final SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        this.clientContext = SSLContext.getInstance("TLS");
+        this.clientContext.init(null, new TrustManager[]{new TrustAllManager()}, null);
+
+        this.svnServer = new SVNServer();
+        this.svnServer.setPort(this.port);
+        this.svnServer.setRepositoryFactory(new IRepositoryFactory()  {
+            public IRepository createRepository(final String _user,
+                                                final String _path)
+            {
+                return null;
+            }
+        });
+        this.svnServer.setSslContext(serverContext);
+        this.svnServer.setSslProtocols("TLSv1.2");
+        this.svnServer.setSslSessionCacheSize(16);
+        this.svnServer.setSslSessionTimeout(60);
+        this.svnServer.start();
+    }
+
+    /**
+     * Stops the SVN server and removes the key store.
+     */
+    @AfterClass
+    public void stopServer()
+    {
+        if (this.svnServer != null)  {
+            this.svnServer.stop();
+        }
+        if (this.keyStore != null)  {
+            this.keyStore.delete();
+        }
+    }
+
+    /**
+     * Connects with TLS and reads the greeting of the SVN server.
+     *
+     * @throws IOException if the connection failed
+     */
+    @Test(timeOut = 30000)
+    public void greetingWithTls()
+            throws IOException
+    {
+        final SSLSocket socket = this.connect();
+        try  {
+            final String greeting = SslTests.readGreeting(socket);
+            Assert.assertTrue(greeting.startsWith("( success ( ") && greeting.contains("edit-pipeline"),
+                              "unexpected greeting " + greeting);
+            Assert.assertEquals(socket.getSession().getProtocol(), "TLSv1.2");
+        } finally  {
+            socket.close();
+        }
+    }
+
+    /**
+     * Connects twice with TLS. The second connection must resume the cached
+     * TLS session of the first connection (same session identifier), so
+     * that no full handshake is needed.
+     *
+     * @throws IOException if a connection failed
+     */
+    @Test(dependsOnMethods = "greetingWithTls", timeOut = 30000)
+    public void resumedSession()
+            throws IOException
+    {
+        final SSLSocket first = this.connect();
+        final byte[] sessionId;
+        try  {
+            SslTests.readGreeting(first);
+            sessionId = first.getSession().getId();
+        } finally  {
+            first.close();
+        }
+        final SSLSocket second = this.connect();
+        try  {
+            SslTests.readGreeting(second);
+            Assert.assertEquals(second.getSession().getId(), sessionId, "TLS session not resumed");
+        } finally  {
+            second.close();
+        }
+    }
+
+    /**
+     * Connects without TLS like a stock SVN client. The SVN server waits for
+     * the TLS handshake, so the client gets no greeting.
+     *
+     * @throws IOException if the connection failed
+     */
+    @Test(timeOut = 30000)
+    public void plainClientGetsNoGreeting()
+            throws IOException
+    {
+        final Socket socket = new Socket("localhost", this.port);
+        try  {
+            socket.setSoTimeout(2000);
+            try  {
+                final int ch = socket.getInputStream().read();
+                Assert.assertEquals(ch, -1, "plain client must not get a greeting");
+            } catch (final SocketTimeoutException ex)  {
+                // expected: the server waits for the TLS handshake
+            }
+        } finally  {
+            socket.close();
+        }
+    }
+
+    /**
+     * Opens a TLS connection to the SVN server.
+     *
+     * @return connected socket after the handshake
+     * @throws IOException if the connection failed
+     */
+    private SSLSocket connect()
+            throws IOException
+    {
+        final SSLSocket ret = (SSLSocket) this.clientContext.getSocketFactory().createSocket("localhost", this.port);
+        ret.setSoTimeout(10000);
+        ret.startHandshake();
+        return ret;
+    }
+
+    /**
+     * Reads the greeting of the SVN server (up to the closing parenthesis of
+     * the greeting).
+     *
+     * @param _socket   connected socket
+     * @return greeting
+     * @throws IOException if the greeting could not be read
+     */
+    private static String readGreeting(final Socket _socket)
+            throws IOException
+    {
+        final StringBuilder ret = new StringBuilder();
+        final InputStream in = _socket.getInputStream();
+        int depth = 0;
+        do  {
+            final int ch = in.read();
+            if (ch < 0)  {
+                break;
+            }
+            if (ch == '(')  {
+                depth++;
+            } else if (ch == ')')  {
+                depth--;
+            }
+            ret.append((char) ch);
+        } while (depth > 0);
+        return ret.toString();
+    }
+
+    /**
+     * Trust manager of the client which trusts the created self-signed
+     * certificate of the server.
+     */
+    private static final class TrustAllManager
+            implements X509TrustManager
+    {
+        public void checkClientTrusted(final X509Certificate[] _chain,
+                                       final String _authType)
+        {
+        }
+
+        public void checkServerTrusted(final X509Certificate[] _chain,
+                                       final String _authType)
+        {
+        }
+
+        public X509Certificate[] getAcceptedIssuers()
+        {
+            return new X509Certificate[0];
+        }
+    }
+}